@@ -9,6 +9,7 @@ import org.apache.servicecomb.saga.common.ConfigCenterType;
 import org.springframework.stereotype.Service;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 一致性缓存接口
@@ -23,6 +24,9 @@ public interface ITxleConsistencyCache {
 
     boolean resetLocalSystemConfigCache();
 
+    // to invalidate the local cache after other nodes changed some transaction caches
+    boolean invalidateLocalTxCache(Set<String> keys);
+
     boolean setKeyValueCache(String key, String value);
 
     // unit is second for field 'expire'
@@ -125,7 +125,7 @@ public class Command {
     return status;
   }
 
-  long id() {
+  public long id() {
     return surrogateId;
   }
 
@@ -33,7 +33,20 @@ public interface CommandRepository {
 
   void markCommandAsDone(String globalTxId, String localTxId);
 
+  /**
+   * Give the 'PENDING' command back to 'NEW', so it's claimed again by {@link CompensationDispatcher} later.
+   */
+  void markCommandAsNew(String globalTxId, String localTxId);
+
   List<Command> findUncompletedCommands(String globalTxId);
 
   List<Command> findFirstCommandToCompensate();
+
+  /**
+   * Claim a batch of the 'NEW' commands by changing them to 'PENDING' in one statement.
+   *
+   * @param limit the max size of batch
+   * @return the commands which were claimed by this call, the oldest first
+   */
+  List<Command> claimCommandsToCompensate(int limit);
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import io.prometheus.client.Gauge;
+import org.apache.servicecomb.saga.alpha.core.listener.PartitionedTaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+
+/**
+ * It claims the compensating commands in batches, and sends them to omegas by workers which are sharded by service instance.
+ * So the commands of different instances are sent in parallel, and the commands of the same instance are sent in order of claiming.
+ * The claimed commands which are not sent yet are in flight, no more commands are claimed if the in-flight ones reach 'maxInFlight'.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public class CompensationDispatcher {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final Gauge IN_FLIGHT = Gauge.build("txle_compensation_in_flight", "Number of compensating commands which are claimed but not sent yet.").register();
+
+  private final CommandRepository commandRepository;
+  private final OmegaCallback omegaCallback;
+  private final int batchSize;
+  private final int maxInFlight;
+  private final PartitionedTaskExecutor executor;
+  // the event ids of the in-flight commands, they are unique in the Command table.
+  private final Set<Long> inFlightCommands = ConcurrentHashMap.newKeySet();
+
+  public CompensationDispatcher(CommandRepository commandRepository, OmegaCallback omegaCallback, int threads, int batchSize, int maxInFlight) {
+    this.commandRepository = commandRepository;
+    this.omegaCallback = omegaCallback;
+    this.batchSize = Math.max(1, batchSize);
+    this.maxInFlight = Math.max(this.batchSize, maxInFlight);
+    // the queues never block the claiming thread, because the in-flight commands are limited.
+    this.executor = new PartitionedTaskExecutor("compensation", threads, this.maxInFlight);
+  }
+
+  /**
+   * Claim and dispatch commands until there is no more 'NEW' command or the in-flight ones reach the limit.
+   *
+   * @return the number of the dispatched commands
+   */
+  public int dispatch() {
+    int dispatched = 0;
+    while (true) {
+      int limit = Math.min(batchSize, maxInFlight - inFlightCommands.size());
+      if (limit <= 0) {
+        break;
+      }
+      List<Command> commands = commandRepository.claimCommandsToCompensate(limit);
+      if (commands == null || commands.isEmpty()) {
+        break;
+      }
+      for (Command command : commands) {
+        if (inFlightCommands.add(command.getEventId())) {
+          executor.execute(command.serviceName() + "__" + command.instanceId(), () -> compensate(command));
+          dispatched++;
+        }
+      }
+      IN_FLIGHT.set(inFlightCommands.size());
+      if (commands.size() < limit) {
+        break;
+      }
+    }
+    return dispatched;
+  }
+
+  int inFlight() {
+    return inFlightCommands.size();
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private void compensate(Command command) {
+    try {
+      LOG.error("Compensating transaction with globalTxId {} and localTxId {}", command.globalTxId(), command.localTxId());
+      // call the client method 'org.apache.servicecomb.saga.omega.transaction.CompensationMessageHandler.onReceive()' to execute compensation.
+      omegaCallback.compensate(txStartedEventOf(command));
+    } catch (Exception e) {
+      LOG.error("Failed to compensate transaction with globalTxId {} and localTxId {}", command.globalTxId(), command.localTxId(), e);
+    } finally {
+      inFlightCommands.remove(command.getEventId());
+      IN_FLIGHT.set(inFlightCommands.size());
+    }
+  }
+
+  private TxEvent txStartedEventOf(Command command) {
+    return new TxEvent(
+        command.serviceName(),
+        command.instanceId(),
+        command.globalTxId(),
+        command.localTxId(),
+        command.parentTxId(),
+        TxStartedEvent.name(),
+        command.compensationMethod(),
+        command.category(),
+        command.payloads()
+    );
+  }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+/**
+ * The compensating commands which are queued for an omega instance reached the limit, so the command should be sent later rather than retried at once.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public class CompensationQueueFullException extends AlphaException {
+  public CompensationQueueFullException(String cause) {
+    super(cause);
+  }
+}
@@ -18,6 +18,8 @@ package org.apache.servicecomb.saga.alpha.core;
 import static java.util.Collections.emptyMap;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -31,6 +33,10 @@ public class CompositeOmegaCallback implements OmegaCallback {
     this.callbacks = callbacks;
   }
 
+  /**
+   * The requested instance is tried first, and then the other instances of the same service, so a slow or broken instance does not stop the compensation.
+   * An instance is removed only if it's not available after failing.
+   */
   @Override
   public void compensate(TxEvent event) {
     Map<String, OmegaCallback> serviceCallbacks = callbacks.getOrDefault(event.serviceName(), emptyMap());
@@ -39,17 +45,37 @@ public class CompositeOmegaCallback implements OmegaCallback {
       throw new AlphaException("No such omega callback found for service " + event.serviceName());
     }
 
+    List<OmegaCallback> candidates = new ArrayList<>(serviceCallbacks.size());
     OmegaCallback omegaCallback = serviceCallbacks.get(event.instanceId());
     if (omegaCallback == null) {
       LOG.info("Cannot find the service with the instanceId {}, call the other instance.", event.instanceId());
-      omegaCallback = serviceCallbacks.values().iterator().next();
+    } else {
+      candidates.add(omegaCallback);
+    }
+    for (OmegaCallback callback : serviceCallbacks.values()) {
+      if (callback != omegaCallback) {
+        candidates.add(callback);
+      }
     }
 
-    try {
-      omegaCallback.compensate(event);
-    } catch (Exception e) {
-      serviceCallbacks.values().remove(omegaCallback);
-      throw e;
+    RuntimeException failure = null;
+    for (OmegaCallback candidate : candidates) {
+      try {
+        candidate.compensate(event);
+        return;
+      } catch (RuntimeException e) {
+        failure = e;
+        if (!candidate.isAvailable()) {
+          serviceCallbacks.values().remove(candidate);
+        }
+        LOG.warn("Failed to compensate by an instance of service {}, try the other instance. globalTxId = {}, localTxId = {}.",
+            event.serviceName(), event.globalTxId(), event.localTxId(), e);
+      }
+    }
+    if (failure == null) {
+      // all of instances were removed concurrently
+      throw new AlphaException("No such omega callback found for service " + event.serviceName());
     }
+    throw failure;
   }
 }
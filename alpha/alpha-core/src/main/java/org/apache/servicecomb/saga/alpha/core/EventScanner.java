@@ -20,18 +20,19 @@
 package org.apache.servicecomb.saga.alpha.core;
 
 import org.apache.servicecomb.saga.common.TxleConstants;
+import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
 import java.util.List;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.apache.servicecomb.saga.alpha.core.TaskStatus.NEW;
 import static org.apache.servicecomb.saga.common.EventType.TxAbortedEvent;
-import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
 
 public class EventScanner implements Runnable {
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -40,10 +41,16 @@ public class EventScanner implements Runnable {
   private final TxEventRepository eventRepository;
   private final CommandRepository commandRepository;
   private final TxTimeoutRepository timeoutRepository;
-  private final OmegaCallback omegaCallback;
+  private final CompensationDispatcher compensationDispatcher;
 
   private final long eventPollingInterval;
 
+  private final TxTimeoutWheel timeoutWheel;
+  // The interval of rebuilding the timeout wheel from database on the master, it's a fallback for the timeouts of crashed servers. Rebuild once only if it's not positive.
+  private final long timeoutReconcileInterval;
+  private long lastTimeoutWheelRebuildTime;
+  private final ScheduledExecutorService timeoutWheelTicker = Executors.newSingleThreadScheduledExecutor(new TxleDefaultTheadFactory("txle-timeout-wheel-"));
+
   // Could not find the max id directly. In some cases, the minimum identify of undone event may be not max. Such ids: 1, 2, 3, 3 is done, but 2 is running yet.
   private static volatile long unendedMinEventId;
   // Initial value is 1, increase 1 after starting global transaction and decrease 1 after executing 'getMinUnendedEventId()' method.
@@ -61,13 +68,41 @@ public class EventScanner implements Runnable {
                       OmegaCallback omegaCallback,
                       int eventPollingInterval,
                       TxleConsulClient consulClient) {
+    this(scheduler, eventRepository, commandRepository, timeoutRepository, omegaCallback, eventPollingInterval, consulClient,
+        new TxTimeoutWheel(100, 512, System.currentTimeMillis()), 60000);
+  }
+
+  public EventScanner(ScheduledExecutorService scheduler,
+                      TxEventRepository eventRepository,
+                      CommandRepository commandRepository,
+                      TxTimeoutRepository timeoutRepository,
+                      OmegaCallback omegaCallback,
+                      int eventPollingInterval,
+                      TxleConsulClient consulClient,
+                      TxTimeoutWheel timeoutWheel,
+                      long timeoutReconcileInterval) {
+    this(scheduler, eventRepository, commandRepository, timeoutRepository, eventPollingInterval, consulClient, timeoutWheel, timeoutReconcileInterval,
+        new CompensationDispatcher(commandRepository, omegaCallback, 4, 100, 1000));
+  }
+
+  public EventScanner(ScheduledExecutorService scheduler,
+                      TxEventRepository eventRepository,
+                      CommandRepository commandRepository,
+                      TxTimeoutRepository timeoutRepository,
+                      int eventPollingInterval,
+                      TxleConsulClient consulClient,
+                      TxTimeoutWheel timeoutWheel,
+                      long timeoutReconcileInterval,
+                      CompensationDispatcher compensationDispatcher) {
     this.scheduler = scheduler;
     this.eventRepository = eventRepository;
     this.commandRepository = commandRepository;
     this.timeoutRepository = timeoutRepository;
-    this.omegaCallback = omegaCallback;
+    this.compensationDispatcher = compensationDispatcher;
     this.eventPollingInterval = eventPollingInterval;
     this.consulClient = consulClient;
+    this.timeoutWheel = timeoutWheel;
+    this.timeoutReconcileInterval = timeoutReconcileInterval;
   }
 
   @Override
@@ -77,19 +112,19 @@ public class EventScanner implements Runnable {
 
   private void pollEvents() {
     /**
-     * 1.check timeout by scheduler
-     *    Produce aborted event and compensating command after checking timeout out.
+     * 1.check timeout by timing wheel
+     *    The wheel is fed after saving events, and it produces aborted event and compensating command as soon as some event is expired.
+     *    The master rebuilds the wheel from database after being elected, and reconciles it periodically for the events of crashed servers.
      * 2.check timeout by TM (TM(Transaction Manager): TxConsistentService#handleSupportTxPause(TxEvent))
      *    Check timeout after ending sub-transaction. Produce aborted event and compensating command after checking timeout out.
-     * 3.compensate for all of compensating commands.
+     * 3.compensate for all of compensating commands, they're claimed in batches and sent by the workers which are sharded by service instance.
      */
     scheduler.scheduleWithFixedDelay(
             () -> {
               try {
                 if (consulClient.isMaster()) {
-                  // Use a new scheduler for lessening the latency of checking timeout.
                   updateTimeoutStatus();
-                  findTimeoutEvents();
+                  rebuildTimeoutWheel();
                   abortTimeoutEvents();
                 }
               } catch (Exception e) {
@@ -101,6 +136,19 @@ public class EventScanner implements Runnable {
             eventPollingInterval,
             MILLISECONDS);
 
+    // Every server handles the expired events which were saved by itself, so the wheel uses an individual thread and does not depend on the master.
+    timeoutWheelTicker.scheduleWithFixedDelay(
+            () -> {
+              try {
+                handleExpiredEvents();
+              } catch (Exception e) {
+                log.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to handle expired events in timeout wheel.", e);
+              }
+            },
+            timeoutWheel.getTickMs(),
+            timeoutWheel.getTickMs(),
+            MILLISECONDS);
+
     scheduler.scheduleWithFixedDelay(
             () -> {
               try {
@@ -126,25 +174,47 @@ public class EventScanner implements Runnable {
     }
   }
 
-  private void findTimeoutEvents() {
-    // check and record timeout
-    // SELECT t.surrogateId FROM TxTimeout t, TxEvent t1 WHERE t1.globalTxId = t.globalTxId AND t1.localTxId = t.localTxId AND t1.type != t.type
-    eventRepository.findTimeoutEvents(unendedMinEventId)
-            .forEach(event -> {
-              CurrentThreadContext.put(event.globalTxId(), event);
-              log.info("Found timeout event {}", event);
-              try {
-                if (timeoutRepository.findTxTimeoutByEventId(event.id()) < 1) {
-                  timeoutRepository.save(txTimeoutOf(event));
-                }
-              } catch (Exception e) {
-                log.error("Failed to save timeout {} in method 'EventScanner.findTimeoutEvents()'.", event, e);
-              }
-            });
+  private void rebuildTimeoutWheel() {
+    long currentTime = System.currentTimeMillis();
+    if (lastTimeoutWheelRebuildTime > 0 && (timeoutReconcileInterval <= 0 || currentTime - lastTimeoutWheelRebuildTime < timeoutReconcileInterval)) {
+      return;
+    }
+    lastTimeoutWheelRebuildTime = currentTime;
+    // SELECT * FROM TxEvent t WHERE t.surrogateId > ?1 AND t.type IN ('TxStartedEvent', 'SagaStartedEvent') AND t.expiryTime < '9999-12-31' AND NOT EXISTS ...
+    List<TxEvent> unendedEventList = eventRepository.findUnendedEventsWithTimeout(unendedMinEventId);
+    if (unendedEventList != null && !unendedEventList.isEmpty()) {
+      unendedEventList.forEach(timeoutWheel::schedule);
+      log.info("Rebuilt timeout wheel with {} unended events, current size {}.", unendedEventList.size(), timeoutWheel.size());
+    }
+  }
+
+  private void handleExpiredEvents() {
+    List<TxEvent> expiredEventList = timeoutWheel.advance(System.currentTimeMillis());
+    expiredEventList.forEach(expiredEvent -> {
+      // The ending event of the expired one may be saved by another server, so confirm it by the current sub-transaction only.
+      TxEvent event = eventRepository.findTimeoutEvent(expiredEvent.globalTxId(), expiredEvent.localTxId());
+      if (event == null) {
+        return;
+      }
+      CurrentThreadContext.put(event.globalTxId(), event);
+      log.info("Found timeout event {}", event);
+      TxTimeout timeout = txTimeoutOf(event);
+      try {
+        if (timeoutRepository.findTxTimeoutByEventId(event.id()) < 1) {
+          timeoutRepository.save(timeout);
+        }
+      } catch (Exception e) {
+        log.error("Failed to save timeout {} in method 'EventScanner.handleExpiredEvents()'.", event, e);
+      }
+      // The same event may expire in the wheels of several servers, e.g. the one saved it and the master after rebuilding, so abort it by the claimer only.
+      if (timeoutRepository.claim(timeout)) {
+        abortTimeout(timeout);
+      }
+    });
   }
 
   private void abortTimeoutEvents() {
-    // select timeout records which have a 'NEW' status.
+    // select timeout records which have a 'NEW' status, and claim them.
     List<TxTimeout> txTimeoutList = timeoutRepository.findFirstTimeout();
     if (txTimeoutList != null && !txTimeoutList.isEmpty()) {
       txTimeoutList.forEach(timeout -> {
@@ -152,29 +222,26 @@ public class EventScanner implements Runnable {
         // set cache for aborted tx as soon as possible so that next sub-transaction can get the aborted status when it verifies the aborted status.
       });
 
-      txTimeoutList.forEach(timeout -> {
-        TxEvent abortedEvent = toTxAbortedEvent(timeout);
-        CurrentThreadContext.put(abortedEvent.globalTxId(), abortedEvent);
-        if (!eventRepository.checkIsExistsEventType(abortedEvent.globalTxId(), abortedEvent.localTxId(), abortedEvent.type())) {
-          // record abort event in case of timeout.
-          eventRepository.save(abortedEvent);
-          // save compensating record
-          commandRepository.saveWillCompensateCommandsForTimeout(abortedEvent.globalTxId());
-        }
-      });
+      txTimeoutList.forEach(this::abortTimeout);
+    }
+  }
+
+  private void abortTimeout(TxTimeout timeout) {
+    TxEvent abortedEvent = toTxAbortedEvent(timeout);
+    CurrentThreadContext.put(abortedEvent.globalTxId(), abortedEvent);
+    if (!eventRepository.checkIsExistsEventType(abortedEvent.globalTxId(), abortedEvent.localTxId(), abortedEvent.type())) {
+      // record abort event in case of timeout.
+      eventRepository.save(abortedEvent);
+      // save compensating record
+      commandRepository.saveWillCompensateCommandsForTimeout(abortedEvent.globalTxId());
     }
   }
 
   private void compensate() {
-    List<Command> commandList = commandRepository.findFirstCommandToCompensate();
-    if (commandList == null || commandList.isEmpty()) {
-      return;
+    int dispatched = compensationDispatcher.dispatch();
+    if (dispatched > 0) {
+      log.info("Dispatched {} compensating commands, in flight {}.", dispatched, compensationDispatcher.inFlight());
     }
-    commandList.forEach(command -> {
-      log.error("Compensating transaction with globalTxId {} and localTxId {}", command.globalTxId(), command.localTxId());
-      // call the client method 'org.apache.servicecomb.saga.omega.transaction.CompensationMessageHandler.onReceive()' to execute compensation.
-      omegaCallback.compensate(txStartedEventOf(command));
-    });
   }
 
   private void updateCompensatedCommands() {
@@ -209,20 +276,6 @@ public class EventScanner implements Runnable {
             "Transaction timeout".getBytes());
   }
 
-  private TxEvent txStartedEventOf(Command command) {
-    return new TxEvent(
-            command.serviceName(),
-            command.instanceId(),
-            command.globalTxId(),
-            command.localTxId(),
-            command.parentTxId(),
-            TxStartedEvent.name(),
-            command.compensationMethod(),
-            command.category(),
-            command.payloads()
-    );
-  }
-
   private TxTimeout txTimeoutOf(TxEvent event) {
     return new TxTimeout(
             event.id(),
@@ -259,4 +312,9 @@ public class EventScanner implements Runnable {
     return unendedMinEventId;
   }
 
+  public void shutdown() {
+    timeoutWheelTicker.shutdownNow();
+    compensationDispatcher.shutdown();
+  }
+
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The parked requests of paused global transactions.
+ * A request of paused global transaction is registered here with its continuation instead of sleeping a thread, and no thread is held while paused.
+ * It's continued once the global transaction is resumed, i.e. the status cache of the global transaction or the config 'PauseGlobalTx' is changed.
+ * All of waiters are checked again every 'recheckIntervalMillis' in case of missing some changes, e.g. expired cache.
+ * A waiter is removed without continuing once its request was cancelled by client, so the abandoned requests are not held until resuming.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public class GlobalTxPauseWaiters {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  // key: globalTxId
+  private final Map<String, Queue<Waiter>> waiters = new ConcurrentHashMap<>();
+  private final ExecutorService resumeExecutor;
+  private final ScheduledExecutorService recheckScheduler = Executors.newSingleThreadScheduledExecutor(new TxleDefaultTheadFactory("txle-pause-recheck-"));
+
+  public GlobalTxPauseWaiters(int resumeThreads, long recheckIntervalMillis) {
+    this.resumeExecutor = Executors.newFixedThreadPool(resumeThreads, new TxleDefaultTheadFactory("txle-pause-resume-"));
+    this.recheckScheduler.scheduleWithFixedDelay(this::wakeAll, recheckIntervalMillis, recheckIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Run the continuation in current thread if the global transaction is not paused, otherwise, park it until resuming.
+   *
+   * @param globalTxId   global transaction identify
+   * @param paused       to check whether the global transaction is paused, it's called again after every change
+   * @param continuation the remaining handling of the request, it must reply to client itself
+   * @return the handle to remove the parked request, e.g. after its call was cancelled by client, or null if the continuation was run in current thread
+   */
+  public Runnable runWhenResumed(String globalTxId, BooleanSupplier paused, Runnable continuation) {
+    Waiter waiter = new Waiter(globalTxId, paused, continuation);
+    if (paused.getAsBoolean()) {
+      park(waiter);
+      return () -> cancel(waiter);
+    }
+    continuation.run();
+    return null;
+  }
+
+  /**
+   * Check the waiters of some global transaction again, it's called after its status was changed.
+   */
+  public void wake(String globalTxId) {
+    Queue<Waiter> waiterQueue = waiters.remove(globalTxId);
+    if (waiterQueue != null) {
+      waiterQueue.forEach(this::resume);
+    }
+  }
+
+  /**
+   * Check all of waiters again, it's called after the config 'PauseGlobalTx' was changed.
+   */
+  public void wakeAll() {
+    List<String> globalTxIds = new ArrayList<>(waiters.keySet());
+    globalTxIds.forEach(this::wake);
+  }
+
+  public int size() {
+    return waiters.values().stream().mapToInt(Queue::size).sum();
+  }
+
+  public void shutdown() {
+    recheckScheduler.shutdownNow();
+    resumeExecutor.shutdown();
+  }
+
+  private void park(Waiter waiter) {
+    // add in 'compute' to be atomic with removing in 'wake', otherwise, the waiter may be added to a removed queue.
+    waiters.compute(waiter.globalTxId, (k, waiterQueue) -> {
+      Queue<Waiter> queue = waiterQueue == null ? new ConcurrentLinkedQueue<>() : waiterQueue;
+      if (!waiter.cancelled) {
+        queue.add(waiter);
+      }
+      return queue.isEmpty() ? null : queue;
+    });
+    // the transaction may be resumed before parking, then nobody would wake it.
+    if (!waiter.paused.getAsBoolean()) {
+      wake(waiter.globalTxId);
+    }
+  }
+
+  private void cancel(Waiter waiter) {
+    // the flag is set before removing, so that the waiter would not be parked or continued again by a resuming at the same time.
+    waiter.cancelled = true;
+    waiters.computeIfPresent(waiter.globalTxId, (k, waiterQueue) -> {
+      waiterQueue.remove(waiter);
+      return waiterQueue.isEmpty() ? null : waiterQueue;
+    });
+  }
+
+  private void resume(Waiter waiter) {
+    resumeExecutor.execute(() -> {
+      try {
+        if (waiter.cancelled) {
+          return;
+        }
+        if (waiter.paused.getAsBoolean()) {
+          park(waiter);
+        } else {
+          waiter.continuation.run();
+        }
+      } catch (Exception e) {
+        LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to resume the request of global transaction [{}].", waiter.globalTxId, e);
+      }
+    });
+  }
+
+  private static final class Waiter {
+    private final String globalTxId;
+    private final BooleanSupplier paused;
+    private final Runnable continuation;
+    private volatile boolean cancelled;
+
+    private Waiter(String globalTxId, BooleanSupplier paused, Runnable continuation) {
+      this.globalTxId = globalTxId;
+      this.paused = paused;
+      this.continuation = continuation;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import com.actionsky.txle.enums.GlobalTxStatus;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.servicecomb.saga.common.EventType.*;
+
+/**
+ * The in-memory state of a live global transaction, it's updated in-line after saving events.
+ * It answers the checks those were queried from database for every event, e.g. aborted/paused status, existence of some event type.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public class GlobalTxState {
+  private final String globalTxId;
+  // key: localTxId
+  private final Map<String, SubTxState> subTxStates = new LinkedHashMap<>();
+  private TxEvent sagaStartedEvent;
+  // the same value as the cache 'TxleConstants.constructTxStatusCacheKey(globalTxId)', null represents running.
+  private String status;
+  private boolean aborted;
+  private boolean ended;
+  private volatile long lastUpdateTime = System.currentTimeMillis();
+
+  GlobalTxState(String globalTxId) {
+    this.globalTxId = globalTxId;
+  }
+
+  synchronized void apply(TxEvent event) {
+    lastUpdateTime = System.currentTimeMillis();
+    String type = event.type();
+    SubTxState subTxState = subTxStates.computeIfAbsent(event.localTxId(), k -> new SubTxState());
+    subTxState.eventTypes.add(type);
+    if (SagaStartedEvent.name().equals(type)) {
+      sagaStartedEvent = event;
+      subTxState.startedEvents.add(event);
+    } else if (TxStartedEvent.name().equals(type)) {
+      // the started event is saved again for every retry, and its retries is decreased.
+      subTxState.startedEvents.add(event);
+      subTxState.minRetries = Math.min(subTxState.minRetries, event.retries());
+    } else if (TxAbortedEvent.name().equals(type)) {
+      // the same logic as 'TxEventAfterPersistingListener', the global transaction is aborted if no more retries.
+      if (globalTxId.equals(event.localTxId()) || subTxState.minRetries == 0) {
+        aborted = true;
+        status = GlobalTxStatus.Aborted.toString();
+      }
+      subTxState.aborted = true;
+    } else if (SagaEndedEvent.name().equals(type)) {
+      ended = true;
+    }
+  }
+
+  synchronized void setStatus(String status) {
+    lastUpdateTime = System.currentTimeMillis();
+    this.status = status;
+    if (GlobalTxStatus.Aborted.toString().equals(status)) {
+      aborted = true;
+    }
+  }
+
+  synchronized void removeStatus(String status) {
+    lastUpdateTime = System.currentTimeMillis();
+    if (status == null || status.equals(this.status)) {
+      this.status = null;
+    }
+  }
+
+  public String getGlobalTxId() {
+    return globalTxId;
+  }
+
+  public synchronized String getStatus() {
+    return status;
+  }
+
+  public synchronized boolean isAborted() {
+    return aborted || GlobalTxStatus.Aborted.toString().equals(status);
+  }
+
+  public synchronized boolean isPaused() {
+    return GlobalTxStatus.Paused.toString().equals(status);
+  }
+
+  public synchronized boolean isEnded() {
+    return ended;
+  }
+
+  public synchronized TxEvent getSagaStartedEvent() {
+    return sagaStartedEvent;
+  }
+
+  public synchronized boolean hasEvent(String localTxId, String type) {
+    SubTxState subTxState = subTxStates.get(localTxId);
+    return subTxState != null && subTxState.eventTypes.contains(type);
+  }
+
+  /**
+   * @return true if some 'TxStartedEvent' of the sub-transaction has no more retries, it's the same as the query 'checkTxIsAborted'.
+   */
+  public synchronized boolean isSubTxRetriesExhausted(String localTxId) {
+    SubTxState subTxState = subTxStates.get(localTxId);
+    return subTxState != null && subTxState.minRetries == 0;
+  }
+
+  /**
+   * It's the same as the query 'findTimeoutEventsBeforeEnding', the event with the greatest id is returned if there are several timeout events.
+   *
+   * @param currentTime current time in milliseconds
+   * @return the latest timeout started event, or null if there is no timeout or the global transaction is aborted/ended.
+   */
+  public synchronized TxEvent findTimeoutEventBeforeEnding(long currentTime) {
+    if (ended || hasAbortedEvent()) {
+      return null;
+    }
+    TxEvent timeoutEvent = null;
+    for (SubTxState subTxState : subTxStates.values()) {
+      for (TxEvent startedEvent : subTxState.startedEvents) {
+        if (startedEvent.expiryTime().getTime() < currentTime && (timeoutEvent == null || startedEvent.id() > timeoutEvent.id())) {
+          timeoutEvent = startedEvent;
+        }
+      }
+    }
+    return timeoutEvent;
+  }
+
+  /**
+   * @return all of 'TxStartedEvent' of the global transaction, including the ones of retries.
+   */
+  public synchronized List<TxEvent> getTxStartedEvents() {
+    List<TxEvent> startedEvents = new ArrayList<>();
+    subTxStates.values().forEach(subTxState -> subTxState.startedEvents.forEach(startedEvent -> {
+      if (TxStartedEvent.name().equals(startedEvent.type())) {
+        startedEvents.add(startedEvent);
+      }
+    }));
+    return startedEvents;
+  }
+
+  long getLastUpdateTime() {
+    return lastUpdateTime;
+  }
+
+  private boolean hasAbortedEvent() {
+    for (SubTxState subTxState : subTxStates.values()) {
+      if (subTxState.aborted) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static final class SubTxState {
+    private final Set<String> eventTypes = new HashSet<>();
+    private final List<TxEvent> startedEvents = new ArrayList<>(1);
+    private int minRetries = Integer.MAX_VALUE;
+    private boolean aborted;
+  }
+}
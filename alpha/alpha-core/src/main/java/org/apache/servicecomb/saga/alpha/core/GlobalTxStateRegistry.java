@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.servicecomb.saga.common.EventType.SagaEndedEvent;
+import static org.apache.servicecomb.saga.common.EventType.SagaStartedEvent;
+
+/**
+ * The registry of {@link GlobalTxState} for live global transactions.
+ *
+ * A state is created only when the 'SagaStartedEvent' is saved by current node, but the other events of its global transaction may be saved by other nodes.
+ * So the state is only a positive hint, e.g. an abort or an existing event, otherwise callers should query from the shared cache or database as before.
+ * The state is evicted after the 'SagaEndedEvent' is saved, or it has been idle for 'idleMillis'.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public class GlobalTxStateRegistry {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private final boolean enabled;
+  private final int maxSize;
+  private final long idleMillis;
+  private final Map<String, GlobalTxState> states = new ConcurrentHashMap<>();
+
+  public GlobalTxStateRegistry(boolean enabled, int maxSize, long idleMillis) {
+    this.enabled = enabled;
+    this.maxSize = maxSize;
+    this.idleMillis = idleMillis;
+  }
+
+  /**
+   * Update the state in-line after persisting an event.
+   *
+   * @param event the persisted event which has an id
+   */
+  public void onEventSaved(TxEvent event) {
+    if (!enabled) {
+      return;
+    }
+    String globalTxId = event.globalTxId();
+    if (SagaStartedEvent.name().equals(event.type())) {
+      if (states.size() >= maxSize) {
+        evictIdleStates();
+        if (states.size() >= maxSize) {
+          // it's not a problem, the checks of this global transaction will be queried from database.
+          LOG.debug("The count of global transaction states reached the maximum [{}], globalTxId = {}.", maxSize, globalTxId);
+          return;
+        }
+      }
+      states.computeIfAbsent(globalTxId, GlobalTxState::new).apply(event);
+    } else if (SagaEndedEvent.name().equals(event.type())) {
+      states.remove(globalTxId);
+    } else {
+      GlobalTxState state = states.get(globalTxId);
+      if (state != null) {
+        state.apply(event);
+      }
+    }
+  }
+
+  /**
+   * Update the status after setting the cache 'TxleConstants.constructTxStatusCacheKey(globalTxId)'.
+   */
+  public void onStatusChanged(String globalTxId, String status) {
+    GlobalTxState state = states.get(globalTxId);
+    if (state != null) {
+      state.setStatus(status);
+    }
+  }
+
+  /**
+   * Update the status after deleting the cache 'TxleConstants.constructTxStatusCacheKey(globalTxId)'.
+   *
+   * @param status the deleted value, null represents any value
+   */
+  public void onStatusRemoved(String globalTxId, String status) {
+    GlobalTxState state = states.get(globalTxId);
+    if (state != null) {
+      state.removeStatus(status);
+    }
+  }
+
+  /**
+   * @return the state of the global transaction, or null if it's not held by current node.
+   */
+  public GlobalTxState get(String globalTxId) {
+    return globalTxId == null ? null : states.get(globalTxId);
+  }
+
+  public void remove(String globalTxId) {
+    states.remove(globalTxId);
+  }
+
+  public int size() {
+    return states.size();
+  }
+
+  public void clear() {
+    states.clear();
+  }
+
+  private void evictIdleStates() {
+    long idleTime = System.currentTimeMillis() - idleMillis;
+    states.values().removeIf(state -> state.getLastUpdateTime() < idleTime);
+  }
+}
@@ -20,4 +20,11 @@ public interface OmegaCallback {
 
   default void disconnect() {
   }
+
+  /**
+   * @return false if it could not compensate any more, e.g. the stream to omega was closed
+   */
+  default boolean isAvailable() {
+    return true;
+  }
 }
@@ -16,30 +16,98 @@
 package org.apache.servicecomb.saga.alpha.core;
 
 import java.lang.invoke.MethodHandles;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * The failed compensation is retried with exponential backoff, from 'initialBackoff' to 'maxBackoff' milliseconds, at most 'maxAttempts' times.
+ * The retries waiting in memory are limited by 'maxPendingRetries'. The command is given back to 'NEW' if it's still failed, the retries are full
+ * or the queue of omega is full, then it's claimed again by {@link CompensationDispatcher} under its in-flight limit, and it survives restarting.
+ */
 public class PushBackOmegaCallback implements OmegaCallback {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  private final BlockingQueue<Runnable> pendingCompensations;
+  private final ScheduledExecutorService retryScheduler;
   private final OmegaCallback underlying;
+  private final CommandRepository commandRepository;
+  private final long initialBackoff;
+  private final long maxBackoff;
+  private final int maxAttempts;
+  private final int maxPendingRetries;
+  private final AtomicInteger pendingRetries = new AtomicInteger();
 
-  public PushBackOmegaCallback(BlockingQueue<Runnable> pendingCompensations, OmegaCallback underlying) {
-    this.pendingCompensations = pendingCompensations;
+  public PushBackOmegaCallback(ScheduledExecutorService retryScheduler, OmegaCallback underlying, CommandRepository commandRepository,
+      long initialBackoff, long maxBackoff, int maxAttempts, int maxPendingRetries) {
+    this.retryScheduler = retryScheduler;
     this.underlying = underlying;
+    this.commandRepository = commandRepository;
+    this.initialBackoff = Math.max(1, initialBackoff);
+    this.maxBackoff = Math.max(this.initialBackoff, maxBackoff);
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.maxPendingRetries = Math.max(0, maxPendingRetries);
   }
 
   @Override
   public void compensate(TxEvent event) {
+    compensate(event, 0);
+  }
+
+  private void compensate(TxEvent event, int attempt) {
     try {
       underlying.compensate(event);
+    } catch (CompensationQueueFullException e) {
+      LOG.warn("The compensation queue of omega is full, give the command back. global tx id [{}] and local tx id [{}]", event.globalTxId(), event.localTxId());
+      giveBack(event);
     } catch (Exception e) {
       logError(event, e);
-      pendingCompensations.offer(() -> compensate(event));
+      if (attempt + 1 >= maxAttempts || !reserveRetry()) {
+        giveBack(event);
+        return;
+      }
+      try {
+        retryScheduler.schedule(() -> {
+          pendingRetries.decrementAndGet();
+          compensate(event, attempt + 1);
+        }, backoffOf(attempt), TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException re) {
+        pendingRetries.decrementAndGet();
+        giveBack(event);
+      }
+    }
+  }
+
+  private boolean reserveRetry() {
+    if (pendingRetries.incrementAndGet() > maxPendingRetries) {
+      pendingRetries.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  int pendingRetries() {
+    return pendingRetries.get();
+  }
+
+  private void giveBack(TxEvent event) {
+    try {
+      commandRepository.markCommandAsNew(event.globalTxId(), event.localTxId());
+    } catch (Exception e) {
+      LOG.error("Failed to give the command back, global tx id [{}] and local tx id [{}]", event.globalTxId(), event.localTxId(), e);
+    }
+  }
+
+  long backoffOf(int attempt) {
+    long backoff = initialBackoff;
+    // it stops doubling once it reaches the max, so it never overflows.
+    for (int i = 0; i < attempt && backoff < maxBackoff; i++) {
+      backoff <<= 1;
     }
+    return Math.min(backoff, maxBackoff);
   }
 
   private void logError(TxEvent event, Exception e) {
@@ -33,7 +33,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.Resource;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -57,6 +59,9 @@ public class TxConsistentService {
 	@Autowired
 	private ITxEventAdditionService eventAdditionService;
 
+	@Autowired
+	private GlobalTxStateRegistry globalTxStateRegistry;
+
 	private final List<String> types = Arrays.asList(TxEndedEvent.name(), TxAbortedEvent.name());
 
   public TxConsistentService(TxEventRepository eventRepository, CommandRepository commandRepository, TxTimeoutRepository timeoutRepository) {
@@ -104,59 +109,7 @@ public class TxConsistentService {
 			try {
 //				LOG.info("\r\n---- [{}] before server saves [{}]，globalTxId = [{}], localTxId = [{}].\r\n", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS").format(new Date()), event.type(), event.globalTxId(), event.localTxId());
 				eventRepository.save(event);
-
-//				LOG.info("\r\n---- [{}] checking timeout/abort after server saves [{}]，globalTxId = [{}], localTxId = [{}].\r\n", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS").format(new Date()), event.type(), event.globalTxId(), event.localTxId());
-				// 此处继续检测超时的意义是，如果超时，则不再继续执行全局事务中此子事务后面其它子事务
-				if (TxEndedEvent.name().equals(type)) {
-					// 若定时器检测超时后结束了当前全局事务，但超时子事务的才刚刚完成，此时检测全局事务是否已经终止，如果终止，则补偿当前刚刚完成的子事务
-					if (isAborted) {
-						// subA ok, timeout, compensate subA, subB ok without exception(need to save ended even though aborted), compensate subB.
-						// 此处可以非同步操作，其内主要是保存补偿命令和事件，补偿操作不在其内执行而是由扫描器执行，且事务已经处于异常状态，保存的补偿命令和事件对当前事务的后续操作无影响，故额外线程执行
-						commandRepository.saveWillCompensateCmdForCurSubTx(globalTxId, localTxId);
-					} else {
-						// 由于定时扫描器中检测超时会存在一定误差，如定时器中任务需3s完成，但某事务超时设置的是2秒，此时还未等对该事物进行检测，该事务就已经结束了，所以此处在正常结束前需检测是否超时
-						// 如果有值，说明在EventScanner中已检测到并处理了
-						TxEvent unhandleTimeoutEvent = eventRepository.findTimeoutEventsBeforeEnding(globalTxId);
-						if (unhandleTimeoutEvent != null) {
-							// ps: 在未保存event前，将其转换成timeout，timeout中将无法获取到event的id值(默认为-1)，故上一行代码查询已保存的超时事件记录
-							TxTimeout txTimeout = txTimeoutOf(unhandleTimeoutEvent);
-							try {
-								LOG.debug("TxConsistentService Detected the Timeout {}.", txTimeout);
-								// 结束全局事务前，检测到超时，保存超时记录
-								timeoutRepository.save(txTimeout);
-								TxEvent abortedEvent = toTxAbortedEvent(txTimeout);
-								if (!eventRepository.checkIsExistsEventType(globalTxId, localTxId, abortedEvent.type())) {
-									// 依据超时记录生成异常事件
-									eventRepository.save(abortedEvent);
-								}
-							} catch (Exception e) {
-								LOG.error("Failed to save timeout {} in method 'TxConsistentService.handleSupportTxPause()'.", txTimeout, e);
-							} finally {
-								// 保存超时情况下的待补偿命令，当前超时全局事务下的所有应该补偿的子事件的待补偿命令 By Gannalyo
-								commandRepository.saveWillCompensateCommandsForTimeout(globalTxId);
-							}
-						}
-					}
-				} else if (TxAbortedEvent.name().equals(type)) {
-					// 验证是否最终异常，即排除非最后一次重试时的异常。如果全局事务标识等于子事务标识情况的异常，说明是全局事务异常。否则说明子事务异常，则需验证是否是子事务的最终异常。
-					if (globalTxId.equals(localTxId) || eventRepository.checkTxIsAborted(globalTxId, localTxId)) {
-						if (!globalTxId.equals(localTxId)) {
-							// 当出现非超时的异常情况时记录待补偿命令，超时异常由定时器负责
-							// 带有超时的子事务执行失败时，本地事务回滚，记录异常事件【后】，被检测为超时，则该失败的子事务又被回滚一次
-							// 解决办法：检测超时SQL追加【无TxAbortedEvent条件】
-							// 带有超时的子事务执行失败时，本地事务回滚，记录异常事件【前】，被检测为超时，则该失败的子事务又被回滚一次
-							// 解决办法：失败时本地会立即将global和local的id记录到缓存中，后续超时补偿会先对比该缓存，不存在再补偿
-							// 带有超时的子事务执行失败前，定时器检测到超时并且进行了补偿，之后子事务中执行失败，又进行了本地回滚，即多回滚了一次
-							// 解决办法：超时只对已完成的子事务进行补偿，未完成的子事务，如果后续失败了则无需任何操作，如果成功结束，则在结束时会检测全局事务异常或超时，如果全局事务已终止了，则回滚当前成功完成的子事务
-							commandRepository.saveWillCompensateCommandsForException(globalTxId, localTxId);
-						} else {
-							// 说明是全局事务异常终止
-							commandRepository.saveWillCompensateCommandsWhenGlobalTxAborted(globalTxId);
-							TxEvent sagaEndedEvent = new TxEvent(event.serviceName(), event.instanceId(), globalTxId, globalTxId, null, SagaEndedEvent.name(), "", event.category(), new byte[0]);
-							eventRepository.save(sagaEndedEvent);
-						}
-					}
-				}
+				handleAfterSaving(event, isAborted);
 //				LOG.info("\r\n ---- [{}] finished checking timeout/abort [{}]，globalTxId = [{}], localTxId = [{}].", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS").format(new Date()), event.type(), event.globalTxId(), event.localTxId());
 			} catch (Exception e) {
 				LOG.error("Failed to save event globalTxId {} localTxId {} type {}", globalTxId, localTxId, type, e);
@@ -168,10 +121,147 @@ public class TxConsistentService {
 		return 0;
 	}
 
+	/**
+	 * handle the events of a batch in order, the result of every event is as same as {@link #handleSupportTxPause(TxEvent)}.
+	 * The events of all types are saved together, then the ended/aborted events are handled one by one after saving.
+	 * The subsequent events of the global transaction of an ended/aborted event are handled in the next round, because their checks may depend on its handling.
+	 *
+	 * @param events events for global/sub transactions
+	 * @return the result of every event
+	 */
+	public int[] handleSupportTxPause(List<TxEvent> events) {
+		int[] results = new int[events.size()];
+		List<Integer> pendingIndexes = new ArrayList<>(events.size());
+		for (int i = 0; i < events.size(); i++) {
+			pendingIndexes.add(i);
+		}
+		while (!pendingIndexes.isEmpty()) {
+			pendingIndexes = handleSupportTxPauseRound(events, pendingIndexes, results);
+		}
+		return results;
+	}
+
+	private List<Integer> handleSupportTxPauseRound(List<TxEvent> events, List<Integer> indexes, int[] results) {
+		List<Integer> deferredIndexes = new ArrayList<>();
+		Set<String> handlingGlobalTxIds = new HashSet<>();
+		List<TxEvent> savingEvents = new ArrayList<>(indexes.size());
+		List<TxEvent> handlingEvents = new ArrayList<>();
+		List<Boolean> handlingAborted = new ArrayList<>();
+		for (int i : indexes) {
+			TxEvent event = events.get(i);
+			String type = event.type();
+			if (handlingGlobalTxIds.contains(event.globalTxId())) {
+				deferredIndexes.add(i);
+				continue;
+			}
+			StringBuilder globalTxStatusCache = new StringBuilder();
+			boolean isAborted = isGlobalTxAborted(event, globalTxStatusCache);
+			if (!types.contains(type) && isAborted) {
+				LOG.info("Transaction event {} rejected, because its parent with globalTxId {} was already aborted", type, event.globalTxId());
+				if (SagaEndedEvent.name().equals(type)) {
+					savingEvents.add(event);
+				}
+				results[i] = -1;
+			} else if (isGlobalTxPaused(event, type, globalTxStatusCache.toString())) {
+				results[i] = 0;
+			} else {
+				CurrentThreadContext.put(event.globalTxId(), event);
+				savingEvents.add(event);
+				if (TxEndedEvent.name().equals(type) || TxAbortedEvent.name().equals(type)) {
+					handlingGlobalTxIds.add(event.globalTxId());
+					handlingEvents.add(event);
+					handlingAborted.add(isAborted);
+				}
+				results[i] = 1;
+			}
+		}
+
+		if (!savingEvents.isEmpty()) {
+			try {
+				eventRepository.saveAll(savingEvents);
+			} catch (Exception e) {
+				LOG.error("Failed to save {} events in batch, the first globalTxId {}", savingEvents.size(), savingEvents.get(0).globalTxId(), e);
+				return deferredIndexes;
+			}
+		}
+		for (int i = 0; i < handlingEvents.size(); i++) {
+			TxEvent event = handlingEvents.get(i);
+			CurrentThreadContext.put(event.globalTxId(), event);
+			try {
+				handleAfterSaving(event, handlingAborted.get(i));
+			} catch (Exception e) {
+				LOG.error("Failed to save event globalTxId {} localTxId {} type {}", event.globalTxId(), event.localTxId(), event.type(), e);
+			}
+		}
+		return deferredIndexes;
+	}
+
+	private void handleAfterSaving(TxEvent event, boolean isAborted) {
+		String globalTxId = event.globalTxId(), localTxId = event.localTxId(), type = event.type();
+//				LOG.info("\r\n---- [{}] checking timeout/abort after server saves [{}]，globalTxId = [{}], localTxId = [{}].\r\n", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS").format(new Date()), event.type(), event.globalTxId(), event.localTxId());
+		// 此处继续检测超时的意义是，如果超时，则不再继续执行全局事务中此子事务后面其它子事务
+		if (TxEndedEvent.name().equals(type)) {
+			// 若定时器检测超时后结束了当前全局事务，但超时子事务的才刚刚完成，此时检测全局事务是否已经终止，如果终止，则补偿当前刚刚完成的子事务
+			if (isAborted) {
+				// subA ok, timeout, compensate subA, subB ok without exception(need to save ended even though aborted), compensate subB.
+				// 此处可以非同步操作，其内主要是保存补偿命令和事件，补偿操作不在其内执行而是由扫描器执行，且事务已经处于异常状态，保存的补偿命令和事件对当前事务的后续操作无影响，故额外线程执行
+				commandRepository.saveWillCompensateCmdForCurSubTx(globalTxId, localTxId);
+			} else {
+				// 由于定时扫描器中检测超时会存在一定误差，如定时器中任务需3s完成，但某事务超时设置的是2秒，此时还未等对该事物进行检测，该事务就已经结束了，所以此处在正常结束前需检测是否超时
+				// 如果有值，说明在EventScanner中已检测到并处理了
+				TxEvent unhandleTimeoutEvent = eventRepository.findTimeoutEventsBeforeEnding(globalTxId);
+				if (unhandleTimeoutEvent != null) {
+					// ps: 在未保存event前，将其转换成timeout，timeout中将无法获取到event的id值(默认为-1)，故上一行代码查询已保存的超时事件记录
+					TxTimeout txTimeout = txTimeoutOf(unhandleTimeoutEvent);
+					try {
+						LOG.debug("TxConsistentService Detected the Timeout {}.", txTimeout);
+						// 结束全局事务前，检测到超时，保存超时记录
+						timeoutRepository.save(txTimeout);
+						TxEvent abortedEvent = toTxAbortedEvent(txTimeout);
+						if (!eventRepository.checkIsExistsEventType(globalTxId, localTxId, abortedEvent.type())) {
+							// 依据超时记录生成异常事件
+							eventRepository.save(abortedEvent);
+						}
+					} catch (Exception e) {
+						LOG.error("Failed to save timeout {} in method 'TxConsistentService.handleSupportTxPause()'.", txTimeout, e);
+					} finally {
+						// 保存超时情况下的待补偿命令，当前超时全局事务下的所有应该补偿的子事件的待补偿命令 By Gannalyo
+						commandRepository.saveWillCompensateCommandsForTimeout(globalTxId);
+					}
+				}
+			}
+		} else if (TxAbortedEvent.name().equals(type)) {
+			// 验证是否最终异常，即排除非最后一次重试时的异常。如果全局事务标识等于子事务标识情况的异常，说明是全局事务异常。否则说明子事务异常，则需验证是否是子事务的最终异常。
+			if (globalTxId.equals(localTxId) || eventRepository.checkTxIsAborted(globalTxId, localTxId)) {
+				if (!globalTxId.equals(localTxId)) {
+					// 当出现非超时的异常情况时记录待补偿命令，超时异常由定时器负责
+					// 带有超时的子事务执行失败时，本地事务回滚，记录异常事件【后】，被检测为超时，则该失败的子事务又被回滚一次
+					// 解决办法：检测超时SQL追加【无TxAbortedEvent条件】
+					// 带有超时的子事务执行失败时，本地事务回滚，记录异常事件【前】，被检测为超时，则该失败的子事务又被回滚一次
+					// 解决办法：失败时本地会立即将global和local的id记录到缓存中，后续超时补偿会先对比该缓存，不存在再补偿
+					// 带有超时的子事务执行失败前，定时器检测到超时并且进行了补偿，之后子事务中执行失败，又进行了本地回滚，即多回滚了一次
+					// 解决办法：超时只对已完成的子事务进行补偿，未完成的子事务，如果后续失败了则无需任何操作，如果成功结束，则在结束时会检测全局事务异常或超时，如果全局事务已终止了，则回滚当前成功完成的子事务
+					commandRepository.saveWillCompensateCommandsForException(globalTxId, localTxId);
+				} else {
+					// 说明是全局事务异常终止
+					commandRepository.saveWillCompensateCommandsWhenGlobalTxAborted(globalTxId);
+					TxEvent sagaEndedEvent = new TxEvent(event.serviceName(), event.instanceId(), globalTxId, globalTxId, null, SagaEndedEvent.name(), "", event.category(), new byte[0]);
+					eventRepository.save(sagaEndedEvent);
+				}
+			}
+		}
+	}
+
   private boolean isGlobalTxAborted(TxEvent event, StringBuilder globalTxStatusCache) {
 	if (SagaStartedEvent.name().equals(event.type())) {
 		return false;
 	}
+	// the state in memory only knows the events which were saved by current node, so only its abort is trusted, otherwise the shared cache is read.
+	GlobalTxState state = globalTxStateRegistry.get(event.globalTxId());
+	if (state != null && state.isAborted()) {
+		globalTxStatusCache.append(GlobalTxStatus.Aborted.toString());
+		return true;
+	}
 	String value = consistencyCache.getValueByCacheKey(TxleConstants.constructTxStatusCacheKey(event.globalTxId()));
 	globalTxStatusCache.append(value);
 	return value != null && GlobalTxStatus.Aborted.toString().equals(value);
@@ -196,6 +286,20 @@ public class TxConsistentService {
         return false;
     }
 
+	/**
+	 * It's used to check again for the parked event of paused global transaction.
+	 *
+	 * @param event event for global/sub transaction
+	 * @return true if the global transaction is still paused
+	 */
+	public boolean isGlobalTxPaused(TxEvent event) {
+		StringBuilder globalTxStatusCache = new StringBuilder();
+		if (isGlobalTxAborted(event, globalTxStatusCache)) {
+			return false;
+		}
+		return isGlobalTxPaused(event, event.type(), globalTxStatusCache.toString());
+	}
+
 	public Set<String> fetchLocalTxIdOfEndedGlobalTx(Set<String> localTxIdSet) {
 		return eventRepository.selectEndedGlobalTx(localTxIdSet);
 	}
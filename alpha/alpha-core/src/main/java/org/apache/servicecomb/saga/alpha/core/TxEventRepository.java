@@ -31,6 +31,15 @@ public interface TxEventRepository {
    */
   void save(TxEvent event);
 
+  /**
+   * Save {@link TxEvent}s in order, the implementation could save them together.
+   *
+   * @param events for global/sub transactions
+   */
+  default void saveAll(List<TxEvent> events) {
+    events.forEach(this::save);
+  }
+
   /**
    * Find timeout {@link TxEvent}s. A timeout TxEvent satisfies below requirements:
    *
@@ -45,6 +54,24 @@ public interface TxEventRepository {
    */
   List<TxEvent> findTimeoutEvents(long unendedMinEventId);
 
+  /**
+   * Find all of unended {@link TxEvent}s which have an expiry time, no matter whether they are timeout or not.
+   * It's used to rebuild the {@link TxTimeoutWheel}.
+   *
+   * @param unendedMinEventId the min identify of undone event
+   * @return event list
+   */
+  List<TxEvent> findUnendedEventsWithTimeout(long unendedMinEventId);
+
+  /**
+   * Find the timeout {@link TxEvent} of some sub-transaction, the requirements are the same as {@link #findTimeoutEvents(long)}.
+   *
+   * @param globalTxId global transaction identify
+   * @param localTxId sub-transaction identify
+   * @return {@link TxEvent} or null if it's not timeout
+   */
+  TxEvent findTimeoutEvent(String globalTxId, String localTxId);
+
   TxEvent findTimeoutEventsBeforeEnding(String globalTxId);
 
   List<TxEvent> findTimeoutEvents(List<String> globalTxId);
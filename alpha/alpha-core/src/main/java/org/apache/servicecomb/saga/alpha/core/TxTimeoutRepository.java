@@ -22,6 +22,11 @@ public interface TxTimeoutRepository {
 
   long findTxTimeoutByEventId(long eventId);
 
+  /**
+   * Moves the timeout from NEW to PENDING, it returns true for only one caller among all servers, so that only the caller aborts the timeout.
+   */
+  boolean claim(TxTimeout timeout);
+
   void markTimeoutAsDone(List<Long> surrogateIdList);
 
   List<Long> selectTimeoutIdList();
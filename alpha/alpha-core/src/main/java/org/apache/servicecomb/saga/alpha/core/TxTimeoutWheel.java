@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.servicecomb.saga.common.EventType.SagaEndedEvent;
+import static org.apache.servicecomb.saga.common.EventType.SagaStartedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxAbortedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxCompensatedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxEndedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+
+/**
+ * A hierarchical timing wheel which holds all of open 'TxStartedEvent'/'SagaStartedEvent' until their expiry time.
+ * Adding and cancelling are O(1), and advancing costs O(1) per tick, so it is unrelated to the size of the table 'TxEvent'.
+ *
+ * The first level covers 'tickMs * wheelSize' milliseconds, and every overflow level covers 'wheelSize' times of its lower level.
+ * An entry in an overflow level would be cascaded to lower levels when time arrives at its bucket.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public class TxTimeoutWheel {
+  private final long tickMs;
+  private final int wheelSize;
+  private final Level root;
+
+  // key: globalTxId + localTxId
+  private final Map<String, Timeout> timeouts = new HashMap<>();
+  // key: globalTxId, to cancel all of timeouts of some global transaction at once.
+  private final Map<String, Set<Timeout>> globalTxTimeouts = new HashMap<>();
+  // the entries which were expired before adding.
+  private final List<Timeout> expiredBeforeAdding = new ArrayList<>();
+
+  public TxTimeoutWheel(long tickMs, int wheelSize, long startMs) {
+    if (tickMs < 1 || wheelSize < 2) {
+      throw new IllegalArgumentException("The tick must be positive and the size of wheel must be greater than 1.");
+    }
+    this.tickMs = tickMs;
+    this.wheelSize = wheelSize;
+    this.root = new Level(tickMs, wheelSize, startMs);
+  }
+
+  /**
+   * Schedule a started event which has an expiry time. The event without timeout or a duplicate one will be ignored.
+   *
+   * @param event 'TxStartedEvent' or 'SagaStartedEvent'
+   * @return true if the event was scheduled
+   */
+  public synchronized boolean schedule(TxEvent event) {
+    if (!isTimeoutCandidate(event)) {
+      return false;
+    }
+    String key = keyOf(event.globalTxId(), event.localTxId());
+    if (timeouts.containsKey(key)) {
+      return false;
+    }
+    Timeout timeout = new Timeout(key, event);
+    timeouts.put(key, timeout);
+    globalTxTimeouts.computeIfAbsent(event.globalTxId(), k -> new HashSet<>()).add(timeout);
+    if (!root.add(timeout)) {
+      expiredBeforeAdding.add(timeout);
+    }
+    return true;
+  }
+
+  /**
+   * Feed the wheel after persisting an event.
+   * It's not necessary to be precise for cancelling, because the expired event will be confirmed by database before handling.
+   *
+   * @param event the persisted event
+   */
+  public void onEventSaved(TxEvent event) {
+    String type = event.type();
+    if (TxStartedEvent.name().equals(type) || SagaStartedEvent.name().equals(type)) {
+      schedule(event);
+    } else if (TxEndedEvent.name().equals(type) || TxCompensatedEvent.name().equals(type)) {
+      cancel(event.globalTxId(), event.localTxId());
+    } else if (TxAbortedEvent.name().equals(type) || SagaEndedEvent.name().equals(type)) {
+      // it's unnecessary to detect timeout for an aborted or ended global transaction.
+      cancelGlobalTx(event.globalTxId());
+    }
+  }
+
+  /**
+   * Cancel the timeout of some sub-transaction, it's called after saving its ended/compensated event.
+   */
+  public synchronized void cancel(String globalTxId, String localTxId) {
+    Timeout timeout = timeouts.remove(keyOf(globalTxId, localTxId));
+    if (timeout != null) {
+      detach(timeout);
+      Set<Timeout> timeoutSet = globalTxTimeouts.get(globalTxId);
+      if (timeoutSet != null) {
+        timeoutSet.remove(timeout);
+        if (timeoutSet.isEmpty()) {
+          globalTxTimeouts.remove(globalTxId);
+        }
+      }
+    }
+  }
+
+  /**
+   * Cancel all of timeouts of some global transaction, it's called after the global transaction was aborted or ended.
+   */
+  public synchronized void cancelGlobalTx(String globalTxId) {
+    Set<Timeout> timeoutSet = globalTxTimeouts.remove(globalTxId);
+    if (timeoutSet != null) {
+      timeoutSet.forEach(timeout -> {
+        timeouts.remove(timeout.key);
+        detach(timeout);
+      });
+    }
+  }
+
+  /**
+   * Advance the wheel to the specific time.
+   *
+   * @param nowMs current time in milliseconds
+   * @return the started events which are expired
+   */
+  public synchronized List<TxEvent> advance(long nowMs) {
+    List<Timeout> expiredTimeouts = new ArrayList<>(expiredBeforeAdding);
+    expiredBeforeAdding.clear();
+
+    while (root.currentTime + tickMs <= nowMs) {
+      long previousTime = root.currentTime;
+      root.currentTime += tickMs;
+      // all of entries in the previous bucket are earlier than current time.
+      // drain it before cascading, because the previous bucket would be reused as the last one of current round.
+      expiredTimeouts.addAll(root.drain(previousTime));
+      // cascade the buckets of overflow levels, the lower level must be advanced before its upper level.
+      for (Level level = root.overflow; level != null; level = level.overflow) {
+        long levelTime = root.currentTime - root.currentTime % level.tickMs;
+        if (levelTime <= level.currentTime) {
+          break;
+        }
+        level.currentTime = levelTime;
+        for (Timeout timeout : level.drain(levelTime)) {
+          if (!root.add(timeout)) {
+            expiredTimeouts.add(timeout);
+          }
+        }
+      }
+    }
+
+    List<TxEvent> expiredEvents = new ArrayList<>(expiredTimeouts.size());
+    expiredTimeouts.forEach(timeout -> {
+      if (timeouts.remove(timeout.key, timeout)) {
+        Set<Timeout> timeoutSet = globalTxTimeouts.get(timeout.event.globalTxId());
+        if (timeoutSet != null) {
+          timeoutSet.remove(timeout);
+          if (timeoutSet.isEmpty()) {
+            globalTxTimeouts.remove(timeout.event.globalTxId());
+          }
+        }
+        expiredEvents.add(timeout.event);
+      }
+    });
+    return expiredEvents;
+  }
+
+  public synchronized int size() {
+    return timeouts.size();
+  }
+
+  public synchronized void clear() {
+    timeouts.values().forEach(this::detach);
+    timeouts.clear();
+    globalTxTimeouts.clear();
+    expiredBeforeAdding.clear();
+  }
+
+  public long getTickMs() {
+    return tickMs;
+  }
+
+  public static boolean isTimeoutCandidate(TxEvent event) {
+    return (TxStartedEvent.name().equals(event.type()) || SagaStartedEvent.name().equals(event.type()))
+        && event.expiryTime() != null && event.expiryTime().getTime() < TxEvent.MAX_TIMESTAMP;
+  }
+
+  private void detach(Timeout timeout) {
+    if (timeout.bucket != null) {
+      timeout.bucket.remove(timeout);
+      timeout.bucket = null;
+    }
+  }
+
+  private static String keyOf(String globalTxId, String localTxId) {
+    return globalTxId + "_" + localTxId;
+  }
+
+  private static final class Timeout {
+    private final String key;
+    private final TxEvent event;
+    private final long expiryMs;
+    private Set<Timeout> bucket;
+
+    private Timeout(String key, TxEvent event) {
+      this.key = key;
+      this.event = event;
+      this.expiryMs = event.expiryTime().getTime();
+    }
+  }
+
+  private final class Level {
+    private final long tickMs;
+    private final long interval;
+    private final List<Set<Timeout>> buckets;
+    private long currentTime;
+    private Level overflow;
+
+    private Level(long tickMs, int wheelSize, long startMs) {
+      this.tickMs = tickMs;
+      this.interval = tickMs * wheelSize;
+      this.buckets = new ArrayList<>(wheelSize);
+      for (int i = 0; i < wheelSize; i++) {
+        this.buckets.add(new LinkedHashSet<>());
+      }
+      this.currentTime = startMs - startMs % tickMs;
+    }
+
+    // return false if the timeout is already expired.
+    private boolean add(Timeout timeout) {
+      if (timeout.expiryMs < currentTime) {
+        return false;
+      }
+      if (timeout.expiryMs < currentTime + interval) {
+        Set<Timeout> bucket = bucketOf(timeout.expiryMs);
+        bucket.add(timeout);
+        timeout.bucket = bucket;
+        return true;
+      }
+      if (overflow == null) {
+        overflow = new Level(interval, wheelSize, currentTime);
+      }
+      return overflow.add(timeout);
+    }
+
+    private List<Timeout> drain(long timeMs) {
+      Set<Timeout> bucket = bucketOf(timeMs);
+      List<Timeout> timeoutList = new ArrayList<>(bucket);
+      bucket.clear();
+      timeoutList.forEach(timeout -> timeout.bucket = null);
+      return timeoutList;
+    }
+
+    private Set<Timeout> bucketOf(long timeMs) {
+      return buckets.get((int) ((timeMs / tickMs) % wheelSize));
+    }
+  }
+}
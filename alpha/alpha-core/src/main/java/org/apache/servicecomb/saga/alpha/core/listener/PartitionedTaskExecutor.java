@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.listener;
+
+import io.prometheus.client.Counter;
+import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tasks are partitioned by key across some single-thread workers, so the tasks with the same key are executed in order of submitting.
+ * Every worker has a bounded queue, the submitter waits if the queue is full, and the waiting is counted by 'txle_partitioned_task_rejected_total'.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public class PartitionedTaskExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final Counter REJECTED_TOTAL = Counter.build("txle_partitioned_task_rejected_total", "Total number of tasks which had to wait for the full queue.").labelNames("stage").register();
+
+    private final String stage;
+    private final BlockingQueue<Runnable>[] queues;
+    private final ExecutorService workers;
+    private volatile boolean running = true;
+
+    @SuppressWarnings("unchecked")
+    public PartitionedTaskExecutor(String stage, int partitions, int queueCapacity) {
+        this.stage = stage;
+        this.queues = new BlockingQueue[Math.max(1, partitions)];
+        this.workers = Executors.newFixedThreadPool(queues.length, new TxleDefaultTheadFactory("txle-" + stage + "-"));
+        for (int i = 0; i < queues.length; i++) {
+            BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues[i] = queue;
+            workers.execute(() -> work(queue));
+        }
+    }
+
+    public void execute(String key, Runnable task) {
+        if (!running) {
+            // the rest tasks are executed by submitters after shutting down, e.g. the events which are consumed during closing application.
+            runQuietly(task);
+            return;
+        }
+        BlockingQueue<Runnable> queue = queues[partitionOf(key)];
+        if (!queue.offer(task)) {
+            REJECTED_TOTAL.labels(stage).inc();
+            try {
+                queue.put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                runQuietly(task);
+                return;
+            }
+        }
+        // it's shut down during submitting, and the worker may have exited, so the task is taken back if nobody took it.
+        if (!running && queue.remove(task)) {
+            runQuietly(task);
+        }
+    }
+
+    int partitionOf(String key) {
+        return key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % queues.length;
+    }
+
+    public void shutdown() {
+        running = false;
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOG.warn("Timed out to execute the rest tasks of stage [{}].", stage);
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+        // the tasks which were left by the exited workers are executed by current thread.
+        for (BlockingQueue<Runnable> queue : queues) {
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                runQuietly(task);
+            }
+        }
+    }
+
+    private void work(BlockingQueue<Runnable> queue) {
+        try {
+            while (running || !queue.isEmpty()) {
+                Runnable task = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (task != null) {
+                    runQuietly(task);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runQuietly(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable e) {
+            LOG.error("Failed to execute task of stage [{}].", stage, e);
+        }
+    }
+}
@@ -8,34 +8,35 @@ package org.apache.servicecomb.saga.alpha.core.listener;
 import com.actionsky.txle.cache.ITxleConsistencyCache;
 import com.actionsky.txle.cache.ITxleEhCache;
 import com.actionsky.txle.cache.TxleCacheType;
-import com.actionsky.txle.enums.GlobalTxStatus;
 import com.actionsky.txle.grpc.interfaces.ICustomRepository;
 import org.apache.servicecomb.saga.alpha.core.EventScanner;
 import org.apache.servicecomb.saga.alpha.core.TxEvent;
-import org.apache.servicecomb.saga.alpha.core.TxEventRepository;
 import org.apache.servicecomb.saga.alpha.core.TxleMetrics;
 import org.apache.servicecomb.saga.alpha.core.datadictionary.DataDictionaryItem;
 import org.apache.servicecomb.saga.alpha.core.datadictionary.IDataDictionaryService;
 import org.apache.servicecomb.saga.alpha.core.kafka.IKafkaMessageProducer;
 import org.apache.servicecomb.saga.common.TxleConstants;
-import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.Resource;
 import java.lang.invoke.MethodHandles;
-import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.apache.servicecomb.saga.common.EventType.*;
 
 /**
+ * It subscribes the event bus, the cheap work is done by the subscriber thread in order of saving events,
+ * and the slow I/O work, like Kafka and DB, is done by workers which are partitioned by the global transaction.
+ * The aborted status of global transaction is not set here, it's set by the saving thread, so other nodes see it without any lag.
+ *
  * @author Gannalyo
  * @since 2019-08-30
  */
-public class TxEventAfterPersistingListener implements Observer {
+public class TxEventAfterPersistingListener implements TxEventSubscriber {
     private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
     @Autowired
@@ -57,62 +58,68 @@ public class TxEventAfterPersistingListener implements Observer {
     @Autowired
     private TxleMetrics txleMetrics;
 
-    @Autowired
-    private TxEventRepository eventRepository;
-
+    // it's only accessed by the subscriber thread of the event bus.
     private final Set<String> serverNameIdCategory = new HashSet<>();
+    // the show order of data dictionary is read and increased by different partitions.
+    private final Object serverNameIdCategoryLock = new Object();
 
-    private final ExecutorService executorService = Executors.newFixedThreadPool(1, new TxleDefaultTheadFactory("txle-listener-"));
+    // the slow I/O work, it's partitioned by the global transaction, so the work of the same global transaction is done in order.
+    private final PartitionedTaskExecutor ioExecutor;
+
+    public TxEventAfterPersistingListener(int ioThreads, int ioQueueCapacity) {
+        this.ioExecutor = new PartitionedTaskExecutor("post-persist-io", ioThreads, ioQueueCapacity);
+    }
 
+    /**
+     * The cheap work, like metrics, is done by the subscriber thread directly, and the slow I/O work is submitted to the partitioned executor.
+     */
     @Override
-    public void update(Observable arg0, Object arg1) {
-//        long a = System.currentTimeMillis();
-        if (arg0 != null) {
-            if (arg0 instanceof GlobalTxListener) {
-                TxEvent event = ((GlobalTxListener) arg0).getEvent();
-                try {
-                    if (event != null) {
-                        if (event.id() == null || event.id() == -1) {
-                            executorService.execute(() -> {
-                                txleMetrics.startMarkTxDuration(event);
-                                txleMetrics.countTxNumber(event);
-                            });
-                        } else {
-                            executorService.execute(() -> txleMetrics.endMarkTxDuration(event));
-
-//                            log.info("The listener [{}] observes the new event [" + event.toString() + "].", this.getClass());
-                            if (SagaStartedEvent.name().equals(event.type())) {
-                                // increase 1 for the minimum identify of undone event when some global transaction starts.
-                                EventScanner.UNENDED_MIN_EVENT_ID_SELECT_COUNT.incrementAndGet();
-                                this.setServerNameIdCategory(event);
-                            } else if (TxStartedEvent.name().equals(event.type())) {
-                                this.setServerNameIdCategory(event);
-                            } else if (TxAbortedEvent.name().equals(event.type())) {
-                                // verify if the retries > 0
-                                if (event.globalTxId().equals(event.localTxId()) || eventRepository.checkTxIsAborted(event.globalTxId(), event.localTxId())) {
-                                    consistencyCache.setKeyValueCache(TxleConstants.constructTxStatusCacheKey(event.globalTxId()), GlobalTxStatus.Aborted.toString());
-                                }
-                            } else if (SagaEndedEvent.name().equals(event.type())) {
-                                executorService.execute(() -> {
-                                    // remove local cache for current global tx
-                                    txleEhCache.removeGlobalTxCache(event.globalTxId());
-                                    // remove distribution cache for current global tx
-                                    consistencyCache.deleteByKeyPrefix(TxleConstants.constructTxCacheKey(event.globalTxId()));
-
-                                    kafkaMessageProducer.send(event);
-                                    this.saveBusinessDBBackupInfo(event);
-                                });
-                            }
-                        }
-//                        log.info("\r\n---- [{}] listener after saving [{}]，globalTxId = [{}], localTxId = [{}], millisecond [{}].", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS").format(new Date()), event.type(), event.globalTxId(), event.localTxId(), (System.currentTimeMillis() - a));
-                    }
-                } catch (Exception e) {
-                    log.error("Failed to execute listener after persisting event. globalTxId = {}, localTxId = {}", event.globalTxId(), event.localTxId(), e);
+    public void onEvent(TxEventNotice notice) {
+        TxEvent event = notice.event();
+        try {
+            if (notice.phase() == TxEventNotice.Phase.BEFORE_SAVE) {
+                txleMetrics.startMarkTxDuration(event);
+                txleMetrics.countTxNumber(event);
+            } else {
+                txleMetrics.endMarkTxDuration(event);
+
+                if (SagaStartedEvent.name().equals(event.type())) {
+                    // increase 1 for the minimum identify of undone event when some global transaction starts.
+                    EventScanner.UNENDED_MIN_EVENT_ID_SELECT_COUNT.incrementAndGet();
+                    this.setServerNameIdCategory(event);
+                } else if (TxStartedEvent.name().equals(event.type())) {
+                    this.setServerNameIdCategory(event);
+                } else if (SagaEndedEvent.name().equals(event.type())) {
+                    executeIo(event, () -> {
+                        // remove local cache for current global tx
+                        txleEhCache.removeGlobalTxCache(event.globalTxId());
+                        // remove distribution cache for current global tx
+                        consistencyCache.deleteByKeyPrefix(TxleConstants.constructTxCacheKey(event.globalTxId()));
+
+                        kafkaMessageProducer.send(event);
+                        this.saveBusinessDBBackupInfo(event);
+                    });
                 }
             }
+        } catch (Exception e) {
+            log.error("Failed to execute listener after persisting event. globalTxId = {}, localTxId = {}", event.globalTxId(), event.localTxId(), e);
         }
     }
 
+    public void shutdown() {
+        ioExecutor.shutdown();
+    }
+
+    private void executeIo(TxEvent event, Runnable work) {
+        ioExecutor.execute(event.globalTxId(), () -> {
+            try {
+                work.run();
+            } catch (Exception e) {
+                log.error("Failed to execute listener after persisting event. globalTxId = {}, localTxId = {}", event.globalTxId(), event.localTxId(), e);
+            }
+        });
+    }
+
     private void saveBusinessDBBackupInfo(TxEvent event) {
         Object cacheValue = txleEhCache.get(TxleCacheType.OTHER, "is-executed-backup-table-" + event.globalTxId());
         if (cacheValue != null) {
@@ -139,16 +146,17 @@ public class TxEventAfterPersistingListener implements Observer {
     }
 
     private void setServerNameIdCategory(TxEvent event) {
-        executorService.execute(() -> {
-            final String serverNameInstanceCategory = event.serviceName() + "__" + event.instanceId() + "__" + event.category();
-            if (!serverNameIdCategory.contains(serverNameInstanceCategory)) {
-                serverNameIdCategory.add(serverNameInstanceCategory);
-                final String globalTxServer = "global-tx-server-info";
-                int showOrder = dataDictionaryService.selectMaxShowOrder(globalTxServer);
-                final DataDictionaryItem ddItem = new DataDictionaryItem(globalTxServer, event.serviceName(), event.instanceId(), event.category(), showOrder + 1, 1, "");
-                dataDictionaryService.createDataDictionary(ddItem);
-            }
-        });
+        final String serverNameInstanceCategory = event.serviceName() + "__" + event.instanceId() + "__" + event.category();
+        if (serverNameIdCategory.add(serverNameInstanceCategory)) {
+            executeIo(event, () -> {
+                synchronized (serverNameIdCategoryLock) {
+                    final String globalTxServer = "global-tx-server-info";
+                    int showOrder = dataDictionaryService.selectMaxShowOrder(globalTxServer);
+                    final DataDictionaryItem ddItem = new DataDictionaryItem(globalTxServer, event.serviceName(), event.instanceId(), event.category(), showOrder + 1, 1, "");
+                    dataDictionaryService.createDataDictionary(ddItem);
+                }
+            });
+        }
     }
 
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.listener;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.PhasedBackoffWaitStrategy;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A multi-producer event bus on a ring buffer, it carries the notices of saving events to subscribers.
+ * Every subscriber consumes the notices by its own thread in order of publishing, so the threads of saving events are never blocked by subscribers unless the buffer is full.
+ * Subscribers have to be registered before starting, it's started after all singletons are instantiated.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public class TxEventBus implements SmartInitializingSingleton {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final Counter FULL_TOTAL = Counter.build("txle_event_bus_full_total", "Total number of publishing which had to wait for the full event bus.").register();
+    private static final Gauge BACKLOG = Gauge.build("txle_event_bus_backlog", "Number of notices which are not consumed by the subscriber yet.").labelNames("subscriber").register();
+
+    private final Disruptor<Slot> disruptor;
+    private final RingBuffer<Slot> ringBuffer;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private volatile int subscriberCount;
+    private final EventTranslatorOneArg<Slot, TxEventNotice> translator = (slot, sequence, notice) -> slot.fill(notice, subscriberCount);
+
+    public TxEventBus(int bufferSize) {
+        this.disruptor = new Disruptor<>(Slot::new, ceilingPowerOfTwo(bufferSize), new TxleDefaultTheadFactory("txle-event-bus-"),
+                ProducerType.MULTI, PhasedBackoffWaitStrategy.withLiteLock(1, 1, TimeUnit.MILLISECONDS));
+        this.ringBuffer = disruptor.getRingBuffer();
+    }
+
+    public synchronized void subscribe(String name, TxEventSubscriber subscriber) {
+        if (started.get()) {
+            throw new IllegalStateException("Could not subscribe the event bus after starting, subscriber = " + name);
+        }
+        disruptor.handleEventsWith(new SubscriberHandler(name, subscriber));
+        subscriberCount++;
+    }
+
+    public void publish(TxEventNotice notice) {
+        if (subscriberCount == 0) {
+            return;
+        }
+        if (!ringBuffer.tryPublishEvent(translator, notice)) {
+            // it's full, the slowest subscriber is behind the buffer size, so wait for it rather than discard the notice.
+            FULL_TOTAL.inc();
+            ringBuffer.publishEvent(translator, notice);
+        }
+    }
+
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            disruptor.start();
+            LOG.info("The event bus started with [{}] subscribers and buffer size [{}].", subscriberCount, ringBuffer.getBufferSize());
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        start();
+    }
+
+    public void shutdown() {
+        if (!started.get()) {
+            return;
+        }
+        try {
+            // to consume the published notices as much as possible
+            disruptor.shutdown(10, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            LOG.warn("Timed out to consume the rest notices of the event bus, backlog = [{}].", ringBuffer.getBufferSize() - ringBuffer.remainingCapacity());
+            disruptor.halt();
+        }
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        if (value <= 1) {
+            return 1;
+        }
+        return Integer.highestOneBit(value - 1) << 1;
+    }
+
+    static final class Slot {
+        private TxEventNotice notice;
+        // the number of subscribers which have not consumed the notice, the last one clears it, so the event could be collected soon.
+        private final AtomicInteger remaining = new AtomicInteger();
+
+        private void fill(TxEventNotice notice, int subscriberCount) {
+            this.notice = notice;
+            this.remaining.set(subscriberCount);
+        }
+    }
+
+    private final class SubscriberHandler implements EventHandler<Slot> {
+        private final String name;
+        private final TxEventSubscriber subscriber;
+        private final Gauge.Child backlog;
+
+        private SubscriberHandler(String name, TxEventSubscriber subscriber) {
+            this.name = name;
+            this.subscriber = subscriber;
+            this.backlog = BACKLOG.labels(name);
+        }
+
+        @Override
+        public void onEvent(Slot slot, long sequence, boolean endOfBatch) {
+            TxEventNotice notice = slot.notice;
+            try {
+                subscriber.onEvent(notice);
+            } catch (Throwable e) {
+                LOG.error("The subscriber [{}] failed to consume the notice [{}].", name, notice, e);
+            } finally {
+                if (slot.remaining.decrementAndGet() == 0) {
+                    slot.notice = null;
+                }
+            }
+            if (endOfBatch) {
+                backlog.set(ringBuffer.getCursor() - sequence);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.listener;
+
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+
+/**
+ * An immutable notice of saving some event, it's carried to the subscribers of {@link TxEventBus}.
+ * The phase and the surrogate id are taken when it's published, so they're not affected by the subsequent changes of the event.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public final class TxEventNotice {
+
+    public enum Phase {
+        BEFORE_SAVE, AFTER_SAVE
+    }
+
+    private final Phase phase;
+    private final TxEvent event;
+    private final Long surrogateId;
+
+    private TxEventNotice(Phase phase, TxEvent event, Long surrogateId) {
+        this.phase = phase;
+        this.event = event;
+        this.surrogateId = surrogateId;
+    }
+
+    public static TxEventNotice beforeSave(TxEvent event) {
+        return new TxEventNotice(Phase.BEFORE_SAVE, event, null);
+    }
+
+    public static TxEventNotice afterSave(TxEvent event) {
+        return new TxEventNotice(Phase.AFTER_SAVE, event, event.id());
+    }
+
+    public Phase phase() {
+        return phase;
+    }
+
+    public TxEvent event() {
+        return event;
+    }
+
+    /**
+     * @return the id of the saved event, or null before saving
+     */
+    public Long surrogateId() {
+        return surrogateId;
+    }
+
+    @Override
+    public String toString() {
+        return "TxEventNotice{phase=" + phase + ", surrogateId=" + surrogateId + ", event=" + event + '}';
+    }
+}
@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.listener;
+
+/**
+ * A subscriber of {@link TxEventBus}, it's invoked by its own thread in order of publishing.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public interface TxEventSubscriber {
+
+    void onEvent(TxEventNotice notice);
+}
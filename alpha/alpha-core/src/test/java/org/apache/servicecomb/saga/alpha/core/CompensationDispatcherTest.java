@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CompensationDispatcherTest {
+  private final CommandRepository commandRepository = mock(CommandRepository.class);
+  private final Queue<TxEvent> compensatedEvents = new ConcurrentLinkedQueue<>();
+  private CompensationDispatcher dispatcher;
+
+  @After
+  public void tearDown() {
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void claimsInBatchesUntilNoMoreCommands() {
+    dispatcher = new CompensationDispatcher(commandRepository, compensatedEvents::add, 2, 2, 10);
+    List<Command> firstBatch = commandsOf("instance-1", 1, 2);
+    List<Command> secondBatch = commandsOf("instance-2", 3);
+    when(commandRepository.claimCommandsToCompensate(2)).thenReturn(firstBatch, secondBatch);
+
+    assertThat(dispatcher.dispatch(), is(3));
+
+    await().atMost(2, TimeUnit.SECONDS).until(() -> compensatedEvents.size() == 3);
+    assertThat(dispatcher.inFlight(), is(0));
+  }
+
+  @Test
+  public void sendsCommandsOfSameInstanceInOrder() {
+    dispatcher = new CompensationDispatcher(commandRepository, compensatedEvents::add, 4, 10, 10);
+    List<Command> commands = commandsOf("instance-1", 1, 2, 3, 4, 5);
+    when(commandRepository.claimCommandsToCompensate(10)).thenReturn(commands);
+
+    dispatcher.dispatch();
+
+    await().atMost(2, TimeUnit.SECONDS).until(() -> compensatedEvents.size() == 5);
+    List<String> localTxIds = new ArrayList<>();
+    compensatedEvents.forEach(event -> localTxIds.add(event.localTxId()));
+    List<String> expectedLocalTxIds = new ArrayList<>();
+    commands.forEach(command -> expectedLocalTxIds.add(command.localTxId()));
+    assertThat(localTxIds, contains(expectedLocalTxIds.toArray()));
+  }
+
+  @Test
+  public void stopsClaimingWhenInFlightCommandsReachLimit() {
+    CountDownLatch release = new CountDownLatch(1);
+    dispatcher = new CompensationDispatcher(commandRepository, event -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      compensatedEvents.add(event);
+    }, 1, 2, 2);
+    when(commandRepository.claimCommandsToCompensate(2)).thenReturn(commandsOf("instance-1", 1, 2));
+
+    assertThat(dispatcher.dispatch(), is(2));
+    assertThat(dispatcher.dispatch(), is(0));
+    verify(commandRepository).claimCommandsToCompensate(2);
+
+    release.countDown();
+    await().atMost(2, TimeUnit.SECONDS).until(() -> dispatcher.inFlight() == 0);
+  }
+
+  @Test
+  public void keepsDispatchingAfterCompensationFailed() {
+    dispatcher = new CompensationDispatcher(commandRepository, event -> {
+      compensatedEvents.add(event);
+      throw new AlphaException("No such omega callback found");
+    }, 1, 10, 10);
+    when(commandRepository.claimCommandsToCompensate(10)).thenReturn(commandsOf("instance-1", 1, 2), Collections.emptyList());
+
+    assertThat(dispatcher.dispatch(), is(2));
+
+    await().atMost(2, TimeUnit.SECONDS).until(() -> compensatedEvents.size() == 2 && dispatcher.inFlight() == 0);
+  }
+
+  private List<Command> commandsOf(String instanceId, long... eventIds) {
+    List<Command> commands = new ArrayList<>();
+    for (long eventId : eventIds) {
+      commands.add(new Command(eventId, "serviceName", instanceId, uniquify("globalTxId"), uniquify("localTxId"), null,
+          "compensationMethod", "", new byte[0]));
+    }
+    return commands;
+  }
+}
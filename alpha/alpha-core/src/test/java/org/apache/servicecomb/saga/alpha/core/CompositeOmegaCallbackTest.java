@@ -25,6 +25,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.util.Map;
 import java.util.UUID;
@@ -139,8 +140,25 @@ public class CompositeOmegaCallbackTest {
   }
 
   @Test
-  public void removeCallbackOnException() throws Exception {
+  public void compensateOtherOmegaInstanceAndRemoveUnavailableCallbackOnException() throws Exception {
     doThrow(RuntimeException.class).when(callback1Two).compensate(any(TxEvent.class));
+    when(callback1Two.isAvailable()).thenReturn(false);
+    TxEvent event = eventOf(serviceName1, instanceId1Two, TxStartedEvent);
+
+    compositeOmegaCallback.compensate(event);
+
+    verify(callback1Two).compensate(event);
+    verify(callback1One).compensate(event);
+    assertThat(callbacks.get(serviceName1).values(), containsInAnyOrder(callback1One));
+    assertThat(callbacks.get(serviceName2).values(), containsInAnyOrder(callback2One, callback2Two));
+  }
+
+  @Test
+  public void keepAvailableCallbackAndBlowsUpIfAllInstancesFailed() throws Exception {
+    doThrow(RuntimeException.class).when(callback1One).compensate(any(TxEvent.class));
+    doThrow(RuntimeException.class).when(callback1Two).compensate(any(TxEvent.class));
+    when(callback1One.isAvailable()).thenReturn(true);
+    when(callback1Two.isAvailable()).thenReturn(true);
     TxEvent event = eventOf(serviceName1, instanceId1Two, TxStartedEvent);
 
     try {
@@ -149,8 +167,9 @@ public class CompositeOmegaCallbackTest {
     } catch (RuntimeException ignored) {
     }
 
-    assertThat(callbacks.get(serviceName1).values(), containsInAnyOrder(callback1One));
-    assertThat(callbacks.get(serviceName2).values(), containsInAnyOrder(callback2One, callback2Two));
+    verify(callback1One).compensate(event);
+    verify(callback1Two).compensate(event);
+    assertThat(callbacks.get(serviceName1).values(), containsInAnyOrder(callback1One, callback1Two));
   }
 
   private TxEvent eventOf(String serviceName, String instanceId, EventType eventType) {
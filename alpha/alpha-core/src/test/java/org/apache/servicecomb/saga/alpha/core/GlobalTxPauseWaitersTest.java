@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class GlobalTxPauseWaitersTest {
+  private final GlobalTxPauseWaiters pauseWaiters = new GlobalTxPauseWaiters(2, 60000);
+  private final String globalTxId = uniquify("globalTxId");
+  private final AtomicBoolean paused = new AtomicBoolean(true);
+  private final List<String> continued = new CopyOnWriteArrayList<>();
+
+  @After
+  public void tearDown() {
+    pauseWaiters.shutdown();
+  }
+
+  @Test
+  public void runsContinuationInCurrentThreadIfNotPaused() {
+    paused.set(false);
+
+    Runnable cancel = pauseWaiters.runWhenResumed(globalTxId, paused::get, () -> continued.add("request"));
+
+    assertThat(cancel, is(nullValue()));
+    assertThat(continued, contains("request"));
+    assertThat(pauseWaiters.size(), is(0));
+  }
+
+  @Test
+  public void parksRequestOfPausedGlobalTx() {
+    Runnable cancel = pauseWaiters.runWhenResumed(globalTxId, paused::get, () -> continued.add("request"));
+
+    assertThat(cancel, is(notNullValue()));
+    assertThat(continued.isEmpty(), is(true));
+    assertThat(pauseWaiters.size(), is(1));
+  }
+
+  @Test
+  public void wakesEveryLiveWaiterOnResuming() {
+    pauseWaiters.runWhenResumed(globalTxId, paused::get, () -> continued.add("request1"));
+    pauseWaiters.runWhenResumed(globalTxId, paused::get, () -> continued.add("request2"));
+    pauseWaiters.runWhenResumed(globalTxId, paused::get, () -> continued.add("request3"));
+    pauseWaiters.runWhenResumed(uniquify("globalTxId"), () -> true, () -> continued.add("other"));
+
+    paused.set(false);
+    pauseWaiters.wake(globalTxId);
+
+    await().atMost(1, SECONDS).until(() -> continued.size() == 3);
+    assertThat(continued, containsInAnyOrder("request1", "request2", "request3"));
+    assertThat(pauseWaiters.size(), is(1));
+  }
+
+  @Test
+  public void parksWaiterAgainIfStillPausedOnWaking() throws Exception {
+    pauseWaiters.runWhenResumed(globalTxId, paused::get, () -> continued.add("request"));
+
+    pauseWaiters.wake(globalTxId);
+    await().atMost(1, SECONDS).until(() -> pauseWaiters.size() == 1);
+    Thread.sleep(100);
+    assertThat(continued.isEmpty(), is(true));
+
+    paused.set(false);
+    pauseWaiters.wake(globalTxId);
+    await().atMost(1, SECONDS).until(() -> continued.size() == 1);
+    assertThat(pauseWaiters.size(), is(0));
+  }
+
+  @Test
+  public void wakesWaitersOfAllGlobalTxsAfterConfigChanged() {
+    pauseWaiters.runWhenResumed(globalTxId, paused::get, () -> continued.add("request1"));
+    pauseWaiters.runWhenResumed(uniquify("globalTxId"), paused::get, () -> continued.add("request2"));
+
+    paused.set(false);
+    pauseWaiters.wakeAll();
+
+    await().atMost(1, SECONDS).until(() -> continued.size() == 2);
+    assertThat(continued, containsInAnyOrder("request1", "request2"));
+  }
+
+  @Test
+  public void cancelledWaiterIsRemovedAndNeverContinued() throws Exception {
+    Runnable cancel = pauseWaiters.runWhenResumed(globalTxId, paused::get, () -> continued.add("cancelled"));
+    pauseWaiters.runWhenResumed(globalTxId, paused::get, () -> continued.add("live"));
+
+    cancel.run();
+    assertThat(pauseWaiters.size(), is(1));
+
+    paused.set(false);
+    pauseWaiters.wake(globalTxId);
+
+    await().atMost(1, SECONDS).until(() -> continued.contains("live"));
+    Thread.sleep(100);
+    assertThat(continued, contains("live"));
+    assertThat(pauseWaiters.size(), is(0));
+  }
+
+  @Test
+  public void lastCancelledWaiterLeavesNoQueueBehind() {
+    Runnable cancel = pauseWaiters.runWhenResumed(globalTxId, paused::get, () -> continued.add("request"));
+
+    cancel.run();
+    cancel.run();
+
+    assertThat(pauseWaiters.size(), is(0));
+    paused.set(false);
+    pauseWaiters.wake(globalTxId);
+    assertThat(pauseWaiters.size(), is(0));
+  }
+
+  @Test
+  public void continuesWaiterIfResumedWhileParking() {
+    // paused at first checking, but resumed before parking, so nobody would wake it if it's not checked again.
+    AtomicInteger checks = new AtomicInteger();
+
+    pauseWaiters.runWhenResumed(globalTxId, () -> checks.incrementAndGet() == 1, () -> continued.add("request"));
+
+    await().atMost(1, SECONDS).until(() -> continued.size() == 1);
+    assertThat(pauseWaiters.size(), is(0));
+  }
+
+  @Test
+  public void rechecksWaitersPeriodicallyInCaseOfMissingChanges() {
+    GlobalTxPauseWaiters recheckingWaiters = new GlobalTxPauseWaiters(1, 50);
+    try {
+      recheckingWaiters.runWhenResumed(globalTxId, paused::get, () -> continued.add("request"));
+
+      paused.set(false);
+
+      await().atMost(1, SECONDS).until(() -> continued.size() == 1);
+      assertThat(recheckingWaiters.size(), is(0));
+    } finally {
+      recheckingWaiters.shutdown();
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import com.actionsky.txle.enums.GlobalTxStatus;
+import org.apache.servicecomb.saga.common.EventType;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.apache.servicecomb.saga.common.EventType.*;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class GlobalTxStateRegistryTest {
+  private final GlobalTxStateRegistry registry = new GlobalTxStateRegistry(true, 10, 60000);
+  private final String globalTxId = uniquify("globalTxId");
+  private final String localTxId = uniquify("localTxId");
+  private long id = 1;
+
+  @Test
+  public void holdsStateFromStartedToEnded() {
+    registry.onEventSaved(eventOf(TxStartedEvent, localTxId, 0, 0));
+    assertThat(registry.get(globalTxId), is(nullValue()));
+
+    registry.onEventSaved(eventOf(SagaStartedEvent, globalTxId, 0, 0));
+    registry.onEventSaved(eventOf(TxStartedEvent, localTxId, 0, 2));
+    GlobalTxState state = registry.get(globalTxId);
+    assertThat(state.hasEvent(localTxId, TxStartedEvent.name()), is(true));
+    assertThat(state.hasEvent(localTxId, TxEndedEvent.name()), is(false));
+
+    registry.onEventSaved(eventOf(SagaEndedEvent, globalTxId, 0, 0));
+    assertThat(registry.get(globalTxId), is(nullValue()));
+  }
+
+  @Test
+  public void abortsGlobalTxOnlyIfNoMoreRetries() {
+    registry.onEventSaved(eventOf(SagaStartedEvent, globalTxId, 0, 0));
+    registry.onEventSaved(eventOf(TxStartedEvent, localTxId, 0, 1));
+    registry.onEventSaved(eventOf(TxAbortedEvent, localTxId, 0, 0));
+    GlobalTxState state = registry.get(globalTxId);
+    assertThat(state.isAborted(), is(false));
+    assertThat(state.isSubTxRetriesExhausted(localTxId), is(false));
+
+    registry.onEventSaved(eventOf(TxStartedEvent, localTxId, 0, 0));
+    registry.onEventSaved(eventOf(TxAbortedEvent, localTxId, 0, 0));
+    assertThat(state.isSubTxRetriesExhausted(localTxId), is(true));
+    assertThat(state.isAborted(), is(true));
+    assertThat(state.getStatus(), is(GlobalTxStatus.Aborted.toString()));
+  }
+
+  @Test
+  public void followsStatusCache() {
+    registry.onEventSaved(eventOf(SagaStartedEvent, globalTxId, 0, 0));
+    registry.onStatusChanged(globalTxId, GlobalTxStatus.Paused.toString());
+    assertThat(registry.get(globalTxId).isPaused(), is(true));
+
+    registry.onStatusRemoved(globalTxId, null);
+    assertThat(registry.get(globalTxId).getStatus(), is(nullValue()));
+  }
+
+  @Test
+  public void findsTimeoutEventBeforeEnding() {
+    registry.onEventSaved(eventOf(SagaStartedEvent, globalTxId, 0, 0));
+    TxEvent startedEvent = eventOf(TxStartedEvent, localTxId, 1, 0);
+    registry.onEventSaved(startedEvent);
+    GlobalTxState state = registry.get(globalTxId);
+
+    assertThat(state.findTimeoutEventBeforeEnding(startedEvent.creationTime().getTime()), is(nullValue()));
+    assertThat(state.findTimeoutEventBeforeEnding(startedEvent.expiryTime().getTime() + 1), is(startedEvent));
+
+    registry.onEventSaved(eventOf(TxAbortedEvent, localTxId, 0, 0));
+    assertThat(state.findTimeoutEventBeforeEnding(startedEvent.expiryTime().getTime() + 1), is(nullValue()));
+  }
+
+  private TxEvent eventOf(EventType eventType, String localTxId, int timeout, int retries) {
+    TxEvent event = new TxEvent(
+        uniquify("serviceName"),
+        uniquify("instanceId"),
+        new Date(),
+        globalTxId,
+        localTxId,
+        null,
+        eventType.name(),
+        "",
+        timeout,
+        "",
+        retries,
+        "",
+        new byte[0]);
+    event.setSurrogateId(id++);
+    return event;
+  }
+}
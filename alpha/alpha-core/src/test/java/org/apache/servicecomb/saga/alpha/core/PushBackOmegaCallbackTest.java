@@ -16,48 +16,91 @@
 package org.apache.servicecomb.saga.alpha.core;
 
 import static org.apache.servicecomb.saga.alpha.core.TxEventMaker.someEvent;
+import static org.awaitility.Awaitility.await;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-import org.junit.Before;
+import org.junit.After;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 public class PushBackOmegaCallbackTest {
-  private static final Runnable NO_OP_RUNNABLE = () -> {
-  };
-
   private final OmegaCallback underlying = Mockito.mock(OmegaCallback.class);
-  private final BlockingQueue<Runnable> runnables = new LinkedBlockingQueue<>();
-  private final PushBackOmegaCallback pushBack = new PushBackOmegaCallback(runnables, underlying);
+  private final CommandRepository commandRepository = Mockito.mock(CommandRepository.class);
+  private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor();
+  private final PushBackOmegaCallback pushBack = new PushBackOmegaCallback(retryScheduler, underlying, commandRepository, 10, 40, 3, 10);
 
-  @Before
-  public void setUp() throws Exception {
-    runnables.offer(NO_OP_RUNNABLE);
+  @After
+  public void tearDown() {
+    retryScheduler.shutdownNow();
   }
 
   @Test
-  public void pushFailedCallbackToEndOfQueue() throws Exception {
+  public void retryFailedCallbackUntilSucceeded() throws Exception {
     TxEvent event = someEvent();
     doThrow(AlphaException.class).doThrow(AlphaException.class).doNothing().when(underlying).compensate(event);
 
     pushBack.compensate(event);
 
-    assertThat(runnables.size(), is(2));
-    assertThat(runnables.poll(), is(NO_OP_RUNNABLE));
+    await().atMost(1, TimeUnit.SECONDS).untilAsserted(() -> verify(underlying, times(3)).compensate(event));
+    verify(commandRepository, never()).markCommandAsNew(event.globalTxId(), event.localTxId());
+    assertThat(pushBack.pendingRetries(), is(0));
+  }
 
-    // failed again and pushed back itself to queue
-    runnables.poll().run();
-    assertThat(runnables.size(), is(1));
+  @Test
+  public void giveCommandBackAfterMaxAttempts() throws Exception {
+    TxEvent event = someEvent();
+    doThrow(AlphaException.class).when(underlying).compensate(event);
 
-    runnables.poll().run();
+    pushBack.compensate(event);
 
+    await().atMost(1, TimeUnit.SECONDS).untilAsserted(() -> verify(commandRepository).markCommandAsNew(event.globalTxId(), event.localTxId()));
     verify(underlying, times(3)).compensate(event);
+    assertThat(pushBack.pendingRetries(), is(0));
+  }
+
+  @Test
+  public void giveCommandBackAtOnceIfQueueOfOmegaIsFull() throws Exception {
+    TxEvent event = someEvent();
+    doThrow(CompensationQueueFullException.class).when(underlying).compensate(event);
+
+    pushBack.compensate(event);
+
+    verify(commandRepository).markCommandAsNew(event.globalTxId(), event.localTxId());
+    verify(underlying, times(1)).compensate(event);
+    assertThat(pushBack.pendingRetries(), is(0));
+  }
+
+  @Test
+  public void giveCommandBackIfPendingRetriesAreFull() throws Exception {
+    PushBackOmegaCallback pushBack = new PushBackOmegaCallback(retryScheduler, underlying, commandRepository, 1000, 1000, 3, 1);
+    TxEvent event1 = someEvent();
+    TxEvent event2 = someEvent();
+    doThrow(AlphaException.class).when(underlying).compensate(event1);
+    doThrow(AlphaException.class).when(underlying).compensate(event2);
+
+    pushBack.compensate(event1);
+    pushBack.compensate(event2);
+
+    assertThat(pushBack.pendingRetries(), is(1));
+    verify(commandRepository, never()).markCommandAsNew(event1.globalTxId(), event1.localTxId());
+    verify(commandRepository).markCommandAsNew(event2.globalTxId(), event2.localTxId());
+  }
+
+  @Test
+  public void doubleBackoffUpToMax() {
+    assertThat(pushBack.backoffOf(0), is(10L));
+    assertThat(pushBack.backoffOf(1), is(20L));
+    assertThat(pushBack.backoffOf(2), is(40L));
+    assertThat(pushBack.backoffOf(3), is(40L));
+    assertThat(pushBack.backoffOf(Integer.MAX_VALUE), is(40L));
   }
 }
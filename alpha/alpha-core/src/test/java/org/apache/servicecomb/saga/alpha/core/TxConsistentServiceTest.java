@@ -42,6 +42,16 @@ public class TxConsistentServiceTest {
       return emptyList();
     }
 
+    @Override
+    public List<TxEvent> findUnendedEventsWithTimeout(long unendedMinEventId) {
+      return emptyList();
+    }
+
+    @Override
+    public TxEvent findTimeoutEvent(String globalTxId, String localTxId) {
+      return null;
+    }
+
     @Override
     public TxEvent findTimeoutEventsBeforeEnding(String globalTxId) {
       return null;
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import org.apache.servicecomb.saga.common.EventType;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.apache.servicecomb.saga.common.EventType.SagaEndedEvent;
+import static org.apache.servicecomb.saga.common.EventType.SagaStartedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxEndedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class TxTimeoutWheelTest {
+  private static final long START_MS = 1000000L;
+
+  // 8 buckets of 100ms in the first level, so timeouts with seconds are held by overflow levels.
+  private final TxTimeoutWheel timeoutWheel = new TxTimeoutWheel(100, 8, START_MS);
+  private final String globalTxId = uniquify("globalTxId");
+
+  @Test
+  public void expiresEventsInOrderAcrossLevels() {
+    TxEvent event1 = eventOf(TxStartedEvent, uniquify("localTxId"), 1);
+    TxEvent event2 = eventOf(TxStartedEvent, uniquify("localTxId"), 10);
+    timeoutWheel.schedule(event2);
+    timeoutWheel.schedule(event1);
+
+    assertThat(timeoutWheel.advance(START_MS + 999), is(empty()));
+    assertThat(timeoutWheel.advance(START_MS + 1100), contains(event1));
+    assertThat(timeoutWheel.advance(START_MS + 9999), is(empty()));
+    assertThat(timeoutWheel.advance(START_MS + 10100), contains(event2));
+    assertThat(timeoutWheel.size(), is(0));
+  }
+
+  @Test
+  public void ignoresEventsWithoutTimeoutAndDuplicates() {
+    TxEvent event = eventOf(TxStartedEvent, uniquify("localTxId"), 1);
+
+    assertThat(timeoutWheel.schedule(eventOf(TxStartedEvent, uniquify("localTxId"), 0)), is(false));
+    assertThat(timeoutWheel.schedule(event), is(true));
+    assertThat(timeoutWheel.schedule(event), is(false));
+    assertThat(timeoutWheel.size(), is(1));
+  }
+
+  @Test
+  public void cancelsTimeoutAfterSubTxEnded() {
+    String localTxId = uniquify("localTxId");
+    timeoutWheel.onEventSaved(eventOf(TxStartedEvent, localTxId, 1));
+    timeoutWheel.onEventSaved(eventOf(TxEndedEvent, localTxId, 0));
+
+    assertThat(timeoutWheel.advance(START_MS + 5000), is(empty()));
+  }
+
+  @Test
+  public void cancelsAllTimeoutsAfterGlobalTxEnded() {
+    timeoutWheel.onEventSaved(eventOf(SagaStartedEvent, globalTxId, 5));
+    timeoutWheel.onEventSaved(eventOf(TxStartedEvent, uniquify("localTxId"), 2));
+    timeoutWheel.onEventSaved(eventOf(SagaEndedEvent, globalTxId, 0));
+
+    assertThat(timeoutWheel.size(), is(0));
+    assertThat(timeoutWheel.advance(START_MS + 10000), is(empty()));
+  }
+
+  @Test
+  public void expiresEventImmediatelyIfItIsAlreadyTimeout() {
+    TxEvent event = eventOf(TxStartedEvent, uniquify("localTxId"), 1);
+    timeoutWheel.advance(START_MS + 3000);
+    timeoutWheel.schedule(event);
+
+    List<TxEvent> expiredEvents = timeoutWheel.advance(START_MS + 3000);
+    assertThat(expiredEvents, contains(event));
+  }
+
+  private TxEvent eventOf(EventType eventType, String localTxId, int timeout) {
+    return new TxEvent(
+        uniquify("serviceName"),
+        uniquify("instanceId"),
+        new Date(START_MS),
+        globalTxId,
+        localTxId,
+        null,
+        eventType.name(),
+        "",
+        timeout,
+        "",
+        0,
+        "",
+        new byte[0]);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.listener;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PartitionedTaskExecutorTest {
+    private final PartitionedTaskExecutor executor = new PartitionedTaskExecutor("test", 4, 2);
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void executesTasksOfSameKeyInOrder() {
+        Map<String, Queue<Integer>> executed = new ConcurrentHashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            keys.add("globalTxId-" + i);
+            executed.put("globalTxId-" + i, new ConcurrentLinkedQueue<>());
+        }
+
+        for (int i = 0; i < 100; i++) {
+            int sequence = i;
+            for (String key : keys) {
+                executor.execute(key, () -> executed.get(key).add(sequence));
+            }
+        }
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> executed.values().stream().allMatch(sequences -> sequences.size() == 100));
+        for (Queue<Integer> sequences : executed.values()) {
+            int expected = 0;
+            for (Integer sequence : sequences) {
+                assertThat(sequence, is(expected++));
+            }
+        }
+    }
+
+    @Test
+    public void waitsForWorkerWhenQueueIsFull() throws InterruptedException {
+        String key = "globalTxId";
+        CountDownLatch release = new CountDownLatch(1);
+        Queue<Integer> executed = new ConcurrentLinkedQueue<>();
+        executor.execute(key, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        AtomicBoolean submitted = new AtomicBoolean(false);
+        Thread submitter = new Thread(() -> {
+            // more than the capacity of queue, and the worker is blocked by the first task.
+            for (int i = 0; i < 4; i++) {
+                int sequence = i;
+                executor.execute(key, () -> executed.add(sequence));
+            }
+            submitted.set(true);
+        });
+        submitter.start();
+
+        Thread.sleep(200);
+        assertThat(submitted.get(), is(false));
+        release.countDown();
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> executed.size() == 4);
+        assertThat(submitted.get(), is(true));
+    }
+
+    @Test
+    public void executesTasksBySubmitterAfterShutdown() {
+        executor.shutdown();
+
+        Queue<Thread> executedBy = new ConcurrentLinkedQueue<>();
+        executor.execute("globalTxId", () -> executedBy.add(Thread.currentThread()));
+
+        assertThat(executedBy.peek(), is(Thread.currentThread()));
+    }
+}
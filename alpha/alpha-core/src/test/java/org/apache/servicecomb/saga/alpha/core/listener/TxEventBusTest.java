@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.listener;
+
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TxEventBusTest {
+    private final TxEventBus eventBus = new TxEventBus(8);
+
+    @After
+    public void tearDown() {
+        eventBus.shutdown();
+    }
+
+    @Test
+    public void deliversNoticesToEverySubscriberInOrder() {
+        List<TxEventNotice> received1 = new ArrayList<>();
+        List<TxEventNotice> received2 = new ArrayList<>();
+        eventBus.subscribe("subscriber-1", received1::add);
+        eventBus.subscribe("subscriber-2", received2::add);
+        eventBus.start();
+
+        TxEvent event = someEvent();
+        TxEventNotice before = TxEventNotice.beforeSave(event);
+        event.setSurrogateId(10L);
+        TxEventNotice after = TxEventNotice.afterSave(event);
+        eventBus.publish(before);
+        eventBus.publish(after);
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> received1.size() == 2 && received2.size() == 2);
+        assertThat(received1, contains(before, after));
+        assertThat(received2, contains(before, after));
+        assertThat(received1.get(0).phase(), is(TxEventNotice.Phase.BEFORE_SAVE));
+        assertThat(received1.get(0).surrogateId() == null, is(true));
+        assertThat(received1.get(1).phase(), is(TxEventNotice.Phase.AFTER_SAVE));
+        assertThat(received1.get(1).surrogateId(), is(10L));
+    }
+
+    @Test
+    public void keepsConsumingAfterSubscriberFailed() {
+        Queue<TxEventNotice> received = new ConcurrentLinkedQueue<>();
+        eventBus.subscribe("failing", notice -> {
+            received.add(notice);
+            throw new IllegalStateException("oops");
+        });
+        eventBus.start();
+
+        eventBus.publish(TxEventNotice.beforeSave(someEvent()));
+        eventBus.publish(TxEventNotice.beforeSave(someEvent()));
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> received.size() == 2);
+    }
+
+    @Test
+    public void waitsForSlowSubscriberWhenBufferIsFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        Queue<TxEventNotice> received = new ConcurrentLinkedQueue<>();
+        eventBus.subscribe("slow", notice -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(notice);
+        });
+        eventBus.start();
+
+        int publishers = 4;
+        int noticesPerPublisher = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(publishers);
+        for (int i = 0; i < publishers; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < noticesPerPublisher; j++) {
+                    eventBus.publish(TxEventNotice.beforeSave(someEvent()));
+                }
+            });
+        }
+
+        // more notices than the buffer size, so publishers are blocked until the subscriber goes on.
+        Thread.sleep(200);
+        assertThat(received.isEmpty(), is(true));
+        release.countDown();
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> received.size() == publishers * noticesPerPublisher);
+        executor.shutdown();
+    }
+
+    @Test
+    public void rejectsSubscribingAfterStarting() {
+        eventBus.start();
+        try {
+            eventBus.subscribe("late", notice -> { });
+            fail("IllegalStateException is expected");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage().contains("late"), is(true));
+        }
+    }
+
+    private TxEvent someEvent() {
+        return new TxEvent(
+            uniquify("serviceName"),
+            uniquify("instanceId"),
+            uniquify("globalTxId"),
+            uniquify("localTxId"),
+            UUID.randomUUID().toString(),
+            TxStartedEvent.name(),
+            TxEventBusTest.class.getCanonicalName(),
+            "",
+            uniquify("blah").getBytes());
+    }
+}
@@ -6,21 +6,32 @@ package com.actionsky.txle.cache;
 
 import com.actionsky.txle.enums.GlobalTxStatus;
 import com.actionsky.txle.grpc.interfaces.ICustomRepository;
+import org.apache.servicecomb.saga.alpha.core.GlobalTxPauseWaiters;
+import org.apache.servicecomb.saga.alpha.core.GlobalTxStateRegistry;
 import org.apache.servicecomb.saga.alpha.core.TxleConsulClient;
 import org.apache.servicecomb.saga.common.ConfigCenterType;
 import org.apache.servicecomb.saga.common.CrossSystemInetAddress;
 import org.apache.servicecomb.saga.common.TxleConstants;
+import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.PostConstruct;
+import java.lang.invoke.MethodHandles;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TxleMysqlCache implements ITxleConsistencyCache {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
     @Autowired
     private ICustomRepository customRepository;
@@ -37,14 +48,49 @@ public class TxleMysqlCache implements ITxleConsistencyCache {
     @Autowired
     private TxleConsulClient consulClient;
 
+    // the status of live global transaction is held in memory too, so it must be updated after changing status cache.
+    @Autowired
+    private GlobalTxStateRegistry globalTxStateRegistry;
+
+    // the parked requests of paused global transactions are checked again after changing status cache or system config.
+    @Autowired
+    private GlobalTxPauseWaiters pauseWaiters;
+
     @Value("${server.port:8090}")
     private int serverPort;
 
+    @Value("${alpha.cache.near.enabled:true}")
+    private boolean nearCacheEnabled;
+
+    @Value("${alpha.cache.near.maxSize:100000}")
+    private int nearCacheMaxSize;
+
+    @Value("${alpha.cache.near.ttlMillis:30000}")
+    private long nearCacheTtlMillis;
+
+    @Value("${alpha.cache.near.peersRefreshMillis:10000}")
+    private long peersRefreshMillis;
+
+    /**
+     * 事务级缓存的本地近端缓存，未启用时为null，此时事务级缓存每次都从数据库读取
+     * 一致性保证：本节点修改或删除后，将键异步广播给其它节点，使其本地近端缓存失效
+     */
+    private TxleNearCache nearCache;
+    // the invalidations are merged by key before broadcasting.
+    private final Set<String> pendingInvalidations = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean invalidationScheduled = new AtomicBoolean();
+    private final ExecutorService invalidationExecutor = Executors.newSingleThreadExecutor(new TxleDefaultTheadFactory("txle-cache-invalidation-"));
+    private volatile Set<String> remoteNodes = Collections.emptySet();
+    private volatile long remoteNodesRefreshTime;
+
     private int sevenDaysSeconds = 604800;
     private long thirtyCenturySeconds = 32503654861000L;
 
     @PostConstruct
     void init() {
+        if (nearCacheEnabled) {
+            this.nearCache = new TxleNearCache(nearCacheMaxSize, nearCacheTtlMillis);
+        }
         new Thread(() -> this.resetLocalSystemConfigCache()).start();
     }
 
@@ -52,7 +98,7 @@ public class TxleMysqlCache implements ITxleConsistencyCache {
         return systemConfigCache;
     }
 
-    private void reloadRemoteNodesSystemConfigCache() {
+    private Set<String> getRemoteNodesIPAndPort() {
         Set<String> serversIPAndPort = consulClient.getServersIPAndPort();
         if (serversIPAndPort != null && !serversIPAndPort.isEmpty()) {
             try {
@@ -63,6 +109,13 @@ public class TxleMysqlCache implements ITxleConsistencyCache {
             } catch (UnknownHostException e) {
                 e.printStackTrace();
             }
+        }
+        return serversIPAndPort;
+    }
+
+    private void reloadRemoteNodesSystemConfigCache() {
+        Set<String> serversIPAndPort = getRemoteNodesIPAndPort();
+        if (serversIPAndPort != null && !serversIPAndPort.isEmpty()) {
             for (String ipPort : serversIPAndPort) {
                 boolean synCacheResult = restTemplate.getForObject("http://" + ipPort + "/resetLocalSystemConfigCache", Boolean.class);
                 if (!synCacheResult) {
@@ -75,6 +128,9 @@ public class TxleMysqlCache implements ITxleConsistencyCache {
     @Override
     public boolean resetLocalSystemConfigCache() {
         this.systemConfigCache.clear();
+        if (nearCache != null) {
+            nearCache.clear();
+        }
         List list = this.customRepository.executeQuery("SELECT * FROM KeyValueCache T");
         if (list != null && !list.isEmpty()) {
             list.forEach(obj -> {
@@ -85,6 +141,7 @@ public class TxleMysqlCache implements ITxleConsistencyCache {
                 }
             });
         }
+        pauseWaiters.wakeAll();
         return true;
     }
 
@@ -130,14 +187,20 @@ public class TxleMysqlCache implements ITxleConsistencyCache {
         // 系统级缓存直接从内存缓存中读取即可
         if (isSystemConfigKey(key)) {
             return this.systemConfigCache.get(key);
-        } else {
-            // 事务及缓存从数据库缓存读取
-            List list = this.customRepository.executeQuery("SELECT T.cachevalue FROM KeyValueCache T WHERE T.cachekey = ?", key);
-            if (list != null && !list.isEmpty()) {
-                Object value = list.get(0);
-                if (value != null) {
-                    return value.toString();
-                }
+        } else if (nearCache != null && key.startsWith(TxleConstants.TXLE_TX_KEY)) {
+            // 事务级缓存优先从本地近端缓存读取，未命中时再从数据库读取
+            return nearCache.get(key, this::selectValueByCacheKey);
+        }
+        return selectValueByCacheKey(key);
+    }
+
+    private String selectValueByCacheKey(String key) {
+        // 事务及缓存从数据库缓存读取
+        List list = this.customRepository.executeQuery("SELECT T.cachevalue FROM KeyValueCache T WHERE T.cachekey = ?", key);
+        if (list != null && !list.isEmpty()) {
+            Object value = list.get(0);
+            if (value != null) {
+                return value.toString();
             }
         }
         return null;
@@ -203,6 +266,11 @@ public class TxleMysqlCache implements ITxleConsistencyCache {
         boolean result = this.customRepository.executeUpdate("DELETE FROM KeyValueCache") > 0;
         if (result) {
             this.systemConfigCache.clear();
+            if (nearCache != null) {
+                nearCache.clear();
+            }
+            pauseWaiters.wakeAll();
+            // the remote nodes clear their near caches too while reloading system config cache.
             this.reloadRemoteNodesSystemConfigCache();
         }
         return result;
@@ -244,7 +312,7 @@ public class TxleMysqlCache implements ITxleConsistencyCache {
         Map<String, String> caches = this.getValueListByCacheKeyValue(keyPrefix, value);
         if (caches != null && !caches.isEmpty()) {
             boolean result = this.customRepository.executeUpdate("DELETE FROM KeyValueCache WHERE cachekey LIKE CONCAT('', ?, '%') AND cachevalue = ?", keyPrefix, value) > 0;
-            if (result && isSystemConfigKey(keyPrefix)) {
+            if (result) {
                 caches.keySet().forEach(key -> this.remove(key));
             }
             return result;
@@ -259,7 +327,15 @@ public class TxleMysqlCache implements ITxleConsistencyCache {
     private String put(String key, String value) {
         if (isSystemConfigKey(key)) {
             this.reloadRemoteNodesSystemConfigCache();
-            return this.systemConfigCache.put(key, value);
+            String oldValue = this.systemConfigCache.put(key, value);
+            pauseWaiters.wakeAll();
+            return oldValue;
+        }
+        this.putNearCache(key, value);
+        String globalTxId = TxleConstants.parseGlobalTxIdFromStatusCacheKey(key);
+        if (globalTxId != null) {
+            globalTxStateRegistry.onStatusChanged(globalTxId, value);
+            pauseWaiters.wake(globalTxId);
         }
         return null;
     }
@@ -267,13 +343,119 @@ public class TxleMysqlCache implements ITxleConsistencyCache {
     private String remove(String key) {
         if (isSystemConfigKey(key)) {
             this.reloadRemoteNodesSystemConfigCache();
-            return this.systemConfigCache.remove(key);
+            String oldValue = this.systemConfigCache.remove(key);
+            pauseWaiters.wakeAll();
+            return oldValue;
+        }
+        this.putNearCache(key, null);
+        String globalTxId = TxleConstants.parseGlobalTxIdFromStatusCacheKey(key);
+        if (globalTxId != null) {
+            globalTxStateRegistry.onStatusRemoved(globalTxId, null);
+            pauseWaiters.wake(globalTxId);
         }
         return null;
     }
 
+    private void putNearCache(String key, String value) {
+        if (nearCache != null && key.startsWith(TxleConstants.TXLE_TX_KEY)) {
+            nearCache.put(key, value, nearCache.nextVersion());
+            this.broadcastInvalidation(key);
+        }
+    }
+
+    // 异步广播，不阻塞当前写操作，广播失败时由近端缓存的过期时间兜底
+    private void broadcastInvalidation(String key) {
+        pendingInvalidations.add(key);
+        if (invalidationScheduled.compareAndSet(false, true)) {
+            invalidationExecutor.execute(this::sendInvalidations);
+        }
+    }
+
+    private void sendInvalidations() {
+        // reset the flag before draining, so that the invalidations added later would be sent by next task.
+        invalidationScheduled.set(false);
+        Set<String> keys = new HashSet<>();
+        for (String key : pendingInvalidations) {
+            if (pendingInvalidations.remove(key)) {
+                keys.add(key);
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        for (String ipPort : this.getCachedRemoteNodesIPAndPort()) {
+            try {
+                Boolean result = restTemplate.postForObject("http://" + ipPort + "/invalidateLocalTxCache", keys, Boolean.class);
+                if (result == null || !result) {
+                    LOG.warn("Failed to invalidate the local cache of node [{}], keys {}.", ipPort, keys);
+                }
+            } catch (Exception e) {
+                LOG.warn("Failed to invalidate the local cache of node [{}], keys {}.", ipPort, keys, e);
+            }
+        }
+    }
+
+    // the peers are read from consul at most once per 'peersRefreshMillis', because they're rarely changed.
+    private Set<String> getCachedRemoteNodesIPAndPort() {
+        long now = System.currentTimeMillis();
+        if (now - remoteNodesRefreshTime > peersRefreshMillis) {
+            try {
+                Set<String> serversIPAndPort = this.getRemoteNodesIPAndPort();
+                remoteNodes = serversIPAndPort == null ? Collections.emptySet() : serversIPAndPort;
+            } catch (Exception e) {
+                LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to read the alpha nodes from consul.", e);
+            }
+            remoteNodesRefreshTime = now;
+        }
+        return remoteNodes;
+    }
+
+    @Override
+    public boolean invalidateLocalTxCache(Set<String> keys) {
+        if (nearCache == null || keys == null) {
+            return true;
+        }
+        keys.forEach(key -> {
+            nearCache.invalidate(key);
+            // the status of live global transaction in memory is reloaded, because it was changed by other node.
+            String globalTxId = TxleConstants.parseGlobalTxIdFromStatusCacheKey(key);
+            if (globalTxId != null && globalTxStateRegistry.get(globalTxId) != null) {
+                String value = this.getValueByCacheKey(key);
+                if (value == null) {
+                    globalTxStateRegistry.onStatusRemoved(globalTxId, null);
+                } else {
+                    globalTxStateRegistry.onStatusChanged(globalTxId, value);
+                }
+            }
+            if (globalTxId != null) {
+                pauseWaiters.wake(globalTxId);
+            }
+        });
+        return true;
+    }
+
+    public void close() {
+        invalidationExecutor.shutdown();
+        try {
+            invalidationExecutor.awaitTermination(3, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     public void clearExpiredAndOverTxCache() {
-        this.customRepository.executeUpdate("DELETE FROM KeyValueCache WHERE expire < now() AND cachekey LIKE CONCAT('', ?, '%') AND cachevalue <> ?", TxleConstants.TXLE_TX_KEY, GlobalTxStatus.Paused.toString());
+        List list = null;
+        if (nearCache != null) {
+            list = this.customRepository.executeQuery("SELECT T.cachekey FROM KeyValueCache T WHERE T.expire < now() AND T.cachekey LIKE CONCAT('', ?, '%') AND T.cachevalue <> ?", TxleConstants.TXLE_TX_KEY, GlobalTxStatus.Paused.toString());
+        }
+        boolean result = this.customRepository.executeUpdate("DELETE FROM KeyValueCache WHERE expire < now() AND cachekey LIKE CONCAT('', ?, '%') AND cachevalue <> ?", TxleConstants.TXLE_TX_KEY, GlobalTxStatus.Paused.toString()) > 0;
+        if (result && list != null) {
+            // the deleted keys are invalidated rather than cached as absent, because some of them may be set again after selecting.
+            list.forEach(key -> {
+                nearCache.invalidate(key + "");
+                this.broadcastInvalidation(key + "");
+            });
+        }
     }
 
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018-2020 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+package com.actionsky.txle.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 事务级缓存(TXLE_TX_KEY)的本地近端缓存，数据表KeyValueCache仍是唯一数据源，本地仅缓存读取结果(包括不存在的键)
+ * 一致性保证：每次修改都会广播给集群其它节点，节点收到后无条件使本地缓存失效；版本号仅在本节点内比较，不依赖各节点时钟
+ * 读取时若在加载期间收到了失效通知，则加载结果不会写入缓存，避免旧值覆盖新值；另外每项都有过期时间，用来兜底广播失败的情况
+ *
+ * @author Gannalyo
+ * @since 2020/3/3
+ */
+class TxleNearCache {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final int maxSize;
+    private final long ttlMillis;
+
+    TxleNearCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return a new version which is greater than all of versions generated by current node, it's never compared with the versions of other nodes.
+     */
+    long nextVersion() {
+        return clock.incrementAndGet();
+    }
+
+    String get(String key, Function<String, String> loader) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.loaded && entry.expireTime > now) {
+            return entry.value;
+        }
+
+        long version = entry == null ? 0 : entry.version;
+        String value = loader.apply(key);
+        if (entries.size() >= maxSize) {
+            evictExpiredEntries(now);
+        }
+        if (entries.size() < maxSize) {
+            Entry loadedEntry = new Entry(value, version, true, now + ttlMillis);
+            // it's not cached if some invalidation arrived while loading.
+            entries.compute(key, (k, current) -> current == null ? (version == 0 ? loadedEntry : null) : (current.version == version ? loadedEntry : current));
+        }
+        return value;
+    }
+
+    /**
+     * It's called after the value was written to database by current node.
+     */
+    void put(String key, String value, long version) {
+        Entry newEntry = new Entry(value, version, true, System.currentTimeMillis() + ttlMillis);
+        entries.merge(key, newEntry, (current, entry) -> current.version > entry.version ? current : entry);
+    }
+
+    /**
+     * It's called after the value was written by other node, the local entry is invalidated unconditionally.
+     */
+    void invalidate(String key) {
+        // the tombstone has a newer version, so the loadings and puts which started before would be ignored.
+        entries.put(key, new Entry(null, nextVersion(), false, System.currentTimeMillis() + ttlMillis));
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void evictExpiredEntries(long now) {
+        entries.values().removeIf(entry -> entry.expireTime <= now);
+    }
+
+    private static final class Entry {
+        private final String value;
+        private final long version;
+        private final boolean loaded;
+        private final long expireTime;
+
+        private Entry(String value, long version, boolean loaded, long expireTime) {
+            this.value = value;
+            this.version = version;
+            this.loaded = loaded;
+            this.expireTime = expireTime;
+        }
+    }
+}
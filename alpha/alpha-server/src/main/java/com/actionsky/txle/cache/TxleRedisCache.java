@@ -7,6 +7,7 @@ package com.actionsky.txle.cache;
 import org.apache.servicecomb.saga.common.ConfigCenterType;
 
 import java.util.Map;
+import java.util.Set;
 
 public class TxleRedisCache implements ITxleConsistencyCache {
 
@@ -20,6 +21,11 @@ public class TxleRedisCache implements ITxleConsistencyCache {
         return false;
     }
 
+    @Override
+    public boolean invalidateLocalTxCache(Set<String> keys) {
+        return true;
+    }
+
     @Override
     public boolean setKeyValueCache(String key, String value) {
         return false;
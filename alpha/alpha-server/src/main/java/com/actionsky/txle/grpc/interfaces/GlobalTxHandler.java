@@ -13,13 +13,16 @@ import com.actionsky.txle.exception.ExceptionFaultTolerance;
 import com.actionsky.txle.grpc.*;
 import com.actionsky.txle.grpc.interfaces.eventaddition.ITxEventAdditionService;
 import com.actionsky.txle.grpc.interfaces.eventaddition.TxEventAddition;
-import io.grpc.stub.StreamObserver;
+import org.apache.servicecomb.saga.alpha.core.GlobalTxPauseWaiters;
+import org.apache.servicecomb.saga.alpha.core.GlobalTxState;
+import org.apache.servicecomb.saga.alpha.core.GlobalTxStateRegistry;
 import org.apache.servicecomb.saga.alpha.core.TxConsistentService;
 import org.apache.servicecomb.saga.alpha.core.TxEvent;
 import org.apache.servicecomb.saga.alpha.core.TxEventRepository;
 import org.apache.servicecomb.saga.alpha.core.accidenthandling.AccidentHandleType;
 import org.apache.servicecomb.saga.alpha.core.accidenthandling.AccidentHandling;
 import org.apache.servicecomb.saga.alpha.core.accidenthandling.IAccidentHandlingService;
+import org.apache.servicecomb.saga.alpha.server.GrpcPausedCalls;
 import org.apache.servicecomb.saga.common.ConfigCenterType;
 import org.apache.servicecomb.saga.common.EventType;
 import org.apache.servicecomb.saga.common.TxleConstants;
@@ -30,6 +33,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.Resource;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -62,13 +66,25 @@ public class GlobalTxHandler {
     @Autowired
     private ITxleConsistencyCache consistencyCache;
 
+    @Autowired
+    private GlobalTxStateRegistry globalTxStateRegistry;
+
+    @Autowired
+    private GlobalTxPauseWaiters pauseWaiters;
+
+    @Autowired
+    private TxRetryScheduler retryScheduler;
+
+    @Autowired
+    private TxleServerStreamRegistry streamRegistry;
+
     private final ExecutorService executorService = Executors.newFixedThreadPool(3, new TxleDefaultTheadFactory("txle-rpc-txhandler-"));
 
     public boolean checkIsExistsGlobalTx(String globalTxId) {
         return this.getGlobalTxCache(globalTxId) != null;
     }
 
-    public void checkTimeout(StreamObserver<TxleGrpcServerStream> serverStreamObserver) {
+    public void checkTimeout() {
 //        try {
 //            List<String> unendedGlobalTxIds = txleEhCache.getKeys(TxleCacheType.GLOBALTX);
 //            if (unendedGlobalTxIds != null && !unendedGlobalTxIds.isEmpty()) {
@@ -83,7 +99,7 @@ public class GlobalTxHandler {
 //                        returnClientStream.addExecuteSql(executeSqlInfo);
 //                    });
 //
-//                    serverStreamObserver.onNext(returnClientStream.build());
+//                    streamRegistry.send(null, returnClientStream.getExecuteSqlList());
 //                }
 //            }
 //        } catch (Exception e) {
@@ -148,9 +164,11 @@ public class GlobalTxHandler {
     public boolean checkIsNeedCompensate(TxleTransactionEnd tx, TxleTxEndAck.Builder endAck, List<TxleSubTransactionEnd> abnormalSubTxList) {
         boolean isNeedCompensate = false;
         try {
-            if (GlobalTxStatus.Aborted.toString().equals(consistencyCache.getValueByCacheKey(TxleConstants.constructTxStatusCacheKey(tx.getGlobalTxId()))) || endAck.getStatus().ordinal() == TxleTxEndAck.TransactionStatus.ABORTED.ordinal()) {
+            GlobalTxState state = globalTxStateRegistry.get(tx.getGlobalTxId());
+            if (GlobalTxStatus.Aborted.toString().equals(getTxStatus(tx.getGlobalTxId(), state)) || endAck.getStatus().ordinal() == TxleTxEndAck.TransactionStatus.ABORTED.ordinal()) {
                 return true;
             }
+            // some events may be saved by other nodes, so they are queried from database.
             List<TxEvent> eventList = eventRepository.selectTxEventByGlobalTxIds(Arrays.asList(tx.getGlobalTxId()));
             if (eventList == null || eventList.isEmpty()) {
                 String cause = "Empty transaction for global transaction [" + tx.getGlobalTxId() + "].";
@@ -172,7 +190,7 @@ public class GlobalTxHandler {
                 }
 
                 // global tx aborted
-                String value = consistencyCache.getValueByCacheKey(TxleConstants.constructTxStatusCacheKey(tx.getGlobalTxId()));
+                String value = getTxStatus(tx.getGlobalTxId(), state);
                 if (value != null && TxleTxStartAck.TransactionStatus.valueOf(value.toUpperCase()).ordinal() == TxleTxStartAck.TransactionStatus.ABORTED.ordinal()) {
                     isNeedCompensate = true;
                 }
@@ -184,7 +202,15 @@ public class GlobalTxHandler {
         return isNeedCompensate;
     }
 
-    public void compensateInStartingTx(TxleTransactionStart tx, TxleTxStartAck.Builder startAck, StreamObserver<TxleGrpcServerStream> serverStreamObserver) {
+    // the state in memory only knows the changes of current node, so only its abort is trusted, otherwise the shared cache is read.
+    private String getTxStatus(String globalTxId, GlobalTxState state) {
+        if (state != null && state.isAborted()) {
+            return GlobalTxStatus.Aborted.toString();
+        }
+        return consistencyCache.getValueByCacheKey(TxleConstants.constructTxStatusCacheKey(globalTxId));
+    }
+
+    public void compensateInStartingTx(TxleTransactionStart tx, TxleTxStartAck.Builder startAck) {
         try {
             startAck.setStatus(TxleTxStartAck.TransactionStatus.ABORTED);
             // search ended sub-txs in reverse order
@@ -193,7 +219,7 @@ public class GlobalTxHandler {
                 TxleGrpcServerStream.Builder serverStream = TxleGrpcServerStream.newBuilder();
                 // send compensation sqls to client and will be executed in order by client
                 eventAdditions.forEach(subTx -> compensate(tx.getGlobalTxId(), subTx, serverStream));
-                serverStreamObserver.onNext(serverStream.build());
+                sendToClient(tx.getGlobalTxId(), TxleConstants.getServiceInstanceId(tx.getServiceName(), tx.getServiceIP()), serverStream);
             }
         } catch (Exception e) {
             LOG.error("Failed to compensate for global transaction. id = {}", tx.getGlobalTxId(), e);
@@ -204,7 +230,7 @@ public class GlobalTxHandler {
     }
 
     // compensation conditions: timeout, or abnormal sub-txs which have no more retry times.
-    public void compensateInEndingTx(TxleTransactionEnd tx, StreamObserver<TxleGrpcServerStream> serverStreamObserver, List<TxleSubTransactionEnd> abnormalSubTxList) {
+    public void compensateInEndingTx(TxleTransactionEnd tx, List<TxleSubTransactionEnd> abnormalSubTxList) {
         Set<String> abnormalLocalTxIdSet = new HashSet<>();
         try {
             abnormalSubTxList.forEach(subTx -> abnormalLocalTxIdSet.add(subTx.getLocalTxId()));
@@ -219,7 +245,7 @@ public class GlobalTxHandler {
                         compensate(tx.getGlobalTxId(), subTx, serverStream);
                     }
                 });
-                serverStreamObserver.onNext(serverStream.build());
+                sendToClient(tx.getGlobalTxId(), getInstanceId(tx.getGlobalTxId()), serverStream);
             }
         } catch (Exception e) {
             LOG.error("Failed to compensate for global transaction. id = {}", tx.getGlobalTxId(), e);
@@ -227,6 +253,17 @@ public class GlobalTxHandler {
         }
     }
 
+    private void sendToClient(String globalTxId, String instanceId, TxleGrpcServerStream.Builder serverStream) {
+        if (serverStream.getExecuteSqlCount() > 0 && !streamRegistry.send(instanceId, serverStream.getExecuteSqlList())) {
+            throw new RuntimeException("Failed to send compensation sqls to client. globalTxId = " + globalTxId);
+        }
+    }
+
+    private String getInstanceId(String globalTxId) {
+        ClientGlobalTxCache txCache = this.getGlobalTxCache(globalTxId);
+        return txCache == null ? null : txCache.getInstanceId();
+    }
+
     private void compensate(String globalTxId, TxEventAddition subTx, TxleGrpcServerStream.Builder serverStream) {
         TxleServerExecuteSql.Builder executeSqlInfo = TxleServerExecuteSql.newBuilder();
         executeSqlInfo.setDbNodeId(subTx.getDbNodeId())
@@ -270,7 +307,12 @@ public class GlobalTxHandler {
         }
     }
 
-    public boolean retry(TxleTransactionEnd tx, TxleTxEndAck.Builder endAck, StreamObserver<TxleGrpcServerStream> serverStreamObserver) {
+    /**
+     * Retry the failed sub-transactions one by one, the result of every retry is sent back by client asynchronously.
+     *
+     * @return a future which is completed with true if all of retries are successful, no thread is held while waiting for it.
+     */
+    public CompletableFuture<Boolean> retry(TxleTransactionEnd tx, TxleTxEndAck.Builder endAck) {
         try {
             consistencyCache.setKeyValueCache(TxleConstants.constructTxStatusCacheKey(tx.getGlobalTxId()), Paused.toString());
             endAck.setStatus(TxleTxEndAck.TransactionStatus.PAUSED);
@@ -293,6 +335,9 @@ public class GlobalTxHandler {
                     LinkedHashMap<String, TxEventAddition> subTxEventAddition = new LinkedHashMap<>();
                     eventAdditions.forEach(subTx -> subTxEventAddition.put(subTx.getLocalTxId(), subTx));
 
+                    String instanceId = txCache == null ? null : txCache.getInstanceId();
+                    CompletableFuture<Boolean> retryResult = CompletableFuture.completedFuture(true);
+
                     for (TxleSubTransactionEnd subTx : tx.getSubTxInfoList()) {
                         if (!subTx.getIsSuccessful()) {
                             TxEvent subStartedEvent = subStartedEventList.get(subTx.getLocalTxId());
@@ -314,51 +359,55 @@ public class GlobalTxHandler {
                                         .setMethod("retry");
                                 serverStream.addExecuteSql(executeSqlInfo.build()).build();
 
-                                if (!tryAgainUntilSuccessOrOvertime(eventAddition.getLocalTxId(), subStartedEvent, serverStreamObserver, serverStream)) {
-                                    endAck.setStatus(TxleTxEndAck.TransactionStatus.ABORTED);
-                                    return false;
-                                }
+                                // the next sub-tx is retried after the previous one was successful
+                                retryResult = retryResult.thenCompose(successful -> successful ? tryAgainUntilSuccessOrOvertime(eventAddition.getLocalTxId(), subStartedEvent, instanceId, serverStream, 0) : CompletableFuture.completedFuture(false));
                             }
                         }
                     }
-                    // reset to RUNNING status after retrying successfully
-                    endAck.setStatus(TxleTxEndAck.TransactionStatus.RUNNING);
-                    consistencyCache.delete(TxleConstants.constructTxStatusCacheKey(tx.getGlobalTxId()));
-                    return true;
+                    return retryResult.handle((successful, e) -> {
+                        if (e != null || !successful) {
+                            endAck.setStatus(TxleTxEndAck.TransactionStatus.ABORTED);
+                            if (e != null) {
+                                LOG.error("Failed to retry for global transaction. id = {}", tx.getGlobalTxId(), e);
+                            }
+                            return false;
+                        }
+                        // reset to RUNNING status after retrying successfully
+                        endAck.setStatus(TxleTxEndAck.TransactionStatus.RUNNING);
+                        consistencyCache.delete(TxleConstants.constructTxStatusCacheKey(tx.getGlobalTxId()));
+                        return true;
+                    });
                 }
             }
         } catch (Exception e) {
             endAck.setStatus(TxleTxEndAck.TransactionStatus.ABORTED);
             LOG.error("Failed to retry for global transaction. id = {}", tx.getGlobalTxId(), e);
         }
-        return false;
+        return CompletableFuture.completedFuture(false);
     }
 
     // retries == -1, retry forever until success or timeout
     // retries > 0, retry for retries times until success or timeout
     // retry logic: listen retry result continually, once failure and no more retries, or timeout, then terminate retry immediately for all sub-txs, and compensate
-    // if the last retry result exists and it's failed, then execute the next retry, so that guarantee idempotence
-    private boolean tryAgainUntilSuccessOrOvertime(String localTxId, TxEvent subStartedEvent, StreamObserver<TxleGrpcServerStream> serverStreamObserver, TxleGrpcServerStream.Builder serverStream) {
-        if (subStartedEvent.retries() == -1) {
-            while (true) {
-                if (doRetry(localTxId, subStartedEvent, serverStreamObserver, serverStream)) {
-                    return true;
-                }
-            }
-        } else {
-            for (int i = 0; i < subStartedEvent.retries(); i++) {
-                if (doRetry(localTxId, subStartedEvent, serverStreamObserver, serverStream)) {
-                    return true;
-                }
-            }
+    // the next retry is executed after the result of the last retry was received, so that guarantee idempotence
+    private CompletableFuture<Boolean> tryAgainUntilSuccessOrOvertime(String localTxId, TxEvent subStartedEvent, String instanceId, TxleGrpcServerStream.Builder serverStream, int attempt) {
+        if (subStartedEvent.retries() != -1 && subStartedEvent.retries() <= 0) {
+            return CompletableFuture.completedFuture(false);
         }
-        return false;
+        return doRetry(localTxId, subStartedEvent, instanceId, serverStream).thenCompose(successful -> {
+            if (successful) {
+                return CompletableFuture.completedFuture(true);
+            }
+            return retryScheduler.backoff(attempt).thenCompose(v -> tryAgainUntilSuccessOrOvertime(localTxId, subStartedEvent, instanceId, serverStream, attempt + 1));
+        });
     }
 
-    private boolean doRetry(String localTxId, TxEvent subStartedEvent, StreamObserver<TxleGrpcServerStream> serverStreamObserver, TxleGrpcServerStream.Builder serverStream) {
+    private CompletableFuture<Boolean> doRetry(String localTxId, TxEvent subStartedEvent, String instanceId, TxleGrpcServerStream.Builder serverStream) {
         // timeout will throw an exception under retry circumstance
         if (new Date().compareTo(subStartedEvent.expiryTime()) > 0) {
-            throw new RuntimeException("Current global transaction was overtime. globalTxId = " + subStartedEvent.globalTxId());
+            CompletableFuture<Boolean> overtime = new CompletableFuture<>();
+            overtime.completeExceptionally(new RuntimeException("Current global transaction was overtime. globalTxId = " + subStartedEvent.globalTxId()));
+            return overtime;
         }
 
         // start current retry
@@ -368,29 +417,22 @@ public class GlobalTxHandler {
         }
         txConsistentService.registerSubTx(subStartedEvent, null);
 
-        // do retry by sending sqls- to client
-        serverStreamObserver.onNext(serverStream.build());
+        // the future is completed by the result from client, it must be registered before sending.
+        CompletableFuture<Boolean> retryResult = retryScheduler.awaitResult(subStartedEvent.globalTxId(), localTxId, subStartedEvent.expiryTime().getTime());
 
-        try {
-            Thread.sleep(500);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        // do retry by sending sqls- to client, it's failed directly if no client can receive it
+        if (!streamRegistry.send(instanceId, serverStream.getExecuteSqlList())) {
+            retryScheduler.completeResult(subStartedEvent.globalTxId(), localTxId, false);
         }
 
-        // *** record result after retrying, if the number of starting tx is equals to the abort's, then can try it again. avoid to find all data in case of trying forever
-        while (true) {
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            if (eventRepository.checkIsAlreadyRetried(subStartedEvent.globalTxId(), localTxId)) {
-                break;
+        return retryResult.thenApply(successful -> {
+            if (successful != null) {
+                return successful;
             }
-        }
-
-        // 'TxEndedEvent' represents success
-        return eventRepository.checkIsExistsEventType(subStartedEvent.globalTxId(), localTxId, TxEndedEvent.name());
+            // no result before timeout, e.g. the stream was broken. verify by database at last, 'TxEndedEvent' represents success
+            return eventRepository.checkIsAlreadyRetried(subStartedEvent.globalTxId(), localTxId)
+                    && eventRepository.checkIsExistsEventType(subStartedEvent.globalTxId(), localTxId, TxEndedEvent.name());
+        });
     }
 
     private void timeoutChecking(boolean isCanOver, TxEvent subStartedEvent) {
@@ -435,8 +477,8 @@ public class GlobalTxHandler {
                 return false;
             }
 
-            // 检测当前全局事务是否暂停：如果暂停则进入循环，等待一定时间，再检测暂停，如果未获取到值/异常/终止均跳出循环，若暂停则不设置继续执行循环
-            TxleTxStartAck.TransactionStatus txStatus = checkTxStatus(txCache.getInstanceId(), tx.getServiceCategory(), tx.getGlobalTxId());
+            // 检测当前全局事务的状态，暂停已在runWhenResumed中等待过，此处无需等待
+            TxleTxStartAck.TransactionStatus txStatus = checkTxStatus(tx.getGlobalTxId());
             if (TxleTxStartAck.TransactionStatus.RUNNING.ordinal() != txStatus.ordinal()) {
                 startAck.setStatus(txStatus);
                 return false;
@@ -448,22 +490,40 @@ public class GlobalTxHandler {
         return true;
     }
 
-    private TxleTxStartAck.TransactionStatus checkTxStatus(String instanceId, String category, String globalTxId) throws Exception {
-        // 是否暂停所有
-        boolean paused = this.consistencyCache.getBooleanValue(instanceId, category, ConfigCenterType.PauseGlobalTx);
-        // 当前全局事务是否暂停
-        String statusCacheValue = this.consistencyCache.getValueByCacheKey(TxleConstants.constructTxStatusCacheKey(globalTxId));
-        while (paused || (statusCacheValue != null && Paused.toString().equals(statusCacheValue))) {
-//                Thread.sleep(TxleStaticConfig.getIntegerConfig("txle.transaction.pause-check-interval", 60)  * 1000);
-            Thread.sleep(60 * 1000);
-            paused = this.consistencyCache.getBooleanValue(instanceId, category, ConfigCenterType.PauseGlobalTx);
-            statusCacheValue = this.consistencyCache.getValueByCacheKey(TxleConstants.constructTxStatusCacheKey(globalTxId));
-            if (statusCacheValue != null) {
-                if (GlobalTxStatus.valueOf(statusCacheValue.toUpperCase()).ordinal() == Aborted.ordinal()) {
-                    break;
-                }
+    /**
+     * Run the continuation immediately if the global transaction is not paused, otherwise, park it until resuming without holding current thread.
+     *
+     * @param globalTxId   global transaction identify
+     * @param continuation the remaining handling of the request, it must reply to client itself
+     */
+    public void runWhenResumed(String globalTxId, Runnable continuation) {
+        ClientGlobalTxCache txCache = this.getGlobalTxCache(globalTxId);
+        String instanceId = txCache == null ? null : txCache.getInstanceId();
+        String category = txCache == null ? null : txCache.getServiceCategory();
+        // the parked request is removed once its gRPC call is cancelled.
+        GrpcPausedCalls.runWhenResumed(pauseWaiters, globalTxId, () -> isTxPaused(instanceId, category, globalTxId), continuation);
+    }
+
+    // 是否暂停所有或当前全局事务是否暂停，已降级或已终止的全局事务无需等待
+    private boolean isTxPaused(String instanceId, String category, String globalTxId) {
+        try {
+            if (!consistencyCache.getBooleanValue(instanceId, category, ConfigCenterType.GlobalTx)) {
+                return false;
+            }
+            String statusCacheValue = getTxStatus(globalTxId, globalTxStateRegistry.get(globalTxId));
+            if (statusCacheValue != null && GlobalTxStatus.valueOf(statusCacheValue.toUpperCase()).ordinal() == Aborted.ordinal()) {
+                return false;
             }
+            return Paused.toString().equals(statusCacheValue) || this.consistencyCache.getBooleanValue(instanceId, category, ConfigCenterType.PauseGlobalTx);
+        } catch (Exception e) {
+            LOG.error("Failed to check whether global transaction is paused. globalTxId = {}", globalTxId, e);
         }
+        return false;
+    }
+
+    // the pause was already waited in 'runWhenResumed', so it just reads current status.
+    private TxleTxStartAck.TransactionStatus checkTxStatus(String globalTxId) {
+        String statusCacheValue = getTxStatus(globalTxId, globalTxStateRegistry.get(globalTxId));
         TxleTxStartAck.TransactionStatus status = TxleTxStartAck.TransactionStatus.RUNNING;
         if (statusCacheValue != null) {
             status = TxleTxStartAck.TransactionStatus.valueOf(statusCacheValue.toUpperCase());
@@ -483,9 +543,7 @@ public class GlobalTxHandler {
                 return false;
             }
 
-            // 检测当前全局事务是否暂停：如果暂停则进入循环，等待一定时间，再检测暂停，如果未获取到值/异常/终止均跳出循环，若暂停则不设置继续执行循环
-            checkTxStatus(instanceId, category, tx.getGlobalTxId());
-
+            // the pause was already waited in 'runWhenResumed'
             // in end tx interface, need to compensate/retry/end if an abort occurs, so do not return false
         } catch (Exception e) {
             String cause = "Failed to verify before ending. globalTxId = " + tx.getGlobalTxId();
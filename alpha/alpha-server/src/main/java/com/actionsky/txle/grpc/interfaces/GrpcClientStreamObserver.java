@@ -5,6 +5,7 @@
 
 package com.actionsky.txle.grpc.interfaces;
 
+import com.actionsky.txle.grpc.TxleClientConfig;
 import com.actionsky.txle.grpc.TxleClientSqlResult;
 import com.actionsky.txle.grpc.TxleGrpcClientStream;
 import io.grpc.stub.StreamObserver;
@@ -15,6 +16,7 @@ import org.apache.servicecomb.saga.alpha.core.accidenthandling.AccidentHandleTyp
 import org.apache.servicecomb.saga.alpha.core.accidenthandling.AccidentHandling;
 import org.apache.servicecomb.saga.alpha.core.accidenthandling.IAccidentHandlingService;
 import org.apache.servicecomb.saga.common.EventType;
+import org.apache.servicecomb.saga.common.TxleConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,19 +28,34 @@ class GrpcClientStreamObserver implements StreamObserver<TxleGrpcClientStream> {
     private final IAccidentHandlingService accidentHandlingService;
     private final TxEventRepository eventRepository;
     private TxConsistentService txConsistentService;
+    private final TxRetryScheduler retryScheduler;
+    private final TxleServerStreamRegistry streamRegistry;
+    private final TxleServerStreamRegistry.ClientStream stream;
 
-    GrpcClientStreamObserver(IAccidentHandlingService accidentHandlingService, TxEventRepository eventRepository, TxConsistentService txConsistentService) {
+    GrpcClientStreamObserver(IAccidentHandlingService accidentHandlingService, TxEventRepository eventRepository, TxConsistentService txConsistentService, TxRetryScheduler retryScheduler,
+                             TxleServerStreamRegistry streamRegistry, TxleServerStreamRegistry.ClientStream stream) {
         this.accidentHandlingService = accidentHandlingService;
         this.eventRepository = eventRepository;
         this.txConsistentService = txConsistentService;
+        this.retryScheduler = retryScheduler;
+        this.streamRegistry = streamRegistry;
+        this.stream = stream;
     }
 
     @Override
     public void onNext(TxleGrpcClientStream clientStream) {
         try {
+            if (clientStream.hasClientConfig()) {
+                TxleClientConfig clientConfig = clientStream.getClientConfig();
+                streamRegistry.bind(this.stream, TxleConstants.getServiceInstanceId(clientConfig.getServiceName(), clientConfig.getServiceIP()), clientConfig.getDbNodeIdList());
+            }
+            if (clientStream.getSqlResultCount() == 0) {
+                return;
+            }
             LOG.info("Received retry/compensation sql result from client. " + System.nanoTime());
 
             clientStream.getSqlResultList().forEach(feedback -> {
+                this.stream.addDbNodeId(feedback.getDbNodeId());
                 /**
                  * 处理补偿/重试反馈结果
                  *
@@ -78,14 +95,19 @@ class GrpcClientStreamObserver implements StreamObserver<TxleGrpcClientStream> {
         subEvent.setExpiryTime(new Date(TxEvent.MAX_TIMESTAMP));
         subEvent.setType(feedback.getIsExecutedOK() ? EventType.TxEndedEvent.name() : EventType.TxAbortedEvent.name());
         txConsistentService.registerSubTx(subEvent, null);
+        // 结果登记后再通知等待中的重试，由其决定结束重试或者进行下一次重试
+        retryScheduler.completeResult(feedback.getGlobalTxId(), feedback.getLocalTxId(), feedback.getIsExecutedOK());
     }
 
     @Override
     public void onError(Throwable t) {
+        streamRegistry.unregister(stream);
     }
 
     @Override
     public void onCompleted() {
+        streamRegistry.unregister(stream);
+        stream.complete();
     }
 
 }
@@ -30,8 +30,6 @@ import java.util.Map;
 public class GrpcTransactionEndpoint extends TxleTransactionServiceGrpc.TxleTransactionServiceImplBase {
     private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-    private StreamObserver<TxleGrpcServerStream> serverStreamObserver;
-
     private GlobalTxHandler globalTxHandler;
     private CompensateService compensateService;
     private ITxleEhCache txleEhCache;
@@ -40,9 +38,12 @@ public class GrpcTransactionEndpoint extends TxleTransactionServiceGrpc.TxleTran
     private TxEventRepository eventRepository;
     private TxConsistentService txConsistentService;
     private IBusinessDBLatestDetailService businessDBLatestDetailService;
+    private TxRetryScheduler retryScheduler;
+    private TxleServerStreamRegistry streamRegistry;
 
     public GrpcTransactionEndpoint(GlobalTxHandler globalTxHandler, CompensateService compensateService, ITxleEhCache txleEhCache, ITxleConsistencyCache consistencyCache, IAccidentHandlingService accidentHandlingService, TxEventRepository eventRepository,
-                                   TxConsistentService txConsistentService, IBusinessDBLatestDetailService businessDBLatestDetailService) {
+                                   TxConsistentService txConsistentService, IBusinessDBLatestDetailService businessDBLatestDetailService, TxRetryScheduler retryScheduler,
+                                   TxleServerStreamRegistry streamRegistry) {
         this.globalTxHandler = globalTxHandler;
         this.compensateService = compensateService;
         this.txleEhCache = txleEhCache;
@@ -51,6 +52,8 @@ public class GrpcTransactionEndpoint extends TxleTransactionServiceGrpc.TxleTran
         this.eventRepository = eventRepository;
         this.txConsistentService = txConsistentService;
         this.businessDBLatestDetailService = businessDBLatestDetailService;
+        this.retryScheduler = retryScheduler;
+        this.streamRegistry = streamRegistry;
     }
 
     @Override
@@ -74,27 +77,39 @@ public class GrpcTransactionEndpoint extends TxleTransactionServiceGrpc.TxleTran
 
     @Override
     public StreamObserver<TxleGrpcClientStream> onBuildBidirectionalStream(StreamObserver<TxleGrpcServerStream> serverStreamObserver) {
-        this.serverStreamObserver = serverStreamObserver;
-        globalTxHandler.checkTimeout(serverStreamObserver);
-        return new GrpcClientStreamObserver(accidentHandlingService, eventRepository, txConsistentService);
+        // every client has its own stream, the retry/compensation sqls are sent to the client which the global transaction belongs to.
+        TxleServerStreamRegistry.ClientStream clientStream = streamRegistry.register(serverStreamObserver);
+        globalTxHandler.checkTimeout();
+        return new GrpcClientStreamObserver(accidentHandlingService, eventRepository, txConsistentService, retryScheduler, streamRegistry, clientStream);
     }
 
     @Override
     public void onStartTransaction(TxleTransactionStart tx, StreamObserver<TxleTxStartAck> startAckStreamObserver) {
-        TxleTxStartAck.Builder startAck = TxleTxStartAck.newBuilder().setStatus(TxleTxStartAck.TransactionStatus.RUNNING);
+        if (tx == null) {
+            LOG.info("TXLE start tx interface received the client request, parameter 1 is empty.");
+            startAckStreamObserver.onNext(TxleTxStartAck.newBuilder().setStatus(TxleTxStartAck.TransactionStatus.ABORTED).setMessage("Empty transaction object for parameter 1.").build());
+            startAckStreamObserver.onCompleted();
+            return;
+        }
+        LOG.info("TXLE start tx interface received the client request, globalTxId = {}.", tx.getGlobalTxId());
         try {
-            if (tx == null) {
-                LOG.info("TXLE start tx interface received the client request, parameter 1 is empty.");
-                startAck.setStatus(TxleTxStartAck.TransactionStatus.ABORTED).setMessage("Empty transaction object for parameter 1.");
-                return;
-            }
-            LOG.info("TXLE start tx interface received the client request, globalTxId = {}.", tx.getGlobalTxId());
-
             // check if current tx exists
             boolean isExistsGlobalTx = globalTxHandler.checkIsExistsGlobalTx(tx.getGlobalTxId());
 
             txleEhCache.put(TxleCacheType.GLOBALTX, tx.getGlobalTxId(), new ClientGlobalTxCache(tx));
 
+            // the request is parked without holding current thread while the global transaction is paused, and it's continued after resuming.
+            globalTxHandler.runWhenResumed(tx.getGlobalTxId(), () -> startTransaction(tx, isExistsGlobalTx, startAckStreamObserver));
+        } catch (Exception e) {
+            LOG.error("Failed to start global transaction [{}].", tx.getGlobalTxId(), e);
+            startAckStreamObserver.onNext(TxleTxStartAck.newBuilder().setStatus(TxleTxStartAck.TransactionStatus.ABORTED).setMessage("Failed to start global transaction [" + tx.getGlobalTxId() + "].").build());
+            startAckStreamObserver.onCompleted();
+        }
+    }
+
+    private void startTransaction(TxleTransactionStart tx, boolean isExistsGlobalTx, StreamObserver<TxleTxStartAck> startAckStreamObserver) {
+        TxleTxStartAck.Builder startAck = TxleTxStartAck.newBuilder().setStatus(TxleTxStartAck.TransactionStatus.RUNNING);
+        try {
             // verifications: downgraded, paused, (overtime)aborted and exists, verify by cache as much as possible
             if (!globalTxHandler.verifyGlobalTxBeforeStarting(tx, startAck)) {
                 return;
@@ -129,7 +144,7 @@ public class GrpcTransactionEndpoint extends TxleTransactionServiceGrpc.TxleTran
             if (startAck.getStatus().ordinal() == TxleTxStartAck.TransactionStatus.ABORTED.ordinal()) {
                 try {
                     // start and end the first sub-tx were all successful, however, it's failed to start current sub-tx, so the first sub-tx should be compensated.
-                    globalTxHandler.compensateInStartingTx(tx, startAck, serverStreamObserver);
+                    globalTxHandler.compensateInStartingTx(tx, startAck);
                 } catch (Exception e) {
                     LOG.error("Failed to compensate sub-tx when starting.", e);
                 }
@@ -142,17 +157,29 @@ public class GrpcTransactionEndpoint extends TxleTransactionServiceGrpc.TxleTran
 
     @Override
     public void onEndTransaction(TxleTransactionEnd tx, StreamObserver<TxleTxEndAck> endAckStreamObserver) {
-        TxleTxEndAck.Builder endAck = TxleTxEndAck.newBuilder().setStatus(TxleTxEndAck.TransactionStatus.RUNNING);
+        if (tx == null) {
+            LOG.info("TXLE end tx interface received the client request, parameter 1 is empty.");
+            endAckStreamObserver.onNext(TxleTxEndAck.newBuilder().setStatus(TxleTxEndAck.TransactionStatus.ABORTED).setMessage("Empty transaction object for parameter 1.").build());
+            endAckStreamObserver.onCompleted();
+            return;
+        }
+        LOG.info("TXLE end tx interface received the client request, globalTxId = {}.", tx.getGlobalTxId());
         try {
-            if (tx == null) {
-                LOG.info("TXLE end tx interface received the client request, parameter 1 is empty.");
-                endAck.setStatus(TxleTxEndAck.TransactionStatus.ABORTED).setMessage("Empty transaction object for parameter 1.");
-                return;
-            }
-            LOG.info("TXLE end tx interface received the client request, globalTxId = {}.", tx.getGlobalTxId());
+            // the request is parked without holding current thread while the global transaction is paused, and it's continued after resuming.
+            globalTxHandler.runWhenResumed(tx.getGlobalTxId(), () -> endTransaction(tx, endAckStreamObserver));
+        } catch (Exception e) {
+            LOG.error("Failed to end global transaction [{}].", tx.getGlobalTxId(), e);
+            endAckStreamObserver.onNext(TxleTxEndAck.newBuilder().setStatus(TxleTxEndAck.TransactionStatus.ABORTED).setMessage("Failed to end global transaction [" + tx.getGlobalTxId() + "].").build());
+            endAckStreamObserver.onCompleted();
+        }
+    }
 
+    private void endTransaction(TxleTransactionEnd tx, StreamObserver<TxleTxEndAck> endAckStreamObserver) {
+        TxleTxEndAck.Builder endAck = TxleTxEndAck.newBuilder().setStatus(TxleTxEndAck.TransactionStatus.RUNNING);
+        try {
             // verifications: downgraded and paused
             if (!globalTxHandler.verifyGlobalTxBeforeEnding(tx, endAck)) {
+                replyEndAck(tx, endAck, endAckStreamObserver);
                 return;
             }
 
@@ -168,29 +195,45 @@ public class GrpcTransactionEndpoint extends TxleTransactionServiceGrpc.TxleTran
 
             // check if compensation is required. if there are abnormal transactions, then compensation/retry is required. compensation is necessary to overtime transaction.
             boolean isNeedCompensate = globalTxHandler.checkIsNeedCompensate(tx, endAck, abnormalSubTxList);
-            boolean retryResult = true;
-            if (!isNeedCompensate) {
-                retryResult = globalTxHandler.retry(tx, endAck, serverStreamObserver);
+            if (isNeedCompensate) {
+                finishEndTransaction(tx, endAck, endAckStreamObserver, abnormalSubTxList, true);
+            } else {
+                // the results of retries are sent back by client asynchronously, current thread is not held while retrying.
+                globalTxHandler.retry(tx, endAck).whenComplete((retryResult, e) ->
+                        finishEndTransaction(tx, endAck, endAckStreamObserver, abnormalSubTxList, e != null || !retryResult));
             }
-            if (isNeedCompensate || !retryResult) {
-                globalTxHandler.compensateInEndingTx(tx, serverStreamObserver, abnormalSubTxList);
+        } catch (Exception e) {
+            LOG.error("Failed to end global transaction [{}].", tx.getGlobalTxId(), e);
+            replyEndAck(tx, TxleTxEndAck.newBuilder().setStatus(TxleTxEndAck.TransactionStatus.ABORTED).setMessage("Failed to end global transaction [" + tx.getGlobalTxId() + "]."), endAckStreamObserver);
+        }
+    }
+
+    private void finishEndTransaction(TxleTransactionEnd tx, TxleTxEndAck.Builder endAck, StreamObserver<TxleTxEndAck> endAckStreamObserver, List<TxleSubTransactionEnd> abnormalSubTxList, boolean isNeedCompensate) {
+        TxleTxEndAck.Builder finalEndAck = endAck;
+        try {
+            if (isNeedCompensate) {
+                globalTxHandler.compensateInEndingTx(tx, abnormalSubTxList);
             }
 
             globalTxHandler.endGlobalTx(tx.getGlobalTxId(), tx.getIsCanOver(), null, endAck);
         } catch (Exception e) {
-            endAck = TxleTxEndAck.newBuilder().setStatus(TxleTxEndAck.TransactionStatus.ABORTED).setMessage("Failed to end global transaction [" + tx.getGlobalTxId() + "].");
+            finalEndAck = TxleTxEndAck.newBuilder().setStatus(TxleTxEndAck.TransactionStatus.ABORTED).setMessage("Failed to end global transaction [" + tx.getGlobalTxId() + "].");
             LOG.error("Failed to end global transaction [{}].", tx.getGlobalTxId(), e);
         } finally {
-            try {
-                if (!tx.getIsCanOver() && endAck.getStatus().ordinal() != TxleTxStartAck.TransactionStatus.RUNNING.ordinal()) {
-                    consistencyCache.setKeyValueCache(TxleConstants.constructTxStatusCacheKey(tx.getGlobalTxId()), GlobalTxStatus.convertStatusFromValue(endAck.getStatus().getNumber()).toString());
-                }
-            } catch (Exception e) {
-                LOG.error("Failed to set cache, globalTxId = " + tx.getGlobalTxId());
+            replyEndAck(tx, finalEndAck, endAckStreamObserver);
+        }
+    }
+
+    private void replyEndAck(TxleTransactionEnd tx, TxleTxEndAck.Builder endAck, StreamObserver<TxleTxEndAck> endAckStreamObserver) {
+        try {
+            if (!tx.getIsCanOver() && endAck.getStatus().ordinal() != TxleTxStartAck.TransactionStatus.RUNNING.ordinal()) {
+                consistencyCache.setKeyValueCache(TxleConstants.constructTxStatusCacheKey(tx.getGlobalTxId()), GlobalTxStatus.convertStatusFromValue(endAck.getStatus().getNumber()).toString());
             }
-            endAckStreamObserver.onNext(endAck.build());
-            endAckStreamObserver.onCompleted();
+        } catch (Exception e) {
+            LOG.error("Failed to set cache, globalTxId = " + tx.getGlobalTxId());
         }
+        endAckStreamObserver.onNext(endAck.build());
+        endAckStreamObserver.onCompleted();
     }
 
     @Override
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018-2020 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package com.actionsky.txle.grpc.interfaces;
+
+import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The retry results of sub-transactions are awaited as futures, they're completed by the results which are sent back by client via the bidirectional stream.
+ * The next retry is delayed with an exponential backoff by a scheduler, so no thread is held while retrying.
+ * The futures are completed in a separate executor, because the following retry/compensation accesses database, it should not block the stream or scheduler.
+ *
+ * @author Gannalyo
+ * @since 2020/2/25
+ */
+public class TxRetryScheduler {
+    // key: globalTxId + localTxId, value: true if the retry is successful, null if no result before timeout
+    private final Map<String, CompletableFuture<Boolean>> retryResults = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new TxleDefaultTheadFactory("txle-retry-scheduler-"));
+    private final ExecutorService completionExecutor;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long resultTimeoutMillis;
+
+    public TxRetryScheduler(int completionThreads, long initialBackoffMillis, long maxBackoffMillis, long resultTimeoutMillis) {
+        this.completionExecutor = Executors.newFixedThreadPool(completionThreads, new TxleDefaultTheadFactory("txle-retry-completion-"));
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.resultTimeoutMillis = resultTimeoutMillis;
+    }
+
+    /**
+     * Register a future for the retry result of some sub-transaction, it must be called before sending the retry to client.
+     *
+     * @param deadline the expiry time of the sub-transaction, the future is completed with null at the earlier one of deadline and result timeout
+     */
+    CompletableFuture<Boolean> awaitResult(String globalTxId, String localTxId, long deadline) {
+        String key = keyOf(globalTxId, localTxId);
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        CompletableFuture<Boolean> previous = retryResults.put(key, result);
+        if (previous != null) {
+            complete(previous, null);
+        }
+        long timeout = Math.max(0, Math.min(deadline - System.currentTimeMillis(), resultTimeoutMillis));
+        scheduler.schedule(() -> {
+            if (retryResults.remove(key, result)) {
+                complete(result, null);
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    /**
+     * Complete the future of some sub-transaction after the retry result was received and recorded.
+     *
+     * @return false if nobody is waiting for the result
+     */
+    boolean completeResult(String globalTxId, String localTxId, boolean isSuccessful) {
+        CompletableFuture<Boolean> result = retryResults.remove(keyOf(globalTxId, localTxId));
+        if (result == null) {
+            return false;
+        }
+        complete(result, isSuccessful);
+        return true;
+    }
+
+    /**
+     * @param attempt the count of retries which were already executed
+     * @return a future which is completed after the backoff of next retry
+     */
+    CompletableFuture<Void> backoff(int attempt) {
+        long delay = initialBackoffMillis << Math.min(attempt, 20);
+        delay = Math.min(delay < 0 ? maxBackoffMillis : delay, maxBackoffMillis);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (delay <= 0) {
+            complete(future, null);
+        } else {
+            scheduler.schedule(() -> complete(future, null), delay, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        retryResults.values().forEach(result -> result.complete(null));
+        retryResults.clear();
+        completionExecutor.shutdown();
+    }
+
+    private <T> void complete(CompletableFuture<T> future, T value) {
+        completionExecutor.execute(() -> future.complete(value));
+    }
+
+    private static String keyOf(String globalTxId, String localTxId) {
+        return globalTxId + "_" + localTxId;
+    }
+}
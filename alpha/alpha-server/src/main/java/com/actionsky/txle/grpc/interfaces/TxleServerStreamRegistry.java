@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2018-2020 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package com.actionsky.txle.grpc.interfaces;
+
+import com.actionsky.txle.grpc.TxleGrpcServerStream;
+import com.actionsky.txle.grpc.TxleServerExecuteSql;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 客户端双向流注册中心，每个客户端进程对应一个流，重试/补偿SQL按照服务实例和数据库节点发送给对应的客户端
+ * 客户端建立双向流后应首先发送TxleClientConfig进行绑定，未绑定的流(老版本客户端)仅在找不到匹配的流时使用，且优先使用最近建立的流
+ * 绑定了其它数据库节点的流不会被使用，找不到可用的流时SQL暂存于注册中心(最多maxQueueSize条)，待有流绑定后再发送，避免在错误的数据库上执行
+ * 每个流有独立的发送队列，在流可写(isReady)时批量发送TxleServerExecuteSql，不可写时暂存于队列，待onReady时继续发送
+ *
+ * @author Gannalyo
+ * @since 2020/3/6
+ */
+public class TxleServerStreamRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Map<Long, ClientStream> streams = new ConcurrentHashMap<>();
+    // the sqls which have no available stream, they're sent again after some stream was bound.
+    private final Queue<PendingSql> pendingSqls = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong streamIdGenerator = new AtomicLong();
+    private final int batchSize;
+    private final int maxQueueSize;
+
+    public TxleServerStreamRegistry(int batchSize, int maxQueueSize) {
+        this.batchSize = batchSize;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * It must be called before 'onBuildBidirectionalStream' returns, because the handlers of stream can be set only at that time.
+     */
+    public ClientStream register(StreamObserver<TxleGrpcServerStream> serverStreamObserver) {
+        ClientStream stream = new ClientStream(streamIdGenerator.incrementAndGet(), serverStreamObserver);
+        if (serverStreamObserver instanceof ServerCallStreamObserver) {
+            ServerCallStreamObserver<TxleGrpcServerStream> callStreamObserver = (ServerCallStreamObserver<TxleGrpcServerStream>) serverStreamObserver;
+            callStreamObserver.setOnReadyHandler(stream::drain);
+            callStreamObserver.setOnCancelHandler(() -> unregister(stream));
+        }
+        streams.put(stream.id, stream);
+        return stream;
+    }
+
+    public void bind(ClientStream stream, String instanceId, Collection<String> dbNodeIds) {
+        stream.instanceId = instanceId;
+        stream.dbNodeIds.addAll(dbNodeIds);
+        LOG.info("The bidirectional stream [{}] was bound to the client [{}], dbNodeIds = {}.", stream.id, instanceId, dbNodeIds);
+        resendPendingSqls();
+    }
+
+    /**
+     * The pending sqls of the stream are sent to other streams, because the client may reconnect by a new stream.
+     * They're kept pending in the registry if no other stream serves their db nodes.
+     */
+    public void unregister(ClientStream stream) {
+        if (streams.remove(stream.id) == null) {
+            return;
+        }
+        stream.closed = true;
+        List<TxleServerExecuteSql> pendingSqls = new ArrayList<>();
+        TxleServerExecuteSql executeSql;
+        while ((executeSql = stream.queue.poll()) != null) {
+            pendingSqls.add(executeSql);
+        }
+        if (!pendingSqls.isEmpty()) {
+            LOG.info("The bidirectional stream [{}] was closed, and its {} pending sqls will be sent by other streams.", stream.id, pendingSqls.size());
+            send(stream.instanceId, pendingSqls);
+        }
+    }
+
+    /**
+     * @param instanceId the service instance of global transaction, it may be null
+     * @return false if some sqls could not be queued to a stream, e.g. no available stream or the queue was full, the former are kept pending in the registry
+     */
+    public boolean send(String instanceId, Collection<TxleServerExecuteSql> executeSqls) {
+        boolean isQueued = true;
+        Set<ClientStream> changedStreams = new LinkedHashSet<>();
+        for (TxleServerExecuteSql executeSql : executeSqls) {
+            ClientStream stream = select(instanceId, executeSql.getDbNodeId());
+            if (stream == null) {
+                isQueued = false;
+                keepPending(new PendingSql(instanceId, executeSql));
+            } else if (!stream.offer(executeSql)) {
+                isQueued = false;
+                LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to send sql to client, the queue is full. instanceId = {}, globalTxId = {}, localTxId = {}, method = {}.",
+                        instanceId, executeSql.getGlobalTxId(), executeSql.getLocalTxId(), executeSql.getMethod());
+            } else {
+                changedStreams.add(stream);
+            }
+        }
+        changedStreams.forEach(ClientStream::drain);
+        return isQueued;
+    }
+
+    int pendingSize() {
+        return pendingCount.get();
+    }
+
+    private void keepPending(PendingSql pendingSql) {
+        TxleServerExecuteSql executeSql = pendingSql.executeSql;
+        if (pendingCount.incrementAndGet() > maxQueueSize) {
+            pendingCount.decrementAndGet();
+            LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to send sql to client, no available stream and too many pending sqls. instanceId = {}, globalTxId = {}, localTxId = {}, method = {}.",
+                    pendingSql.instanceId, executeSql.getGlobalTxId(), executeSql.getLocalTxId(), executeSql.getMethod());
+            return;
+        }
+        pendingSqls.offer(pendingSql);
+        LOG.warn("No available stream for db node [{}], the sql is kept pending. instanceId = {}, globalTxId = {}, localTxId = {}, method = {}.",
+                executeSql.getDbNodeId(), pendingSql.instanceId, executeSql.getGlobalTxId(), executeSql.getLocalTxId(), executeSql.getMethod());
+    }
+
+    // the sqls which still have no available stream are kept pending again, every pending sql is tried once only.
+    private void resendPendingSqls() {
+        for (int i = pendingCount.get(); i > 0; i--) {
+            PendingSql pendingSql = pendingSqls.poll();
+            if (pendingSql == null) {
+                break;
+            }
+            pendingCount.decrementAndGet();
+            send(pendingSql.instanceId, Collections.singletonList(pendingSql.executeSql));
+        }
+    }
+
+    public int size() {
+        return streams.size();
+    }
+
+    // 优先级：同实例且包含该数据库节点 > 其它包含该数据库节点的流 > 最近建立的未绑定的流；同一优先级中选择队列最短的流，绑定了其它数据库节点的流不会被选择
+    private ClientStream select(String instanceId, String dbNodeId) {
+        ClientStream sameInstance = null, sameDbNode = null, latestUnbound = null;
+        for (ClientStream stream : streams.values()) {
+            if (stream.closed) {
+                continue;
+            }
+            boolean isServing = stream.dbNodeIds.isEmpty() || stream.dbNodeIds.contains(dbNodeId);
+            if (instanceId != null && instanceId.equals(stream.instanceId) && isServing) {
+                sameInstance = lessLoaded(sameInstance, stream);
+            } else if (stream.dbNodeIds.contains(dbNodeId)) {
+                sameDbNode = lessLoaded(sameDbNode, stream);
+            } else if (stream.dbNodeIds.isEmpty() && (latestUnbound == null || stream.id > latestUnbound.id)) {
+                latestUnbound = stream;
+            }
+        }
+        return sameInstance != null ? sameInstance : (sameDbNode != null ? sameDbNode : latestUnbound);
+    }
+
+    private ClientStream lessLoaded(ClientStream current, ClientStream candidate) {
+        return current == null || candidate.queuedCount.get() < current.queuedCount.get() ? candidate : current;
+    }
+
+    private static final class PendingSql {
+        private final String instanceId;
+        private final TxleServerExecuteSql executeSql;
+
+        private PendingSql(String instanceId, TxleServerExecuteSql executeSql) {
+            this.instanceId = instanceId;
+            this.executeSql = executeSql;
+        }
+    }
+
+    public final class ClientStream {
+        private final long id;
+        private final StreamObserver<TxleGrpcServerStream> serverStreamObserver;
+        private final Queue<TxleServerExecuteSql> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queuedCount = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final Set<String> dbNodeIds = ConcurrentHashMap.newKeySet();
+        private volatile String instanceId;
+        private volatile boolean closed;
+
+        private ClientStream(long id, StreamObserver<TxleGrpcServerStream> serverStreamObserver) {
+            this.id = id;
+            this.serverStreamObserver = serverStreamObserver;
+        }
+
+        /**
+         * The db node is recorded after receiving its result, for the clients which don't bind themselves.
+         */
+        void addDbNodeId(String dbNodeId) {
+            if (dbNodeId != null && !dbNodeId.isEmpty()) {
+                dbNodeIds.add(dbNodeId);
+            }
+        }
+
+        void complete() {
+            try {
+                serverStreamObserver.onCompleted();
+            } catch (Exception e) {
+                LOG.debug("Failed to complete the bidirectional stream [{}].", id, e);
+            }
+        }
+
+        private boolean offer(TxleServerExecuteSql executeSql) {
+            if (queuedCount.incrementAndGet() > maxQueueSize) {
+                queuedCount.decrementAndGet();
+                return false;
+            }
+            queue.offer(executeSql);
+            return true;
+        }
+
+        private boolean isReady() {
+            return !(serverStreamObserver instanceof ServerCallStreamObserver) || ((ServerCallStreamObserver<TxleGrpcServerStream>) serverStreamObserver).isReady();
+        }
+
+        // only one thread sends messages at the same time, because the stream is not thread-safe.
+        private void drain() {
+            while (!closed && !queue.isEmpty() && isReady() && draining.compareAndSet(false, true)) {
+                try {
+                    while (!closed && isReady()) {
+                        TxleGrpcServerStream.Builder serverStream = TxleGrpcServerStream.newBuilder();
+                        TxleServerExecuteSql executeSql;
+                        while (serverStream.getExecuteSqlCount() < batchSize && (executeSql = queue.poll()) != null) {
+                            serverStream.addExecuteSql(executeSql);
+                        }
+                        if (serverStream.getExecuteSqlCount() == 0) {
+                            break;
+                        }
+                        queuedCount.addAndGet(-serverStream.getExecuteSqlCount());
+                        serverStreamObserver.onNext(serverStream.build());
+                    }
+                } catch (Exception e) {
+                    LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to send sqls by the bidirectional stream [{}].", id, e);
+                    unregister(this);
+                } finally {
+                    draining.set(false);
+                }
+                // the loop checks again in case of some sqls were queued after the last polling.
+            }
+        }
+    }
+}
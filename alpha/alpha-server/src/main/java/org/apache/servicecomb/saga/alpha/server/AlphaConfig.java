@@ -22,6 +22,8 @@ import com.actionsky.txle.configuration.TxleConfig;
 import com.actionsky.txle.grpc.interfaces.CompensateService;
 import com.actionsky.txle.grpc.interfaces.GlobalTxHandler;
 import com.actionsky.txle.grpc.interfaces.GrpcTransactionEndpoint;
+import com.actionsky.txle.grpc.interfaces.TxRetryScheduler;
+import com.actionsky.txle.grpc.interfaces.TxleServerStreamRegistry;
 import com.actionsky.txle.grpc.interfaces.bizdbinfo.IBusinessDBLatestDetailService;
 import com.actionsky.txle.util.SchedulerUtil;
 import org.apache.servicecomb.saga.alpha.core.*;
@@ -29,8 +31,8 @@ import org.apache.servicecomb.saga.alpha.core.accidenthandling.IAccidentHandling
 import org.apache.servicecomb.saga.alpha.core.configcenter.DegradationConfigAspect;
 import org.apache.servicecomb.saga.alpha.core.datadictionary.IDataDictionaryService;
 import org.apache.servicecomb.saga.alpha.core.datatransfer.IDataTransferService;
-import org.apache.servicecomb.saga.alpha.core.listener.GlobalTxListener;
 import org.apache.servicecomb.saga.alpha.core.listener.TxEventAfterPersistingListener;
+import org.apache.servicecomb.saga.alpha.core.listener.TxEventBus;
 import org.apache.servicecomb.saga.alpha.server.accidenthandling.AccidentHandlingEntityRepository;
 import org.apache.servicecomb.saga.alpha.server.accidenthandling.AccidentHandlingService;
 import org.apache.servicecomb.saga.alpha.server.configcenter.ConfigCenterEntityRepository;
@@ -43,6 +45,7 @@ import org.apache.servicecomb.saga.alpha.server.datatransfer.DataTransferService
 import org.apache.servicecomb.saga.alpha.server.kafka.KafkaProducerConfig;
 import org.apache.servicecomb.saga.alpha.server.tracing.TracingConfiguration;
 import org.apache.servicecomb.saga.common.CommonConfig;
+import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
@@ -55,8 +58,8 @@ import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
 
-import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
 import java.util.Map;
 import java.util.concurrent.*;
 
@@ -66,12 +69,24 @@ import java.util.concurrent.*;
 @EnableScheduling
 @Configuration
 class AlphaConfig {
-  private final BlockingQueue<Runnable> pendingCompensations = new LinkedBlockingQueue<>();
   private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+  private final ScheduledExecutorService compensationRetryScheduler = Executors.newSingleThreadScheduledExecutor(new TxleDefaultTheadFactory("txle-compensation-retry-"));
 
+  // the max backoff of retrying the failed compensation, the backoff is doubled from the initial one for every retry.
   @Value("${alpha.compensation.retry.delay:3000}")
   private int delay;
 
+  @Value("${alpha.compensation.retry.initialBackoff:100}")
+  private int compensationRetryInitialBackoff;
+
+  // the failed compensation is given back to 'NEW' after 'maxAttempts', and then it's claimed again by the dispatcher.
+  @Value("${alpha.compensation.retry.maxAttempts:3}")
+  private int compensationRetryMaxAttempts;
+
+  // the max number of the commands which are queued for an omega instance
+  @Value("${alpha.compensation.queueSize:1000}")
+  private int compensationQueueSize;
+
   @Value("${txle.prometheus.metrics.port:-1}")
   private String promMetricsPort;
 
@@ -87,6 +102,99 @@ class AlphaConfig {
   @Value("${alpha.event.pollingInterval:500}")
   private int eventPollingInterval;
 
+  @Value("${alpha.compensation.threads:4}")
+  private int compensationThreads;
+
+  @Value("${alpha.compensation.batchSize:100}")
+  private int compensationBatchSize;
+
+  @Value("${alpha.compensation.maxInFlight:1000}")
+  private int compensationMaxInFlight;
+
+  @Value("${alpha.datatransfer.threads:2}")
+  private int dataTransferThreads;
+
+  @Value("${alpha.datatransfer.chunkSize:500}")
+  private int dataTransferChunkSize;
+
+  @Value("${alpha.datatransfer.throttleMillis:50}")
+  private long dataTransferThrottleMillis;
+
+  // it's enabled in the mysql profile of application.yaml and ignored for other databases, and its writes bypass the Spring transaction.
+  @Value("${alpha.event.journal.enabled:false}")
+  private boolean eventJournalEnabled;
+
+  @Value("${alpha.event.journal.capacity:10000}")
+  private int eventJournalCapacity;
+
+  @Value("${alpha.event.journal.batchSize:100}")
+  private int eventJournalBatchSize;
+
+  @Value("${alpha.event.journal.flushIntervalMicros:500}")
+  private long eventJournalFlushIntervalMicros;
+
+  // it's rounded up to a power of 2
+  @Value("${alpha.event.bus.bufferSize:4096}")
+  private int eventBusBufferSize;
+
+  @Value("${alpha.event.listener.ioThreads:4}")
+  private int listenerIoThreads;
+
+  @Value("${alpha.event.listener.ioQueueCapacity:1024}")
+  private int listenerIoQueueCapacity;
+
+  @Value("${alpha.event.timeout.tickMs:100}")
+  private int timeoutTickMs;
+
+  @Value("${alpha.event.timeout.wheelSize:512}")
+  private int timeoutWheelSize;
+
+  @Value("${alpha.event.timeout.reconcileInterval:60000}")
+  private long timeoutReconcileInterval;
+
+  @Value("${alpha.tx.state.enabled:true}")
+  private boolean txStateEnabled;
+
+  @Value("${alpha.tx.state.maxSize:100000}")
+  private int txStateMaxSize;
+
+  @Value("${alpha.tx.state.idleMillis:600000}")
+  private long txStateIdleMillis;
+
+  @Value("${alpha.tx.pause.resumeThreads:4}")
+  private int pauseResumeThreads;
+
+  @Value("${alpha.tx.pause.recheckInterval:60000}")
+  private long pauseRecheckInterval;
+
+  @Value("${alpha.tx.retry.completionThreads:4}")
+  private int retryCompletionThreads;
+
+  @Value("${alpha.tx.retry.initialBackoff:100}")
+  private long retryInitialBackoff;
+
+  @Value("${alpha.tx.retry.maxBackoff:5000}")
+  private long retryMaxBackoff;
+
+  @Value("${alpha.tx.retry.resultTimeout:60000}")
+  private long retryResultTimeout;
+
+  @Value("${alpha.tx.stream.batchSize:100}")
+  private int streamBatchSize;
+
+  @Value("${alpha.tx.stream.maxQueueSize:10000}")
+  private int streamMaxQueueSize;
+
+  // the batches of 'OnTxEvents' are handled by these threads, rather than the threads of grpc.
+  @Value("${alpha.event.batch.threads:8}")
+  private int eventBatchThreads;
+
+  // the max batches of a stream which are being handled at the same time.
+  @Value("${alpha.event.batch.maxInFlight:4}")
+  private int eventBatchMaxInFlight;
+
+  private ExecutorService eventBatchExecutor;
+
   @Bean
   public RestTemplate restTemplate(@Qualifier("simpleClientHttpRequestFactory") ClientHttpRequestFactory clientHttpRequestFactory) {
     return new RestTemplate(clientHttpRequestFactory);
@@ -104,12 +212,16 @@ class AlphaConfig {
   }
 
   @Bean
-  OmegaCallback omegaCallback(Map<String, Map<String, OmegaCallback>> callbacks) {
-    return new PushBackOmegaCallback(pendingCompensations, new CompositeOmegaCallback(callbacks));
+  OmegaCallback omegaCallback(Map<String, Map<String, OmegaCallback>> callbacks, CommandRepository commandRepository) {
+    return new PushBackOmegaCallback(compensationRetryScheduler, new CompositeOmegaCallback(callbacks), commandRepository, compensationRetryInitialBackoff, delay,
+            compensationRetryMaxAttempts, compensationMaxInFlight);
   }
 
   @Bean
-  TxEventRepository springTxEventRepository(TxEventEnvelopeRepository eventRepo) {
+  TxEventRepository springTxEventRepository(TxEventEnvelopeRepository eventRepo, DataSource dataSource) {
+    if (eventJournalEnabled && TxEventJournal.isSupported(dataSource)) {
+      return new SpringTxEventRepository(eventRepo, new TxEventJournal(dataSource, eventJournalCapacity, eventJournalBatchSize, eventJournalFlushIntervalMicros));
+    }
     return new SpringTxEventRepository(eventRepo);
   }
 
@@ -158,20 +270,20 @@ class AlphaConfig {
     return new AccidentHandlingService(accidentHandlingEntityRepository, accidentPlatformAddress, retries, interval, restTemplate);
   }
 
-  @Bean
-  IDataTransferService dataTransferService(DataTransferRepository dataTransferRepository, TxEventRepository txEventRepository) {
-    return new DataTransferService(dataTransferRepository, txEventRepository);
+  @Bean(destroyMethod = "shutdown")
+  IDataTransferService dataTransferService(DataTransferRepository dataTransferRepository) {
+    return new DataTransferService(dataTransferRepository, dataTransferThreads, dataTransferChunkSize, dataTransferThrottleMillis);
   }
 
-  @Bean
-  GlobalTxListener globalTxListener() {
-    return new GlobalTxListener();
+  @Bean(destroyMethod = "shutdown")
+  TxEventBus txEventBus() {
+    return new TxEventBus(eventBusBufferSize);
   }
 
-  @Bean
-  TxEventAfterPersistingListener txEventAfterPersistingListener(GlobalTxListener globalTxListener) {
-    TxEventAfterPersistingListener txEventAfterPersistingListener = new TxEventAfterPersistingListener();
-    globalTxListener.addObserver(txEventAfterPersistingListener);
+  @Bean(destroyMethod = "shutdown")
+  TxEventAfterPersistingListener txEventAfterPersistingListener(TxEventBus txEventBus) {
+    TxEventAfterPersistingListener txEventAfterPersistingListener = new TxEventAfterPersistingListener(listenerIoThreads, listenerIoQueueCapacity);
+    txEventBus.subscribe("after-persisting", txEventAfterPersistingListener);
     return txEventAfterPersistingListener;
   }
 
@@ -181,8 +293,37 @@ class AlphaConfig {
   }
 
   @Bean
-  EventScanner eventScanner(TxEventRepository eventRepository, CommandRepository commandRepository, TxTimeoutRepository timeoutRepository, OmegaCallback omegaCallback, TxleConsulClient txleConsulClient) {
-    EventScanner eventScanner = new EventScanner(scheduler, eventRepository, commandRepository, timeoutRepository, omegaCallback, eventPollingInterval, txleConsulClient);
+  TxTimeoutWheel txTimeoutWheel() {
+    return new TxTimeoutWheel(timeoutTickMs, timeoutWheelSize, System.currentTimeMillis());
+  }
+
+  @Bean
+  GlobalTxStateRegistry globalTxStateRegistry() {
+    return new GlobalTxStateRegistry(txStateEnabled, txStateMaxSize, txStateIdleMillis);
+  }
+
+  @Bean
+  GlobalTxPauseWaiters globalTxPauseWaiters() {
+    return new GlobalTxPauseWaiters(pauseResumeThreads, pauseRecheckInterval);
+  }
+
+  @Bean
+  TxRetryScheduler txRetryScheduler() {
+    return new TxRetryScheduler(retryCompletionThreads, retryInitialBackoff, retryMaxBackoff, retryResultTimeout);
+  }
+
+  @Bean
+  TxleServerStreamRegistry txleServerStreamRegistry() {
+    return new TxleServerStreamRegistry(streamBatchSize, streamMaxQueueSize);
+  }
+
+  @Bean
+  EventScanner eventScanner(TxEventRepository eventRepository, CommandRepository commandRepository, TxTimeoutRepository timeoutRepository, OmegaCallback omegaCallback,
+                            TxleConsulClient txleConsulClient, TxTimeoutWheel txTimeoutWheel) {
+    CompensationDispatcher compensationDispatcher = new CompensationDispatcher(commandRepository, omegaCallback, compensationThreads, compensationBatchSize,
+            compensationMaxInFlight);
+    EventScanner eventScanner = new EventScanner(scheduler, eventRepository, commandRepository, timeoutRepository, eventPollingInterval, txleConsulClient,
+            txTimeoutWheel, timeoutReconcileInterval, compensationDispatcher);
     eventScanner.run();
     return eventScanner;
   }
@@ -192,19 +333,24 @@ class AlphaConfig {
                                          Map<String, Map<String, OmegaCallback>> omegaCallbacks,
                                          Tracing tracing, IAccidentHandlingService accidentHandlingService,
                                          GlobalTxHandler globalTxHandler, CompensateService compensateService, ITxleEhCache txleEhCache, TxleMysqlCache mysqlCache,
-                                         TxEventRepository eventRepository, IBusinessDBLatestDetailService businessDBLatestDetailService) {
+                                         TxEventRepository eventRepository, IBusinessDBLatestDetailService businessDBLatestDetailService, GlobalTxPauseWaiters pauseWaiters,
+                                         TxRetryScheduler retryScheduler, TxleServerStreamRegistry streamRegistry, OmegaCallback omegaCallback) {
     ServerStartable starTable = buildGrpc(serverConfig, txConsistentService, omegaCallbacks, tracing, accidentHandlingService, globalTxHandler,
-            compensateService, txleEhCache, mysqlCache, eventRepository, businessDBLatestDetailService);
+            compensateService, txleEhCache, mysqlCache, eventRepository, businessDBLatestDetailService, pauseWaiters, retryScheduler, streamRegistry, omegaCallback);
     new Thread(starTable::start).start();
     return starTable;
   }
 
   private ServerStartable buildGrpc(GrpcServerConfig serverConfig, TxConsistentService txConsistentService, Map<String, Map<String, OmegaCallback>> omegaCallbacks,
                                     Tracing tracing, IAccidentHandlingService accidentHandlingService, GlobalTxHandler globalTxHandler, CompensateService compensateService,
-                                    ITxleEhCache txleEhCache, TxleMysqlCache mysqlCache, TxEventRepository eventRepository, IBusinessDBLatestDetailService businessDBLatestDetailService) {
+                                    ITxleEhCache txleEhCache, TxleMysqlCache mysqlCache, TxEventRepository eventRepository, IBusinessDBLatestDetailService businessDBLatestDetailService,
+                                    GlobalTxPauseWaiters pauseWaiters, TxRetryScheduler retryScheduler, TxleServerStreamRegistry streamRegistry,
+                                    OmegaCallback omegaCallback) {
+    eventBatchExecutor = Executors.newFixedThreadPool(eventBatchThreads, new TxleDefaultTheadFactory("txle-event-batch-"));
     return new GrpcStartable(serverConfig, tracing,
-            new GrpcTxEventEndpointImpl(txConsistentService, omegaCallbacks, mysqlCache, accidentHandlingService),
-            new GrpcTransactionEndpoint(globalTxHandler, compensateService, txleEhCache, mysqlCache, accidentHandlingService, eventRepository, txConsistentService, businessDBLatestDetailService));
+            new GrpcTxEventEndpointImpl(txConsistentService, omegaCallbacks, mysqlCache, accidentHandlingService, pauseWaiters, omegaCallback, compensationQueueSize,
+                    eventBatchExecutor, eventBatchMaxInFlight),
+            new GrpcTransactionEndpoint(globalTxHandler, compensateService, txleEhCache, mysqlCache, accidentHandlingService, eventRepository, txConsistentService, businessDBLatestDetailService, retryScheduler, streamRegistry));
   }
 
   @Bean
@@ -227,14 +373,13 @@ class AlphaConfig {
     return new SchedulerUtil();
   }
 
-  @PostConstruct
-  void init() {
-//    new PendingTaskRunner(pendingCompensations, delay).run();
-  }
-
   @PreDestroy
   void shutdown() {
     scheduler.shutdownNow();
+    compensationRetryScheduler.shutdownNow();
+    if (eventBatchExecutor != null) {
+      eventBatchExecutor.shutdownNow();
+    }
   }
 
 }
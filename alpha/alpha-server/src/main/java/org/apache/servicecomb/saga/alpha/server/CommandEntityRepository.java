@@ -79,6 +79,17 @@ public interface CommandEntityRepository extends CrudRepository<Command, Long> {
   @Query(value = "SELECT * FROM Command T WHERE T.status = ?1 ORDER BY T.surrogateId DESC" + EventScanner.SCANNER_SQL, nativeQuery = true)
   List<Command> findCommandByStatus(String status);
 
+  // the oldest commands are claimed first, so they never starve under steady load. the claimed ones are marked by the token, so they're read back exactly.
+  // the derived table is required by MySQL, which doesn't support 'LIMIT' in the subquery of 'IN' or selecting from the updated table directly.
+  @Transactional
+  @Modifying(clearAutomatically = true)
+  @Query(value = "UPDATE Command SET status = 'PENDING', claimToken = ?1 WHERE status = 'NEW' AND surrogateId IN ("
+      + "SELECT T1.surrogateId FROM (SELECT T.surrogateId FROM Command T WHERE T.status = 'NEW' ORDER BY T.surrogateId ASC LIMIT ?2) T1)" + EventScanner.SCANNER_SQL, nativeQuery = true)
+  int claimCommandsByToken(String claimToken, int limit);
+
+  @Query(value = "SELECT * FROM Command T WHERE T.claimToken = ?1 ORDER BY T.surrogateId ASC" + EventScanner.SCANNER_SQL, nativeQuery = true)
+  List<Command> findCommandByClaimToken(String claimToken);
+
   @Query(value = "SELECT T.eventId FROM Command T WHERE T.eventId IN ?1")
   Set<Long> findExistCommandList(Set<Long> eventIdList);
 }
@@ -15,36 +15,175 @@
 
 package org.apache.servicecomb.saga.alpha.server;
 
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.servicecomb.saga.alpha.core.AlphaException;
+import org.apache.servicecomb.saga.alpha.core.CompensationQueueFullException;
 import org.apache.servicecomb.saga.alpha.core.OmegaCallback;
 import org.apache.servicecomb.saga.alpha.core.TxEvent;
 import org.apache.servicecomb.saga.pack.contract.grpc.GrpcCompensateCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
+/**
+ * Every omega instance has an outbound queue, the commands are sent while the stream is ready, and the rest are sent by the onReady handler.
+ * The same command is queued once only, and it fails fast if the queue is full, so that a slow omega instance never blocks the dispatcher.
+ * The queued commands are compensated by the failover callback, e.g. other instances of the same service, after the stream was closed.
+ */
 class GrpcOmegaCallback implements OmegaCallback {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   private final StreamObserver<GrpcCompensateCommand> observer;
+  private final int maxQueueSize;
+  private final OmegaCallback failover;
+  private final Consumer<OmegaCallback> onClosed;
+  // the keys of the queued commands in order, and the commands by key
+  private final Queue<String> queuedKeys = new ConcurrentLinkedQueue<>();
+  private final Map<String, TxEvent> queuedEvents = new ConcurrentHashMap<>();
+  private final AtomicInteger queuedCount = new AtomicInteger();
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private volatile boolean closed;
 
-  GrpcOmegaCallback(StreamObserver<GrpcCompensateCommand> observer) {
+  /**
+   * It must be called before 'onConnected' returns, because the handlers of stream can be set only at that time.
+   *
+   * @param onClosed it's called once the stream was closed unexpectedly, e.g. to unregister this callback
+   */
+  GrpcOmegaCallback(StreamObserver<GrpcCompensateCommand> observer, int maxQueueSize, OmegaCallback failover, Consumer<OmegaCallback> onClosed) {
     this.observer = observer;
+    this.maxQueueSize = maxQueueSize;
+    this.failover = failover;
+    this.onClosed = onClosed;
+    if (observer instanceof ServerCallStreamObserver) {
+      ServerCallStreamObserver<GrpcCompensateCommand> callStreamObserver = (ServerCallStreamObserver<GrpcCompensateCommand>) observer;
+      callStreamObserver.setOnReadyHandler(this::drain);
+      callStreamObserver.setOnCancelHandler(this::close);
+    }
   }
 
   @Override
   public void compensate(TxEvent event) {
-    GrpcCompensateCommand command = GrpcCompensateCommand.newBuilder()
+    if (closed) {
+      throw new AlphaException("The stream to omega was closed, instanceId = " + event.instanceId());
+    }
+    if (queuedCount.incrementAndGet() > maxQueueSize) {
+      queuedCount.decrementAndGet();
+      throw new CompensationQueueFullException("The compensation queue of omega is full, instanceId = " + event.instanceId());
+    }
+    String key = event.globalTxId() + "_" + event.localTxId();
+    if (queuedEvents.putIfAbsent(key, event) != null) {
+      // the same command is queued already, e.g. it was compensated again before sending.
+      queuedCount.decrementAndGet();
+      return;
+    }
+    queuedKeys.offer(key);
+    if (closed) {
+      // it was closed concurrently, so the queued commands may be missed by closing.
+      failoverQueuedEvents();
+      return;
+    }
+    drain();
+  }
+
+  @Override
+  public boolean isAvailable() {
+    return !closed;
+  }
+
+  @Override
+  public void disconnect() {
+    closed = true;
+    failoverQueuedEvents();
+    try {
+      observer.onCompleted();
+    } catch (Exception e) {
+      LOG.debug("Failed to complete the stream to omega.", e);
+    }
+  }
+
+  int queuedCount() {
+    return queuedCount.get();
+  }
+
+  private boolean isReady() {
+    return !(observer instanceof ServerCallStreamObserver) || ((ServerCallStreamObserver<GrpcCompensateCommand>) observer).isReady();
+  }
+
+  // only one thread sends commands at the same time, because the stream is not thread-safe.
+  private void drain() {
+    while (!closed && !queuedKeys.isEmpty() && isReady() && draining.compareAndSet(false, true)) {
+      TxEvent sending = null;
+      try {
+        String key;
+        while (!closed && isReady() && (key = queuedKeys.poll()) != null) {
+          sending = queuedEvents.remove(key);
+          queuedCount.decrementAndGet();
+          if (sending != null) {
+            observer.onNext(commandOf(sending));
+          }
+          sending = null;
+        }
+      } catch (Exception e) {
+        LOG.error("Failed to send compensating commands to omega.", e);
+        close();
+        if (sending != null) {
+          failover(sending);
+        }
+      } finally {
+        draining.set(false);
+      }
+      // the loop checks again in case of some commands were queued after the last polling.
+    }
+  }
+
+  private void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    onClosed.accept(this);
+    failoverQueuedEvents();
+  }
+
+  private void failoverQueuedEvents() {
+    String key;
+    while ((key = queuedKeys.poll()) != null) {
+      TxEvent event = queuedEvents.remove(key);
+      queuedCount.decrementAndGet();
+      if (event != null) {
+        failover(event);
+      }
+    }
+  }
+
+  private void failover(TxEvent event) {
+    try {
+      failover.compensate(event);
+    } catch (Exception e) {
+      LOG.error("Failed to compensate by other omega instances, globalTxId = {}, localTxId = {}.", event.globalTxId(), event.localTxId(), e);
+    }
+  }
+
+  private GrpcCompensateCommand commandOf(TxEvent event) {
+    return GrpcCompensateCommand.newBuilder()
         .setGlobalTxId(event.globalTxId())
         .setLocalTxId(event.localTxId())
         .setParentTxId(event.parentTxId() == null ? "" : event.parentTxId())
         .setCompensationMethod(event.compensationMethod())
-        .setPayloads(ByteString.copyFrom(event.payloads()))
+        // the payloads are never changed after saving the event, so they're not copied.
+        .setPayloads(UnsafeByteOperations.unsafeWrap(event.payloads()))
         .build();
-    observer.onNext(command);
-  }
-
-  @Override
-  public void disconnect() {
-    observer.onCompleted();
   }
 }
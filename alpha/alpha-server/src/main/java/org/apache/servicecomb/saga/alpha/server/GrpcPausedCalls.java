@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import io.grpc.Context;
+import org.apache.servicecomb.saga.alpha.core.GlobalTxPauseWaiters;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Parks the requests of paused global transactions with their gRPC calls.
+ * A parked request is removed from {@link GlobalTxPauseWaiters} as soon as its call is cancelled, e.g. the client was disconnected or timed out,
+ * otherwise, it would be held until the global transaction is resumed though nobody would receive its reply.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public final class GrpcPausedCalls {
+
+  private GrpcPausedCalls() {
+  }
+
+  /**
+   * It must be called in the thread of the gRPC call, or in the continuation of a parked request, because the call is got from current context.
+   */
+  public static void runWhenResumed(GlobalTxPauseWaiters pauseWaiters, String globalTxId, BooleanSupplier paused, Runnable continuation) {
+    ParkedCall call = new ParkedCall(Context.current(), continuation);
+    Runnable cancel = pauseWaiters.runWhenResumed(globalTxId, paused, call);
+    if (cancel != null) {
+      call.listen(cancel);
+    }
+  }
+
+  private static final class ParkedCall implements Runnable, Context.CancellationListener {
+    private final Context context;
+    private final Runnable continuation;
+    private volatile Runnable cancel;
+    private volatile boolean continued;
+
+    private ParkedCall(Context context, Runnable continuation) {
+      this.context = context;
+      this.continuation = continuation;
+    }
+
+    private void listen(Runnable cancel) {
+      this.cancel = cancel;
+      // the listener is run at once if the call has been cancelled.
+      context.addListener(this, Runnable::run);
+      // the request may be continued before listening, then the listener would never be removed by 'run'.
+      if (continued) {
+        context.removeListener(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      continued = true;
+      context.removeListener(this);
+      // the continuation may park the request again, so it's run in the context of the call.
+      Context previous = context.attach();
+      try {
+        continuation.run();
+      } finally {
+        context.detach(previous);
+      }
+    }
+
+    @Override
+    public void cancelled(Context cancelledContext) {
+      Runnable handle = cancel;
+      if (handle != null) {
+        handle.run();
+      }
+    }
+  }
+}
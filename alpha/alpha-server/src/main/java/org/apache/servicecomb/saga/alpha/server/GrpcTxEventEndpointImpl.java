@@ -26,7 +26,11 @@ import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.pool.KryoPool;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.Context;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import org.apache.servicecomb.saga.alpha.core.GlobalTxPauseWaiters;
 import org.apache.servicecomb.saga.alpha.core.OmegaCallback;
 import org.apache.servicecomb.saga.alpha.core.TxConsistentService;
 import org.apache.servicecomb.saga.alpha.core.TxEvent;
@@ -42,19 +46,27 @@ import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc.TxEvent
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static java.util.Collections.emptyMap;
 
 class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
     private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+    // the buffer for serializing is reused by the same thread, it's replaced if it grows larger than 256KB.
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(() -> new Output(4096, -1));
+
     private final KryoPool pool = new KryoPool.Builder(() -> new Kryo()).softReferences().build();
 
     private final TxConsistentService txConsistentService;
@@ -64,19 +76,37 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
 
     private final IAccidentHandlingService accidentHandlingService;
 
+    private final GlobalTxPauseWaiters pauseWaiters;
+
+    // it compensates the queued commands of the closed streams, by other instances or retrying later.
+    private final OmegaCallback failoverCallback;
+
+    private final int compensationQueueSize;
+
+    // the batches are handled by it, so the next batch of a stream is received while the previous ones are being saved.
+    private final Executor eventBatchExecutor;
+
+    private final int eventBatchMaxInFlight;
+
     GrpcTxEventEndpointImpl(TxConsistentService txConsistentService,
-                            Map<String, Map<String, OmegaCallback>> omegaCallbacks, ITxleConsistencyCache consistencyCache, IAccidentHandlingService accidentHandlingService) {
+                            Map<String, Map<String, OmegaCallback>> omegaCallbacks, ITxleConsistencyCache consistencyCache, IAccidentHandlingService accidentHandlingService,
+                            GlobalTxPauseWaiters pauseWaiters, OmegaCallback failoverCallback, int compensationQueueSize, Executor eventBatchExecutor, int eventBatchMaxInFlight) {
         this.txConsistentService = txConsistentService;
         this.omegaCallbacks = omegaCallbacks;
         this.consistencyCache = consistencyCache;
         this.accidentHandlingService = accidentHandlingService;
+        this.pauseWaiters = pauseWaiters;
+        this.failoverCallback = failoverCallback;
+        this.compensationQueueSize = compensationQueueSize;
+        this.eventBatchExecutor = eventBatchExecutor;
+        this.eventBatchMaxInFlight = Math.max(1, eventBatchMaxInFlight);
     }
 
     @Override
     public void onConnected(GrpcServiceConfig request, StreamObserver<GrpcCompensateCommand> responseObserver) {
-        omegaCallbacks
-                .computeIfAbsent(request.getServiceName(), key -> new ConcurrentHashMap<>())
-                .put(request.getInstanceId(), new GrpcOmegaCallback(responseObserver));
+        Map<String, OmegaCallback> serviceCallbacks = omegaCallbacks.computeIfAbsent(request.getServiceName(), key -> new ConcurrentHashMap<>());
+        serviceCallbacks.put(request.getInstanceId(), new GrpcOmegaCallback(responseObserver, compensationQueueSize, failoverCallback,
+                callback -> serviceCallbacks.remove(request.getInstanceId(), callback)));
     }
 
     // TODO 2018/1/5 connect is async and disconnect is sync, meaning callback may not be registered on disconnected
@@ -111,10 +141,134 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
             return;
         }
 
-        handleSupportTxPause(message, responseObserver);
+        handleSupportTxPause(message, grpcAck -> {
+            responseObserver.onNext(grpcAck);
+            responseObserver.onCompleted();
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public StreamObserver<GrpcTxEventBatch> onTxEvents(StreamObserver<GrpcAckBatch> responseObserver) {
+        // at most 'eventBatchMaxInFlight' batches of the stream are received before they're handled, the client waits for the stream to be ready meanwhile.
+        ServerCallStreamObserver<GrpcAckBatch> flowControl = null;
+        if (responseObserver instanceof ServerCallStreamObserver) {
+            flowControl = (ServerCallStreamObserver<GrpcAckBatch>) responseObserver;
+            flowControl.disableAutoInboundFlowControl();
+            flowControl.request(eventBatchMaxInFlight);
+        }
+        final ServerCallStreamObserver<GrpcAckBatch> inboundFlowControl = flowControl;
+        return new StreamObserver<GrpcTxEventBatch>() {
+            // the stream itself holds one, the response is completed after the stream was completed and all of its batches were handled.
+            private final AtomicInteger holders = new AtomicInteger(1);
+
+            @Override
+            public void onNext(GrpcTxEventBatch batch) {
+                holders.incrementAndGet();
+                try {
+                    // the context of the call is kept, the paused events are parked with it.
+                    eventBatchExecutor.execute(Context.current().wrap(() -> {
+                        try {
+                            handleTxEventBatch(batch, responseObserver);
+                        } catch (Exception e) {
+                            LOG.error("Encountered an exception when handling a batch of {} events.", batch.getEntriesCount(), e);
+                        } finally {
+                            release();
+                            if (inboundFlowControl != null) {
+                                inboundFlowControl.request(1);
+                            }
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    release();
+                    LOG.error("Failed to handle a batch of {} events, the server is shutting down.", batch.getEntriesCount(), e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                LOG.debug("The stream of batched events was broken.", t);
+            }
+
+            @Override
+            public void onCompleted() {
+                release();
+            }
+
+            private void release() {
+                if (holders.decrementAndGet() == 0) {
+                    synchronized (responseObserver) {
+                        responseObserver.onCompleted();
+                    }
+                }
+            }
+        };
+    }
+
+    // 批量事件与单个事件的处理结果一致，可直接处理的事件一次性提交给持久层，暂停的事件挂起后单独回复
+    private void handleTxEventBatch(GrpcTxEventBatch batch, StreamObserver<GrpcAckBatch> responseObserver) {
+        GrpcAckBatch.Builder ackBatch = GrpcAckBatch.newBuilder();
+        List<GrpcTxEventEntry> entries = new ArrayList<>(batch.getEntriesCount());
+        List<TxEvent> events = new ArrayList<>(batch.getEntriesCount());
+        for (GrpcTxEventEntry entry : batch.getEntriesList()) {
+            GrpcTxEvent message = entry.getEvent();
+            if (TxleConstants.SPECIAL_KEY.equals(message.getCategory())) {
+                ackBatch.addEntries(GrpcAckEntry.newBuilder().setId(entry.getId()).setAck(fetchLocalTxIdOfEndedGlobalTx(message)));
+            } else if (!checkIsEnabledTx(message)) {
+                ackBatch.addEntries(GrpcAckEntry.newBuilder().setId(entry.getId()).setAck(GrpcAck.newBuilder().setAborted(false).setIsEnabledTx(false)));
+            } else {
+                entries.add(entry);
+                events.add(toTxEvent(message));
+            }
+        }
+
+        int[] results = null;
+        try {
+            results = txConsistentService.handleSupportTxPause(events);
+        } catch (Exception e) {
+            LOG.error("Encountered an exception when executing method 'handleTxEventBatch'.", e);
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            GrpcTxEventEntry entry = entries.get(i);
+            if (results == null) {
+                ackBatch.addEntries(GrpcAckEntry.newBuilder().setId(entry.getId()).setAck(GrpcAck.newBuilder().setAborted(false).setIsEnabledTx(true).setPaused(true)));
+            } else if (results[i] != 0) {
+                ackBatch.addEntries(GrpcAckEntry.newBuilder().setId(entry.getId()).setAck(GrpcAck.newBuilder().setAborted(results[i] < 0).setIsEnabledTx(true)));
+            } else {
+                // the global transaction is paused, the event is parked and replied alone after resuming.
+                TxEvent event = events.get(i);
+                GrpcPausedCalls.runWhenResumed(pauseWaiters, event.globalTxId(), () -> txConsistentService.isGlobalTxPaused(event),
+                        () -> handleSupportTxPause(entry.getEvent(), grpcAck -> replyAckBatch(responseObserver, GrpcAckBatch.newBuilder().addEntries(GrpcAckEntry.newBuilder().setId(entry.getId()).setAck(grpcAck)).build())));
+            }
+        }
+        if (ackBatch.getEntriesCount() > 0) {
+            replyAckBatch(responseObserver, ackBatch.build());
+        }
+    }
+
+    // the acks of parked events are replied by other threads, but the stream is not thread-safe.
+    private void replyAckBatch(StreamObserver<GrpcAckBatch> responseObserver, GrpcAckBatch ackBatch) {
+        synchronized (responseObserver) {
+            try {
+                responseObserver.onNext(ackBatch);
+            } catch (Exception e) {
+                // the stream was cancelled by the client, the events are sent again by a new stream.
+                LOG.debug("Failed to reply {} acks, the stream of batched events was closed.", ackBatch.getEntriesCount(), e);
+            }
+        }
     }
 
     private boolean isEnabledTx(GrpcTxEvent message, StreamObserver<GrpcAck> responseObserver) {
+        boolean result = checkIsEnabledTx(message);
+        if (!result) {
+            // 保证下面两行代码被执行，若grpc服务端程序执行完成却没有执行下面两行代码，则将会报错误【io.grpc.StatusRuntimeException: UNKNOWN】 By Gannalyo
+            responseObserver.onNext(GrpcAck.newBuilder().setAborted(false).setIsEnabledTx(result).build());
+            responseObserver.onCompleted();
+        }
+        return result;
+    }
+
+    private boolean checkIsEnabledTx(GrpcTxEvent message) {
         boolean result = true;
         try {
             if (EventType.SagaStartedEvent.name().equals(message.getType())) {
@@ -133,36 +287,38 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
         } catch (Exception e) {
             LOG.error("Encountered an exception when executing method 'isEnabledConfig'.", e);
         }
-
-        if (!result) {
-            // 保证下面两行代码被执行，若grpc服务端程序执行完成却没有执行下面两行代码，则将会报错误【io.grpc.StatusRuntimeException: UNKNOWN】 By Gannalyo
-            responseObserver.onNext(GrpcAck.newBuilder().setAborted(false).setIsEnabledTx(result).build());
-            responseObserver.onCompleted();
-        }
         return result;
     }
 
-    private void handleSupportTxPause(GrpcTxEvent message, StreamObserver<GrpcAck> responseObserver) {
+    private TxEvent toTxEvent(GrpcTxEvent message) {
+        return new TxEvent(
+                message.getServiceName(),
+                message.getInstanceId(),
+                new Date(),
+                message.getGlobalTxId(),
+                message.getLocalTxId(),
+                message.getParentTxId().isEmpty() ? null : message.getParentTxId(),
+                message.getType(),
+                message.getCompensationMethod(),
+                message.getTimeout(),
+                message.getRetryMethod(),
+                message.getRetries(),
+                message.getCategory(),
+                message.getPayloads().toByteArray()
+        );
+    }
+
+    private void handleSupportTxPause(GrpcTxEvent message, Consumer<GrpcAck> reply) {
         // To use temporary variables as much as possible for saving memory, not static variables.
         GrpcAck grpcAck = null;
+        boolean parked = false;
         try {
             int result = 0;
+            TxEvent event = toTxEvent(message);
+            boolean handled = false;
             try {
-                result = txConsistentService.handleSupportTxPause(new TxEvent(
-                        message.getServiceName(),
-                        message.getInstanceId(),
-                        new Date(),
-                        message.getGlobalTxId(),
-                        message.getLocalTxId(),
-                        message.getParentTxId().isEmpty() ? null : message.getParentTxId(),
-                        message.getType(),
-                        message.getCompensationMethod(),
-                        message.getTimeout(),
-                        message.getRetryMethod(),
-                        message.getRetries(),
-                        message.getCategory(),
-                        message.getPayloads().toByteArray()
-                ));
+                result = txConsistentService.handleSupportTxPause(event);
+                handled = true;
             } catch (Exception e) {
             }
 
@@ -170,20 +326,32 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
                 grpcAck = GrpcAck.newBuilder().setAborted(false).setIsEnabledTx(true).build();
             } else if (result < 0) {
                 grpcAck = GrpcAck.newBuilder().setAborted(true).setIsEnabledTx(true).build();
+            } else if (handled) {
+                // the global transaction is paused, the request is parked without holding current thread, and it will be handled again after resuming.
+                parked = true;
+                GrpcPausedCalls.runWhenResumed(pauseWaiters, message.getGlobalTxId(), () -> txConsistentService.isGlobalTxPaused(event), () -> handleSupportTxPause(message, reply));
             } else {
                 grpcAck = GrpcAck.newBuilder().setAborted(false).setIsEnabledTx(true).setPaused(true).build();
             }
         } catch (Exception e) {
+            parked = false;
             LOG.error("Encountered an exception when executing method 'handleSupportTxPause'.", e);
         } finally {
             // 保证下面两行代码被执行，若grpc服务端程序执行完成却没有执行下面两行代码，则将会报错误【io.grpc.StatusRuntimeException: UNKNOWN】 By Gannalyo
-            responseObserver.onNext(grpcAck);
-            responseObserver.onCompleted();
+            if (!parked) {
+                reply.accept(grpcAck);
+            }
 //            LOG.info("\r\n---- [{}] server returns rpc request [{}]，globalTxId = [{}], localTxId = [{}].\r\n", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS").format(new Date()), message.getType(), message.getGlobalTxId(), message.getLocalTxId());
         }
     }
 
     private void fetchLocalTxIdOfEndedGlobalTx(GrpcTxEvent message, StreamObserver<GrpcAck> responseObserver) {
+        // 保证下面两行代码被执行，若grpc服务端程序执行完成却没有执行下面两行代码，则将会报错误【io.grpc.StatusRuntimeException: UNKNOWN】 By Gannalyo
+        responseObserver.onNext(fetchLocalTxIdOfEndedGlobalTx(message));
+        responseObserver.onCompleted();
+    }
+
+    private GrpcAck fetchLocalTxIdOfEndedGlobalTx(GrpcTxEvent message) {
         ByteString payloads = null;
         try {
             // Reasons for using the Kryo serialization tool are: 1.Do not change the TxEvent's structure. 2.To decrease data size for saving I/O. 3.Kryo has a high-performance computing power.
@@ -196,40 +364,42 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
             if (localTxIdSet != null && !localTxIdSet.isEmpty()) {
                 Set<String> localTxIdOfEndedGlobalTx = txConsistentService.fetchLocalTxIdOfEndedGlobalTx(localTxIdSet);
                 if (localTxIdOfEndedGlobalTx != null && !localTxIdOfEndedGlobalTx.isEmpty()) {
-                    payloads = ByteString.copyFrom(serialize(localTxIdOfEndedGlobalTx.toArray()));
+                    payloads = UnsafeByteOperations.unsafeWrap(serialize(localTxIdOfEndedGlobalTx.toArray()));
                 }
             }
         } catch (Exception e) {
             LOG.error("Encountered an exception when executing method 'fetchLocalTxIdOfEndedGlobalTx'.", e);
-        } finally {
-            // message.toBuilder().setPayloads(payloads);// Could not set payloads to the original object.
-            // 保证下面两行代码被执行，若grpc服务端程序执行完成却没有执行下面两行代码，则将会报错误【io.grpc.StatusRuntimeException: UNKNOWN】 By Gannalyo
-            if (payloads == null) {
-                responseObserver.onNext(GrpcAck.newBuilder().setAborted(false).build());
-            } else {
-                responseObserver.onNext(GrpcAck.newBuilder().setAborted(false).setLocalTxIds(payloads).build());
-            }
-            responseObserver.onCompleted();
         }
+        // message.toBuilder().setPayloads(payloads);// Could not set payloads to the original object.
+        if (payloads == null) {
+            return GrpcAck.newBuilder().setAborted(false).build();
+        }
+        return GrpcAck.newBuilder().setAborted(false).setLocalTxIds(payloads).build();
     }
 
     private byte[] serialize(Object[] objects) {
-        Output output = new Output(4096, -1);
+        Output output = OUTPUT.get();
+        output.clear();
         Kryo kryo = pool.borrow();
-        kryo.writeObjectOrNull(output, objects, Object[].class);
-        pool.release(kryo);
-        return output.toBytes();
+        try {
+            kryo.writeObjectOrNull(output, objects, Object[].class);
+            return output.toBytes();
+        } finally {
+            pool.release(kryo);
+            if (output.getBuffer().length > 256 * 1024) {
+                output.setBuffer(new byte[4096], -1);
+            }
+        }
     }
 
     private Object[] deserialize(byte[] message) {
+        Kryo kryo = pool.borrow();
         try {
-            Input input = new Input(new ByteArrayInputStream(message));
-            Kryo kryo = pool.borrow();
-            Object[] objects = kryo.readObjectOrNull(input, Object[].class);
-            pool.release(kryo);
-            return objects;
+            return kryo.readObjectOrNull(new Input(message), Object[].class);
         } catch (KryoException e) {
             throw new RuntimeException("Unable to deserialize message", e);
+        } finally {
+            pool.release(kryo);
         }
     }
 
@@ -154,6 +154,11 @@ public class SpringCommandRepository implements CommandRepository {
     commandRepository.updateStatusByGlobalTxIdAndLocalTxId(DONE.name(), globalTxId, localTxId);
   }
 
+  @Override
+  public void markCommandAsNew(String globalTxId, String localTxId) {
+    commandRepository.updateStatusByGlobalTxIdAndLocalTxId(NEW.name(), globalTxId, localTxId);
+  }
+
   @Override
   public List<Command> findUncompletedCommands(String globalTxId) {
 //    return commandRepository.findByGlobalTxIdAndStatus(globalTxId, NEW.name());
@@ -180,4 +185,14 @@ public class SpringCommandRepository implements CommandRepository {
 
     return commands;
   }
+
+  @Override
+  public List<Command> claimCommandsToCompensate(int limit) {
+    // the whole batch is claimed by one conditional update, then only the commands claimed by this call are read back by its token.
+    String claimToken = UUID.randomUUID().toString();
+    if (commandRepository.claimCommandsByToken(claimToken, limit) == 0) {
+      return Collections.emptyList();
+    }
+    return commandRepository.findCommandByClaimToken(claimToken);
+  }
 }
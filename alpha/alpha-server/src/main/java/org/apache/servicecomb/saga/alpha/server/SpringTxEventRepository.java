@@ -20,18 +20,26 @@
 
 package org.apache.servicecomb.saga.alpha.server;
 
+import com.actionsky.txle.cache.ITxleConsistencyCache;
+import com.actionsky.txle.enums.GlobalTxStatus;
 import org.apache.servicecomb.saga.alpha.core.AdditionalEventType;
+import org.apache.servicecomb.saga.alpha.core.GlobalTxState;
+import org.apache.servicecomb.saga.alpha.core.GlobalTxStateRegistry;
 import org.apache.servicecomb.saga.alpha.core.TxEvent;
 import org.apache.servicecomb.saga.alpha.core.TxEventRepository;
+import org.apache.servicecomb.saga.alpha.core.TxTimeoutWheel;
 import org.apache.servicecomb.saga.alpha.core.datadictionary.DataDictionaryItem;
 import org.apache.servicecomb.saga.alpha.core.datadictionary.IDataDictionaryService;
-import org.apache.servicecomb.saga.alpha.core.listener.GlobalTxListener;
+import org.apache.servicecomb.saga.alpha.core.listener.TxEventBus;
+import org.apache.servicecomb.saga.alpha.core.listener.TxEventNotice;
+import org.apache.servicecomb.saga.common.TxleConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 
+import javax.annotation.Resource;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -41,24 +49,104 @@ class SpringTxEventRepository implements TxEventRepository {
   private static final Logger LOG = LoggerFactory.getLogger(SpringTxEventRepository.class);
 
   private final TxEventEnvelopeRepository eventRepo;
+  // it's null if the journal is disabled, then events are saved one by one.
+  private final TxEventJournal eventJournal;
 
   @Autowired
   private IDataDictionaryService dataDictionaryService;
 
   @Autowired
-  private GlobalTxListener globalTxListener;
+  private TxEventBus txEventBus;
+
+  @Autowired
+  private TxTimeoutWheel timeoutWheel;
+
+  @Autowired
+  private GlobalTxStateRegistry globalTxStateRegistry;
+
+  @Resource(name = "txleMysqlCache")
+  @Autowired
+  private ITxleConsistencyCache consistencyCache;
 
   SpringTxEventRepository(TxEventEnvelopeRepository eventRepo) {
+    this(eventRepo, null);
+  }
+
+  SpringTxEventRepository(TxEventEnvelopeRepository eventRepo, TxEventJournal eventJournal) {
     this.eventRepo = eventRepo;
+    this.eventJournal = eventJournal;
   }
 
   @Override
   public void save(TxEvent event) {
-    globalTxListener.listenEvent(event);
+    txEventBus.publish(TxEventNotice.beforeSave(event));
+    Long surrogateId = persist(event);
+    if (surrogateId != null) {
+      event.setSurrogateId(surrogateId);
+      // update the in-memory state before notifying listeners, so that listeners could read it.
+      globalTxStateRegistry.onEventSaved(event);
+      markGlobalTxAborted(event);
+      txEventBus.publish(TxEventNotice.afterSave(event));
+      timeoutWheel.onEventSaved(event);
+    }
+  }
+
+  @Override
+  public void saveAll(List<TxEvent> events) {
+    events.forEach(event -> txEventBus.publish(TxEventNotice.beforeSave(event)));
+    List<Long> surrogateIds = persistAll(events);
+    for (int i = 0; i < events.size(); i++) {
+      Long surrogateId = surrogateIds.get(i);
+      if (surrogateId != null) {
+        TxEvent event = events.get(i);
+        event.setSurrogateId(surrogateId);
+        globalTxStateRegistry.onEventSaved(event);
+        markGlobalTxAborted(event);
+        txEventBus.publish(TxEventNotice.afterSave(event));
+        timeoutWheel.onEventSaved(event);
+      }
+    }
+  }
+
+  // the aborted status is read by all nodes from the shared cache, so it's set before returning to the saving thread, rather than by listeners asynchronously.
+  private void markGlobalTxAborted(TxEvent event) {
+    if (!TxAbortedEvent.name().equals(event.type())) {
+      return;
+    }
+    try {
+      // verify if the retries > 0
+      if (event.globalTxId().equals(event.localTxId()) || checkTxIsAborted(event.globalTxId(), event.localTxId())) {
+        consistencyCache.setKeyValueCache(TxleConstants.constructTxStatusCacheKey(event.globalTxId()), GlobalTxStatus.Aborted.toString());
+      }
+    } catch (Exception e) {
+      LOG.error("Failed to set the aborted status of global transaction. globalTxId = {}, localTxId = {}", event.globalTxId(), event.localTxId(), e);
+    }
+  }
+
+  private List<Long> persistAll(List<TxEvent> events) {
+    if (eventJournal != null) {
+      // the events are appended together, so they're committed in the same batch as much as possible.
+      return eventJournal.appendAll(events);
+    }
+    List<Long> surrogateIds = new ArrayList<>(events.size());
+    for (TxEvent saveEvent : eventRepo.save(events)) {
+      surrogateIds.add(saveEvent == null ? null : saveEvent.id());
+    }
+    return surrogateIds;
+  }
+
+  private Long persist(TxEvent event) {
+    if (eventJournal != null) {
+      // group commit with the events of other threads, it returns after the event is durable.
+      return eventJournal.append(event);
+    }
     TxEvent saveEvent = eventRepo.save(event);
-    if (saveEvent != null) {
-      event.setSurrogateId(saveEvent.id());
-      globalTxListener.listenEvent(event);
+    return saveEvent == null ? null : saveEvent.id();
+  }
+
+  public void close() {
+    if (eventJournal != null) {
+      eventJournal.close();
     }
   }
 
@@ -68,8 +156,25 @@ class SpringTxEventRepository implements TxEventRepository {
     return eventRepo.findTimeoutEvents(unendedMinEventId, new Date());
   }
 
+  @Override
+  public List<TxEvent> findUnendedEventsWithTimeout(long unendedMinEventId) {
+    // the expiry time of the event without timeout is MAX_TIMESTAMP.
+    return eventRepo.findTimeoutEvents(unendedMinEventId, new Date(TxEvent.MAX_TIMESTAMP));
+  }
+
+  @Override
+  public TxEvent findTimeoutEvent(String globalTxId, String localTxId) {
+    return eventRepo.findTimeoutEvent(globalTxId, localTxId, new Date());
+  }
+
   @Override
   public TxEvent findTimeoutEventsBeforeEnding(String globalTxId) {
+    // the state in memory only knows the events which were saved by current node, so only its positive answer is trusted.
+    GlobalTxState state = globalTxStateRegistry.get(globalTxId);
+    TxEvent timeoutEvent = state == null ? null : state.findTimeoutEventBeforeEnding(System.currentTimeMillis());
+    if (timeoutEvent != null) {
+      return timeoutEvent;
+    }
     return eventRepo.findTimeoutEventsBeforeEnding(globalTxId, new Date());
   }
 
@@ -105,11 +210,19 @@ class SpringTxEventRepository implements TxEventRepository {
 
   @Override
   public boolean checkIsExistsEventType(String globalTxId, String localTxId, String type) {
+    GlobalTxState state = globalTxStateRegistry.get(globalTxId);
+    if (state != null && state.hasEvent(localTxId, type)) {
+      return true;
+    }
     return eventRepo.checkIsExistsEventType(globalTxId, localTxId, type) > 0;
   }
 
   @Override
   public boolean checkTxIsAborted(String globalTxId, String localTxId) {
+    GlobalTxState state = globalTxStateRegistry.get(globalTxId);
+    if (state != null && state.isSubTxRetriesExhausted(localTxId)) {
+      return true;
+    }
     return eventRepo.checkTxIsAborted(globalTxId, localTxId) > 0;
   }
 
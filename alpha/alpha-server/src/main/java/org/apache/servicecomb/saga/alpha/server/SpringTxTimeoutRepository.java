@@ -24,8 +24,7 @@ import javax.transaction.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.util.Date;
 import java.util.List;
-
-import static org.apache.servicecomb.saga.alpha.core.TaskStatus.PENDING;
+import java.util.stream.Collectors;
 
 public class SpringTxTimeoutRepository implements TxTimeoutRepository {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -50,6 +49,11 @@ public class SpringTxTimeoutRepository implements TxTimeoutRepository {
     return timeoutRepo.findTxTimeoutByEventId(eventId);
   }
 
+  @Override
+  public boolean claim(TxTimeout timeout) {
+    return timeoutRepo.claimTimeoutByEventId(timeout.eventId()) == 1;
+  }
+
   @Override
   public void markTimeoutAsDone(List<Long> surrogateIdList) {
     timeoutRepo.updateStatusOfFinishedTx(surrogateIdList);
@@ -65,8 +69,7 @@ public class SpringTxTimeoutRepository implements TxTimeoutRepository {
   public List<TxTimeout> findFirstTimeout() {
 //    List<TxTimeout> timeoutEvents = timeoutRepo.findFirstTimeoutTxOrderByExpireTimeAsc(new PageRequest(0, 1), new Date());
     List<TxTimeout> timeoutEvents = timeoutRepo.findFirstTimeoutTxOrderByExpireTimeAsc(new Date());
-    timeoutEvents.forEach(event -> timeoutRepo
-        .updateStatusByGlobalTxIdAndLocalTxId(PENDING.name(), event.globalTxId(), event.localTxId()));
-    return timeoutEvents;
+    // the timeout wheel of another server may claim the same timeout at the same time, so return the claimed ones only.
+    return timeoutEvents.stream().filter(this::claim).collect(Collectors.toList());
   }
 }
\ No newline at end of file
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A group-commit journal for {@link TxEvent}.
+ * Events from concurrent callers are put into a bounded queue, and a single flusher writes them as one JDBC batch in one local transaction.
+ * A batch is flushed once it reaches 'batchSize' events or 'flushIntervalMicros' microseconds after its first event.
+ * Each caller is blocked until the batch which contains its event is committed, so the durability is as same as saving one by one.
+ * The batch is written by the journal's own connection, so it bypasses the Spring transaction of the caller, i.e. the events are not rolled back with it.
+ *
+ * It's supported by MySQL only, because the INSERT statement depends on the columns of 'schema-mysql.sql', please check it by {@link #isSupported(DataSource)} before creating.
+ * For MySQL, please append 'rewriteBatchedStatements=true' to the url of datasource, so that the batch is sent as a multi-row INSERT.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+class TxEventJournal {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final String INSERT_SQL = "INSERT INTO TxEvent (serviceName, instanceId, creationTime, globalTxId, localTxId, parentTxId, type,"
+      + " compensationMethod, expiryTime, retryMethod, retries, category, payloads) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private final DataSource dataSource;
+  private final int batchSize;
+  private final long flushIntervalNanos;
+  private final BlockingQueue<PendingEvent> pendingEvents;
+  private final ExecutorService flusher = Executors.newSingleThreadExecutor(new TxleDefaultTheadFactory("txle-event-journal-"));
+  private volatile boolean running = true;
+
+  TxEventJournal(DataSource dataSource, int capacity, int batchSize, long flushIntervalMicros) {
+    this.dataSource = dataSource;
+    this.batchSize = batchSize;
+    this.flushIntervalNanos = TimeUnit.MICROSECONDS.toNanos(flushIntervalMicros);
+    this.pendingEvents = new ArrayBlockingQueue<>(capacity);
+    this.flusher.execute(this::flushContinuously);
+  }
+
+  /**
+   * @return true if the datasource is MySQL, otherwise, the events should be saved by JPA one by one.
+   */
+  static boolean isSupported(DataSource dataSource) {
+    try (Connection connection = dataSource.getConnection()) {
+      String productName = connection.getMetaData().getDatabaseProductName();
+      if ("MySQL".equalsIgnoreCase(productName)) {
+        return true;
+      }
+      LOG.warn("The event journal is disabled, because it supports MySQL only, but the database is [{}].", productName);
+    } catch (SQLException e) {
+      LOG.error(TxleConstants.LOG_ERROR_PREFIX + "The event journal is disabled, because failed to read the product name of database.", e);
+    }
+    return false;
+  }
+
+  /**
+   * Append an event to journal, and wait until it is durable.
+   *
+   * @param event the event to be saved
+   * @return the generated surrogate id, or null if the driver did not return it
+   */
+  Long append(TxEvent event) {
+    if (!running) {
+      throw new IllegalStateException("The event journal has been closed.");
+    }
+    PendingEvent pendingEvent = new PendingEvent(event);
+    try {
+      // it's blocked when the queue is full, that is a back pressure to callers.
+      pendingEvents.put(pendingEvent);
+      return pendingEvent.future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for saving event " + event, e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to save event " + event, e.getCause());
+    }
+  }
+
+  /**
+   * Append events to journal together, and wait until all of them are durable.
+   *
+   * @param events the events to be saved in order
+   * @return the generated surrogate ids in the same order, an id is null if the driver did not return it
+   */
+  List<Long> appendAll(List<TxEvent> events) {
+    if (!running) {
+      throw new IllegalStateException("The event journal has been closed.");
+    }
+    List<PendingEvent> batch = new ArrayList<>(events.size());
+    try {
+      for (TxEvent event : events) {
+        PendingEvent pendingEvent = new PendingEvent(event);
+        pendingEvents.put(pendingEvent);
+        batch.add(pendingEvent);
+      }
+      List<Long> surrogateIds = new ArrayList<>(batch.size());
+      for (PendingEvent pendingEvent : batch) {
+        surrogateIds.add(pendingEvent.future.get());
+      }
+      return surrogateIds;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for saving " + events.size() + " events", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to save " + events.size() + " events", e.getCause());
+    }
+  }
+
+  private void flushContinuously() {
+    List<PendingEvent> batch = new ArrayList<>(batchSize);
+    while (running || !pendingEvents.isEmpty()) {
+      try {
+        PendingEvent first = pendingEvents.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+          pendingEvents.drainTo(batch, batchSize - batch.size());
+          long remaining = deadline - System.nanoTime();
+          if (batch.size() >= batchSize || remaining <= 0) {
+            break;
+          }
+          PendingEvent next = pendingEvents.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        flush(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        running = false;
+      } catch (Throwable e) {
+        LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to flush event journal.", e);
+      } finally {
+        // to avoid blocking callers forever
+        batch.forEach(pendingEvent -> pendingEvent.future.completeExceptionally(new IllegalStateException("The event was not flushed.")));
+        batch.clear();
+      }
+    }
+  }
+
+  private void flush(List<PendingEvent> batch) {
+    try (Connection connection = dataSource.getConnection()) {
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+        for (PendingEvent pendingEvent : batch) {
+          bind(ps, pendingEvent.event);
+          ps.addBatch();
+        }
+        ps.executeBatch();
+        List<Long> generatedIds = new ArrayList<>(batch.size());
+        try (ResultSet rs = ps.getGeneratedKeys()) {
+          while (rs.next()) {
+            generatedIds.add(rs.getLong(1));
+          }
+        }
+        connection.commit();
+
+        if (generatedIds.size() != batch.size()) {
+          LOG.warn("The count of generated ids [{}] is not equal to the count of events [{}] in journal.", generatedIds.size(), batch.size());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+          batch.get(i).future.complete(generatedIds.size() == batch.size() ? generatedIds.get(i) : null);
+        }
+      } catch (Exception e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    } catch (Exception e) {
+      LOG.error("Failed to flush [{}] events in journal.", batch.size(), e);
+      batch.forEach(pendingEvent -> pendingEvent.future.completeExceptionally(e));
+    }
+  }
+
+  private void bind(PreparedStatement ps, TxEvent event) throws SQLException {
+    ps.setString(1, event.serviceName());
+    ps.setString(2, event.instanceId());
+    ps.setTimestamp(3, new Timestamp(event.creationTime().getTime()));
+    ps.setString(4, event.globalTxId());
+    ps.setString(5, event.localTxId());
+    ps.setString(6, event.parentTxId());
+    ps.setString(7, event.type());
+    ps.setString(8, event.compensationMethod());
+    ps.setTimestamp(9, new Timestamp(event.expiryTime().getTime()));
+    ps.setString(10, event.retryMethod());
+    ps.setInt(11, event.retries());
+    ps.setString(12, event.category());
+    ps.setBytes(13, event.payloads());
+  }
+
+  public void close() {
+    running = false;
+    flusher.shutdown();
+    try {
+      if (!flusher.awaitTermination(5, TimeUnit.SECONDS)) {
+        flusher.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      flusher.shutdownNow();
+    }
+  }
+
+  private static final class PendingEvent {
+    private final TxEvent event;
+    private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+    private PendingEvent(TxEvent event) {
+      this.event = event;
+    }
+  }
+}
@@ -79,4 +79,9 @@ interface TxTimeoutEntityRepository extends CrudRepository<TxTimeout, Long> {
 
   @Query(value = "SELECT * FROM (SELECT count(*) FROM TxTimeout t WHERE t.eventId = ?1) T1", nativeQuery = true)
   long findTxTimeoutByEventId(long eventId);
+
+  @Transactional
+  @Modifying(clearAutomatically = true)
+  @Query("UPDATE TxTimeout t SET t.status = 'PENDING' WHERE t.eventId = ?1 AND t.status = 'NEW'")
+  int claimTimeoutByEventId(long eventId);
 }
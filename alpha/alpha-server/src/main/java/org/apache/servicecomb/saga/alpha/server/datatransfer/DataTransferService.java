@@ -5,41 +5,75 @@
 
 package org.apache.servicecomb.saga.alpha.server.datatransfer;
 
-import org.apache.servicecomb.saga.alpha.core.TxEventRepository;
+import com.actionsky.txle.cache.ITxleConsistencyCache;
 import org.apache.servicecomb.saga.alpha.core.configcenter.ConfigCenter;
 import org.apache.servicecomb.saga.alpha.core.configcenter.ConfigCenterStatus;
 import org.apache.servicecomb.saga.alpha.core.configcenter.IConfigCenterService;
 import org.apache.servicecomb.saga.alpha.core.datatransfer.IDataTransferService;
 import org.apache.servicecomb.saga.common.ConfigCenterType;
+import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.Resource;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This tool class just likes a simple ETL. For transferring normal data to some history tables according to some rule.
+ *
+ * The rows are walked by ranges of 'surrogateId' with keyset pagination, and moved in chunks of 'chunkSize' rows, sleeping 'throttleMillis' between chunks,
+ * so every statement touches a bounded range of the primary key only. The periods are moved in parallel by 'threads' workers,
+ * and the last walked id of every period is saved as a checkpoint in the KeyValueCache table, so the interrupted job is resumed from there.
+ * A global transaction may span several periods, so it's claimed by one worker before moving, and the other workers skip it meanwhile.
  * @author Gannalyo
  * @since 2019/7/23
  */
 public class DataTransferService implements IDataTransferService {
     private static final Logger LOG = LoggerFactory.getLogger(DataTransferService.class);
 
-    private DataTransferRepository dataTransferRepository;
-    private TxEventRepository txEventRepository;
+    private static final String CHECKPOINT_KEY_PREFIX = "txle-data-transfer-checkpoint-";
+    private static final String TX_EVENT_TABLE = "TxEvent";
+    // the ended global transactions within the recent days are kept in the current tables
+    private static final int RETENTION_DAYS = 10;
+    private static final int MAX_PLACEHOLDERS = 1000;
+
+    private final DataTransferRepository dataTransferRepository;
+    private final int chunkSize;
+    private final long throttleMillis;
+    private final ExecutorService workers;
+    private final Set<String> createdHistoryTables = ConcurrentHashMap.newKeySet();
+    // the global transactions which are being moved by some worker
+    private final Set<String> movingGlobalTxIds = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
 
     @Resource(name = "dbDegradationConfigService")
     @Autowired
     private IConfigCenterService configCenterService;
 
-    public DataTransferService(DataTransferRepository dataTransferRepository, TxEventRepository txEventRepository) {
+    @Resource(name = "txleMysqlCache")
+    @Autowired
+    private ITxleConsistencyCache consistencyCache;
+
+    public DataTransferService(DataTransferRepository dataTransferRepository, int threads, int chunkSize, long throttleMillis) {
         this.dataTransferRepository = dataTransferRepository;
-        this.txEventRepository = txEventRepository;
+        this.chunkSize = Math.max(1, Math.min(MAX_PLACEHOLDERS, chunkSize));
+        this.throttleMillis = Math.max(0, throttleMillis);
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), new TxleDefaultTheadFactory("txle-data-transfer-"));
     }
 
     @Override
@@ -49,11 +83,11 @@ public class DataTransferService implements IDataTransferService {
         /**
          * 数据转储逻辑
          * 0.支持按日/月/季/年生成历史数据存储表的规则，默认按月
-         * 1.查询最小日期
-         * 2.依据配置规则从最小日期到当前日期，每次取10000条已完成的全局事务唯一标识，排除最近10天内的
-         * 3.创建(如果不存在)最小日期到当前日期间的历史数据表
-         * 4.拷贝指定日期内已完成的全局事务数据
-         * 5.删除指定日期内已完成的全局事务数据
+         * 1.依据最小主键对应的日期到10天前，按规则划分周期，并通过主键二分查找出各周期的主键区间
+         * 2.多个周期并行处理，每个周期内按主键分页(surrogateId > 上次最大主键)，每次最多取chunkSize条
+         * 3.筛选出10天前已结束的全局事务数据，按数据所属周期创建(如果不存在)历史数据表
+         * 4.先拷贝并删除相关的TxEventAddition/Command/TxTimeout数据，再拷贝并删除TxEvent数据
+         * 5.每批次后记录检查点并休眠throttleMillis毫秒，周期完成后清除检查点
          */
         int historyTableInternalRule = 1;
         List<ConfigCenter> dataTransferFrequencyList = configCenterService.selectConfigCenterByType(null, null, ConfigCenterStatus.Normal.toInteger(), ConfigCenterType.HistoryTableIntervalRule.toInteger());
@@ -63,83 +97,121 @@ public class DataTransferService implements IDataTransferService {
                 historyTableInternalRule = Integer.parseInt(value.trim());
             }
         }
+        LOG.info("Transferring data with the rule '{}'.", historyTableInternalRule);
+
+        Calendar cutoff = Calendar.getInstance();
+        cutoff.add(Calendar.DAY_OF_YEAR, -RETENTION_DAYS);
+        List<Period> periods = computePeriods(srcTable, historyTableInternalRule, cutoff.getTime());
+        if (periods.isEmpty()) {
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(periods.size());
+        for (Period period : periods) {
+            tasks.add(() -> {
+                try {
+                    moveDataToHistory(srcTable, period, periods, cutoff.getTime());
+                } catch (Exception e) {
+                    LOG.error("Encountered an error in case of transferring data, table [{}], period [{}].", srcTable, period.suffix, e);
+                }
+                return null;
+            });
+        }
+        try {
+            workers.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.info("Transferred data of table [{}], periods [{}].", srcTable, periods.size());
+    }
+
+    public void shutdown() {
+        running = false;
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+    }
+
+    // the periods from the creation time of the min id to the cutoff, with their ranges of id. It's assumed that ids increase with creation time.
+    List<Period> computePeriods(String srcTable, int rule, Date cutoff) {
+        List<Period> periods = new ArrayList<>();
+        Object[] minMaxId = firstRow(dataTransferRepository.executeQuery("SELECT MIN(T.surrogateId), MAX(T.surrogateId) FROM " + srcTable + " T"));
+        if (minMaxId == null || minMaxId[0] == null) {
+            return periods;
+        }
+        long minId = ((Number) minMaxId[0]).longValue();
+        long maxId = ((Number) minMaxId[1]).longValue();
+        Date minDate = creationTimeOfFirstIdFrom(srcTable, minId);
+        if (minDate == null) {
+            return periods;
+        }
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(minDate);
+        truncateToPeriod(calendar, rule);
+        while (calendar.getTime().before(cutoff)) {
+            Date startTime = calendar.getTime();
+            periods.add(new Period(suffixOf(rule, startTime), startTime, periods.isEmpty() ? minId : firstIdCreatedFrom(srcTable, startTime, minId, maxId)));
+            increasePeriod(calendar, rule);
+        }
+        // the rows which are created after the cutoff are never moved in this round
+        long endId = firstIdCreatedFrom(srcTable, cutoff, minId, maxId);
+        for (int i = 0; i < periods.size(); i++) {
+            periods.get(i).endId = i + 1 < periods.size() ? periods.get(i + 1).startId : endId;
+        }
+        periods.removeIf(period -> period.startId >= period.endId);
+        return periods;
+    }
 
-        switch (historyTableInternalRule) {
+    private void truncateToPeriod(Calendar calendar, int rule) {
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        if (rule != 0) {
+            calendar.set(Calendar.DAY_OF_MONTH, 1);
+        }
+        if (rule == 2) {
+            // 季度：1-3、4-6、7-9、10-12
+            calendar.set(Calendar.MONTH, calendar.get(Calendar.MONTH) / 3 * 3);
+        } else if (rule == 3) {
+            calendar.set(Calendar.MONTH, Calendar.JANUARY);
+        }
+    }
+
+    private void increasePeriod(Calendar calendar, int rule) {
+        switch (rule) {
             case 0:
-                LOG.info("Transferring data with the rule '0'.");
-                transferDataByDayMonthYear(srcTable, "yyyyMMdd");
+                calendar.add(Calendar.DAY_OF_YEAR, 1);
                 return;
             case 2:
-                LOG.info("Transferring data with the rule '2'.");
-                transferDataBySeason(srcTable);
+                calendar.add(Calendar.MONTH, 3);
                 return;
             case 3:
-                LOG.info("Transferring data with the rule '3'.");
-                transferDataByDayMonthYear(srcTable, "yyyy");
+                calendar.add(Calendar.YEAR, 1);
                 return;
             default:
-                LOG.info("Transferring data with the rule '1'.");
-                transferDataByDayMonthYear(srcTable, "yyyyMM");
+                calendar.add(Calendar.MONTH, 1);
                 return;
         }
     }
 
-    private void transferDataByDayMonthYear(String srcTable, String datePattern) {
-        Date minDate = txEventRepository.selectMinDateInTxEvent();
-        if (minDate != null) {
-            SimpleDateFormat sdf = new SimpleDateFormat(datePattern);
-            int minYMD = Integer.parseInt(sdf.format(minDate));
-            int curYMD = Integer.parseInt(sdf.format(new Date()));
-            LOG.info("Transferring data, min date [{}], current date [{}].", minYMD, curYMD);
-            for (int i = minYMD; i <= curYMD;) {
-                try {
-                    Date startTime = sdf.parse(i + "");
-                    Date endTime = sdf.parse((i + 1) + "");
-
-                    moveDataToHistory(srcTable, i + "", startTime, endTime);
-
-                    i = increaseDate(datePattern, i);
-                } catch (Exception e) {
-                    LOG.info("Encountered an error in case of transferring data, date [{}].", i, e);
-                }
-            }
-        }
-    }
-
-    private int increaseDate(String datePattern, int date) {
-        try {
-            Calendar calendar = Calendar.getInstance();
-            SimpleDateFormat sdfYMD = new SimpleDateFormat(datePattern);
-            calendar.setTime(sdfYMD.parse(date + ""));
-            calendar.add("yyyy".equals(datePattern) ? Calendar.YEAR : "yyyyMM".equals(datePattern) ? Calendar.MONTH : Calendar.DAY_OF_YEAR, 1);
-            return Integer.parseInt(sdfYMD.format(calendar.getTime()));
-        } catch (Exception e) {
-            LOG.info("Failed to increase the date, datePattern [{}], date [{}].", datePattern, date, e);
-        }
-        return date;
-    }
-
-    // 季度：1-3、4-6、7-9、10-12
-    private void transferDataBySeason(String srcTable) {
-        Date minDate = txEventRepository.selectMinDateInTxEvent();
-        if (minDate != null) {
-            // format: yyyyMM
-            int minSeason = computeSeason(minDate);
-            int curSeason = computeSeason(new Date());
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyyMM");
-            for (int i = minSeason; i <= curSeason; i = String.valueOf(i).endsWith("4") ? i + 100 - 3 : i + 1) {
-                try {
-                    String year = String.valueOf(i).substring(0, 4);
-                    int season = Integer.parseInt(String.valueOf(i).substring(5));
-                    Date startTime = sdf.parse(year + "0" + (3 * (season - 1) + 1));
-                    Date endTime = sdf.parse(year + "0" + (3 * (season - 1) + 4));
-
-                    // Selecting And Moving Season Data.
-                    moveDataToHistory(srcTable, i + "season", startTime, endTime);
-                } catch (Exception e) {
-                    LOG.info("Encountered an error in case of transferring data, date [{}].", i, e);
-                }
-            }
+    private String suffixOf(int rule, Date date) {
+        switch (rule) {
+            case 0:
+                return new SimpleDateFormat("yyyyMMdd").format(date);
+            case 2:
+                return computeSeason(date) + "season";
+            case 3:
+                return new SimpleDateFormat("yyyy").format(date);
+            default:
+                return new SimpleDateFormat("yyyyMM").format(date);
         }
     }
 
@@ -175,76 +247,201 @@ public class DataTransferService implements IDataTransferService {
         return Integer.parseInt(convertMonthToSeason(month, year));
     }
 
-    private void createHistoryTable(String srcTable, String suffix) {
-        dataTransferRepository.executeUpdate("CREATE TABLE IF NOT EXISTS " + srcTable + "_" + suffix + " LIKE " + srcTable);
+    // binary search by primary key, so it never scans the table for the creation time.
+    private long firstIdCreatedFrom(String srcTable, Date time, long minId, long maxId) {
+        long low = minId, high = maxId + 1;
+        while (low < high) {
+            long middle = low + (high - low) / 2;
+            Object[] row = firstRow(dataTransferRepository.executeQuery("SELECT T.surrogateId, T.creationTime FROM " + srcTable + " T WHERE T.surrogateId >= ? ORDER BY T.surrogateId LIMIT 1", middle));
+            if (row == null) {
+                high = middle;
+            } else if (((Date) row[1]).before(time)) {
+                low = ((Number) row[0]).longValue() + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
     }
 
-    private void moveDataToHistory(String srcTable, String suffix, Date startTime, Date endTime) {
-        int pageIndex = 0, pageSize = 10000;
-        while (true) {
-            // 每次最多取10000条id，以免数据过多对内存造成过多影响
-            List<Long> eventIdList = txEventRepository.selectEndedEventIdsWithinSomePeriod(pageIndex/*++ 不++是因为moveData时将上次查询出的清除了，所以再次查询还是从0起*/, pageSize, startTime, endTime);
-            LOG.info("Transferring data, get data from method 'selectEndedEventIdsWithinSomePeriod', data size [{}].", eventIdList == null ? 0 : eventIdList.size());
-            if (eventIdList == null || eventIdList.isEmpty()) {
-                break;
-            }
+    private Date creationTimeOfFirstIdFrom(String srcTable, long id) {
+        Object[] row = firstRow(dataTransferRepository.executeQuery("SELECT T.surrogateId, T.creationTime FROM " + srcTable + " T WHERE T.surrogateId >= ? ORDER BY T.surrogateId LIMIT 1", id));
+        return row == null ? null : (Date) row[1];
+    }
 
-            // Creating Season Table.
-            createHistoryTable(srcTable, suffix);
-            LOG.info("Transferring data, create successfully.");
+    private void moveDataToHistory(String srcTable, Period period, List<Period> periods, Date cutoff) {
+        String checkpointKey = CHECKPOINT_KEY_PREFIX + srcTable + "-" + period.suffix;
+        long lastId = period.startId - 1;
+        String checkpoint = consistencyCache.getValueByCacheKey(checkpointKey);
+        if (checkpoint != null) {
+            lastId = Math.max(lastId, Long.parseLong(checkpoint));
+            LOG.info("Resuming data transfer of table [{}], period [{}], from id [{}].", srcTable, period.suffix, lastId);
+        }
 
-            moveDataToHistory(srcTable, suffix, eventIdList);
-            LOG.info("Transferring data, move successfully.");
+        long movedCount = 0;
+        while (running) {
+            List rows = dataTransferRepository.executeQuery("SELECT T.surrogateId, T.globalTxId, T.creationTime FROM " + srcTable + " T WHERE T.surrogateId > ? AND T.surrogateId < ? ORDER BY T.surrogateId LIMIT ?", lastId, period.endId, chunkSize);
+            if (rows == null || rows.isEmpty()) {
+                consistencyCache.delete(checkpointKey);
+                LOG.info("Transferred data of table [{}], period [{}], moved rows [{}].", srcTable, period.suffix, movedCount);
+                return;
+            }
 
-            int eventSize = eventIdList.size();
-            eventIdList.clear();
-            eventIdList = null;
-            if (eventSize < pageSize) {
-                break;
+            movedCount += moveChunkToHistory(srcTable, rows, periods, cutoff);
+            lastId = ((Number) ((Object[]) rows.get(rows.size() - 1))[0]).longValue();
+            consistencyCache.setKeyValueCache(checkpointKey, String.valueOf(lastId));
+
+            if (throttleMillis > 0) {
+                try {
+                    Thread.sleep(throttleMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
             }
         }
     }
 
-    private void moveDataToHistory(String srcTable, String suffix, List<Long> idList) {
-        if (idList == null || idList.isEmpty()) {
-            return;
+    // @return the number of moved rows of the source table
+    private int moveChunkToHistory(String srcTable, List rows, List<Period> periods, Date cutoff) {
+        Set<String> globalTxIds = new HashSet<>();
+        for (Object row : rows) {
+            globalTxIds.add((String) ((Object[]) row)[1]);
+        }
+        Set<String> endedGlobalTxIds = new HashSet<>();
+        List endedList = dataTransferRepository.executeQuery("SELECT DISTINCT T.globalTxId FROM TxEvent T WHERE T.globalTxId IN (" + placeholders(globalTxIds.size()) + ") AND T.type = 'SagaEndedEvent' AND T.creationTime < ?", append(globalTxIds, cutoff));
+        if (endedList != null) {
+            endedList.forEach(globalTxId -> endedGlobalTxIds.add((String) globalTxId));
+        }
+        if (endedGlobalTxIds.isEmpty()) {
+            return 0;
         }
 
-        int maxPlaceholders = 1000;
-        StringBuilder insertSql = new StringBuilder("INSERT IGNORE INTO " + srcTable + "_" + suffix + " SELECT * FROM " + srcTable + " T WHERE T.surrogateId IN (");
-        StringBuilder deleteSql = new StringBuilder("DELETE FROM " + srcTable + " WHERE surrogateId IN (");
-        if (idList.size() < maxPlaceholders) {
-            for (int i = 0; i < idList.size(); i++) {
-                if (i == 0) {
-                    insertSql.append("?");
-                    deleteSql.append("?");
-                } else {
-                    insertSql.append(",?");
-                    deleteSql.append(",?");
-                }
+        // the global transactions which are claimed by other workers are skipped, because all of their rows are moved by those workers.
+        Set<String> claimedGlobalTxIds = new HashSet<>();
+        for (String globalTxId : endedGlobalTxIds) {
+            if (movingGlobalTxIds.add(globalTxId)) {
+                claimedGlobalTxIds.add(globalTxId);
             }
-            insertSql.append(")");
-            deleteSql.append(")");
-
-            dataTransferRepository.executeUpdate(insertSql.toString(), idList.toArray());
-            dataTransferRepository.executeUpdate(deleteSql.toString(), idList.toArray());
-        } else {
-            StringBuilder placeholders = new StringBuilder(maxPlaceholders);
-            List<Long> idSetWithin1000 = new LinkedList<>();
-            for (int i = 1; i < idList.size() + 1; i++) {
-                idSetWithin1000.add(idList.get(i - 1));
-                placeholders.append("?,");
-
-                if (i % maxPlaceholders == 0 || i == idList.size()) {
-                    placeholders = new StringBuilder(placeholders.substring(0, placeholders.length() - 1) + ")");
-                    dataTransferRepository.executeUpdate(insertSql.toString() + placeholders, idSetWithin1000.toArray());
-                    dataTransferRepository.executeUpdate(deleteSql.toString() + placeholders, idSetWithin1000.toArray());
-                    idSetWithin1000.clear();
-                    placeholders = new StringBuilder(maxPlaceholders);
-                }
+        }
+        if (claimedGlobalTxIds.isEmpty()) {
+            return 0;
+        }
+        try {
+            return moveGlobalTxsToHistory(srcTable, claimedGlobalTxIds, periods);
+        } finally {
+            movingGlobalTxIds.removeAll(claimedGlobalTxIds);
+        }
+    }
+
+    private int moveGlobalTxsToHistory(String srcTable, Set<String> endedGlobalTxIds, List<Period> periods) {
+        // All rows of the ended global transactions are moved together, including the ones in other periods, because the ending is decided by
+        // the 'SagaEndedEvent' which may be moved by the worker of another period, then the rows left in this period would never be moved.
+        // The ended events are moved at last, so the global transaction is still found as ended here if it's interrupted before them.
+        Map<String, List<Long>> idsBySuffix = new LinkedHashMap<>();
+        Map<String, List<Long>> endedIdsBySuffix = new LinkedHashMap<>();
+        Map<String, Set<String>> globalTxIdsBySuffix = new LinkedHashMap<>();
+        Set<String> suffixedGlobalTxIds = new HashSet<>();
+        List txRows = dataTransferRepository.executeQuery("SELECT T.surrogateId, T.globalTxId, T.creationTime, T.type FROM " + srcTable + " T WHERE T.globalTxId IN (" + placeholders(endedGlobalTxIds.size()) + ") ORDER BY T.surrogateId", endedGlobalTxIds.toArray());
+        for (Object row : txRows) {
+            Object[] columns = (Object[]) row;
+            // every row is moved to the history table of the period which it's created in
+            String suffix = periodOf(periods, (Date) columns[2]).suffix;
+            Long id = ((Number) columns[0]).longValue();
+            if ("SagaEndedEvent".equals(columns[3])) {
+                endedIdsBySuffix.computeIfAbsent(suffix, k -> new ArrayList<>()).add(id);
+            } else {
+                idsBySuffix.computeIfAbsent(suffix, k -> new ArrayList<>()).add(id);
+            }
+            // the additions of a global transaction are moved to the period of its first event
+            if (suffixedGlobalTxIds.add((String) columns[1])) {
+                globalTxIdsBySuffix.computeIfAbsent(suffix, k -> new HashSet<>()).add((String) columns[1]);
             }
-            placeholders = null;
-            idSetWithin1000 = null;
+        }
+
+        int movedCount = 0;
+        if (TX_EVENT_TABLE.equals(srcTable)) {
+            // the related data is moved before the events, so nothing is left behind if it's interrupted between them.
+            globalTxIdsBySuffix.forEach((suffix, ids) -> moveRowsToHistory("TxEventAddition", suffix, "globalTxId", ids));
+            idsBySuffix.forEach((suffix, ids) -> {
+                moveRowsToHistory("Command", suffix, "eventId", ids);
+                moveRowsToHistory("TxTimeout", suffix, "eventId", ids);
+            });
+        }
+        for (Map.Entry<String, List<Long>> entry : idsBySuffix.entrySet()) {
+            movedCount += moveRowsToHistory(srcTable, entry.getKey(), "surrogateId", entry.getValue());
+        }
+        for (Map.Entry<String, List<Long>> entry : endedIdsBySuffix.entrySet()) {
+            movedCount += moveRowsToHistory(srcTable, entry.getKey(), "surrogateId", entry.getValue());
+        }
+        return movedCount;
+    }
+
+    private Period periodOf(List<Period> periods, Date creationTime) {
+        Period period = periods.get(0);
+        for (Period candidate : periods) {
+            if (candidate.startTime.after(creationTime)) {
+                break;
+            }
+            period = candidate;
+        }
+        return period;
+    }
+
+    private int moveRowsToHistory(String srcTable, String suffix, String column, Collection<?> values) {
+        if (values == null || values.isEmpty()) {
+            return 0;
+        }
+        createHistoryTable(srcTable, suffix);
+        int movedCount = 0;
+        List<Object> valueList = new ArrayList<>(values);
+        // the rows of the ended global transactions may be more than a chunk, so they're moved by at most 'MAX_PLACEHOLDERS' values per statement.
+        for (int from = 0; from < valueList.size(); from += MAX_PLACEHOLDERS) {
+            Object[] params = valueList.subList(from, Math.min(valueList.size(), from + MAX_PLACEHOLDERS)).toArray();
+            String condition = " WHERE " + column + " IN (" + placeholders(params.length) + ")";
+            dataTransferRepository.executeUpdate("INSERT IGNORE INTO " + srcTable + "_" + suffix + " SELECT * FROM " + srcTable + condition, params);
+            movedCount += dataTransferRepository.executeUpdate("DELETE FROM " + srcTable + condition, params);
+        }
+        return movedCount;
+    }
+
+    private void createHistoryTable(String srcTable, String suffix) {
+        String historyTable = srcTable + "_" + suffix;
+        if (!createdHistoryTables.contains(historyTable)) {
+            dataTransferRepository.executeUpdate("CREATE TABLE IF NOT EXISTS " + historyTable + " LIKE " + srcTable);
+            createdHistoryTables.add(historyTable);
+        }
+    }
+
+    private String placeholders(int size) {
+        StringBuilder placeholders = new StringBuilder(size * 2);
+        for (int i = 0; i < size; i++) {
+            placeholders.append(i == 0 ? "?" : ",?");
+        }
+        return placeholders.toString();
+    }
+
+    private Object[] append(Collection<?> values, Object value) {
+        Object[] params = values.toArray(new Object[values.size() + 1]);
+        params[values.size()] = value;
+        return params;
+    }
+
+    private Object[] firstRow(List rows) {
+        return rows == null || rows.isEmpty() ? null : (Object[]) rows.get(0);
+    }
+
+    static final class Period {
+        final String suffix;
+        final Date startTime;
+        final long startId;
+        // exclusive
+        long endId;
+
+        private Period(String suffix, Date startTime, long startId) {
+            this.suffix = suffix;
+            this.startTime = startTime;
+            this.startId = startId;
         }
     }
 
@@ -18,10 +18,13 @@ import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 public class ConfigRestApi {
@@ -90,6 +93,16 @@ public class ConfigRestApi {
         return true;
     }
 
+    @PostMapping("/invalidateLocalTxCache")
+    public boolean invalidateLocalTxCache(@RequestBody Set<String> keys) {
+        try {
+            return this.consistencyCache.invalidateLocalTxCache(keys);
+        } catch (Exception e) {
+            LOG.error("Failed to execute the method 'invalidateLocalTxCache'.", e);
+            return false;
+        }
+    }
+
     @GetMapping("/readSystemConfigCache")
     public String readSystemConfigCache() {
         JSONArray jsonArray = new JSONArray();
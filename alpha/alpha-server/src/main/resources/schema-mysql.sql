@@ -71,8 +71,10 @@ CREATE TABLE IF NOT EXISTS Command (
   lastModified datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,
   version bigint NOT NULL,
   category varchar(100),
+  claimToken varchar(36) DEFAULT NULL,
   PRIMARY KEY (surrogateId),
-  INDEX saga_commands_index (surrogateId, eventId, globalTxId, localTxId, status)
+  INDEX saga_commands_index (surrogateId, eventId, globalTxId, localTxId, status),
+  INDEX saga_commands_claim_index (claimToken)
 ) DEFAULT CHARSET=utf8mb4 $$
 
 CREATE TABLE IF NOT EXISTS TxTimeout (
@@ -51,10 +51,12 @@ CREATE TABLE IF NOT EXISTS Command (
   status varchar(12),
   lastModified timestamp(6) NOT NULL DEFAULT CURRENT_DATE,
   version bigint NOT NULL,
-  category varchar(36) NOT NULL
+  category varchar(36) NOT NULL,
+  claimToken varchar(36) DEFAULT NULL
 );
 
 CREATE INDEX IF NOT EXISTS saga_commands_index ON Command (surrogateId, eventId, globalTxId, localTxId, status);
+CREATE INDEX IF NOT EXISTS saga_commands_claim_index ON Command (claimToken);
 
 
 CREATE TABLE IF NOT EXISTS TxTimeout (
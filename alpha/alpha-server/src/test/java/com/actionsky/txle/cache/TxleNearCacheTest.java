@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2018-2020 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package com.actionsky.txle.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TxleNearCacheTest {
+    private final TxleNearCache nearCache = new TxleNearCache(100, 60000);
+    private final String key = uniquify("key");
+    private final AtomicInteger loadings = new AtomicInteger();
+
+    @Test
+    public void loadsValueOnceAndServesItFromCache() {
+        assertThat(nearCache.get(key, k -> load("value")), is("value"));
+        assertThat(nearCache.get(key, k -> load("other")), is("value"));
+        assertThat(loadings.get(), is(1));
+    }
+
+    @Test
+    public void cachesAbsentValue() {
+        assertThat(nearCache.get(key, k -> load(null)), is(nullValue()));
+        assertThat(nearCache.get(key, k -> load("value")), is(nullValue()));
+        assertThat(loadings.get(), is(1));
+    }
+
+    @Test
+    public void reloadsAfterPeerWriteUnconditionally() {
+        nearCache.put(key, "local", nearCache.nextVersion());
+
+        nearCache.invalidate(key);
+
+        assertThat(nearCache.get(key, k -> load("peer")), is("peer"));
+        assertThat(loadings.get(), is(1));
+    }
+
+    @Test
+    public void reloadsAfterPeerDeleteUnconditionally() {
+        assertThat(nearCache.get(key, k -> load("value")), is("value"));
+
+        nearCache.invalidate(key);
+
+        assertThat(nearCache.get(key, k -> load(null)), is(nullValue()));
+        assertThat(loadings.get(), is(2));
+    }
+
+    @Test
+    public void invalidatesEvenIfPeerWriteArrivesAfterNewerLocalWrite() {
+        // the versions of peers are never compared with the local ones, so a peer write always wins.
+        nearCache.put(key, "local", nearCache.nextVersion());
+        nearCache.put(key, "newer local", nearCache.nextVersion());
+
+        nearCache.invalidate(key);
+
+        assertThat(nearCache.get(key, k -> load("peer")), is("peer"));
+    }
+
+    @Test
+    public void stalePutLosesToNewerVersion() {
+        long staleVersion = nearCache.nextVersion();
+        long newerVersion = nearCache.nextVersion();
+
+        nearCache.put(key, "newer", newerVersion);
+        nearCache.put(key, "stale", staleVersion);
+
+        assertThat(nearCache.get(key, k -> load("database")), is("newer"));
+        assertThat(loadings.get(), is(0));
+    }
+
+    @Test
+    public void stalePutLosesToPeerInvalidation() {
+        long staleVersion = nearCache.nextVersion();
+
+        nearCache.invalidate(key);
+        nearCache.put(key, "stale", staleVersion);
+
+        assertThat(nearCache.get(key, k -> load("peer")), is("peer"));
+    }
+
+    @Test
+    public void deleteBeatsConcurrentRePut() {
+        // the re-put took its version before the delete, but it's applied after the delete.
+        long rePutVersion = nearCache.nextVersion();
+        nearCache.put(key, null, nearCache.nextVersion());
+        nearCache.put(key, "re-put", rePutVersion);
+
+        assertThat(nearCache.get(key, k -> load("database")), is(nullValue()));
+        assertThat(loadings.get(), is(0));
+    }
+
+    @Test
+    public void loadingIsNotCachedIfPeerInvalidationArrivedWhileLoading() {
+        assertThat(nearCache.get(key, k -> {
+            nearCache.invalidate(key);
+            return load("stale");
+        }), is("stale"));
+
+        assertThat(nearCache.get(key, k -> load("fresh")), is("fresh"));
+        assertThat(loadings.get(), is(2));
+    }
+
+    @Test
+    public void loadingIsNotCachedIfLocalDeleteArrivedWhileLoading() {
+        assertThat(nearCache.get(key, k -> {
+            nearCache.put(key, null, nearCache.nextVersion());
+            return load("stale");
+        }), is("stale"));
+
+        assertThat(nearCache.get(key, k -> load("database")), is(nullValue()));
+        assertThat(loadings.get(), is(1));
+    }
+
+    @Test
+    public void doesNotCacheMoreThanMaxSize() {
+        TxleNearCache smallCache = new TxleNearCache(1, 60000);
+        smallCache.get(uniquify("key"), k -> load("value"));
+        smallCache.get(key, k -> load("value"));
+
+        assertThat(smallCache.size(), is(1));
+    }
+
+    private String load(String value) {
+        loadings.incrementAndGet();
+        return value;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2018-2020 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package com.actionsky.txle.grpc.interfaces;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TxRetrySchedulerTest {
+    private final TxRetryScheduler retryScheduler = new TxRetryScheduler(1, 10, 100, 60000);
+    private final String globalTxId = uniquify("globalTxId");
+    private final String localTxId = uniquify("localTxId");
+
+    @After
+    public void tearDown() {
+        retryScheduler.shutdown();
+    }
+
+    @Test
+    public void completesWithRetryResultFromClient() throws Exception {
+        CompletableFuture<Boolean> result = retryScheduler.awaitResult(globalTxId, localTxId, System.currentTimeMillis() + 60000);
+
+        assertThat(retryScheduler.completeResult(globalTxId, localTxId, true), is(true));
+        assertThat(result.get(1, TimeUnit.SECONDS), is(true));
+        assertThat(retryScheduler.completeResult(globalTxId, localTxId, false), is(false));
+    }
+
+    @Test
+    public void completesWithNullAfterDeadline() throws Exception {
+        CompletableFuture<Boolean> result = retryScheduler.awaitResult(globalTxId, localTxId, System.currentTimeMillis() + 50);
+
+        assertThat(result.get(1, TimeUnit.SECONDS), is(nullValue()));
+        assertThat(retryScheduler.completeResult(globalTxId, localTxId, true), is(false));
+    }
+
+    @Test
+    public void backsOffExponentiallyUpToMaximum() throws Exception {
+        long start = System.currentTimeMillis();
+        retryScheduler.backoff(30).get(1, TimeUnit.SECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertThat(elapsed >= 100 && elapsed < 1000, is(true));
+    }
+}
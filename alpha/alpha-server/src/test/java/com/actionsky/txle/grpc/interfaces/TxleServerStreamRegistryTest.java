@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018-2020 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package com.actionsky.txle.grpc.interfaces;
+
+import com.actionsky.txle.grpc.TxleGrpcServerStream;
+import com.actionsky.txle.grpc.TxleServerExecuteSql;
+import io.grpc.stub.StreamObserver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class TxleServerStreamRegistryTest {
+    private final TxleServerStreamRegistry streamRegistry = new TxleServerStreamRegistry(2, 10);
+    private final String globalTxId = uniquify("globalTxId");
+
+    @Test
+    public void sendsSqlsToTheBoundClientInBatches() {
+        RecordingObserver userObserver = new RecordingObserver();
+        RecordingObserver merchantObserver = new RecordingObserver();
+        streamRegistry.bind(streamRegistry.register(userObserver), "user", Collections.singletonList("node1"));
+        streamRegistry.bind(streamRegistry.register(merchantObserver), "merchant", Collections.singletonList("node2"));
+
+        assertThat(streamRegistry.send("user", Arrays.asList(executeSql("node1"), executeSql("node1"), executeSql("node1"))), is(true));
+
+        assertThat(userObserver.messages.size(), is(2));
+        assertThat(userObserver.messages.get(0).getExecuteSqlCount(), is(2));
+        assertThat(userObserver.messages.get(1).getExecuteSqlCount(), is(1));
+        assertThat(merchantObserver.messages.isEmpty(), is(true));
+    }
+
+    @Test
+    public void sendsSqlsToTheClientOfSameDbNodeIfInstanceIsAbsent() {
+        RecordingObserver userObserver = new RecordingObserver();
+        RecordingObserver merchantObserver = new RecordingObserver();
+        streamRegistry.bind(streamRegistry.register(userObserver), "user", Collections.singletonList("node1"));
+        streamRegistry.bind(streamRegistry.register(merchantObserver), "merchant", Collections.singletonList("node2"));
+
+        assertThat(streamRegistry.send("unknown", Collections.singletonList(executeSql("node1"))), is(true));
+        assertThat(userObserver.messages.size(), is(1));
+        assertThat(merchantObserver.messages.isEmpty(), is(true));
+    }
+
+    @Test
+    public void keepsSqlsPendingInsteadOfSendingToTheClientOfOtherDbNode() {
+        RecordingObserver userObserver = new RecordingObserver();
+        RecordingObserver merchantObserver = new RecordingObserver();
+        streamRegistry.bind(streamRegistry.register(userObserver), "user", Collections.singletonList("node1"));
+        TxleServerStreamRegistry.ClientStream merchantStream = streamRegistry.register(merchantObserver);
+        streamRegistry.bind(merchantStream, "merchant", Collections.singletonList("node2"));
+
+        streamRegistry.unregister(merchantStream);
+        assertThat(streamRegistry.send("merchant", Collections.singletonList(executeSql("node2"))), is(false));
+        assertThat(userObserver.messages.isEmpty(), is(true));
+        assertThat(streamRegistry.pendingSize(), is(1));
+
+        RecordingObserver reconnectedObserver = new RecordingObserver();
+        streamRegistry.bind(streamRegistry.register(reconnectedObserver), "merchant", Collections.singletonList("node2"));
+        assertThat(reconnectedObserver.messages.size(), is(1));
+        assertThat(reconnectedObserver.messages.get(0).getExecuteSql(0).getDbNodeId(), is("node2"));
+        assertThat(streamRegistry.pendingSize(), is(0));
+        assertThat(userObserver.messages.isEmpty(), is(true));
+    }
+
+    @Test
+    public void sendsSqlsToUnboundClientAsFallback() {
+        RecordingObserver userObserver = new RecordingObserver();
+        RecordingObserver legacyObserver = new RecordingObserver();
+        streamRegistry.bind(streamRegistry.register(userObserver), "user", Collections.singletonList("node1"));
+        streamRegistry.register(legacyObserver);
+
+        assertThat(streamRegistry.send("merchant", Collections.singletonList(executeSql("node2"))), is(true));
+        assertThat(legacyObserver.messages.size(), is(1));
+        assertThat(userObserver.messages.isEmpty(), is(true));
+    }
+
+    @Test
+    public void failsWithoutAnyClient() {
+        assertThat(streamRegistry.send("user", Collections.singletonList(executeSql("node1"))), is(false));
+    }
+
+    private TxleServerExecuteSql executeSql(String dbNodeId) {
+        return TxleServerExecuteSql.newBuilder().setDbNodeId(dbNodeId).setGlobalTxId(globalTxId).setLocalTxId(uniquify("localTxId")).setMethod("compensate").build();
+    }
+
+    private static class RecordingObserver implements StreamObserver<TxleGrpcServerStream> {
+        private final List<TxleGrpcServerStream> messages = new ArrayList<>();
+
+        @Override
+        public void onNext(TxleGrpcServerStream value) {
+            messages.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
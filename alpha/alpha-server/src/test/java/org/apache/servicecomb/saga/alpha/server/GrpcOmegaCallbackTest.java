@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import org.apache.servicecomb.saga.alpha.core.AlphaException;
+import org.apache.servicecomb.saga.alpha.core.OmegaCallback;
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcCompensateCommand;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GrpcOmegaCallbackTest {
+  @SuppressWarnings("unchecked")
+  private final ServerCallStreamObserver<GrpcCompensateCommand> observer = mock(ServerCallStreamObserver.class);
+  private final List<TxEvent> failedOverEvents = new ArrayList<>();
+  private final List<OmegaCallback> closedCallbacks = new ArrayList<>();
+  private final ArgumentCaptor<Runnable> onReadyHandler = ArgumentCaptor.forClass(Runnable.class);
+  private final ArgumentCaptor<Runnable> onCancelHandler = ArgumentCaptor.forClass(Runnable.class);
+  private GrpcOmegaCallback callback;
+
+  @Before
+  public void setUp() {
+    callback = new GrpcOmegaCallback(observer, 2, failedOverEvents::add, closedCallbacks::add);
+    verify(observer).setOnReadyHandler(onReadyHandler.capture());
+    verify(observer).setOnCancelHandler(onCancelHandler.capture());
+  }
+
+  @Test
+  public void queuesCommandsUntilStreamIsReady() {
+    TxEvent event1 = someEvent();
+    TxEvent event2 = someEvent();
+    when(observer.isReady()).thenReturn(false);
+
+    callback.compensate(event1);
+    callback.compensate(event2);
+    verify(observer, never()).onNext(any(GrpcCompensateCommand.class));
+    assertThat(callback.queuedCount(), is(2));
+
+    when(observer.isReady()).thenReturn(true);
+    onReadyHandler.getValue().run();
+
+    ArgumentCaptor<GrpcCompensateCommand> commands = ArgumentCaptor.forClass(GrpcCompensateCommand.class);
+    verify(observer, times(2)).onNext(commands.capture());
+    List<String> localTxIds = new ArrayList<>();
+    commands.getAllValues().forEach(command -> localTxIds.add(command.getLocalTxId()));
+    assertThat(localTxIds, contains(event1.localTxId(), event2.localTxId()));
+    assertThat(callback.queuedCount(), is(0));
+  }
+
+  @Test
+  public void coalescesTheSameCommandAndFailsFastIfQueueIsFull() {
+    TxEvent event = someEvent();
+    when(observer.isReady()).thenReturn(false);
+
+    callback.compensate(event);
+    callback.compensate(event);
+    assertThat(callback.queuedCount(), is(1));
+
+    callback.compensate(someEvent());
+    try {
+      callback.compensate(someEvent());
+      fail("AlphaException is expected");
+    } catch (AlphaException e) {
+      assertThat(e.getMessage().startsWith("The compensation queue of omega is full"), is(true));
+    }
+    assertThat(callback.isAvailable(), is(true));
+  }
+
+  @Test
+  public void failsOverQueuedCommandsAfterStreamWasCancelled() {
+    TxEvent event = someEvent();
+    when(observer.isReady()).thenReturn(false);
+    callback.compensate(event);
+
+    onCancelHandler.getValue().run();
+
+    assertThat(callback.isAvailable(), is(false));
+    assertThat(closedCallbacks, contains((OmegaCallback) callback));
+    assertThat(failedOverEvents, contains(event));
+    try {
+      callback.compensate(someEvent());
+      fail("AlphaException is expected");
+    } catch (AlphaException e) {
+      assertThat(e.getMessage().startsWith("The stream to omega was closed"), is(true));
+    }
+  }
+
+  @Test
+  public void closesStreamAndFailsOverIfFailedToSend() {
+    when(observer.isReady()).thenReturn(true);
+    doThrow(IllegalStateException.class).when(observer).onNext(any(GrpcCompensateCommand.class));
+
+    TxEvent event = someEvent();
+    callback.compensate(event);
+
+    assertThat(callback.isAvailable(), is(false));
+    assertThat(closedCallbacks, contains((OmegaCallback) callback));
+    assertThat(failedOverEvents, contains(event));
+  }
+
+  private TxEvent someEvent() {
+    return new TxEvent(
+        uniquify("serviceName"),
+        uniquify("instanceId"),
+        uniquify("globalTxId"),
+        uniquify("localTxId"),
+        UUID.randomUUID().toString(),
+        TxStartedEvent.name(),
+        "compensationMethod",
+        "",
+        uniquify("blah").getBytes());
+  }
+}
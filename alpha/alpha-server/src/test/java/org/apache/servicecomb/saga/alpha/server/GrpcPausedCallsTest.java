@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import io.grpc.Context;
+import org.apache.servicecomb.saga.alpha.core.GlobalTxPauseWaiters;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class GrpcPausedCallsTest {
+  private final GlobalTxPauseWaiters pauseWaiters = new GlobalTxPauseWaiters(2, 60000);
+  private final String globalTxId = uniquify("globalTxId");
+  private final AtomicBoolean paused = new AtomicBoolean(true);
+  private final List<Context> continued = new CopyOnWriteArrayList<>();
+  private final Context.CancellableContext callContext = Context.current().withCancellation();
+
+  @After
+  public void tearDown() {
+    callContext.cancel(null);
+    pauseWaiters.shutdown();
+  }
+
+  @Test
+  public void continuesParkedCallInItsContextOnResuming() {
+    callContext.run(() -> GrpcPausedCalls.runWhenResumed(pauseWaiters, globalTxId, paused::get, () -> continued.add(Context.current())));
+    assertThat(pauseWaiters.size(), is(1));
+
+    paused.set(false);
+    pauseWaiters.wake(globalTxId);
+
+    await().atMost(1, SECONDS).until(() -> continued.size() == 1);
+    assertThat(continued.get(0), is(sameInstance(callContext)));
+  }
+
+  @Test
+  public void removesWaiterOnceCallIsCancelled() throws Exception {
+    callContext.run(() -> GrpcPausedCalls.runWhenResumed(pauseWaiters, globalTxId, paused::get, () -> continued.add(Context.current())));
+    assertThat(pauseWaiters.size(), is(1));
+
+    callContext.cancel(null);
+    assertThat(pauseWaiters.size(), is(0));
+
+    paused.set(false);
+    pauseWaiters.wake(globalTxId);
+    Thread.sleep(100);
+    assertThat(continued.isEmpty(), is(true));
+  }
+
+  @Test
+  public void doesNotParkCallWhichWasCancelledAlready() {
+    callContext.cancel(null);
+
+    callContext.run(() -> GrpcPausedCalls.runWhenResumed(pauseWaiters, globalTxId, paused::get, () -> continued.add(Context.current())));
+
+    assertThat(pauseWaiters.size(), is(0));
+  }
+
+  @Test
+  public void wakesLiveCallsOnlyAfterSomeOfThemWereCancelled() {
+    Context.CancellableContext liveContext = Context.current().withCancellation();
+    try {
+      callContext.run(() -> GrpcPausedCalls.runWhenResumed(pauseWaiters, globalTxId, paused::get, () -> continued.add(Context.current())));
+      liveContext.run(() -> GrpcPausedCalls.runWhenResumed(pauseWaiters, globalTxId, paused::get, () -> continued.add(Context.current())));
+      callContext.cancel(null);
+
+      paused.set(false);
+      pauseWaiters.wake(globalTxId);
+
+      await().atMost(1, SECONDS).until(() -> continued.size() == 1);
+      assertThat(continued.get(0), is(sameInstance(liveContext)));
+      assertThat(pauseWaiters.size(), is(0));
+    } finally {
+      liveContext.cancel(null);
+    }
+  }
+
+  @Test
+  public void runsContinuationAtOnceIfNotPaused() {
+    paused.set(false);
+
+    callContext.run(() -> GrpcPausedCalls.runWhenResumed(pauseWaiters, globalTxId, paused::get, () -> continued.add(Context.current())));
+
+    assertThat(continued.size(), is(1));
+    assertThat(pauseWaiters.size(), is(0));
+  }
+}
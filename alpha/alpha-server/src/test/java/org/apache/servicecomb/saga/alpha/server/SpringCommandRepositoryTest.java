@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import org.apache.servicecomb.saga.alpha.core.Command;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+public class SpringCommandRepositoryTest {
+  private final TxEventEnvelopeRepository eventRepository = mock(TxEventEnvelopeRepository.class);
+  private final CommandEntityRepository commandEntityRepository = mock(CommandEntityRepository.class);
+  private final SpringCommandRepository commandRepository = new SpringCommandRepository(eventRepository, commandEntityRepository);
+
+  @Test
+  public void claimsWholeBatchByOneUpdateAndReadsItBackByOneSelect() {
+    List<Command> claimedCommands = Arrays.asList(mock(Command.class), mock(Command.class), mock(Command.class));
+    when(commandEntityRepository.claimCommandsByToken(anyString(), eq(100))).thenReturn(claimedCommands.size());
+    when(commandEntityRepository.findCommandByClaimToken(anyString())).thenReturn(claimedCommands);
+
+    assertThat(commandRepository.claimCommandsToCompensate(100), is(claimedCommands));
+
+    ArgumentCaptor<String> claimToken = ArgumentCaptor.forClass(String.class);
+    verify(commandEntityRepository).claimCommandsByToken(claimToken.capture(), eq(100));
+    verify(commandEntityRepository).findCommandByClaimToken(claimToken.getValue());
+    verifyNoMoreInteractions(commandEntityRepository);
+  }
+
+  @Test
+  public void readsNothingIfNoCommandWasClaimed() {
+    when(commandEntityRepository.claimCommandsByToken(anyString(), eq(100))).thenReturn(0);
+
+    assertThat(commandRepository.claimCommandsToCompensate(100).isEmpty(), is(true));
+
+    verify(commandEntityRepository).claimCommandsByToken(anyString(), eq(100));
+    verifyNoMoreInteractions(commandEntityRepository);
+  }
+
+  @Test
+  public void usesNewTokenForEveryClaim() {
+    when(commandEntityRepository.claimCommandsByToken(anyString(), eq(10))).thenReturn(0);
+
+    commandRepository.claimCommandsToCompensate(10);
+    commandRepository.claimCommandsToCompensate(10);
+
+    ArgumentCaptor<String> claimToken = ArgumentCaptor.forClass(String.class);
+    verify(commandEntityRepository, times(2)).claimCommandsByToken(claimToken.capture(), eq(10));
+    assertThat(claimToken.getAllValues().get(0).equals(claimToken.getAllValues().get(1)), is(false));
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.seanyinx.github.unit.scaffolding.AssertUtils.expectFailing;
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.apache.servicecomb.saga.common.EventType.TxEndedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TxEventJournalTest {
+  // the columns of 'schema-mysql.sql', the journal is not supported by the schema of other databases.
+  private static final String CREATE_TABLE_SQL = "CREATE TABLE TxEvent ("
+      + " surrogateId bigint GENERATED BY DEFAULT AS IDENTITY(START WITH 1, INCREMENT BY 1) PRIMARY KEY,"
+      + " serviceName varchar(100) NOT NULL, instanceId varchar(100) NOT NULL, creationTime TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,"
+      + " globalTxId varchar(36) NOT NULL, localTxId varchar(36) NOT NULL, parentTxId varchar(36) DEFAULT NULL, type varchar(50) NOT NULL,"
+      + " compensationMethod varchar(256), expiryTime TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL, payloads blob,"
+      + " retries int DEFAULT 0 NOT NULL, retryMethod varchar(256) DEFAULT NULL, category varchar(100))";
+
+  private final JDBCDataSource dataSource = new JDBCDataSource();
+  private final String globalTxId = uniquify("globalTxId");
+  private TxEventJournal journal;
+
+  @Before
+  public void setUp() throws Exception {
+    dataSource.setUrl("jdbc:hsqldb:mem:" + uniquify("journal"));
+    dataSource.setUser("SA");
+    dataSource.setPassword("");
+    executeUpdate(CREATE_TABLE_SQL);
+    journal = new TxEventJournal(dataSource, 100, 10, 500);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    journal.close();
+    executeUpdate("SHUTDOWN");
+  }
+
+  @Test
+  public void appendsEventAndReturnsItsGeneratedId() throws Exception {
+    TxEvent event = event(uniquify("localTxId"), TxStartedEvent.name());
+
+    Long surrogateId = journal.append(event);
+
+    List<Object[]> replayedEvents = replayEvents();
+    assertThat(replayedEvents.size(), is(1));
+    assertThat(replayedEvents.get(0)[0], is(surrogateId));
+    assertThat(replayedEvents.get(0)[1], is(event.localTxId()));
+    assertThat(replayedEvents.get(0)[2], is(TxStartedEvent.name()));
+    assertThat(replayedEvents.get(0)[3], is(event.category()));
+    assertThat(replayedEvents.get(0)[4], is(event.payloads()));
+  }
+
+  @Test
+  public void replaysEventsInOrderOfAppending() throws Exception {
+    List<TxEvent> events = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      events.add(event(uniquify("localTxId"), i % 2 == 0 ? TxStartedEvent.name() : TxEndedEvent.name()));
+    }
+
+    List<Long> surrogateIds = journal.appendAll(events);
+
+    List<Object[]> replayedEvents = replayEvents();
+    assertThat(replayedEvents.size(), is(events.size()));
+    for (int i = 0; i < events.size(); i++) {
+      assertThat(replayedEvents.get(i)[0], is(surrogateIds.get(i)));
+      assertThat(replayedEvents.get(i)[1], is(events.get(i).localTxId()));
+      assertThat(replayedEvents.get(i)[2], is(events.get(i).type()));
+    }
+  }
+
+  @Test
+  public void savesEventsOfConcurrentCallersDurablyBeforeReturning() throws Exception {
+    ExecutorService callers = Executors.newFixedThreadPool(8);
+    try {
+      List<CompletableFuture<Long>> futures = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        TxEvent event = event(uniquify("localTxId"), TxStartedEvent.name());
+        futures.add(CompletableFuture.supplyAsync(() -> journal.append(event), callers));
+      }
+
+      Set<Long> surrogateIds = new HashSet<>();
+      for (CompletableFuture<Long> future : futures) {
+        surrogateIds.add(future.get(5, TimeUnit.SECONDS));
+      }
+      assertThat(surrogateIds.size(), is(40));
+      assertThat(replayEvents().size(), is(40));
+    } finally {
+      callers.shutdownNow();
+    }
+  }
+
+  @Test
+  public void failsCallersAndSavesNothingIfBatchFailed() throws Exception {
+    TxEvent invalidEvent = new TxEvent(uniquify("serviceName"), uniquify("instanceId"), globalTxId, uniquify("localTxId"), null,
+        null, uniquify("compensationMethod"), uniquify("category"), new byte[0]);
+
+    // both events are flushed in the same batch, because the batch is full before the flush interval.
+    TxEventJournal batchingJournal = new TxEventJournal(dataSource, 100, 2, TimeUnit.SECONDS.toMicros(5));
+    try {
+      batchingJournal.appendAll(Arrays.asList(event(uniquify("localTxId"), TxStartedEvent.name()), invalidEvent));
+      expectFailing(IllegalStateException.class);
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage().startsWith("Failed to save 2 events"), is(true));
+    } finally {
+      batchingJournal.close();
+    }
+
+    assertThat(replayEvents().isEmpty(), is(true));
+    assertThat(journal.append(event(uniquify("localTxId"), TxEndedEvent.name())) != null, is(true));
+  }
+
+  @Test
+  public void rejectsAppendingAfterClosed() {
+    journal.close();
+
+    try {
+      journal.append(event(uniquify("localTxId"), TxStartedEvent.name()));
+      expectFailing(IllegalStateException.class);
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), is("The event journal has been closed."));
+    }
+  }
+
+  @Test
+  public void isSupportedByMySqlOnly() throws Exception {
+    assertThat(TxEventJournal.isSupported(dataSource), is(false));
+    assertThat(TxEventJournal.isSupported(dataSourceOf("MySQL")), is(true));
+    assertThat(TxEventJournal.isSupported(dataSourceOf("PostgreSQL")), is(false));
+  }
+
+  @Test
+  public void isNotSupportedIfDatabaseIsUnavailable() throws Exception {
+    DataSource unavailableDataSource = mock(DataSource.class);
+    when(unavailableDataSource.getConnection()).thenThrow(new SQLException("oops"));
+
+    assertThat(TxEventJournal.isSupported(unavailableDataSource), is(false));
+  }
+
+  private TxEvent event(String localTxId, String type) {
+    return new TxEvent(uniquify("serviceName"), uniquify("instanceId"), globalTxId, localTxId, null, type,
+        uniquify("compensationMethod"), uniquify("category"), uniquify("payloads").getBytes());
+  }
+
+  private DataSource dataSourceOf(String productName) throws SQLException {
+    DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+    when(metaData.getDatabaseProductName()).thenReturn(productName);
+    Connection connection = mock(Connection.class);
+    when(connection.getMetaData()).thenReturn(metaData);
+    DataSource mockDataSource = mock(DataSource.class);
+    when(mockDataSource.getConnection()).thenReturn(connection);
+    return mockDataSource;
+  }
+
+  private List<Object[]> replayEvents() throws SQLException {
+    List<Object[]> events = new ArrayList<>();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement ps = connection.prepareStatement(
+            "SELECT surrogateId, localTxId, type, category, payloads FROM TxEvent WHERE globalTxId = ? ORDER BY surrogateId")) {
+      ps.setString(1, globalTxId);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          events.add(new Object[]{rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getBytes(5)});
+        }
+      }
+    }
+    return events;
+  }
+
+  private void executeUpdate(String sql) throws SQLException {
+    try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server.datatransfer;
+
+import com.actionsky.txle.cache.ITxleConsistencyCache;
+import org.apache.servicecomb.saga.alpha.core.configcenter.IConfigCenterService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DataTransferServiceTest {
+    private static final int MONTHLY = 1;
+
+    private final InMemoryEventTable eventTable = new InMemoryEventTable();
+    private final DataTransferService dataTransferService = new DataTransferService(eventTable, 4, 2, 0);
+    private final Date cutoff = dateOf(2019, Calendar.JUNE, 1);
+
+    @Before
+    public void setUp() {
+        IConfigCenterService configCenterService = mock(IConfigCenterService.class);
+        when(configCenterService.selectConfigCenterByType(any(), any(), anyInt(), anyInt())).thenReturn(Collections.emptyList());
+        ReflectionTestUtils.setField(dataTransferService, "configCenterService", configCenterService);
+        ReflectionTestUtils.setField(dataTransferService, "consistencyCache", mock(ITxleConsistencyCache.class));
+    }
+
+    @After
+    public void tearDown() {
+        dataTransferService.shutdown();
+    }
+
+    @Test
+    public void computesNoPeriodForEmptyTable() {
+        assertThat(dataTransferService.computePeriods("TxEvent", MONTHLY, cutoff).isEmpty(), is(true));
+    }
+
+    @Test
+    public void computesNoPeriodIfAllRowsAreCreatedAfterCutoff() {
+        eventTable.add(1, uniquify("globalTxId"), dateOf(2019, Calendar.JUNE, 2), "SagaStartedEvent");
+        eventTable.add(2, uniquify("globalTxId"), dateOf(2019, Calendar.JULY, 1), "SagaStartedEvent");
+
+        assertThat(dataTransferService.computePeriods("TxEvent", MONTHLY, cutoff).isEmpty(), is(true));
+    }
+
+    @Test
+    public void computesOnePeriodForSingleRow() {
+        eventTable.add(5, uniquify("globalTxId"), dateOf(2019, Calendar.MAY, 20), "SagaStartedEvent");
+
+        List<DataTransferService.Period> periods = dataTransferService.computePeriods("TxEvent", MONTHLY, cutoff);
+
+        assertThat(periods.size(), is(1));
+        assertThat(periods.get(0).suffix, is("201905"));
+        assertThat(periods.get(0).startId, is(5L));
+        assertThat(periods.get(0).endId, is(6L));
+    }
+
+    @Test
+    public void findsFirstIdOfEveryPeriodBySparseIds() {
+        eventTable.add(1, uniquify("globalTxId"), dateOf(2019, Calendar.JANUARY, 3), "SagaStartedEvent");
+        eventTable.add(7, uniquify("globalTxId"), dateOf(2019, Calendar.JANUARY, 31), "SagaStartedEvent");
+        eventTable.add(8, uniquify("globalTxId"), dateOf(2019, Calendar.MARCH, 1), "SagaStartedEvent");
+        eventTable.add(40, uniquify("globalTxId"), dateOf(2019, Calendar.MARCH, 2), "SagaStartedEvent");
+        eventTable.add(41, uniquify("globalTxId"), dateOf(2019, Calendar.MAY, 31), "SagaStartedEvent");
+        eventTable.add(100, uniquify("globalTxId"), dateOf(2019, Calendar.JUNE, 1), "SagaStartedEvent");
+
+        List<DataTransferService.Period> periods = dataTransferService.computePeriods("TxEvent", MONTHLY, cutoff);
+
+        // February and April have no row, so they're removed, and the rows created from the cutoff are not included.
+        assertThat(periods.size(), is(3));
+        assertPeriod(periods.get(0), "201901", 1, 8);
+        assertPeriod(periods.get(1), "201903", 8, 41);
+        assertPeriod(periods.get(2), "201905", 41, 100);
+    }
+
+    @Test
+    public void movesSingleRowToHistoryTableOfItsPeriod() {
+        String globalTxId = uniquify("globalTxId");
+        eventTable.add(1, globalTxId, dateOf(2019, Calendar.FEBRUARY, 10), "SagaEndedEvent");
+
+        dataTransferService.dataTransfer("TxEvent");
+
+        assertThat(eventTable.rows.isEmpty(), is(true));
+        assertThat(eventTable.historyIds("TxEvent_201902"), contains(1L));
+    }
+
+    @Test
+    public void movesTransactionSpanningTwoPeriodsOnceAndKeepsUnendedOnes() {
+        String spanningGlobalTxId = uniquify("globalTxId");
+        String otherGlobalTxId = uniquify("globalTxId");
+        String unendedGlobalTxId = uniquify("globalTxId");
+        eventTable.add(1, spanningGlobalTxId, dateOf(2019, Calendar.JANUARY, 31), "SagaStartedEvent");
+        eventTable.add(2, spanningGlobalTxId, dateOf(2019, Calendar.JANUARY, 31), "TxStartedEvent");
+        eventTable.add(3, unendedGlobalTxId, dateOf(2019, Calendar.JANUARY, 31), "SagaStartedEvent");
+        eventTable.add(4, spanningGlobalTxId, dateOf(2019, Calendar.FEBRUARY, 1), "TxEndedEvent");
+        eventTable.add(5, otherGlobalTxId, dateOf(2019, Calendar.FEBRUARY, 2), "SagaStartedEvent");
+        eventTable.add(6, spanningGlobalTxId, dateOf(2019, Calendar.FEBRUARY, 3), "SagaEndedEvent");
+        eventTable.add(7, otherGlobalTxId, dateOf(2019, Calendar.FEBRUARY, 4), "SagaEndedEvent");
+
+        dataTransferService.dataTransfer("TxEvent");
+
+        assertThat(eventTable.ids(), contains(3L));
+        assertThat(eventTable.historyIds("TxEvent_201901"), contains(1L, 2L));
+        assertThat(eventTable.historyIds("TxEvent_201902"), contains(4L, 5L, 6L, 7L));
+        // every row is copied once, though the transaction is found by the workers of both periods.
+        assertThat(eventTable.copiedTimes.values().stream().allMatch(times -> times == 1), is(true));
+    }
+
+    private void assertPeriod(DataTransferService.Period period, String suffix, long startId, long endId) {
+        assertThat(period.suffix, is(suffix));
+        assertThat(period.startId, is(startId));
+        assertThat(period.endId, is(endId));
+    }
+
+    private static Date dateOf(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month, day, 12, 0);
+        return calendar.getTime();
+    }
+
+    // It evaluates the statements of DataTransferService on the rows in memory, the columns are surrogateId, globalTxId, creationTime and type.
+    private static final class InMemoryEventTable extends DataTransferRepository {
+        private final List<Object[]> rows = new ArrayList<>();
+        private final Map<String, List<Long>> historyRows = new LinkedHashMap<>();
+        private final Map<Long, Integer> copiedTimes = new LinkedHashMap<>();
+
+        synchronized void add(long id, String globalTxId, Date creationTime, String type) {
+            rows.add(new Object[]{id, globalTxId, creationTime, type});
+        }
+
+        synchronized List<Long> ids() {
+            List<Long> ids = new ArrayList<>();
+            rows.forEach(row -> ids.add((Long) row[0]));
+            return ids;
+        }
+
+        synchronized List<Long> historyIds(String historyTable) {
+            List<Long> ids = new ArrayList<>(historyRows.getOrDefault(historyTable, Collections.emptyList()));
+            Collections.sort(ids);
+            return ids;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized List executeQuery(String sql, Object... params) {
+            List<Object[]> result = new ArrayList<>();
+            if (sql.startsWith("SELECT MIN(T.surrogateId), MAX(T.surrogateId)")) {
+                List<Long> ids = ids();
+                result.add(ids.isEmpty() ? new Object[]{null, null} : new Object[]{Collections.min(ids), Collections.max(ids)});
+            } else if (sql.startsWith("SELECT T.surrogateId, T.creationTime FROM TxEvent T WHERE T.surrogateId >= ?")) {
+                rows.stream().filter(row -> (Long) row[0] >= ((Number) params[0]).longValue()).findFirst()
+                    .ifPresent(row -> result.add(new Object[]{row[0], row[2]}));
+            } else if (sql.startsWith("SELECT T.surrogateId, T.globalTxId, T.creationTime FROM TxEvent T WHERE T.surrogateId > ? AND T.surrogateId < ?")) {
+                rows.stream().filter(row -> (Long) row[0] > ((Number) params[0]).longValue() && (Long) row[0] < ((Number) params[1]).longValue())
+                    .limit(((Number) params[2]).longValue()).forEach(row -> result.add(new Object[]{row[0], row[1], row[2]}));
+            } else if (sql.startsWith("SELECT DISTINCT T.globalTxId FROM TxEvent T")) {
+                Set<Object> globalTxIds = new HashSet<>(Arrays.asList(params).subList(0, params.length - 1));
+                Date cutoff = (Date) params[params.length - 1];
+                Set<Object> endedGlobalTxIds = new HashSet<>();
+                rows.stream().filter(row -> globalTxIds.contains(row[1]) && "SagaEndedEvent".equals(row[3]) && ((Date) row[2]).before(cutoff))
+                    .forEach(row -> endedGlobalTxIds.add(row[1]));
+                return new ArrayList<>(endedGlobalTxIds);
+            } else if (sql.startsWith("SELECT T.surrogateId, T.globalTxId, T.creationTime, T.type FROM TxEvent T WHERE T.globalTxId IN")) {
+                Set<Object> globalTxIds = new HashSet<>(Arrays.asList(params));
+                rows.stream().filter(row -> globalTxIds.contains(row[1])).forEach(row -> result.add(row.clone()));
+            } else {
+                throw new IllegalArgumentException("Unexpected query " + sql);
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized int executeUpdate(String sql, Object... params) {
+            // the related tables, e.g. Command and TxTimeout, are empty
+            if (sql.startsWith("CREATE TABLE") || !sql.contains("TxEvent WHERE surrogateId IN")) {
+                return 0;
+            }
+            Set<Object> ids = new HashSet<>(Arrays.asList(params));
+            if (sql.startsWith("INSERT IGNORE INTO ")) {
+                String historyTable = sql.substring("INSERT IGNORE INTO ".length(), sql.indexOf(" SELECT"));
+                int count = 0;
+                for (Object[] row : rows) {
+                    if (ids.contains(row[0])) {
+                        historyRows.computeIfAbsent(historyTable, k -> new ArrayList<>()).add((Long) row[0]);
+                        copiedTimes.merge((Long) row[0], 1, Integer::sum);
+                        count++;
+                    }
+                }
+                return count;
+            } else if (sql.startsWith("DELETE FROM ")) {
+                int count = 0;
+                for (Iterator<Object[]> iterator = rows.iterator(); iterator.hasNext(); ) {
+                    if (ids.contains(iterator.next()[0])) {
+                        iterator.remove();
+                        count++;
+                    }
+                }
+                return count;
+            }
+            throw new IllegalArgumentException("Unexpected update " + sql);
+        }
+    }
+}
@@ -43,7 +43,8 @@ CREATE TABLE IF NOT EXISTS Command (
   payloads blob,
   status varchar(12),
   lastModified TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
-  version bigint NOT NULL
+  version bigint NOT NULL,
+  claimToken varchar(36) DEFAULT NULL
 );
 
 CREATE TABLE IF NOT EXISTS TxTimeout (
@@ -57,6 +57,9 @@ public class IntegrateTxleService {
     private void onInitialize() {
         this.clientStreamObserver = stubService.onBuildBidirectionalStream(this.serverStreamObserver);
         serverStreamObserver.setClientStreamObserver(clientStreamObserver);
+        // bind current stream to this client, so that the retry/compensation sqls of its transactions are sent by this stream
+        TxleClientConfig clientConfig = TxleClientConfig.newBuilder().setServiceName("sample-txle-springboot-user").setServiceIP("0.0.0.0").addDbNodeId("10.186.62.75").build();
+        clientStreamObserver.onNext(TxleGrpcClientStream.newBuilder().setClientConfig(clientConfig).build());
     }
 
     private void initDBSchema() {
@@ -7,6 +7,7 @@ package org.apache.servicecomb.saga.omega.transaction;
 
 import org.apache.servicecomb.saga.omega.context.ApplicationContextUtil;
 import org.apache.servicecomb.saga.omega.context.OmegaContext;
+import org.apache.servicecomb.saga.omega.context.TxleStaticConfig;
 import org.apache.servicecomb.saga.omega.transaction.repository.AutoCompensateDao;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -28,6 +29,11 @@ public class AutoCompensableAspectConfig {
 		return new AutoCompensateService();
 	}
 
+	@Bean(destroyMethod = "shutdown")
+	AutoCompensateExecutor autoCompensateExecutor() {
+		return new AutoCompensateExecutor(TxleStaticConfig.getIntegerConfig("txle.transaction.auto-compensation.executor-threads", 4));
+	}
+
 	@Bean
 	AutoCompensateDao autoCompensateDao() {
 		return new AutoCompensateDao();
@@ -44,4 +50,9 @@ public class AutoCompensableAspectConfig {
     ApplicationContextUtil applicationContextUtil() {
         return new ApplicationContextUtil();
     }
+
+    @Bean
+    TableMetadataPrewarmer tableMetadataPrewarmer() {
+        return new TableMetadataPrewarmer();
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.transaction;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * To execute auto-compensations concurrently.
+ * Every compensation has some conflict keys, e.g. the tables of some DataSource which would be changed by it.
+ * The compensations which have the same key are executed in order of submitting, and the others are executed concurrently.
+ * The compensations of a global transaction are executed in order of receiving, because their conflict keys are known only after reading their undo logs.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public class AutoCompensateExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(AutoCompensateExecutor.class);
+
+    private static final Gauge TXLE_AUTO_COMPENSATION_PENDING = Gauge.build("txle_auto_compensation_pending", "The number of auto-compensations which are waiting or running.").register();
+    private static final Counter TXLE_AUTO_COMPENSATION_TOTAL = Counter.build("txle_auto_compensation_total", "The number of finished auto-compensations.").labelNames("result").register();
+
+    private static final String GLOBAL_TX_KEY_PREFIX = "globalTx" + TxleConstants.STRING_SEPARATOR;
+
+    private final ExecutorService executorService;
+    // the last compensation of every conflict key, it's removed after the compensation is finished if there is no subsequent one.
+    private final Map<String, CompletableFuture<Void>> lastCompensations = new HashMap<>();
+
+    public AutoCompensateExecutor(int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "txle-auto-compensation-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * To execute a compensation after the previous ones of the same global transaction, e.g. reading its undo logs and then submitting its SQLs.
+     * The returned future is completed when the future of the compensation is completed, so no thread is blocked while it's waiting.
+     */
+    public CompletableFuture<Boolean> compensate(String globalTxId, Supplier<CompletableFuture<Boolean>> compensation) {
+        TXLE_AUTO_COMPENSATION_PENDING.inc();
+        CompletableFuture<Boolean> future = schedule(Collections.singleton(GLOBAL_TX_KEY_PREFIX + globalTxId), compensation);
+        future.whenComplete((result, e) -> {
+            TXLE_AUTO_COMPENSATION_PENDING.dec();
+            TXLE_AUTO_COMPENSATION_TOTAL.labels(e == null && Boolean.TRUE.equals(result) ? "success" : "failure").inc();
+            if (e != null) {
+                LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to execute auto-compensation, globalTxId [{}].", globalTxId, e);
+            }
+        });
+        return future;
+    }
+
+    public <T> CompletableFuture<T> submit(Collection<String> conflictKeys, Supplier<T> work) {
+        return schedule(conflictKeys, () -> CompletableFuture.completedFuture(work.get()));
+    }
+
+    private <T> CompletableFuture<T> schedule(Collection<String> conflictKeys, Supplier<CompletableFuture<T>> work) {
+        CompletableFuture<T> future;
+        synchronized (lastCompensations) {
+            CompletableFuture<?>[] previousCompensations = conflictKeys.stream().map(lastCompensations::get).filter(Objects::nonNull).toArray(CompletableFuture[]::new);
+            future = CompletableFuture.allOf(previousCompensations).thenComposeAsync(v -> work.get(), executorService);
+            // the subsequent compensations are executed, no matter whether the current one is successful.
+            CompletableFuture<Void> finished = future.handle((result, e) -> null);
+            conflictKeys.forEach(key -> lastCompensations.put(key, finished));
+            finished.thenRun(() -> {
+                synchronized (lastCompensations) {
+                    conflictKeys.forEach(key -> lastCompensations.remove(key, finished));
+                }
+            });
+        }
+        return future;
+    }
+
+    // for test
+    int conflictKeyCount() {
+        synchronized (lastCompensations) {
+            return lastCompensations.size();
+        }
+    }
+
+    // To run some work of a compensation on the workers without any conflict key, e.g. reading its undo logs.
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> work) {
+        return CompletableFuture.supplyAsync(work, executorService);
+    }
+
+    public void shutdown() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
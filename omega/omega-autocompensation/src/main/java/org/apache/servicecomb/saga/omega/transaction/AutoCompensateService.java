@@ -6,6 +6,10 @@
 package org.apache.servicecomb.saga.omega.transaction;
 
 import com.alibaba.druid.sql.ast.SQLStatement;
+import com.alibaba.druid.sql.ast.statement.SQLExprTableSource;
+import com.alibaba.druid.sql.ast.statement.SQLJoinTableSource;
+import com.alibaba.druid.sql.ast.statement.SQLTableSource;
+import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlDeleteStatement;
 import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlInsertStatement;
 import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlUpdateStatement;
 import com.alibaba.druid.sql.dialect.mysql.parser.MySqlStatementParser;
@@ -13,6 +17,7 @@ import com.github.rholder.retry.Retryer;
 import com.google.gson.JsonObject;
 import org.apache.servicecomb.saga.common.TxleConstants;
 import org.apache.servicecomb.saga.omega.context.ApplicationContextUtil;
+import org.apache.servicecomb.saga.omega.context.TxleStaticConfig;
 import org.apache.servicecomb.saga.omega.transaction.accidentplatform.AccidentHandleType;
 import org.apache.servicecomb.saga.omega.transaction.accidentplatform.ClientAccidentHandlingService;
 import org.apache.servicecomb.saga.omega.transaction.monitor.AutoCompensableSqlMetrics;
@@ -22,14 +27,17 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * Business interface for auto-compensation.
@@ -51,29 +59,45 @@ public class AutoCompensateService implements IAutoCompensateService {
     @Autowired
     private Retryer retryer;
 
+    @Autowired
+    private AutoCompensateExecutor autoCompensateExecutor;
+
     // @Transactional(propagation = Propagation.NOT_SUPPORTED) // Propagation.NOT_SUPPORTED/REQUIRED_NEW indeed is okay, if data are not same among transactions.
+    // Its signature is the compensation method of auto-compensation known by alpha, but the commands of alpha are executed by 'executeAutoCompensateAsync'.
     @Override
     public boolean executeAutoCompensateByLocalTxId(String globalTxId, String localTxId) {
-        AtomicInteger result = new AtomicInteger(0);
+        return executeAutoCompensateAsync(globalTxId, localTxId).join();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeAutoCompensateAsync(String globalTxId, String localTxId) {
         LOG.error("Executing AutoCompensable method 'executeAutoCompensateByLocalTxId'.");
-        try {
-            autoCompensateDao.setDataSource(DataSourceMappingCache.get(localTxId));
-        } catch (Exception e) {
-            LOG.error("Failed to change datasource globalTxId [{}], localTxId [{}].", globalTxId, localTxId, e);
-        }
-        final List<Map<String, Object>> txleUndoLogList;
-        try {
-            txleUndoLogList = autoCompensateDao.executeQuery("SELECT * FROM txle_undo_log T WHERE T.globalTxId = ? AND T.localTxId = ? ORDER BY T.lastModifyTime DESC, T.id DESC", globalTxId, localTxId);
-        } catch (Exception e) {
-            reportMsgToAccidentPlatform(globalTxId, localTxId, "", "Failed to select undo_log info, " + e.getMessage());
-            return false;
-        }
-        if (txleUndoLogList == null || txleUndoLogList.isEmpty()) {
-            reportMsgToAccidentPlatform(globalTxId, localTxId, "", "The undo_log info is empty.");
-            return false;
-        }
+        // The DataSource is selected on the workers only, so it never stays on the caller thread.
+        DataSource dataSource = DataSourceMappingCache.get(localTxId);
+        return autoCompensateExecutor.compensate(globalTxId, () -> autoCompensateExecutor.supplyAsync(() -> withDataSource(dataSource, () -> selectUndoLogs(globalTxId, localTxId)))
+                .handle((txleUndoLogList, e) -> {
+                    if (e != null) {
+                        LOG.error(TxleConstants.logErrorPrefixWithTime() + "Failed to select undo_log info, globalTxId [{}], localTxId [{}].", globalTxId, localTxId, e);
+                        return null;
+                    }
+                    return txleUndoLogList;
+                })
+                .thenCompose(txleUndoLogList -> {
+                    if (txleUndoLogList == null || txleUndoLogList.isEmpty()) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    return executeCompensateSqls(dataSource, txleUndoLogList, globalTxId, localTxId);
+                }));
+    }
+
+    private CompletableFuture<Boolean> executeCompensateSqls(DataSource dataSource, List<Map<String, Object>> txleUndoLogList, String globalTxId, String localTxId) {
+        // The compensations which change the same tables of the same DataSource are executed in order, the others are executed concurrently.
+        String dataSourceKey = dataSource == null ? "" : Integer.toHexString(System.identityHashCode(dataSource));
+        Set<String> conflictKeys = new TreeSet<>();
+        txleUndoLogList.forEach(map -> conflictKeys.add(dataSourceKey + TxleConstants.STRING_SEPARATOR + parseTableName(map.get("compensateSql").toString())));
 
-        synchronized (AutoCompensateService.class) {
+        return autoCompensateExecutor.submit(conflictKeys, () -> withDataSource(dataSource, () -> {
+            AtomicInteger result = new AtomicInteger(0);
             txleUndoLogList.forEach(map -> {
                 String compensateSql = map.get("compensateSql").toString();
                 try {
@@ -93,44 +117,67 @@ public class AutoCompensateService implements IAutoCompensateService {
                 }
             });
             return result.get() > 0;
+        }));
+    }
+
+    private List<Map<String, Object>> selectUndoLogs(String globalTxId, String localTxId) {
+        List<Map<String, Object>> txleUndoLogList;
+        try {
+            txleUndoLogList = autoCompensateDao.executeQuery("SELECT * FROM txle_undo_log T WHERE T.globalTxId = ? AND T.localTxId = ? ORDER BY T.lastModifyTime DESC, T.id DESC", globalTxId, localTxId);
+        } catch (Exception e) {
+            reportMsgToAccidentPlatform(globalTxId, localTxId, "", "Failed to select undo_log info, " + e.getMessage());
+            return null;
         }
+        if (txleUndoLogList == null || txleUndoLogList.isEmpty()) {
+            reportMsgToAccidentPlatform(globalTxId, localTxId, "", "The undo_log info is empty.");
+        }
+        return txleUndoLogList;
     }
 
-    private boolean checkDataConsistency(String compensateSql, String globalTxId, String localTxId) throws NoSuchAlgorithmException, IOException {
+    private <T> T withDataSource(DataSource dataSource, Supplier<T> work) {
+        autoCompensateDao.setDataSource(dataSource);
+        try {
+            return work.get();
+        } finally {
+            autoCompensateDao.setDataSource(null);
+        }
+    }
+
+    private boolean checkDataConsistency(String compensateSql, String globalTxId, String localTxId) {
         MySqlStatementParser parser = new MySqlStatementParser(compensateSql);
         SQLStatement sqlStatement = parser.parseStatement();
-        if (sqlStatement instanceof MySqlUpdateStatement ||  sqlStatement instanceof MySqlInsertStatement) {
-            MySqlUpdateStatement deleteStatement = (MySqlUpdateStatement) sqlStatement;
-            String tableName = deleteStatement.getTableName().toString().toLowerCase();
+        // Only the compensation for update SQL overwrites the current data, the compensations for insert and delete SQL have no backup after executing.
+        if (sqlStatement instanceof MySqlUpdateStatement) {
+            String tableName = parseTableName((MySqlUpdateStatement) sqlStatement);
             String schema = TxleConstants.APP_NAME;
             String txleBackupTableName = "backup_new_" + tableName;
             int backupDataCount = autoCompensateDao.executeQueryCount("SELECT count(*) FROM " + schema + "." + txleBackupTableName + " T WHERE T.globalTxId = ? AND T.localTxId = ? FOR UPDATE", globalTxId, localTxId);
             if (backupDataCount > 0) {
-                String pkName = this.parsePrimaryKeyColumnName(tableName);
-                int currentDataCount = autoCompensateDao.executeQueryCount("SELECT count(*) FROM " + tableName + " T WHERE T.id IN (SELECT T1.id FROM " + schema + "." + txleBackupTableName + " T1 WHERE T1.globalTxId = ? AND T1.localTxId = ?)", globalTxId, localTxId);
-                // in case of updating many times for some same data, to delete the previous changes, so it only has one backup for any data.
-                if (backupDataCount == currentDataCount) {
-                    List<Map<String, Object>> columnList = autoCompensateDao.executeQuery(
-                            "SELECT GROUP_CONCAT(COLUMN_NAME) COLUMN_NAMES FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = '" + schema + "' AND TABLE_NAME = '" + txleBackupTableName + "' AND COLUMN_NAME NOT IN ('globalTxId', 'localTxId')");
-                    if (columnList != null && !columnList.isEmpty()) {
-                        StringBuilder columnNames = new StringBuilder();
-                        String[] columnArr = columnList.get(0).get("COLUMN_NAMES").toString().split(",");
-                        for (String column : columnArr) {
-                            if (columnNames.length() == 0) {
-                                columnNames.append("T." + column);
-                            } else {
-                                columnNames.append(",T." + column);
-                            }
-                        }
-                        String backupDataSql = "SELECT " + columnNames + " FROM " + schema + "." + txleBackupTableName + " T WHERE T.globalTxId = '" + globalTxId + "' AND T.localTxId = '" + localTxId + "'";
-                        String currentDataSql = "SELECT " + columnNames + " FROM " + tableName + " T, " + schema + "." + txleBackupTableName + " T1 WHERE T." + pkName + " = T1." + pkName + " AND T1.globalTxId = '" + globalTxId + "' AND T1.localTxId = '" + localTxId + "'";
-
-                        String backupDataMD5 = getMD5Digest(backupDataSql, backupDataCount);
-                        String currentDataMD5 = getMD5Digest(currentDataSql, currentDataCount);
-                        if (backupDataMD5.equals(currentDataMD5)) {
-                            return true;
+                List<Map<String, Object>> columnList = this.selectColumns(tableName);
+                if (columnList != null && !columnList.isEmpty()) {
+                    String pkName = null;
+                    List<String> columns = new ArrayList<>(columnList.size());
+                    for (Map<String, Object> map : columnList) {
+                        String field = map.get("Field").toString();
+                        columns.add(field);
+                        if (pkName == null && "PRI".equalsIgnoreCase(map.get("Key").toString())) {
+                            pkName = field;
                         }
                     }
+                    if (pkName == null) {
+                        pkName = "id";
+                    }
+                    // the backup data and current data are read by one join, so it's linear and stops at the first difference.
+                    String fromSql = " FROM " + tableName + " T INNER JOIN " + schema + "." + txleBackupTableName + " T1 ON T." + pkName + " = T1." + pkName + " WHERE T1.globalTxId = ? AND T1.localTxId = ?";
+                    boolean consistent;
+                    if (TxleStaticConfig.getBooleanConfig("txle.transaction.auto-compensation.consistency-check.in-database", false)) {
+                        consistent = checkDataConsistencyInDatabase(columns, fromSql, backupDataCount, globalTxId, localTxId);
+                    } else {
+                        consistent = checkDataConsistencyByStreaming(columns, fromSql, backupDataCount, globalTxId, localTxId);
+                    }
+                    if (consistent) {
+                        return true;
+                    }
                 }
             }
             throw new RuntimeException("That's not consistent between backup data and current data.");
@@ -138,32 +185,98 @@ public class AutoCompensateService implements IAutoCompensateService {
         return true;
     }
 
-    private String getMD5Digest(String sql, int count) throws NoSuchAlgorithmException, IOException {
-        MessageDigest md5 = MessageDigest.getInstance("MD5");
+    private boolean checkDataConsistencyByStreaming(List<String> columns, String fromSql, int backupDataCount, String globalTxId, String localTxId) {
+        StringBuilder columnNames = new StringBuilder();
+        for (String column : columns) {
+            columnNames.append(columnNames.length() == 0 ? "T." : ",T.").append(column);
+        }
+        for (String column : columns) {
+            columnNames.append(",T1.").append(column);
+        }
+        int columnCount = columns.size();
+        return autoCompensateDao.executeStreamingQuery("SELECT " + columnNames + fromSql, resultSet -> {
+            int currentDataCount = 0;
+            while (resultSet.next()) {
+                currentDataCount++;
+                if (hashRow(resultSet, 1, columnCount) != hashRow(resultSet, columnCount + 1, columnCount)) {
+                    return false;
+                }
+            }
+            // in case of updating many times for some same data, to delete the previous changes, so it only has one backup for any data.
+            return currentDataCount == backupDataCount;
+        }, globalTxId, localTxId);
+    }
 
-        int pageSize = 100;
-        for (int i = 0; i < count; i++) {
-            // TODO We are not sure that the primary key is a numeric field, so it cannot be a condition to compare. Optimize the 'LIMIT' SQL later.
-            List<Map<String, Object>> backupDataList = autoCompensateDao.executeQuery(sql + " LIMIT " + (i * pageSize) + "," + pageSize);
-            if (backupDataList == null || backupDataList.isEmpty()) {
-                break;
+    // The hash is computed by MySQL, only one row is returned.
+    private boolean checkDataConsistencyInDatabase(List<String> columns, String fromSql, int backupDataCount, String globalTxId, String localTxId) {
+        StringBuilder currentColumns = new StringBuilder();
+        StringBuilder backupColumns = new StringBuilder();
+        for (String column : columns) {
+            // CONCAT_WS skips NULL, so a flag is appended for every column.
+            currentColumns.append(",T.").append(column).append(",ISNULL(T.").append(column).append(")");
+            backupColumns.append(",T1.").append(column).append(",ISNULL(T1.").append(column).append(")");
+        }
+        String sql = "SELECT COUNT(*) ROW_COUNT, IFNULL(SUM(CRC32(CONCAT_WS('#'" + currentColumns + ")) <> CRC32(CONCAT_WS('#'" + backupColumns + "))), 0) DIFF_COUNT" + fromSql;
+        List<Map<String, Object>> result = autoCompensateDao.executeQuery(sql, globalTxId, localTxId);
+        if (result == null || result.isEmpty()) {
+            return false;
+        }
+        return Integer.parseInt(result.get(0).get("ROW_COUNT").toString()) == backupDataCount && Integer.parseInt(result.get(0).get("DIFF_COUNT").toString()) == 0;
+    }
+
+    // FNV-1a 64-bit hash of the raw column values, the null value is different from the empty value.
+    private long hashRow(ResultSet resultSet, int fromColumnIndex, int columnCount) throws SQLException {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = fromColumnIndex; i < fromColumnIndex + columnCount; i++) {
+            byte[] value = resultSet.getBytes(i);
+            if (value == null) {
+                hash = (hash ^ 0xff) * 0x100000001b3L;
+            } else {
+                for (byte b : value) {
+                    hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+                }
             }
-            md5.update(convertToByteFromList(backupDataList));
+            // separator of columns
+            hash = (hash ^ 0x1f) * 0x100000001b3L;
         }
+        return hash;
+    }
 
-        byte[] digest = md5.digest();
-        StringBuilder hex = new StringBuilder();
-        for (int i = 0; i < digest.length; i++) {
-            int v = digest[i] & 0xFF;
-            if (v < 16) {
-                hex.append(0);
+    // e.g. 'UPDATE table T INNER JOIN txle.backup_old_table T1 ...', 'INSERT INTO table SELECT ...' and 'DELETE T FROM table T INNER JOIN txle.backup_new_table T1 ...'.
+    private String parseTableName(String compensateSql) {
+        try {
+            SQLStatement sqlStatement = new MySqlStatementParser(compensateSql).parseStatement();
+            if (sqlStatement instanceof MySqlUpdateStatement) {
+                return parseTableName((MySqlUpdateStatement) sqlStatement);
+            } else if (sqlStatement instanceof MySqlInsertStatement) {
+                return ((MySqlInsertStatement) sqlStatement).getTableName().toString().toLowerCase();
+            } else if (sqlStatement instanceof MySqlDeleteStatement) {
+                MySqlDeleteStatement deleteStatement = (MySqlDeleteStatement) sqlStatement;
+                return parseTableName(deleteStatement.getFrom() != null ? deleteStatement.getFrom() : deleteStatement.getTableSource());
             }
-            hex.append(Integer.toString(v, 16));
+        } catch (Exception e) {
+            LOG.warn("Failed to parse the table name of compensation SQL [{}].", compensateSql, e);
         }
-        return hex.toString();
+        // it's in conflict with the other unknown SQLs only.
+        return "";
     }
 
-    private String parsePrimaryKeyColumnName(String tableName) {
+    private String parseTableName(MySqlUpdateStatement updateStatement) {
+        String tableName = parseTableName(updateStatement.getTableSource());
+        return tableName.length() > 0 ? tableName : updateStatement.getTableName().toString().toLowerCase();
+    }
+
+    private String parseTableName(SQLTableSource tableSource) {
+        while (tableSource instanceof SQLJoinTableSource) {
+            tableSource = ((SQLJoinTableSource) tableSource).getLeft();
+        }
+        if (tableSource instanceof SQLExprTableSource) {
+            return ((SQLExprTableSource) tableSource).getExpr().toString().toLowerCase();
+        }
+        return "";
+    }
+
+    private List<Map<String, Object>> selectColumns(String tableName) {
         String sql = "SHOW FULL COLUMNS FROM " + tableName + TxleConstants.ACTION_SQL;
         // start to mark duration for maintaining sql By Gannalyo.
         ApplicationContextUtil.getApplicationContext().getBean(AutoCompensableSqlMetrics.class).startMarkSQLDurationAndCount(sql, false);
@@ -174,39 +287,7 @@ public class AutoCompensateService implements IAutoCompensateService {
         // end mark duration for maintaining sql By Gannalyo.
         ApplicationContextUtil.getApplicationContext().getBean(AutoCompensableSqlMetrics.class).endMarkSQLDuration();
 
-        if (columnList != null && !columnList.isEmpty()) {
-            for (Map<String, Object> map : columnList) {
-                if ("PRI".equalsIgnoreCase(map.get("Key").toString())) {
-                    return map.get("Field").toString();
-                }
-            }
-        }
-        return "id";
-    }
-
-    private byte[] convertToByteFromList(List<Map<String, Object>> list) throws IOException {
-        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-        ObjectOutputStream out = null;
-        try {
-            out = new ObjectOutputStream(byteOut);
-            for (Map<String, Object> map : list) {
-                out.writeObject(map);
-            }
-            return byteOut.toByteArray();
-        } finally {
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            try {
-                byteOut.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+        return columnList;
     }
 
     private void reportMsgToAccidentPlatform(String globalTxId, String localTxId, String bizinfo, String remark) {
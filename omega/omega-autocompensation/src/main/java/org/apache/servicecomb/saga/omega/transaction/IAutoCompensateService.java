@@ -5,6 +5,8 @@
 
 package org.apache.servicecomb.saga.omega.transaction;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Business interface for auto-compensation.
  *
@@ -24,4 +26,14 @@ public interface IAutoCompensateService {
 	 */
 	boolean executeAutoCompensateByLocalTxId(String globalTxId, String localTxId);
 
+	/**
+	 * To execute auto-compensation SQL without blocking the caller, it's the way that the compensation commands of alpha are executed.
+	 * The compensations of a global transaction are executed in order of calling.
+	 *
+	 * @param globalTxId Global Transaction Identify
+	 * @param localTxId Sub-transaction Identify
+	 * @return the result which is completed after the compensation SQLs are executed
+	 */
+	CompletableFuture<Boolean> executeAutoCompensateAsync(String globalTxId, String localTxId);
+
 }
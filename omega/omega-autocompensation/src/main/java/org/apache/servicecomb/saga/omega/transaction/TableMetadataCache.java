@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.transaction;
+
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.apache.servicecomb.saga.omega.context.ApplicationContextUtil;
+import org.apache.servicecomb.saga.omega.context.TxleStaticConfig;
+import org.apache.servicecomb.saga.omega.transaction.monitor.AutoCompensableSqlMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache tool for the metadata of business tables, e.g. primary key, columns and the backup tables of txle.
+ * It's keyed by the url and user of DataSource, so the same table of different databases is cached separately.
+ * The metadata expires after 'txle.transaction.auto-compensation.metadata-ttl-seconds', and it's removed once DDL is detected or the backup fails.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public final class TableMetadataCache {
+    private static final Logger LOG = LoggerFactory.getLogger(TableMetadataCache.class);
+
+    private static final Map<String, TableMetadata> TABLE_METADATA = new ConcurrentHashMap<>();
+    // the backup tables which exist, the value is the time of checking
+    private static final Map<String, Long> BACKUP_TABLES = new ConcurrentHashMap<>();
+
+    private TableMetadataCache() {
+    }
+
+    public static String dataSourceKey(Object url, Object userName) {
+        return url + TxleConstants.STRING_SEPARATOR + userName;
+    }
+
+    public static TableMetadata get(Connection connection, String dataSourceKey, String tableName) throws SQLException {
+        String key = dataSourceKey + TxleConstants.STRING_SEPARATOR + tableName;
+        TableMetadata metadata = TABLE_METADATA.get(key);
+        if (metadata == null || isExpired(metadata.loadedTime)) {
+            metadata = load(connection, tableName);
+            TABLE_METADATA.put(key, metadata);
+        }
+        return metadata;
+    }
+
+    public static boolean isBackupTablePrepared(String dataSourceKey, String backupTableName) {
+        Long checkedTime = BACKUP_TABLES.get(dataSourceKey + TxleConstants.STRING_SEPARATOR + backupTableName);
+        return checkedTime != null && !isExpired(checkedTime);
+    }
+
+    public static void markBackupTablePrepared(String dataSourceKey, String backupTableName) {
+        BACKUP_TABLES.put(dataSourceKey + TxleConstants.STRING_SEPARATOR + backupTableName, System.currentTimeMillis());
+    }
+
+    /**
+     * To remove the metadata of the table and its backup tables, e.g. the backup failed due to the changed columns.
+     */
+    public static void invalidate(String dataSourceKey, String tableName) {
+        String separator = TxleConstants.STRING_SEPARATOR;
+        TABLE_METADATA.remove(dataSourceKey + separator + tableName);
+        BACKUP_TABLES.remove(dataSourceKey + separator + "backup_old_" + tableName);
+        BACKUP_TABLES.remove(dataSourceKey + separator + "backup_new_" + tableName);
+    }
+
+    /**
+     * To remove all metadata of the DataSource, e.g. some DDL was executed.
+     */
+    public static void invalidateAll(String dataSourceKey) {
+        String prefix = dataSourceKey + TxleConstants.STRING_SEPARATOR;
+        TABLE_METADATA.keySet().removeIf(key -> key.startsWith(prefix));
+        BACKUP_TABLES.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * To load the metadata of all tables in advance, so the first business SQL of each table doesn't wait for it.
+     * The tables are listed by DatabaseMetaData, but the columns are read by 'SHOW FULL COLUMNS' as same as loading lazily,
+     * because the type of DatabaseMetaData has no length, e.g. 'VARCHAR' rather than 'varchar(32)'.
+     */
+    public static void prewarm(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData databaseMetaData = connection.getMetaData();
+            String dataSourceKey = dataSourceKey(databaseMetaData.getURL(), databaseMetaData.getUserName());
+            List<String> tableNames = new ArrayList<>();
+            try (ResultSet tables = databaseMetaData.getTables(connection.getCatalog(), null, "%", new String[]{"TABLE"})) {
+                while (tables.next()) {
+                    tableNames.add(tables.getString("TABLE_NAME"));
+                }
+            }
+            for (String tableName : tableNames) {
+                TABLE_METADATA.put(dataSourceKey + TxleConstants.STRING_SEPARATOR + tableName.toLowerCase(), showFullColumns(connection, tableName));
+            }
+            LOG.info("Prewarmed the metadata of [{}] tables for DataSource [{}].", tableNames.size(), databaseMetaData.getURL());
+        } catch (SQLException e) {
+            LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to prewarm the metadata of tables.", e);
+        }
+    }
+
+    private static boolean isExpired(long loadedTime) {
+        int ttlSeconds = TxleStaticConfig.getIntegerConfig("txle.transaction.auto-compensation.metadata-ttl-seconds", 600);
+        return ttlSeconds > 0 && System.currentTimeMillis() - loadedTime > TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    private static TableMetadata load(Connection connection, String tableName) throws SQLException {
+        String sql = "SHOW FULL COLUMNS FROM " + tableName + TxleConstants.ACTION_SQL;
+
+        // start to mark duration for maintaining sql By Gannalyo.
+        ApplicationContextUtil.getApplicationContext().getBean(AutoCompensableSqlMetrics.class).startMarkSQLDurationAndCount(sql, false);
+        try {
+            return showFullColumns(connection, tableName);
+        } finally {
+            // end mark duration for maintaining sql By Gannalyo.
+            ApplicationContextUtil.getApplicationContext().getBean(AutoCompensableSqlMetrics.class).endMarkSQLDuration();
+        }
+    }
+
+    // the type is the full definition of column, e.g. 'varchar(32)', whichever way the metadata is loaded.
+    private static TableMetadata showFullColumns(Connection connection, String tableName) throws SQLException {
+        Map<String, String> columnNameType = new LinkedHashMap<>();
+        String primaryKey = null;
+        try (PreparedStatement ps = connection.prepareStatement("SHOW FULL COLUMNS FROM " + tableName + TxleConstants.ACTION_SQL); ResultSet resultSet = ps.executeQuery()) {
+            while (resultSet.next()) {
+                String field = resultSet.getString("Field");
+                // column name and type
+                columnNameType.put(field, resultSet.getString("Type"));
+                if (primaryKey == null && "PRI".equalsIgnoreCase(resultSet.getString("Key"))) {
+                    primaryKey = field;
+                }
+            }
+        }
+        return new TableMetadata(primaryKey, columnNameType);
+    }
+
+    public static final class TableMetadata {
+        private final String primaryKey;
+        // the columns in order of definition
+        private final Map<String, String> columnNameType;
+        private final long loadedTime = System.currentTimeMillis();
+
+        private TableMetadata(String primaryKey, Map<String, String> columnNameType) {
+            // 'id' is the default primary key as before
+            this.primaryKey = primaryKey == null ? "id" : primaryKey;
+            this.columnNameType = Collections.unmodifiableMap(columnNameType);
+        }
+
+        public String primaryKey() {
+            return primaryKey;
+        }
+
+        public List<String> columns() {
+            return new ArrayList<>(columnNameType.keySet());
+        }
+
+        public Map<String, String> columnNameType() {
+            return columnNameType;
+        }
+    }
+}
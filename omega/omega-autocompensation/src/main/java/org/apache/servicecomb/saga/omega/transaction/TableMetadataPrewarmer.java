@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.transaction;
+
+import org.apache.servicecomb.saga.omega.context.TxleStaticConfig;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * To load the metadata of business tables for all DataSources after starting, it's closed by default.
+ * It's executed in another thread, so that the startup of application is not delayed.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public class TableMetadataPrewarmer implements ApplicationListener<ContextRefreshedEvent> {
+    private final AtomicBoolean prewarmed = new AtomicBoolean(false);
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (!TxleStaticConfig.getBooleanConfig("txle.transaction.auto-compensation.metadata-prewarm", false) || !prewarmed.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> event.getApplicationContext().getBeansOfType(DataSource.class).values().forEach(TableMetadataCache::prewarm), "txle-table-metadata-prewarm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
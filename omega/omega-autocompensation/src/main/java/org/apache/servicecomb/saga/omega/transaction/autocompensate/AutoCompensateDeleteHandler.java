@@ -5,7 +5,6 @@
 
 package org.apache.servicecomb.saga.omega.transaction.autocompensate;
 
-import com.alibaba.druid.sql.ast.SQLStatement;
 import com.alibaba.druid.util.JdbcConstants;
 
 import java.sql.PreparedStatement;
@@ -27,10 +26,10 @@ public class AutoCompensateDeleteHandler extends AutoCompensateHandler {
         return autoCompensateDeleteHandler;
     }
 
-    public boolean prepareCompensationBeforeDeleting(PreparedStatement delegate, SQLStatement sqlStatement, String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
+    public boolean prepareCompensationBeforeDeleting(PreparedStatement delegate, CompensationPlan plan, String whereSql, String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
 
-        if (JdbcConstants.MYSQL.equals(sqlStatement.getDbType())) {
-            return MySqlDeleteHandler.newInstance().prepareCompensationBeforeDeleting(delegate, sqlStatement, executeSql, globalTxId, localTxId, server, standbyParams);
+        if (JdbcConstants.MYSQL.equals(plan.dbType())) {
+            return MySqlDeleteHandler.newInstance().prepareCompensationBeforeDeleting(delegate, plan, whereSql, executeSql, globalTxId, localTxId, server, standbyParams);
         }
 
         return false;
@@ -5,31 +5,35 @@
 
 package org.apache.servicecomb.saga.omega.transaction.autocompensate;
 
-import com.alibaba.druid.sql.ast.SQLStatement;
-import com.alibaba.druid.sql.dialect.mysql.ast.clause.MySqlSelectIntoStatement;
-import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlDeleteStatement;
-import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlInsertStatement;
-import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlUpdateStatement;
-import com.alibaba.druid.sql.dialect.mysql.parser.MySqlStatementParser;
 import org.apache.servicecomb.saga.common.TxleConstants;
 import org.apache.servicecomb.saga.omega.context.ApplicationContextUtil;
 import org.apache.servicecomb.saga.omega.context.CurrentThreadOmegaContext;
 import org.apache.servicecomb.saga.omega.context.TxleStaticConfig;
+import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.PreparedStatementInformation;
 import org.apache.servicecomb.saga.omega.transaction.DataSourceMappingCache;
+import org.apache.servicecomb.saga.omega.transaction.TableMetadataCache;
 import org.apache.servicecomb.saga.omega.transaction.monitor.AutoCompensableSqlMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.BeansException;
 
 import java.sql.*;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 public class AutoCompensateHandler implements IAutoCompensateHandler {
     private static final Logger LOG = LoggerFactory.getLogger(AutoCompensateHandler.class);
 
     private static volatile AutoCompensateHandler autoCompensateHandler = null;
+    private static final int COMPENSATION_PLAN_CACHE_SIZE = TxleStaticConfig.getIntegerConfig("txle.transaction.auto-compensation.plan-cache-size", 1024);
+    private static final CompensationPlanCache COMPENSATION_PLAN_CACHE = new CompensationPlanCache(COMPENSATION_PLAN_CACHE_SIZE);
+    private static final String UNDO_LOG_INSERT_SQL = "insert into txle_undo_log(globaltxid, localtxid, executesql, compensatesql, status, server, lastmodifytime, createtime) values ";
+    private static final String UNDO_LOG_VALUES = "(?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final boolean UNDO_LOG_BATCH_ENABLED = TxleStaticConfig.getBooleanConfig("txle.transaction.auto-compensation.undo-log-batch.enabled", false);
+    private static final int UNDO_LOG_BATCH_SIZE = TxleStaticConfig.getIntegerConfig("txle.transaction.auto-compensation.undo-log-batch.size", 100);
+    // the undo logs which are not committed, the key is the physical connection.
+    private static final PendingUndoLogs PENDING_UNDO_LOGS = new PendingUndoLogs();
     private final String schema = TxleConstants.APP_NAME;
 
     public static AutoCompensateHandler newInstance() {
@@ -48,7 +52,7 @@ public class AutoCompensateHandler implements IAutoCompensateHandler {
     }
 
     @Override
-    public void prepareCompensationBeforeExecuting(PreparedStatement delegate, String executeSql, Map<String, Object> standbyParams) throws SQLException {
+    public void prepareCompensationBeforeExecuting(PreparedStatement delegate, PreparedStatementInformation statementInformation, Map<String, Object> standbyParams) throws SQLException {
         String globalTxId = CurrentThreadOmegaContext.getGlobalTxIdFromCurThread();
         if (globalTxId == null || globalTxId.length() == 0) {
             return;
@@ -58,10 +62,8 @@ public class AutoCompensateHandler implements IAutoCompensateHandler {
             return;
         }
 
-        // To parse SQL by SQLParser tools from Druid.
-        MySqlStatementParser parser = new MySqlStatementParser(executeSql);
-        SQLStatement sqlStatement = parser.parseStatement();
-        if (sqlStatement instanceof MySqlSelectIntoStatement) {
+        CompensationPlan plan = compensationPlanOf(statementInformation);
+        if (plan.sqlType() == CompensationPlan.SqlType.SELECT_INTO) {
             return;
         }
 
@@ -71,22 +73,20 @@ public class AutoCompensateHandler implements IAutoCompensateHandler {
 
         String server = CurrentThreadOmegaContext.getServiceNameFromCurThread();
 
-        // To set a relationship between localTxId and datSourceInfo, in order to determine to use the relative dataSource for localTxId when it need be compensated.
-        DatabaseMetaData databaseMetaData = delegate.getConnection().getMetaData();
-        String dburl = databaseMetaData.getURL(), dbusername = databaseMetaData.getUserName(), dbdrivername = databaseMetaData.getDriverName();
-        DataSourceMappingCache.putLocalTxIdAndDataSourceInfo(localTxId, dburl, dbusername, dbdrivername);
-        // To construct kafka message.
-        standbyParams.put("dbdrivername", dbdrivername);
-        standbyParams.put("dburl", dburl);
-        standbyParams.put("dbusername", dbusername);
+        mapDataSourceInfo(delegate, localTxId, standbyParams);
 
-        if (sqlStatement instanceof MySqlInsertStatement) {
+        String executeSql = statementInformation.getSqlWithValues();
+        if (plan.sqlType() == CompensationPlan.SqlType.INSERT) {
             return;
-        } else if (sqlStatement instanceof MySqlUpdateStatement) {
-            AutoCompensateUpdateHandler.newInstance().prepareCompensationBeforeUpdating(delegate, sqlStatement, executeSql, globalTxId, localTxId, server, standbyParams);
-        } else if (sqlStatement instanceof MySqlDeleteStatement) {
-            AutoCompensateDeleteHandler.newInstance().prepareCompensationBeforeDeleting(delegate, sqlStatement, executeSql, globalTxId, localTxId, server, standbyParams);
+        } else if (plan.sqlType() == CompensationPlan.SqlType.UPDATE) {
+            AutoCompensateUpdateHandler.newInstance().prepareCompensationBeforeUpdating(delegate, plan, plan.bindWhere(statementInformation), executeSql, globalTxId, localTxId, server, standbyParams);
+        } else if (plan.sqlType() == CompensationPlan.SqlType.DELETE) {
+            AutoCompensateDeleteHandler.newInstance().prepareCompensationBeforeDeleting(delegate, plan, plan.bindWhere(statementInformation), executeSql, globalTxId, localTxId, server, standbyParams);
         } else {
+            if (plan.sqlType() == CompensationPlan.SqlType.DDL) {
+                // the structure of some table may be changed
+                TableMetadataCache.invalidateAll(dataSourceKey(standbyParams));
+            }
             standbyParams.clear();
             // Default is closed, means that just does record, if it's open, then program will throw an exception about current special SQL, just for auto-compensation.
             boolean checkSpecialSql = TxleStaticConfig.getBooleanConfig("txle.transaction.auto-compensation.check-special-sql", false);
@@ -99,7 +99,7 @@ public class AutoCompensateHandler implements IAutoCompensateHandler {
     }
 
     @Override
-    public void prepareCompensationAfterExecuting(PreparedStatement delegate, String executeSql, Map<String, Object> standbyParams) throws SQLException {
+    public void prepareCompensationAfterExecuting(PreparedStatement delegate, PreparedStatementInformation statementInformation, Map<String, Object> standbyParams) throws SQLException {
         String globalTxId = CurrentThreadOmegaContext.getGlobalTxIdFromCurThread();
         if (globalTxId == null || globalTxId.length() == 0) {
             return;
@@ -109,10 +109,8 @@ public class AutoCompensateHandler implements IAutoCompensateHandler {
             return;
         }
 
-        // To parse SQL by SQLParser tools from Druid.
-        MySqlStatementParser parser = new MySqlStatementParser(executeSql);
-        SQLStatement sqlStatement = parser.parseStatement();
-        if (sqlStatement instanceof MySqlSelectIntoStatement) {
+        CompensationPlan plan = compensationPlanOf(statementInformation);
+        if (plan.sqlType() == CompensationPlan.SqlType.SELECT_INTO) {
             return;
         }
 
@@ -122,62 +120,76 @@ public class AutoCompensateHandler implements IAutoCompensateHandler {
 
         String server = CurrentThreadOmegaContext.getServiceNameFromCurThread();
 
-        // To set a relationship between localTxId and datSourceInfo, in order to determine to use the relative dataSource for localTxId when it need be compensated.
-        DatabaseMetaData databaseMetaData = delegate.getConnection().getMetaData();
-        String dburl = databaseMetaData.getURL(), dbusername = databaseMetaData.getUserName(), dbdrivername = databaseMetaData.getDriverName();
-        DataSourceMappingCache.putLocalTxIdAndDataSourceInfo(localTxId, dburl, dbusername, dbdrivername);
-        // To construct kafka message.
-        standbyParams.put("dbdrivername", dbdrivername);
-        standbyParams.put("dburl", dburl);
-        standbyParams.put("dbusername", dbusername);
-
-        if (sqlStatement instanceof MySqlInsertStatement) {
-            AutoCompensateInsertHandler.newInstance().prepareCompensationAfterInserting(delegate, sqlStatement, executeSql, globalTxId, localTxId, server, standbyParams);
-        } else if (sqlStatement instanceof MySqlUpdateStatement) {
-            AutoCompensateUpdateHandler.newInstance().prepareCompensationAfterUpdating(delegate, sqlStatement, executeSql, globalTxId, localTxId, server, standbyParams);
+        mapDataSourceInfo(delegate, localTxId, standbyParams);
+
+        String executeSql = statementInformation.getSqlWithValues();
+        if (plan.sqlType() == CompensationPlan.SqlType.INSERT) {
+            AutoCompensateInsertHandler.newInstance().prepareCompensationAfterInserting(delegate, plan, executeSql, globalTxId, localTxId, server, standbyParams);
+        } else if (plan.sqlType() == CompensationPlan.SqlType.UPDATE) {
+            AutoCompensateUpdateHandler.newInstance().prepareCompensationAfterUpdating(delegate, plan, plan.bindWhere(statementInformation), executeSql, globalTxId, localTxId, server, standbyParams);
         }
     }
 
-    protected Map<String, String> selectColumnNameType(PreparedStatement delegate, String tableName) throws SQLException {
-        String sql = "SHOW FULL COLUMNS FROM " + tableName + TxleConstants.ACTION_SQL;
+    /**
+     * The SQL is parsed once for every distinct parameterized SQL, then the plan is reused by the subsequent executions with different values.
+     * If the parameters could not be located exactly, the SQL with values is parsed every time as before.
+     */
+    private CompensationPlan compensationPlanOf(PreparedStatementInformation statementInformation) {
+        String sql = statementInformation.getSql();
+        CompensationPlan plan = COMPENSATION_PLAN_CACHE.get(sql);
+        if (plan != null) {
+            return plan;
+        }
+        plan = CompensationPlan.compile(sql, true);
+        if (plan == null) {
+            return CompensationPlan.compile(statementInformation.getSqlWithValues(), false);
+        }
+        // the SQLs with literal values are distinct from each other, the least recently used ones are evicted after reaching the limit.
+        COMPENSATION_PLAN_CACHE.put(sql, plan);
+        return plan;
+    }
 
-        // start to mark duration for maintaining sql By Gannalyo.
-        ApplicationContextUtil.getApplicationContext().getBean(AutoCompensableSqlMetrics.class).startMarkSQLDurationAndCount(sql, false);
+    // To set a relationship between localTxId and datSourceInfo, in order to determine to use the relative dataSource for localTxId when it need be compensated.
+    private void mapDataSourceInfo(PreparedStatement delegate, String localTxId, Map<String, Object> standbyParams) throws SQLException {
+        String dburl = (String) standbyParams.get("dburl"), dbusername = (String) standbyParams.get("dbusername"), dbdrivername = (String) standbyParams.get("dbdrivername");
+        // the information has been taken out before executing
+        if (dburl == null) {
+            DatabaseMetaData databaseMetaData = delegate.getConnection().getMetaData();
+            dburl = databaseMetaData.getURL();
+            dbusername = databaseMetaData.getUserName();
+            dbdrivername = databaseMetaData.getDriverName();
+            // To construct kafka message.
+            standbyParams.put("dbdrivername", dbdrivername);
+            standbyParams.put("dburl", dburl);
+            standbyParams.put("dbusername", dbusername);
+        }
+        DataSourceMappingCache.putLocalTxIdAndDataSourceInfo(localTxId, dburl, dbusername, dbdrivername);
+    }
 
-        PreparedStatement ps = null;
-        ResultSet columnResultSet = null;
-        Map<String, String> columnNameType = new HashMap<>();
-        try {
-            ps = delegate.getConnection().prepareStatement(sql);
-            ResultSet resultSet = ps.executeQuery();
+    protected Map<String, String> selectColumnNameType(PreparedStatement delegate, String tableName, Map<String, Object> standbyParams) throws SQLException {
+        return TableMetadataCache.get(delegate.getConnection(), dataSourceKey(standbyParams), tableName).columnNameType();
+    }
 
-            // end mark duration for maintaining sql By Gannalyo.
-            ApplicationContextUtil.getApplicationContext().getBean(AutoCompensableSqlMetrics.class).endMarkSQLDuration();
+    protected List<String> selectColumnNames(PreparedStatement delegate, String tableName, Map<String, Object> standbyParams) throws SQLException {
+        return TableMetadataCache.get(delegate.getConnection(), dataSourceKey(standbyParams), tableName).columns();
+    }
 
-            while (resultSet.next()) {
-                // column name and type
-                columnNameType.put(resultSet.getString(1), resultSet.getString(2));
-            }
-            ps.close();
-        } catch (SQLException e) {
-            throw e;
-        } catch (BeansException e) {
-            throw e;
-        } finally {
-            try {
-                if (ps != null) {
-                    ps.close();
-                }
-            } finally {
-                if (columnResultSet != null) {
-                    columnResultSet.close();
-                }
-            }
+    // To remove the cached metadata in case of failure, so that the next execution would load the latest metadata.
+    protected void invalidateTableMetadata(String tableName, Map<String, Object> standbyParams) {
+        if (tableName != null) {
+            TableMetadataCache.invalidate(dataSourceKey(standbyParams), tableName);
         }
-        return columnNameType;
     }
 
-    protected void prepareBackupTable(Connection connection, String tableName, String txleBackupTableName) {
+    private String dataSourceKey(Map<String, Object> standbyParams) {
+        return TableMetadataCache.dataSourceKey(standbyParams.get("dburl"), standbyParams.get("dbusername"));
+    }
+
+    protected void prepareBackupTable(Connection connection, String tableName, String txleBackupTableName, Map<String, Object> standbyParams) {
+        String dataSourceKey = dataSourceKey(standbyParams);
+        if (TableMetadataCache.isBackupTablePrepared(dataSourceKey, txleBackupTableName)) {
+            return;
+        }
         PreparedStatement preparedStatement = null;
         ResultSet resultSet = null;
         try {
@@ -194,6 +206,7 @@ public class AutoCompensateHandler implements IAutoCompensateHandler {
                 connection.prepareStatement("ALTER TABLE " + schema + "." + txleBackupTableName + " ADD globalTxId VARCHAR(36)").execute();
                 connection.prepareStatement("ALTER TABLE " + schema + "." + txleBackupTableName + " ADD localTxId VARCHAR(36)").execute();
             }
+            TableMetadataCache.markBackupTablePrepared(dataSourceKey, txleBackupTableName);
         } catch (SQLException e) {
             // No obviously effect to main business in case of error.
             LOG.error(TxleConstants.logErrorPrefixWithTime() + "Failed to create backup table for txle.", e);
@@ -215,50 +228,9 @@ public class AutoCompensateHandler implements IAutoCompensateHandler {
         }
     }
 
-    protected String parsePrimaryKeyColumnName(PreparedStatement delegate, String tableName) throws SQLException {
-        String primaryKeyColumnName = "id", sql = "SHOW FULL COLUMNS FROM " + tableName + TxleConstants.ACTION_SQL;
-
-        // start to mark duration for maintaining sql By Gannalyo.
-        ApplicationContextUtil.getApplicationContext().getBean(AutoCompensableSqlMetrics.class).startMarkSQLDurationAndCount(sql, false);
-
-        // So far, didn't know how to get primary-key from Druid. So, use the original way.
-        Connection connection = null;
-        PreparedStatement ps = null;
-        ResultSet columnResultSet = null;
-        try {
-            connection = delegate.getConnection();
-            ps = connection.prepareStatement(sql);
-            columnResultSet = ps.executeQuery();
-
-            // end mark duration for maintaining sql By Gannalyo.
-            ApplicationContextUtil.getApplicationContext().getBean(AutoCompensableSqlMetrics.class).endMarkSQLDuration();
-
-            while (columnResultSet.next()) {
-                if ("PRI".equalsIgnoreCase(columnResultSet.getString("Key")) && primaryKeyColumnName.length() == 0) {
-                    primaryKeyColumnName = columnResultSet.getString("Field");
-                    break;
-                }
-            }
-        } catch (SQLException e) {
-            throw e;
-        } catch (BeansException e) {
-            throw e;
-        } finally {
-//            try {
-//                if (connection != null) connection.close();
-//            } finally {
-            try {
-                if (ps != null) {
-                    ps.close();
-                }
-            } finally {
-                if (columnResultSet != null) {
-                    columnResultSet.close();
-                }
-            }
-//            }
-        }
-        return primaryKeyColumnName;
+    protected String parsePrimaryKeyColumnName(PreparedStatement delegate, String tableName, Map<String, Object> standbyParams) throws SQLException {
+        // So far, didn't know how to get primary-key from Druid. So, use the cached metadata which is from 'SHOW FULL COLUMNS'.
+        return TableMetadataCache.get(delegate.getConnection(), dataSourceKey(standbyParams), tableName).primaryKey();
     }
 
     protected void resetColumnValueByDBType(Map<String, String> columnNameType, Map<String, Object> dataMap) {
@@ -300,12 +272,19 @@ public class AutoCompensateHandler implements IAutoCompensateHandler {
     }
 
     public boolean saveTxleUndoLog(PreparedStatement delegate, String globalTxId, String localTxId, String executeSql, String compensateSql, String server) throws SQLException {
-        int index = 1;
         Timestamp currentTime = new Timestamp(System.currentTimeMillis());
+        Connection connection = delegate.getConnection();
+        // the undo logs are written with the business data together before committing, so there is no undo log for the uncommitted business data.
+        if (UNDO_LOG_BATCH_ENABLED && !connection.getAutoCommit()) {
+            PENDING_UNDO_LOGS.add(connection, new Object[]{globalTxId, localTxId, executeSql, compensateSql, 0, server, currentTime, currentTime});
+            return true;
+        }
+
+        int index = 1;
         PreparedStatement preparedStatement = null;
         try {
-            String sql = "insert into txle_undo_log(globaltxid, localtxid, executesql, compensatesql, status, server, lastmodifytime, createtime) values (?, ?, ?, ?, ?, ?, ?, ?)" + TxleConstants.ACTION_SQL;
-            preparedStatement = delegate.getConnection().prepareStatement(sql);
+            String sql = UNDO_LOG_INSERT_SQL + UNDO_LOG_VALUES + TxleConstants.ACTION_SQL;
+            preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setString(index++, globalTxId);
             preparedStatement.setString(index++, localTxId);
             preparedStatement.setString(index++, executeSql);
@@ -334,4 +313,63 @@ public class AutoCompensateHandler implements IAutoCompensateHandler {
         }
     }
 
+    /**
+     * To write the pending undo logs of the connection by multi-row insert statements, it's invoked before committing.
+     * An exception is thrown in case of failure, so that the business data would not be committed without undo logs.
+     */
+    public void flushTxleUndoLogs(Connection connection) throws SQLException {
+        List<Object[]> undoLogs = PENDING_UNDO_LOGS.take(connection);
+        if (undoLogs.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < undoLogs.size(); from += UNDO_LOG_BATCH_SIZE) {
+            List<Object[]> batch = undoLogs.subList(from, Math.min(from + UNDO_LOG_BATCH_SIZE, undoLogs.size()));
+            StringBuilder sql = new StringBuilder(UNDO_LOG_INSERT_SQL);
+            for (int i = 0; i < batch.size(); i++) {
+                sql.append(i == 0 ? UNDO_LOG_VALUES : ", " + UNDO_LOG_VALUES);
+            }
+            sql.append(TxleConstants.ACTION_SQL);
+
+            try (PreparedStatement preparedStatement = connection.prepareStatement(sql.toString())) {
+                int index = 1;
+                for (Object[] undoLog : batch) {
+                    for (Object value : undoLog) {
+                        preparedStatement.setObject(index++, value);
+                    }
+                }
+
+                // start to mark duration for maintaining sql By Gannalyo.
+                ApplicationContextUtil.getApplicationContext().getBean(AutoCompensableSqlMetrics.class).startMarkSQLDurationAndCount(sql.toString(), false);
+
+                preparedStatement.executeUpdate();
+
+                // end mark duration for maintaining sql By Gannalyo.
+                ApplicationContextUtil.getApplicationContext().getBean(AutoCompensableSqlMetrics.class).endMarkSQLDuration();
+            } catch (SQLException e) {
+                LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to save [{}] undo_logs before committing, globalTxId=[{}].", undoLogs.size(), undoLogs.get(0)[0], e);
+                throw e;
+            }
+        }
+    }
+
+    // The pending undo logs are discarded after rolling back or closing the connection.
+    public void discardTxleUndoLogs(Connection connection) {
+        PENDING_UNDO_LOGS.discard(connection);
+    }
+
+    public void markTxleUndoLogs(Connection connection, Savepoint savepoint) {
+        if (UNDO_LOG_BATCH_ENABLED) {
+            PENDING_UNDO_LOGS.setSavepoint(connection, savepoint);
+        }
+    }
+
+    // The pending undo logs which were captured after the savepoint are discarded, because their business data were rolled back.
+    public void rollbackTxleUndoLogs(Connection connection, Savepoint savepoint) {
+        PENDING_UNDO_LOGS.rollback(connection, savepoint);
+    }
+
+    public void releaseTxleUndoLogsMark(Connection connection, Savepoint savepoint) {
+        PENDING_UNDO_LOGS.releaseSavepoint(connection, savepoint);
+    }
+
 }
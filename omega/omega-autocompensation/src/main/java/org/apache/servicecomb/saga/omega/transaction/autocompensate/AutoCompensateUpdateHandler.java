@@ -5,7 +5,6 @@
 
 package org.apache.servicecomb.saga.omega.transaction.autocompensate;
 
-import com.alibaba.druid.sql.ast.SQLStatement;
 import com.alibaba.druid.util.JdbcConstants;
 
 import java.sql.PreparedStatement;
@@ -27,19 +26,19 @@ public class AutoCompensateUpdateHandler extends AutoCompensateHandler {
         return autoCompensateUpdateHandler;
     }
 
-    public boolean prepareCompensationBeforeUpdating(PreparedStatement delegate, SQLStatement sqlStatement, String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
+    public boolean prepareCompensationBeforeUpdating(PreparedStatement delegate, CompensationPlan plan, String whereSql, String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
 
-        if (JdbcConstants.MYSQL.equals(sqlStatement.getDbType())) {
-            return MySqlUpdateHandler.newInstance().prepareCompensationBeforeUpdating(delegate, sqlStatement, executeSql, globalTxId, localTxId, server, standbyParams);
+        if (JdbcConstants.MYSQL.equals(plan.dbType())) {
+            return MySqlUpdateHandler.newInstance().prepareCompensationBeforeUpdating(delegate, plan, whereSql, executeSql, globalTxId, localTxId, server, standbyParams);
         }
 
         return false;
     }
 
-    public boolean prepareCompensationAfterUpdating(PreparedStatement delegate, SQLStatement sqlStatement, String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
+    public boolean prepareCompensationAfterUpdating(PreparedStatement delegate, CompensationPlan plan, String whereSql, String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
 
-        if (JdbcConstants.MYSQL.equals(sqlStatement.getDbType())) {
-            return MySqlUpdateHandler.newInstance().prepareCompensationAfterUpdating(delegate, sqlStatement, executeSql, globalTxId, localTxId, server, standbyParams);
+        if (JdbcConstants.MYSQL.equals(plan.dbType())) {
+            return MySqlUpdateHandler.newInstance().prepareCompensationAfterUpdating(delegate, plan, whereSql, executeSql, globalTxId, localTxId, server, standbyParams);
         }
 
         return false;
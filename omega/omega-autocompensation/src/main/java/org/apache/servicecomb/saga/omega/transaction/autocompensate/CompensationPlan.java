@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.transaction.autocompensate;
+
+import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.SQLStatement;
+import com.alibaba.druid.sql.ast.expr.SQLVariantRefExpr;
+import com.alibaba.druid.sql.ast.statement.SQLDDLStatement;
+import com.alibaba.druid.sql.ast.statement.SQLTruncateStatement;
+import com.alibaba.druid.sql.dialect.mysql.ast.clause.MySqlSelectIntoStatement;
+import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlDeleteStatement;
+import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlInsertStatement;
+import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlUpdateStatement;
+import com.alibaba.druid.sql.dialect.mysql.parser.MySqlStatementParser;
+import com.alibaba.druid.sql.dialect.mysql.visitor.MySqlASTVisitorAdapter;
+import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.PreparedStatementInformation;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compiled result of a parameterized SQL, it's parsed once for every distinct SQL, and the values are bound while executing.
+ * It records the operation, the table and the template of where-condition whose placeholders are the parameters of SQL.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public final class CompensationPlan {
+
+    public enum SqlType {
+        INSERT, UPDATE, DELETE, SELECT_INTO, DDL, OTHER
+    }
+
+    private final SqlType sqlType;
+    private final String dbType;
+    private final String tableName;
+    private final String whereTemplate;
+    // the indexes of parameters in where-condition, the first parameter of SQL is 0
+    private final int[] whereParameterIndexes;
+
+    private CompensationPlan(SqlType sqlType, String dbType, String tableName, String whereTemplate, int[] whereParameterIndexes) {
+        this.sqlType = sqlType;
+        this.dbType = dbType;
+        this.tableName = tableName;
+        this.whereTemplate = whereTemplate;
+        this.whereParameterIndexes = whereParameterIndexes;
+    }
+
+    /**
+     * @param parameterized whether the SQL has placeholders rather than values
+     * @return null if the parameters of SQL could not be located exactly, e.g. there is a '?' in some string, then the SQL with values should be compiled instead
+     */
+    static CompensationPlan compile(String sql, boolean parameterized) {
+        SQLStatement sqlStatement = new MySqlStatementParser(sql).parseStatement();
+        if (sqlStatement instanceof MySqlSelectIntoStatement) {
+            return new CompensationPlan(SqlType.SELECT_INTO, sqlStatement.getDbType(), null, null, new int[0]);
+        }
+
+        // the parameters are visited in the order of SQL text
+        List<SQLVariantRefExpr> parameters = new ArrayList<>();
+        if (parameterized) {
+            sqlStatement.accept(new MySqlASTVisitorAdapter() {
+                @Override
+                public boolean visit(SQLVariantRefExpr x) {
+                    if ("?".equals(x.getName())) {
+                        parameters.add(x);
+                    }
+                    return true;
+                }
+            });
+            if (parameters.size() != countPlaceholders(sql)) {
+                return null;
+            }
+        }
+
+        if (sqlStatement instanceof MySqlInsertStatement) {
+            return new CompensationPlan(SqlType.INSERT, sqlStatement.getDbType(), ((MySqlInsertStatement) sqlStatement).getTableName().toString().toLowerCase(), null, new int[0]);
+        } else if (sqlStatement instanceof MySqlUpdateStatement) {
+            MySqlUpdateStatement updateStatement = (MySqlUpdateStatement) sqlStatement;
+            return withWhere(SqlType.UPDATE, sqlStatement.getDbType(), updateStatement.getTableName().toString().toLowerCase(), updateStatement.getWhere(), parameters);
+        } else if (sqlStatement instanceof MySqlDeleteStatement) {
+            MySqlDeleteStatement deleteStatement = (MySqlDeleteStatement) sqlStatement;
+            return withWhere(SqlType.DELETE, sqlStatement.getDbType(), deleteStatement.getTableName().toString().toLowerCase(), deleteStatement.getWhere(), parameters);
+        } else if (sqlStatement instanceof SQLDDLStatement || sqlStatement instanceof SQLTruncateStatement) {
+            return new CompensationPlan(SqlType.DDL, sqlStatement.getDbType(), null, null, new int[0]);
+        }
+        return new CompensationPlan(SqlType.OTHER, sqlStatement.getDbType(), null, null, new int[0]);
+    }
+
+    private static CompensationPlan withWhere(SqlType sqlType, String dbType, String tableName, SQLExpr where, List<SQLVariantRefExpr> parameters) {
+        if (where == null) {
+            return new CompensationPlan(sqlType, dbType, tableName, null, new int[0]);
+        }
+        Map<SQLVariantRefExpr, Integer> parameterIndexes = new IdentityHashMap<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            parameterIndexes.put(parameters.get(i), i);
+        }
+        List<Integer> whereParameters = new ArrayList<>();
+        where.accept(new MySqlASTVisitorAdapter() {
+            @Override
+            public boolean visit(SQLVariantRefExpr x) {
+                Integer index = parameterIndexes.get(x);
+                if (index != null) {
+                    whereParameters.add(index);
+                }
+                return true;
+            }
+        });
+        // It doesn't matter, even though the 'where-sql' contains a line break.
+        String whereTemplate = where.toString();
+        if (!parameters.isEmpty() && countPlaceholders(whereTemplate) != whereParameters.size()) {
+            return null;
+        }
+        return new CompensationPlan(sqlType, dbType, tableName, whereTemplate, whereParameters.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    // the same way as PreparedStatementInformation replaces placeholders
+    private static int countPlaceholders(String sql) {
+        int count = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            if (sql.charAt(i) == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public SqlType sqlType() {
+        return sqlType;
+    }
+
+    public String dbType() {
+        return dbType;
+    }
+
+    public String tableName() {
+        return tableName;
+    }
+
+    /**
+     * @return the where-condition with values of current execution, or null if there is no where-condition
+     */
+    public String bindWhere(PreparedStatementInformation statementInformation) {
+        if (whereTemplate == null || whereParameterIndexes.length == 0) {
+            return whereTemplate;
+        }
+        return statementInformation.bindParameterValues(whereTemplate, whereParameterIndexes);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.transaction.autocompensate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The compiled plans of parameterized SQLs, the least recently used plan is evicted once the count of plans exceeds the capacity.
+ * So the frequent SQLs are kept though there are many distinct SQLs with literal values, rather than keeping the first ones only.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+final class CompensationPlanCache {
+    private final Map<String, CompensationPlan> plans;
+
+    CompensationPlanCache(int capacity) {
+        // access-order, the plan is moved to the tail while being read.
+        this.plans = new LinkedHashMap<String, CompensationPlan>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompensationPlan> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // the map is synchronized, because the reading changes the order of access-ordered map too.
+    synchronized CompensationPlan get(String sql) {
+        return plans.get(sql);
+    }
+
+    synchronized void put(String sql, CompensationPlan plan) {
+        plans.put(sql, plan);
+    }
+
+    synchronized int size() {
+        return plans.size();
+    }
+}
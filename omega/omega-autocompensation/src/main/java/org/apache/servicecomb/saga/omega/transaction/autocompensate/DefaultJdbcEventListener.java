@@ -10,6 +10,7 @@ import org.apache.servicecomb.saga.omega.context.CurrentThreadOmegaContext;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.CallableStatementInformation;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.PreparedStatementInformation;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.ResultSetInformation;
+import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.listener.JdbcEventKind;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.listener.JdbcEventListener;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.wrapper.PreparedStatementWrapper;
 import org.apache.servicecomb.saga.omega.transaction.KafkaMessage;
@@ -18,14 +19,30 @@ import org.apache.servicecomb.saga.omega.transaction.monitor.AutoCompensableSqlM
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class DefaultJdbcEventListener extends JdbcEventListener {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultJdbcEventListener.class);
 
+    // The JDBC operations are not intercepted out of txle's transactions.
+    @Override
+    public boolean isEnabled() {
+        return CurrentThreadOmegaContext.getContextFromCurThread() != null;
+    }
+
+    // The undo logs are flushed or discarded while the transaction or the connection is ended.
+    @Override
+    public Set<JdbcEventKind> eventKinds() {
+        return EnumSet.of(JdbcEventKind.EXECUTE_UPDATE, JdbcEventKind.TRANSACTION, JdbcEventKind.CONNECTION);
+    }
+
     @Override
     public void onBeforeGetConnection() {
     }
@@ -91,7 +108,10 @@ public class DefaultJdbcEventListener extends JdbcEventListener {
             if (CurrentThreadOmegaContext.isAutoCompensate()) {
                 // before advise for executing SQL By Gannalyo.
                 if (CurrentThreadOmegaContext.isEnabledAutoCompensateTx()) {
-                    AutoCompensateHandler.newInstance().prepareCompensationBeforeExecuting(preparedStatement, preparedStatementInformation.getSqlWithValues(), null);
+                    // the information taken out before executing is used again after executing
+                    Map<String, Object> standbyParams = new HashMap<>(8);
+                    setListenerParam(preparedStatementInformation, standbyParams);
+                    AutoCompensateHandler.newInstance().prepareCompensationBeforeExecuting(preparedStatement, preparedStatementInformation, standbyParams);
                 }
 
                 // start to mark duration for business sql By Gannalyo.
@@ -109,7 +129,7 @@ public class DefaultJdbcEventListener extends JdbcEventListener {
                 // before advise for executing SQL By Gannalyo.
                 Map<String, Object> standbyParams = new HashMap<>(8);
                 if (CurrentThreadOmegaContext.isEnabledAutoCompensateTx()) {
-                    AutoCompensateHandler.newInstance().prepareCompensationBeforeExecuting(preparedStatement, preparedStatementInformation.getSqlWithValues(), standbyParams);
+                    AutoCompensateHandler.newInstance().prepareCompensationBeforeExecuting(preparedStatement, preparedStatementInformation, standbyParams);
                 }
 
                 // start to mark duration for business sql By Gannalyo.
@@ -143,8 +163,8 @@ public class DefaultJdbcEventListener extends JdbcEventListener {
                 ApplicationContextUtil.getApplicationContext().getBean(AutoCompensableSqlMetrics.class).endMarkSQLDuration();
 
                 if (CurrentThreadOmegaContext.isEnabledAutoCompensateTx()) {
-                    Map<String, Object> standbyParams = null;
-                    if (listenerParams != null) {
+                    Map<String, Object> standbyParams = (Map<String, Object>) takeListenerParam(preparedStatementInformation);
+                    if (standbyParams == null && listenerParams != null) {
                         Object params = listenerParams.get(this);
                         if (params != null) {
                             standbyParams = (Map<String, Object>) params;
@@ -154,7 +174,7 @@ public class DefaultJdbcEventListener extends JdbcEventListener {
                         standbyParams = new HashMap<>(8);
                     }
 
-                    AutoCompensateHandler.newInstance().prepareCompensationAfterExecuting(preparedStatement, preparedStatementInformation.getSqlWithValues(), standbyParams);
+                    AutoCompensateHandler.newInstance().prepareCompensationAfterExecuting(preparedStatement, preparedStatementInformation, standbyParams);
 
                     // To construct business information, and then report to the txle Server.
                     constructBusinessInfoToServer(standbyParams);
@@ -237,6 +257,36 @@ public class DefaultJdbcEventListener extends JdbcEventListener {
     public void onAfterCommit(long timeElapsedNanos, SQLException e) {
     }
 
+    @Override
+    public void onBeforeCommit(Connection connection) throws SQLException {
+        AutoCompensateHandler.newInstance().flushTxleUndoLogs(connection);
+    }
+
+    @Override
+    public void onAfterRollback(Connection connection) {
+        AutoCompensateHandler.newInstance().discardTxleUndoLogs(connection);
+    }
+
+    @Override
+    public void onAfterSetSavepoint(Connection connection, Savepoint savepoint) {
+        AutoCompensateHandler.newInstance().markTxleUndoLogs(connection, savepoint);
+    }
+
+    @Override
+    public void onAfterRollback(Connection connection, Savepoint savepoint) {
+        AutoCompensateHandler.newInstance().rollbackTxleUndoLogs(connection, savepoint);
+    }
+
+    @Override
+    public void onAfterReleaseSavepoint(Connection connection, Savepoint savepoint) {
+        AutoCompensateHandler.newInstance().releaseTxleUndoLogsMark(connection, savepoint);
+    }
+
+    @Override
+    public void onAfterConnectionClose(Connection connection) {
+        AutoCompensateHandler.newInstance().discardTxleUndoLogs(connection);
+    }
+
     @Override
     public void onAfterConnectionClose(SQLException e) {
     }
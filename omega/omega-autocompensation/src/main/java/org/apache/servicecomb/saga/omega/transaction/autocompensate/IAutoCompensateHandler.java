@@ -5,14 +5,16 @@
 
 package org.apache.servicecomb.saga.omega.transaction.autocompensate;
 
+import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.PreparedStatementInformation;
+
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Map;
 
 public interface IAutoCompensateHandler {
 
-    void prepareCompensationBeforeExecuting(PreparedStatement delegate, String executeSql, Map<String, Object> standbyParams) throws SQLException;
+    void prepareCompensationBeforeExecuting(PreparedStatement delegate, PreparedStatementInformation statementInformation, Map<String, Object> standbyParams) throws SQLException;
 
-    void prepareCompensationAfterExecuting(PreparedStatement delegate, String executeSql, Map<String, Object> standbyParams) throws SQLException;
+    void prepareCompensationAfterExecuting(PreparedStatement delegate, PreparedStatementInformation statementInformation, Map<String, Object> standbyParams) throws SQLException;
 
 }
@@ -5,16 +5,12 @@
 
 package org.apache.servicecomb.saga.omega.transaction.autocompensate;
 
-import com.alibaba.druid.sql.ast.SQLExpr;
-import com.alibaba.druid.sql.ast.SQLStatement;
-import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlDeleteStatement;
 import org.apache.servicecomb.saga.common.TxleConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Map;
 
@@ -45,59 +41,42 @@ public class MySqlDeleteHandler extends AutoCompensateDeleteHandler {
     }
 
     @Override
-    public boolean prepareCompensationBeforeDeleting(PreparedStatement delegate, SQLStatement sqlStatement, String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
+    public boolean prepareCompensationBeforeDeleting(PreparedStatement delegate, CompensationPlan plan, String whereSql, String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
         Connection connection;
-        PreparedStatement preparedStatement = null;
-        ResultSet resultSet = null;
         try {
-            MySqlDeleteStatement deleteStatement = (MySqlDeleteStatement) sqlStatement;
             // 1.take table's name out
-            String tableName = deleteStatement.getTableName().toString().toLowerCase();
+            String tableName = plan.tableName();
             String txleBackupTableName = "backup_old_" + tableName;
             standbyParams.put("tablename", tableName);
             standbyParams.put("operation", "delete");
 
-            // 2.take conditions out
-            SQLExpr where = deleteStatement.getWhere();
-            // It doesn't matter, even though the 'where-sql' contains prepareBackupTable line break.
-            String whereSql = where.toString();
+            // 2.the conditions have been taken out by the compiled plan
+            if (whereSql == null) {
+                throw new SQLException(TxleConstants.logErrorPrefixWithTime() + "Do not support delete sql without where-condition to auto-compensation, table [" + tableName + "].");
+            }
             LOG.debug(TxleConstants.logDebugPrefixWithTime() + "currentThreadId: [{}] - table: [{}] - where: [{}].", Thread.currentThread().getId(), tableName, whereSql);
 
             // 3.create backup table
             connection = delegate.getConnection();
-            this.prepareBackupTable(connection, tableName, txleBackupTableName);
+            this.prepareBackupTable(connection, tableName, txleBackupTableName, standbyParams);
 
             // 4.backup data
             String backupDataSql = String.format("INSERT INTO " + this.schema() + "." + txleBackupTableName + " SELECT *, '%s', '%s' FROM %s WHERE %s FOR UPDATE " + TxleConstants.ACTION_SQL, globalTxId, localTxId, tableName, whereSql);
             LOG.debug(TxleConstants.logDebugPrefixWithTime() + "currentThreadId: [{}] - backupDataSql: [{}].", Thread.currentThread().getId(), backupDataSql);
             int backupResult = connection.prepareStatement(backupDataSql).executeUpdate();
             if (backupResult > 0) {
-                // 5.construct compensateSql
-                preparedStatement = connection.prepareStatement("SELECT GROUP_CONCAT(COLUMN_NAME) FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = '" + this.schema() + "' AND TABLE_NAME = '" + txleBackupTableName + "' AND COLUMN_NAME NOT IN ('globalTxId', 'localTxId')");
-                resultSet = preparedStatement.executeQuery();
-                if (resultSet.next()) {
-                    String fieldNames = resultSet.getString(1);
-                    String compensateSql = String.format("INSERT INTO " + tableName + " SELECT " + fieldNames + " FROM %s WHERE globalTxId = '%s' AND localTxId = '%s' FOR UPDATE " + TxleConstants.ACTION_SQL, this.schema() + "." + txleBackupTableName, globalTxId, localTxId);
+                // 5.construct compensateSql, the columns of backup table are the business table's and 'globalTxId', 'localTxId'
+                String fieldNames = String.join(",", this.selectColumnNames(delegate, tableName, standbyParams));
+                String compensateSql = String.format("INSERT INTO " + tableName + " SELECT " + fieldNames + " FROM %s WHERE globalTxId = '%s' AND localTxId = '%s' FOR UPDATE " + TxleConstants.ACTION_SQL, this.schema() + "." + txleBackupTableName, globalTxId, localTxId);
 
-                    // 6.save txle_undo_log
-                    return this.saveTxleUndoLog(delegate, globalTxId, localTxId, executeSql, compensateSql, server);
-                }
+                // 6.save txle_undo_log
+                return this.saveTxleUndoLog(delegate, globalTxId, localTxId, executeSql, compensateSql, server);
             }
             return false;
         } catch (SQLException e) {
             LOG.error(TxleConstants.logErrorPrefixWithTime() + "Fail to save auto-compensation info for delete sql.", e);
+            this.invalidateTableMetadata(plan.tableName(), standbyParams);
             throw e;
-        } finally {
-            if (preparedStatement != null) {
-                preparedStatement.close();
-            }
-            if (resultSet != null) {
-                try {
-                    resultSet.close();
-                } catch (SQLException e) {
-                    LOG.error(TxleConstants.logErrorPrefixWithTime() + "Fail to close ResultSet after executing method 'saveAutoCompensationInfo' for delete SQL.", e);
-                }
-            }
         }
     }
 
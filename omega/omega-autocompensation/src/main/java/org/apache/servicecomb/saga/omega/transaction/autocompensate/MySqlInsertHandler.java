@@ -5,8 +5,6 @@
 
 package org.apache.servicecomb.saga.omega.transaction.autocompensate;
 
-import com.alibaba.druid.sql.ast.SQLStatement;
-import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlInsertStatement;
 import org.apache.servicecomb.saga.common.TxleConstants;
 import org.apache.servicecomb.saga.omega.context.ApplicationContextUtil;
 import org.apache.servicecomb.saga.omega.transaction.monitor.AutoCompensableSqlMetrics;
@@ -43,20 +41,19 @@ public class MySqlInsertHandler extends AutoCompensateInsertHandler {
     }
 
     @Override
-    public boolean prepareCompensationAfterInserting(PreparedStatement delegate, SQLStatement sqlStatement,
+    public boolean prepareCompensationAfterInserting(PreparedStatement delegate, CompensationPlan plan,
                                             String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
         Connection connection;
         ResultSet rs = null;
         try {
-            MySqlInsertStatement insertStatement = (MySqlInsertStatement) sqlStatement;
             // 1.take table's name out
-            String tableName = insertStatement.getTableName().toString().toLowerCase();
+            String tableName = plan.tableName();
             String txleBackupTableName = "backup_new_" + tableName;
             standbyParams.put("tablename", tableName);
             standbyParams.put("operation", "insert");
 
             // 2.take primary-key's name out
-            String primaryKeyName = this.parsePrimaryKeyColumnName(delegate, tableName);
+            String primaryKeyName = this.parsePrimaryKeyColumnName(delegate, tableName, standbyParams);
 
             // 3.take primary-key's value out
             Set<Object> primaryKeyValues = getGeneratedKey(delegate);
@@ -74,7 +71,7 @@ public class MySqlInsertHandler extends AutoCompensateInsertHandler {
 
             // 4.create backup table
             connection = delegate.getConnection();
-            this.prepareBackupTable(connection, tableName, txleBackupTableName);
+            this.prepareBackupTable(connection, tableName, txleBackupTableName, standbyParams);
 
             // 5.backup data, compare them with the latest data before compensating.
             String backupDataSql = String.format("INSERT INTO " + this.schema() + "." + txleBackupTableName + " SELECT *, '%s', '%s' FROM %s WHERE %s FOR UPDATE " + TxleConstants.ACTION_SQL, globalTxId, localTxId, tableName, whereSql);
@@ -86,7 +83,7 @@ public class MySqlInsertHandler extends AutoCompensateInsertHandler {
 
             // 7.construct compensate sql
 //			String compensateSql = String.format("DELETE FROM %s WHERE %s = %s" + TxleConstants.ACTION_SQL, tableName, primaryKeyColumnName, primaryKeyColumnValue);
-//            String compensateSql = constructCompensateSql(delegate, tableName, newDataList);
+//            String compensateSql = constructCompensateSql(delegate, tableName, newDataList, standbyParams);
             String compensateSql = String.format("DELETE T FROM %s T INNER JOIN %s T1 ON T.%s = T1.%s WHERE T1.globalTxId = '%s' AND T1.localTxId = '%s' " + TxleConstants.ACTION_SQL, tableName, this.schema() + "." + txleBackupTableName, primaryKeyName, primaryKeyName, globalTxId, localTxId);
 
             // start to mark duration for business sql By Gannalyo.
@@ -101,6 +98,7 @@ public class MySqlInsertHandler extends AutoCompensateInsertHandler {
             return result;
         } catch (SQLException e) {
             LOG.error(TxleConstants.logErrorPrefixWithTime() + "Fail to save auto-compensation info for insert SQL.", e);
+            this.invalidateTableMetadata(plan.tableName(), standbyParams);
             throw e;
         } finally {
             if (rs != null) {
@@ -113,12 +111,12 @@ public class MySqlInsertHandler extends AutoCompensateInsertHandler {
         }
     }
 
-    private String constructCompensateSql(PreparedStatement delegate, String tableName, List<Map<String, Object>> newDataList) throws SQLException {
+    private String constructCompensateSql(PreparedStatement delegate, String tableName, List<Map<String, Object>> newDataList, Map<String, Object> standbyParams) throws SQLException {
         if (newDataList == null || newDataList.isEmpty()) {
             throw new SQLException(TxleConstants.LOG_ERROR_PREFIX + "Could not get the new data when constructed the 'compensateSql' for executing insert SQL.");
         }
 
-        Map<String, String> columnNameType = this.selectColumnNameType(delegate, tableName);
+        Map<String, String> columnNameType = this.selectColumnNameType(delegate, tableName, standbyParams);
         StringBuffer compensateSqls = new StringBuffer();
         for (Map<String, Object> dataMap : newDataList) {
             this.resetColumnValueByDBType(columnNameType, dataMap);
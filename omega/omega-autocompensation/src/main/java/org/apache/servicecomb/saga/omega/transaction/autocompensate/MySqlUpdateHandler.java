@@ -5,17 +5,12 @@
 
 package org.apache.servicecomb.saga.omega.transaction.autocompensate;
 
-import com.alibaba.druid.sql.ast.SQLExpr;
-import com.alibaba.druid.sql.ast.SQLName;
-import com.alibaba.druid.sql.ast.SQLStatement;
-import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlUpdateStatement;
 import org.apache.servicecomb.saga.common.TxleConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Map;
 
@@ -45,101 +40,78 @@ public class MySqlUpdateHandler extends AutoCompensateUpdateHandler {
     }
 
     @Override
-    public boolean prepareCompensationBeforeUpdating(PreparedStatement delegate, SQLStatement sqlStatement, String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
+    public boolean prepareCompensationBeforeUpdating(PreparedStatement delegate, CompensationPlan plan, String whereSql, String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
         Connection connection;
-        PreparedStatement preparedStatement = null;
-        ResultSet resultSet = null;
         try {
-            MySqlUpdateStatement deleteStatement = (MySqlUpdateStatement) sqlStatement;
             // 1.take table's name out
-            SQLName table = deleteStatement.getTableName();
-            String tableName = table.toString().toLowerCase();
+            String tableName = plan.tableName();
             String txleBackupTableName = "backup_old_" + tableName;
             standbyParams.put("tablename", tableName);
             standbyParams.put("operation", "update");
 
-            // 2.take conditions out
-            SQLExpr where = deleteStatement.getWhere();
-            // It doesn't matter, even though the 'where-sql' contains a line break.
-            String whereSql = where.toString();
+            // 2.the conditions have been taken out by the compiled plan
+            if (whereSql == null) {
+                throw new SQLException(TxleConstants.logErrorPrefixWithTime() + "Do not support update sql without where-condition to auto-compensation, table [" + tableName + "].");
+            }
             LOG.debug(TxleConstants.logDebugPrefixWithTime() + "currentThreadId: [{}] - table: [{}] - where: [{}].", Thread.currentThread().getId(), tableName, whereSql);
 
             // 3.create backup table
             connection = delegate.getConnection();
-            this.prepareBackupTable(connection, tableName, txleBackupTableName);
+            this.prepareBackupTable(connection, tableName, txleBackupTableName, standbyParams);
 
             // 4.backup data
             String backupDataSql = String.format("INSERT INTO " + this.schema() + "." + txleBackupTableName + " SELECT *, '%s', '%s' FROM %s WHERE %s FOR UPDATE " + TxleConstants.ACTION_SQL, globalTxId, localTxId, tableName, whereSql);
             LOG.debug(TxleConstants.logDebugPrefixWithTime() + "currentThreadId: [{}] - backupDataSql: [{}].", Thread.currentThread().getId(), backupDataSql);
             int backupResult = connection.prepareStatement(backupDataSql).executeUpdate();
             if (backupResult > 0) {
-                // 5.construct compensateSql
-                preparedStatement = connection.prepareStatement("SELECT GROUP_CONCAT(COLUMN_NAME) FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = '" + this.schema() + "' AND TABLE_NAME = '" + txleBackupTableName + "' AND COLUMN_NAME NOT IN ('globalTxId', 'localTxId')");
-                resultSet = preparedStatement.executeQuery();
-                if (resultSet.next()) {
-                    String[] fieldNameArr = resultSet.getString(1).split(",");
-                    StringBuilder setColumns = new StringBuilder();
-                    for (String fieldName : fieldNameArr) {
-                        if (setColumns.length() == 0) {
-                            setColumns.append("T." + fieldName + " = T1." + fieldName);
-                        } else {
-                            setColumns.append(", T." + fieldName + " = T1." + fieldName);
-                        }
+                // 5.construct compensateSql, the columns of backup table are the business table's and 'globalTxId', 'localTxId'
+                StringBuilder setColumns = new StringBuilder();
+                for (String fieldName : this.selectColumnNames(delegate, tableName, standbyParams)) {
+                    if (setColumns.length() == 0) {
+                        setColumns.append("T." + fieldName + " = T1." + fieldName);
+                    } else {
+                        setColumns.append(", T." + fieldName + " = T1." + fieldName);
                     }
+                }
 
-                    // take primary-key name
-                    String primaryKeyColumnName = this.parsePrimaryKeyColumnName(delegate, tableName);
-                    String compensateSql = String.format("UPDATE %s T INNER JOIN %s T1 ON T." + primaryKeyColumnName + " = T1." + primaryKeyColumnName + " SET %s WHERE T1.globalTxId = '%s' AND T1.localTxId = '%s' "
-                            + TxleConstants.ACTION_SQL, tableName, this.schema() + "." + txleBackupTableName, setColumns.toString(), globalTxId, localTxId);
+                // take primary-key name
+                String primaryKeyColumnName = this.parsePrimaryKeyColumnName(delegate, tableName, standbyParams);
+                String compensateSql = String.format("UPDATE %s T INNER JOIN %s T1 ON T." + primaryKeyColumnName + " = T1." + primaryKeyColumnName + " SET %s WHERE T1.globalTxId = '%s' AND T1.localTxId = '%s' "
+                        + TxleConstants.ACTION_SQL, tableName, this.schema() + "." + txleBackupTableName, setColumns.toString(), globalTxId, localTxId);
 
-                    // 6.save txle_undo_log
-                    return this.saveTxleUndoLog(delegate, globalTxId, localTxId, executeSql, compensateSql, server);
-                }
+                // 6.save txle_undo_log
+                return this.saveTxleUndoLog(delegate, globalTxId, localTxId, executeSql, compensateSql, server);
             }
             return false;
         } catch (SQLException e) {
             LOG.error(TxleConstants.logErrorPrefixWithTime() + "Fail to save auto-compensation info for update sql.", e);
+            this.invalidateTableMetadata(plan.tableName(), standbyParams);
             throw e;
-        } finally {
-            if (preparedStatement != null) {
-                preparedStatement.close();
-            }
-            if (resultSet != null) {
-                try {
-                    resultSet.close();
-                } catch (SQLException e) {
-                    LOG.error(TxleConstants.logErrorPrefixWithTime() + "Fail to close ResultSet after executing method 'saveAutoCompensationInfo' for update SQL.", e);
-                }
-            }
         }
     }
 
     @Override
-    public boolean prepareCompensationAfterUpdating(PreparedStatement delegate, SQLStatement sqlStatement, String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
+    public boolean prepareCompensationAfterUpdating(PreparedStatement delegate, CompensationPlan plan, String whereSql, String executeSql, String globalTxId, String localTxId, String server, Map<String, Object> standbyParams) throws SQLException {
         Connection connection;
-        PreparedStatement preparedStatement = null;
-        ResultSet resultSet = null;
         try {
-            MySqlUpdateStatement deleteStatement = (MySqlUpdateStatement) sqlStatement;
             // 1.take table's name out
-            SQLName table = deleteStatement.getTableName();
-            String tableName = table.toString().toLowerCase();
+            String tableName = plan.tableName();
             String txleBackupTableName = "backup_new_" + tableName;
             standbyParams.put("tablename", tableName);
             standbyParams.put("operation", "update");
 
-            // 2.take conditions out
-            SQLExpr where = deleteStatement.getWhere();
-            // It doesn't matter, even though the 'where-sql' contains a line break.
-            String whereSql = where.toString();
+            // 2.the conditions have been taken out by the compiled plan
+            if (whereSql == null) {
+                throw new SQLException(TxleConstants.logErrorPrefixWithTime() + "Do not support update sql without where-condition to auto-compensation, table [" + tableName + "].");
+            }
             LOG.debug(TxleConstants.logDebugPrefixWithTime() + "currentThreadId: [{}] - table: [{}] - where: [{}].", Thread.currentThread().getId(), tableName, whereSql);
 
             // 3.create backup table
             connection = delegate.getConnection();
-            this.prepareBackupTable(connection, tableName, txleBackupTableName);
+            this.prepareBackupTable(connection, tableName, txleBackupTableName, standbyParams);
 
             // take primary-key name
-            String primaryKeyColumnName = this.parsePrimaryKeyColumnName(delegate, tableName);
+            String primaryKeyColumnName = this.parsePrimaryKeyColumnName(delegate, tableName, standbyParams);
             // 4.backup data
             // 4.1 delete the previous backup for some data, only reserve the latest backup
             String deletePreviousBackupSql = String.format("DELETE FROM " + this.schema() + "." + txleBackupTableName + " WHERE globalTxId = '%s' AND localTxId = '%s'" +
@@ -151,18 +123,8 @@ public class MySqlUpdateHandler extends AutoCompensateUpdateHandler {
             return backupResult > 0;
         } catch (SQLException e) {
             LOG.error(TxleConstants.logErrorPrefixWithTime() + "Fail to save auto-compensation info for update sql.", e);
+            this.invalidateTableMetadata(plan.tableName(), standbyParams);
             throw e;
-        } finally {
-            if (preparedStatement != null) {
-                preparedStatement.close();
-            }
-            if (resultSet != null) {
-                try {
-                    resultSet.close();
-                } catch (SQLException e) {
-                    LOG.error(TxleConstants.logErrorPrefixWithTime() + "Fail to close ResultSet after executing method 'saveAutoCompensationInfo' for update SQL.", e);
-                }
-            }
         }
     }
 
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.transaction.autocompensate;
+
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The undo logs which are not committed, the key is the physical connection.
+ * The position of the undo logs is recorded for every savepoint, so the undo logs which were captured after a savepoint are discarded if the connection rolls back to it.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+final class PendingUndoLogs {
+    private final Map<Connection, ConnectionUndoLogs> undoLogs = new ConcurrentHashMap<>();
+
+    void add(Connection connection, Object[] undoLog) {
+        undoLogs.computeIfAbsent(connection, c -> new ConnectionUndoLogs()).undoLogs.add(undoLog);
+    }
+
+    void setSavepoint(Connection connection, Savepoint savepoint) {
+        ConnectionUndoLogs connectionUndoLogs = undoLogs.computeIfAbsent(connection, c -> new ConnectionUndoLogs());
+        connectionUndoLogs.savepoints.put(savepoint, connectionUndoLogs.undoLogs.size());
+    }
+
+    void rollback(Connection connection, Savepoint savepoint) {
+        ConnectionUndoLogs connectionUndoLogs = undoLogs.get(connection);
+        if (connectionUndoLogs == null) {
+            return;
+        }
+        Integer size = connectionUndoLogs.savepoints.get(savepoint);
+        if (size != null && size < connectionUndoLogs.undoLogs.size()) {
+            connectionUndoLogs.undoLogs.subList(size, connectionUndoLogs.undoLogs.size()).clear();
+        }
+        // the savepoint is still valid after rolling back to it, but the later ones are released.
+        if (size != null) {
+            connectionUndoLogs.savepoints.values().removeIf(position -> position > size);
+        }
+    }
+
+    void releaseSavepoint(Connection connection, Savepoint savepoint) {
+        ConnectionUndoLogs connectionUndoLogs = undoLogs.get(connection);
+        if (connectionUndoLogs != null) {
+            connectionUndoLogs.savepoints.remove(savepoint);
+        }
+    }
+
+    /**
+     * To take the undo logs of the connection before committing, they're removed with the savepoints.
+     */
+    List<Object[]> take(Connection connection) {
+        ConnectionUndoLogs connectionUndoLogs = undoLogs.remove(connection);
+        return connectionUndoLogs == null ? Collections.emptyList() : connectionUndoLogs.undoLogs;
+    }
+
+    void discard(Connection connection) {
+        undoLogs.remove(connection);
+    }
+
+    // a connection is used by one thread at a time.
+    private static final class ConnectionUndoLogs {
+        private final List<Object[]> undoLogs = new ArrayList<>();
+        private final Map<Savepoint, Integer> savepoints = new IdentityHashMap<>();
+    }
+}
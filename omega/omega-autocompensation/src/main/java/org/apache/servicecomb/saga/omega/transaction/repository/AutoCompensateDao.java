@@ -9,11 +9,15 @@ import org.apache.servicecomb.saga.common.TxleConstants;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 
 import javax.sql.DataSource;
 import javax.transaction.Transactional;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The data interface for auto-compensation. Aim to execute complex and special SQL.
@@ -26,36 +30,56 @@ public class AutoCompensateDao implements IAutoCompensateDao {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    // The compensations for different DataSources are executed concurrently, so the DataSource is selected for current thread rather than changed for all threads.
+    private final Map<DataSource, JdbcTemplate> dataSourceJdbcTemplates = new ConcurrentHashMap<>();
+    private final ThreadLocal<JdbcTemplate> currentJdbcTemplate = new ThreadLocal<>();
+
     public void setDataSource(DataSource dataSource) {
-        if (dataSource != null && (jdbcTemplate.getDataSource() == null || !dataSource.equals(jdbcTemplate.getDataSource()))) {
-            synchronized (AutoCompensateDao.class) {
-                if (jdbcTemplate.getDataSource() == null || !dataSource.equals(jdbcTemplate.getDataSource())) {
-                    jdbcTemplate.setDataSource(dataSource);
-                }
-            }
+        if (dataSource == null || dataSource.equals(jdbcTemplate.getDataSource())) {
+            currentJdbcTemplate.remove();
+        } else {
+            currentJdbcTemplate.set(dataSourceJdbcTemplates.computeIfAbsent(dataSource, JdbcTemplate::new));
         }
     }
 
+    private JdbcTemplate jdbcTemplate() {
+        JdbcTemplate template = currentJdbcTemplate.get();
+        return template == null ? jdbcTemplate : template;
+    }
+
     @Modifying
     @Transactional
     @Override
     public int executeUpdate(String sql) {
-        return jdbcTemplate.update(sql + TxleConstants.ACTION_SQL);
+        return jdbcTemplate().update(sql + TxleConstants.ACTION_SQL);
     }
 
     @Modifying
     @Transactional
     @Override
     public List<Map<String, Object>> executeQuery(String sql, Object... params) {
-        return jdbcTemplate.queryForList(sql, params);
+        return jdbcTemplate().queryForList(sql, params);
     }
 
     @Override
     public int executeQueryCount(String sql, Object... params) {
-        List<Map<String, Object>> list = jdbcTemplate.queryForList(sql, params);
+        List<Map<String, Object>> list = jdbcTemplate().queryForList(sql, params);
         if (list != null) {
             return Integer.parseInt(list.get(0).values().stream().findFirst().get().toString());
         }
         return 0;
     }
+
+    @Override
+    public <T> T executeStreamingQuery(String sql, ResultSetExtractor<T> extractor, Object... params) {
+        return jdbcTemplate().query(connection -> {
+            PreparedStatement preparedStatement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // The MySQL driver reads rows one by one only if the fetch size is Integer.MIN_VALUE.
+            preparedStatement.setFetchSize(Integer.MIN_VALUE);
+            for (int i = 0; i < params.length; i++) {
+                preparedStatement.setObject(i + 1, params[i]);
+            }
+            return preparedStatement;
+        }, extractor);
+    }
 }
@@ -5,6 +5,8 @@
 
 package org.apache.servicecomb.saga.omega.transaction.repository;
 
+import org.springframework.jdbc.core.ResultSetExtractor;
+
 import javax.sql.DataSource;
 import java.util.List;
 import java.util.Map;
@@ -24,6 +26,11 @@ public interface IAutoCompensateDao {
 
 	int executeQueryCount(String sql, Object... params);
 
+	/**
+	 * To read the result by a forward-only cursor, the rows are not loaded into memory at one time.
+	 */
+	<T> T executeStreamingQuery(String sql, ResultSetExtractor<T> extractor, Object... params);
+
 	void setDataSource(DataSource dataSource);
 
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.transaction;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class AutoCompensateExecutorTest {
+    private final AutoCompensateExecutor executor = new AutoCompensateExecutor(4);
+    private final List<String> executedCompensations = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void executesCompensationsOfSameGlobalTxInOrderOfCalling() throws Exception {
+        String globalTxId = uniquify("globalTxId");
+        CompletableFuture<Boolean> firstResult = new CompletableFuture<>();
+
+        CompletableFuture<Boolean> first = executor.compensate(globalTxId, () -> {
+            executedCompensations.add("first");
+            return firstResult;
+        });
+        CompletableFuture<Boolean> second = executor.compensate(globalTxId, () -> {
+            executedCompensations.add("second");
+            return CompletableFuture.completedFuture(true);
+        });
+
+        await().atMost(1, SECONDS).until(() -> executedCompensations.contains("first"));
+        assertThat(second.isDone(), is(false));
+        assertThat(executedCompensations, contains("first"));
+
+        firstResult.complete(true);
+        assertThat(second.get(1, SECONDS), is(true));
+        assertThat(first.get(), is(true));
+        assertThat(executedCompensations, contains("first", "second"));
+    }
+
+    @Test
+    public void executesNextCompensationOfSameGlobalTxEvenIfPreviousOneFailed() throws Exception {
+        String globalTxId = uniquify("globalTxId");
+
+        CompletableFuture<Boolean> first = executor.compensate(globalTxId, () -> {
+            throw new IllegalStateException("oops");
+        });
+        CompletableFuture<Boolean> second = executor.compensate(globalTxId, () -> CompletableFuture.completedFuture(true));
+
+        assertThat(second.get(1, SECONDS), is(true));
+        assertThat(first.isCompletedExceptionally(), is(true));
+        await().atMost(1, SECONDS).until(() -> executor.conflictKeyCount() == 0);
+    }
+
+    @Test
+    public void executesCompensationsOfDifferentGlobalTxsConcurrently() throws Exception {
+        CountDownLatch blockingStarted = new CountDownLatch(1);
+        CountDownLatch releaseBlocking = new CountDownLatch(1);
+
+        CompletableFuture<Boolean> blocking = executor.compensate(uniquify("globalTxId"), () -> executor.submit(Collections.singleton("table1"), () -> {
+            blockingStarted.countDown();
+            await().atMost(5, SECONDS).until(() -> releaseBlocking.getCount() == 0);
+            return true;
+        }));
+        assertThat(blockingStarted.await(1, SECONDS), is(true));
+
+        CompletableFuture<Boolean> other = executor.compensate(uniquify("globalTxId"), () -> executor.submit(Collections.singleton("table2"), () -> true));
+        assertThat(other.get(1, SECONDS), is(true));
+        assertThat(blocking.isDone(), is(false));
+
+        releaseBlocking.countDown();
+        assertThat(blocking.get(1, SECONDS), is(true));
+    }
+
+    @Test
+    public void executesCompensationsOfDifferentGlobalTxsInOrderIfTheyChangeSameTable() throws Exception {
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+
+        CompletableFuture<Boolean> first = executor.compensate(uniquify("globalTxId"), () -> executor.submit(Collections.singleton("table"), () -> {
+            await().atMost(5, SECONDS).until(() -> releaseFirst.getCount() == 0);
+            executedCompensations.add("first");
+            return true;
+        }));
+        await().atMost(1, SECONDS).until(() -> executor.conflictKeyCount() == 2);
+        CompletableFuture<Boolean> second = executor.compensate(uniquify("globalTxId"), () -> executor.submit(Collections.singleton("table"), () -> {
+            executedCompensations.add("second");
+            return true;
+        }));
+
+        releaseFirst.countDown();
+        assertThat(second.get(1, SECONDS), is(true));
+        assertThat(first.get(), is(true));
+        assertThat(executedCompensations, contains("first", "second"));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.transaction;
+
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.apache.servicecomb.saga.omega.context.ApplicationContextUtil;
+import org.apache.servicecomb.saga.omega.transaction.monitor.AutoCompensableSqlMetrics;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TableMetadataCacheTest {
+    private static final String SHOW_FULL_COLUMNS_SQL = "SHOW FULL COLUMNS FROM T_User" + TxleConstants.ACTION_SQL;
+
+    private final String url = uniquify("jdbc:mysql://127.0.0.1:3306/db");
+    private final String userName = uniquify("user");
+    private final Connection connection = mock(Connection.class);
+    private final DatabaseMetaData databaseMetaData = mock(DatabaseMetaData.class);
+
+    @Before
+    public void setUp() throws Exception {
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBean(AutoCompensableSqlMetrics.class)).thenReturn(mock(AutoCompensableSqlMetrics.class));
+        new ApplicationContextUtil().setApplicationContext(applicationContext);
+
+        when(connection.getMetaData()).thenReturn(databaseMetaData);
+        when(databaseMetaData.getURL()).thenReturn(url);
+        when(databaseMetaData.getUserName()).thenReturn(userName);
+        ResultSet tables = mock(ResultSet.class);
+        when(tables.next()).thenReturn(true, false);
+        when(tables.getString("TABLE_NAME")).thenReturn("T_User");
+        when(databaseMetaData.getTables(any(), isNull(), eq("%"), any())).thenReturn(tables);
+        // the type of DatabaseMetaData has no length
+        ResultSet columns = mock(ResultSet.class);
+        when(columns.next()).thenReturn(true, true, false);
+        when(columns.getString("COLUMN_NAME")).thenReturn("user_id", "name");
+        when(columns.getString("TYPE_NAME")).thenReturn("BIGINT", "VARCHAR");
+        when(databaseMetaData.getColumns(any(), any(), anyString(), anyString())).thenReturn(columns);
+
+        when(connection.prepareStatement(SHOW_FULL_COLUMNS_SQL)).thenAnswer(invocation -> showFullColumnsStatement());
+        when(connection.prepareStatement("SHOW FULL COLUMNS FROM t_user" + TxleConstants.ACTION_SQL)).thenAnswer(invocation -> showFullColumnsStatement());
+    }
+
+    @Test
+    public void prewarmedMetadataIsSameAsLazilyLoadedOne() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        TableMetadataCache.prewarm(dataSource);
+
+        String prewarmedDataSourceKey = TableMetadataCache.dataSourceKey(url, userName);
+        TableMetadataCache.TableMetadata prewarmed = TableMetadataCache.get(mock(Connection.class), prewarmedDataSourceKey, "t_user");
+        TableMetadataCache.TableMetadata lazilyLoaded = TableMetadataCache.get(connection, uniquify("dataSourceKey"), "t_user");
+
+        assertThat(prewarmed.primaryKey(), is("user_id"));
+        assertThat(prewarmed.columns(), is(Arrays.asList("user_id", "name")));
+        assertThat(prewarmed.columnNameType().get("name"), is("varchar(32)"));
+        assertThat(prewarmed.primaryKey(), is(lazilyLoaded.primaryKey()));
+        assertThat(prewarmed.columnNameType(), is(lazilyLoaded.columnNameType()));
+    }
+
+    @Test
+    public void reloadsMetadataAfterInvalidating() throws Exception {
+        String dataSourceKey = uniquify("dataSourceKey");
+        TableMetadataCache.TableMetadata loaded = TableMetadataCache.get(connection, dataSourceKey, "t_user");
+        assertThat(TableMetadataCache.get(connection, dataSourceKey, "t_user") == loaded, is(true));
+
+        TableMetadataCache.invalidate(dataSourceKey, "t_user");
+
+        TableMetadataCache.TableMetadata reloaded = TableMetadataCache.get(connection, dataSourceKey, "t_user");
+        assertThat(reloaded == loaded, is(false));
+        assertThat(reloaded.columnNameType(), is(loaded.columnNameType()));
+    }
+
+    private PreparedStatement showFullColumnsStatement() throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getString("Field")).thenReturn("user_id", "name");
+        when(resultSet.getString("Type")).thenReturn("bigint(20)", "varchar(32)");
+        when(resultSet.getString("Key")).thenReturn("PRI", "");
+        PreparedStatement preparedStatement = mock(PreparedStatement.class);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        return preparedStatement;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.transaction.autocompensate;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class CompensationPlanCacheTest {
+    private final CompensationPlanCache cache = new CompensationPlanCache(2);
+    private final CompensationPlan plan1 = CompensationPlan.compile("DELETE FROM t_user WHERE id = ?", true);
+    private final CompensationPlan plan2 = CompensationPlan.compile("UPDATE t_user SET name = ? WHERE id = ?", true);
+    private final CompensationPlan plan3 = CompensationPlan.compile("INSERT INTO t_user (id) VALUES (?)", true);
+
+    @Test
+    public void evictsLeastRecentlyUsedPlanAfterReachingCapacity() {
+        cache.put("sql1", plan1);
+        cache.put("sql2", plan2);
+        // the first one is used again, so the second one is the least recently used.
+        assertThat(cache.get("sql1"), is(sameInstance(plan1)));
+
+        cache.put("sql3", plan3);
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get("sql2"), is(nullValue()));
+        assertThat(cache.get("sql1"), is(sameInstance(plan1)));
+        assertThat(cache.get("sql3"), is(sameInstance(plan3)));
+    }
+
+    @Test
+    public void keepsCachingNewPlansAfterReachingCapacity() {
+        cache.put("sql1", plan1);
+        cache.put("sql2", plan2);
+        cache.put("sql3", plan3);
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get("sql1"), is(nullValue()));
+        assertThat(cache.get("sql3"), is(sameInstance(plan3)));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.transaction.autocompensate;
+
+import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.PreparedStatementInformation;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class CompensationPlanTest {
+
+    @Test
+    public void mapsPlaceholdersOfWhereConditionInUpdate() {
+        String sql = "UPDATE T_User SET name = ?, age = ? WHERE id = ? AND status = ?";
+        CompensationPlan plan = CompensationPlan.compile(sql, true);
+
+        assertThat(plan.sqlType(), is(CompensationPlan.SqlType.UPDATE));
+        assertThat(plan.tableName(), is("t_user"));
+        assertThat(normalize(plan.bindWhere(statementOf(sql, "Tom", 18, 7, "on"))), is("id = 7 AND status = 'on'"));
+    }
+
+    @Test
+    public void mapsPlaceholdersOfWhereConditionInDelete() {
+        String sql = "DELETE FROM t_order WHERE user_id = ? AND amount > ? AND code IN (?, ?)";
+        CompensationPlan plan = CompensationPlan.compile(sql, true);
+
+        assertThat(plan.sqlType(), is(CompensationPlan.SqlType.DELETE));
+        assertThat(plan.tableName(), is("t_order"));
+        assertThat(normalize(plan.bindWhere(statementOf(sql, 3, 9.5, "a", "b"))), is("user_id = 3 AND amount > 9.5 AND code IN ('a', 'b')"));
+    }
+
+    @Test
+    public void compilesInsertWithoutWhereCondition() {
+        String sql = "INSERT INTO T_User (id, name, age) VALUES (?, ?, ?)";
+        CompensationPlan plan = CompensationPlan.compile(sql, true);
+
+        assertThat(plan.sqlType(), is(CompensationPlan.SqlType.INSERT));
+        assertThat(plan.tableName(), is("t_user"));
+        assertThat(plan.bindWhere(statementOf(sql, 1, "Tom", 18)), is(nullValue()));
+    }
+
+    @Test
+    public void bindsValuesOfEveryExecutionToSamePlan() {
+        String sql = "UPDATE t_user SET age = ? WHERE name = ? AND id > ?";
+        CompensationPlan plan = CompensationPlan.compile(sql, true);
+
+        assertThat(normalize(plan.bindWhere(statementOf(sql, 18, "Tom", 1))), is("name = 'Tom' AND id > 1"));
+        assertThat(normalize(plan.bindWhere(statementOf(sql, 20, "O'Neil", 2))), is("name = 'O''Neil' AND id > 2"));
+    }
+
+    @Test
+    public void bindsUnsetParameterAsNull() {
+        String sql = "DELETE FROM t_user WHERE id = ? AND name = ?";
+        CompensationPlan plan = CompensationPlan.compile(sql, true);
+
+        PreparedStatementInformation statementInformation = new PreparedStatementInformation(sql);
+        statementInformation.setParameterValue(1, 5);
+        assertThat(normalize(plan.bindWhere(statementInformation)), is("id = 5 AND name = NULL"));
+    }
+
+    @Test
+    public void updateWithoutWhereConditionHasNoWhere() {
+        String sql = "UPDATE t_user SET name = ?, age = ?";
+        CompensationPlan plan = CompensationPlan.compile(sql, true);
+
+        assertThat(plan.sqlType(), is(CompensationPlan.SqlType.UPDATE));
+        assertThat(plan.bindWhere(statementOf(sql, "Tom", 18)), is(nullValue()));
+    }
+
+    @Test
+    public void notCompiledIfPlaceholderIsInStringLiteral() {
+        assertThat(CompensationPlan.compile("UPDATE t_user SET name = 'who?' WHERE id = ?", true), is(nullValue()));
+        assertThat(CompensationPlan.compile("DELETE FROM t_user WHERE id = ? AND name = 'who?'", true), is(nullValue()));
+    }
+
+    @Test
+    public void keepsWhereConditionOfSqlWithValues() {
+        CompensationPlan plan = CompensationPlan.compile("DELETE FROM t_user WHERE id = 1 AND name = 'who?'", false);
+
+        assertThat(plan.sqlType(), is(CompensationPlan.SqlType.DELETE));
+        assertThat(normalize(plan.bindWhere(new PreparedStatementInformation("DELETE FROM t_user WHERE id = 1 AND name = 'who?'"))), is("id = 1 AND name = 'who?'"));
+    }
+
+    @Test
+    public void recognizesOtherTypesOfSql() {
+        assertThat(CompensationPlan.compile("TRUNCATE TABLE t_user", true).sqlType(), is(CompensationPlan.SqlType.DDL));
+        assertThat(CompensationPlan.compile("SELECT * FROM t_user WHERE id = ?", true).sqlType(), is(CompensationPlan.SqlType.OTHER));
+    }
+
+    @Test
+    public void bindsParameterValuesByIndexes() {
+        PreparedStatementInformation statementInformation = statementOf("UPDATE t_user SET name = ? WHERE id = ? AND age = ?", "Tom", 7, 18);
+
+        assertThat(statementInformation.bindParameterValues("age = ? AND id = ?", new int[]{2, 1}), is("age = 18 AND id = 7"));
+        assertThat(statementInformation.bindParameterValues("id = ? AND name = ?", new int[]{1}), is("id = 7 AND name = ?"));
+    }
+
+    private PreparedStatementInformation statementOf(String sql, Object... values) {
+        PreparedStatementInformation statementInformation = new PreparedStatementInformation(sql);
+        for (int i = 0; i < values.length; i++) {
+            statementInformation.setParameterValue(i + 1, values[i]);
+        }
+        return statementInformation;
+    }
+
+    // the where-condition is formatted by parser, e.g. there is a line break before 'AND'.
+    private String normalize(String where) {
+        return where.replaceAll("\\s+", " ");
+    }
+}
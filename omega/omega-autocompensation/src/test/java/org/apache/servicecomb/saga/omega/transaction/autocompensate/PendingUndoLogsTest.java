@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.transaction.autocompensate;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.Arrays;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class PendingUndoLogsTest {
+    private final PendingUndoLogs pendingUndoLogs = new PendingUndoLogs();
+    private final Connection connection = mock(Connection.class);
+
+    @Test
+    public void flushesAllUndoLogsAtCommitAndForgetsThem() {
+        Object[] undoLog1 = undoLog();
+        Object[] undoLog2 = undoLog();
+        pendingUndoLogs.add(connection, undoLog1);
+        pendingUndoLogs.add(connection, undoLog2);
+
+        assertThat(pendingUndoLogs.take(connection), is(Arrays.<Object[]>asList(undoLog1, undoLog2)));
+        assertThat(pendingUndoLogs.take(connection).isEmpty(), is(true));
+    }
+
+    @Test
+    public void discardsUndoLogsCapturedAfterSavepointWhenRollingBackToIt() {
+        Object[] beforeSavepoint = undoLog();
+        Savepoint savepoint = mock(Savepoint.class);
+        pendingUndoLogs.add(connection, beforeSavepoint);
+        pendingUndoLogs.setSavepoint(connection, savepoint);
+        pendingUndoLogs.add(connection, undoLog());
+        pendingUndoLogs.add(connection, undoLog());
+
+        pendingUndoLogs.rollback(connection, savepoint);
+
+        Object[] afterRollback = undoLog();
+        pendingUndoLogs.add(connection, afterRollback);
+        assertThat(pendingUndoLogs.take(connection), is(Arrays.<Object[]>asList(beforeSavepoint, afterRollback)));
+    }
+
+    @Test
+    public void rollsBackToOuterSavepointThroughInnerOne() {
+        Savepoint outer = mock(Savepoint.class);
+        Savepoint inner = mock(Savepoint.class);
+        pendingUndoLogs.setSavepoint(connection, outer);
+        Object[] betweenSavepoints = undoLog();
+        pendingUndoLogs.add(connection, betweenSavepoints);
+        pendingUndoLogs.setSavepoint(connection, inner);
+        pendingUndoLogs.add(connection, undoLog());
+
+        pendingUndoLogs.rollback(connection, inner);
+        pendingUndoLogs.rollback(connection, outer);
+        assertThat(pendingUndoLogs.take(connection).isEmpty(), is(true));
+    }
+
+    @Test
+    public void keepsUndoLogsOfReleasedSavepoint() {
+        Savepoint savepoint = mock(Savepoint.class);
+        pendingUndoLogs.setSavepoint(connection, savepoint);
+        Object[] undoLog = undoLog();
+        pendingUndoLogs.add(connection, undoLog);
+
+        pendingUndoLogs.releaseSavepoint(connection, savepoint);
+        pendingUndoLogs.rollback(connection, savepoint);
+
+        assertThat(pendingUndoLogs.take(connection), is(Arrays.<Object[]>asList(undoLog)));
+    }
+
+    @Test
+    public void discardsUndoLogsOfConnectionOnly() {
+        Connection otherConnection = mock(Connection.class);
+        Object[] otherUndoLog = undoLog();
+        pendingUndoLogs.add(connection, undoLog());
+        pendingUndoLogs.add(otherConnection, otherUndoLog);
+
+        pendingUndoLogs.discard(connection);
+
+        assertThat(pendingUndoLogs.take(connection).isEmpty(), is(true));
+        assertThat(pendingUndoLogs.take(otherConnection), is(Arrays.<Object[]>asList(otherUndoLog)));
+    }
+
+    private Object[] undoLog() {
+        return new Object[]{uniquify("globalTxId"), uniquify("localTxId"), uniquify("executeSql"), uniquify("compensateSql")};
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *  Copyright (c) 2018-2019 ActionTech.
+ *  License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.benchmarks;
+
+import org.apache.servicecomb.saga.omega.context.ApplicationContextUtil;
+import org.apache.servicecomb.saga.omega.context.CurrentThreadOmegaContext;
+import org.apache.servicecomb.saga.omega.context.OmegaContextServiceConfig;
+import org.apache.servicecomb.saga.omega.context.UniqueIdGenerator;
+import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.wrapper.Driver;
+import org.apache.servicecomb.saga.omega.transaction.monitor.AutoCompensableSqlMetrics;
+import org.apache.servicecomb.saga.omega.transaction.monitor.CompensableSqlMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead of omega-p6spy and the listeners of omega for every SQL, the same statements are executed by
+ * <ul>
+ * <li>raw: the connection of H2 directly</li>
+ * <li>wrapped: the connection of omega's driver, out of txle's transactions</li>
+ * <li>compensable: the connection of omega's driver, in a transaction of '@Compensable'</li>
+ * <li>autoCompensable: the connection of omega's driver, in a transaction of '@AutoCompensable'</li>
+ * </ul>
+ * The backup and undo logs of auto-compensation are not executed here, they depend on the SQL of MySQL.
+ * Run 'java -jar omega-benchmarks/target/benchmarks.jar JdbcInterceptionBenchmark -prof gc' to get the allocation rate as well.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JdbcInterceptionBenchmark {
+  // the MySQL mode of H2, so the SQL is as same as business
+  private static final String URL = "jdbc:h2:mem:txle_benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1";
+  private static final int ROWS = 1000;
+
+  @Param({"raw", "wrapped", "compensable", "autoCompensable"})
+  public String mode;
+
+  private Connection connection;
+  private int row;
+  private long insertedId = ROWS;
+
+  @Setup(Level.Trial)
+  public void setUp() throws SQLException {
+    org.h2.Driver.load();
+    try (Connection conn = DriverManager.getConnection(URL); Statement statement = conn.createStatement()) {
+      statement.execute("CREATE TABLE IF NOT EXISTS txle_benchmark_account (id BIGINT PRIMARY KEY, name VARCHAR(64), balance DECIMAL(12, 2), update_time TIMESTAMP)");
+      statement.execute("DELETE FROM txle_benchmark_account");
+      try (PreparedStatement ps = conn.prepareStatement("INSERT INTO txle_benchmark_account (id, name, balance, update_time) VALUES (?, ?, ?, NOW())")) {
+        for (int i = 0; i < ROWS; i++) {
+          ps.setLong(1, i);
+          ps.setString(2, "account-" + i);
+          ps.setInt(3, 100);
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+    }
+
+    if ("raw".equals(mode)) {
+      connection = DriverManager.getConnection(URL);
+    } else {
+      connection = new Driver().connect(URL, new Properties());
+    }
+
+    if ("compensable".equals(mode) || "autoCompensable".equals(mode)) {
+      StaticApplicationContext applicationContext = new StaticApplicationContext();
+      // the port 0 means that the metrics server is not started
+      applicationContext.getBeanFactory().registerSingleton("compensableSqlMetrics", new CompensableSqlMetrics("0"));
+      applicationContext.getBeanFactory().registerSingleton("autoCompensableSqlMetrics", new AutoCompensableSqlMetrics("0"));
+      applicationContext.refresh();
+      new ApplicationContextUtil().setApplicationContext(applicationContext);
+
+      OmegaContextServiceConfig context = new OmegaContextServiceConfig(new UniqueIdGenerator());
+      context.newGlobalTxId();
+      context.newLocalTxId();
+      context.setServiceName("txle-benchmark");
+      // the undo logs are not recorded, as same as the auto-compensable method whose local transaction is not started
+      context.setAutoCompensate("autoCompensable".equals(mode));
+      context.setIsEnabledAutoCompensateTx(false);
+      CurrentThreadOmegaContext.putThreadGlobalLocalTxId(context);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws SQLException {
+    CurrentThreadOmegaContext.clearCache();
+    connection.close();
+  }
+
+  private long nextRow() {
+    row = row + 1 == ROWS ? 0 : row + 1;
+    return row;
+  }
+
+  @Benchmark
+  public int update() throws SQLException {
+    try (PreparedStatement ps = connection.prepareStatement("UPDATE txle_benchmark_account SET balance = balance + ?, update_time = NOW() WHERE id = ?")) {
+      ps.setInt(1, 1);
+      ps.setLong(2, nextRow());
+      return ps.executeUpdate();
+    }
+  }
+
+  @Benchmark
+  public int insert() throws SQLException {
+    try (PreparedStatement ps = connection.prepareStatement("INSERT INTO txle_benchmark_account (id, name, balance, update_time) VALUES (?, ?, ?, NOW())")) {
+      ps.setLong(1, ++insertedId);
+      ps.setString(2, "account-" + insertedId);
+      ps.setInt(3, 100);
+      return ps.executeUpdate();
+    }
+  }
+
+  // No row is deleted, so the other benchmarks always have the same data, and the cost of interception is the same.
+  @Benchmark
+  public int delete() throws SQLException {
+    try (PreparedStatement ps = connection.prepareStatement("DELETE FROM txle_benchmark_account WHERE id = ?")) {
+      ps.setLong(1, -nextRow() - 1);
+      return ps.executeUpdate();
+    }
+  }
+
+  @Benchmark
+  public long select() throws SQLException {
+    try (PreparedStatement ps = connection.prepareStatement("SELECT balance FROM txle_benchmark_account WHERE id = ?")) {
+      ps.setLong(1, nextRow());
+      try (ResultSet resultSet = ps.executeQuery()) {
+        return resultSet.next() ? resultSet.getLong(1) : 0;
+      }
+    }
+  }
+}
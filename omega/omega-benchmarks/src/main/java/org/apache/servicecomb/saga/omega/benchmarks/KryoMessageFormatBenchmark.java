@@ -0,0 +1,74 @@
+/*
+ *  Copyright (c) 2018-2019 ActionTech.
+ *  License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.benchmarks;
+
+import org.apache.servicecomb.saga.omega.format.KryoMessageFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of serializing the arguments of compensable methods, they're serialized for every TxStartedEvent and deserialized by compensation.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KryoMessageFormatBenchmark {
+
+  // the bytes of the argument which is a byte array, e.g. a small or a large payload
+  @Param({"64", "16384"})
+  public int payloadSize;
+
+  private final KryoMessageFormat format = new KryoMessageFormat();
+  private Object[] arguments;
+  private byte[] message;
+
+  @Setup
+  public void setUp() {
+    Map<String, Object> attributes = new HashMap<>();
+    attributes.put("userId", 10001L);
+    attributes.put("productName", "txle-benchmark");
+    attributes.put("quantity", 2);
+    byte[] payload = new byte[payloadSize];
+    Arrays.fill(payload, (byte) 'x');
+    arguments = new Object[] {"globalTxId-0001", 10001L, 99.5d, attributes, payload};
+    message = format.serialize(arguments);
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return format.serialize(arguments);
+  }
+
+  @Benchmark
+  public Object[] deserialize() {
+    return format.deserialize(message);
+  }
+
+  @Benchmark
+  public Object[] roundTrip() {
+    return format.deserialize(format.serialize(arguments));
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ *  Copyright (c) 2018-2019 ActionTech.
+ *  License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.benchmarks;
+
+import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.PreparedStatementInformation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of recording the parameters of a PreparedStatement and rendering the SQL with values, they're done for every business SQL in txle's transactions.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PreparedStatementInformationBenchmark {
+
+  @Param({"4", "32"})
+  public int parameterCount;
+
+  private String sql;
+  private Object[] values;
+
+  @Setup
+  public void setUp() {
+    StringBuilder sb = new StringBuilder("UPDATE txle_benchmark_account SET ");
+    values = new Object[parameterCount];
+    for (int i = 0; i < parameterCount - 1; i++) {
+      sb.append(i == 0 ? "" : ", ").append("c").append(i).append(" = ?");
+      // the common types of business
+      switch (i % 4) {
+        case 0:
+          values[i] = "value-" + i;
+          break;
+        case 1:
+          values[i] = i;
+          break;
+        case 2:
+          values[i] = new BigDecimal("100.25");
+          break;
+        default:
+          values[i] = new Timestamp(System.currentTimeMillis());
+      }
+    }
+    sb.append(" WHERE id = ?");
+    values[parameterCount - 1] = 1L;
+    sql = sb.toString();
+  }
+
+  private PreparedStatementInformation setParameters() {
+    PreparedStatementInformation information = new PreparedStatementInformation(sql);
+    for (int i = 0; i < values.length; i++) {
+      information.setParameterValue(i + 1, values[i]);
+    }
+    return information;
+  }
+
+  @Benchmark
+  public PreparedStatementInformation setParameterValues() {
+    return setParameters();
+  }
+
+  @Benchmark
+  public String getSqlWithValues() {
+    return setParameters().getSqlWithValues();
+  }
+
+  // the SQL with values is used by several listeners for the same execution
+  @Benchmark
+  public String getSqlWithValuesRepeatedly() {
+    PreparedStatementInformation information = setParameters();
+    information.getSqlWithValues();
+    return information.getSqlWithValues();
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ *  Copyright (c) 2018-2019 ActionTech.
+ *  License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.benchmarks;
+
+import com.alibaba.druid.sql.ast.SQLStatement;
+import com.alibaba.druid.sql.dialect.mysql.parser.MySqlStatementParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of parsing business SQL by Druid, it's paid by auto-compensation for every distinct SQL, or every execution if the parameters could not be located.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SqlParserBenchmark {
+
+  @Param({
+      "UPDATE txle_benchmark_account SET balance = balance - ?, update_time = NOW() WHERE id = ? AND balance >= ?",
+      "UPDATE txle_benchmark_account SET balance = balance - 10, update_time = NOW() WHERE id = 1 AND balance >= 10",
+      "DELETE FROM txle_benchmark_account WHERE id IN (?, ?, ?)",
+      "INSERT INTO txle_benchmark_account (id, name, balance, update_time) VALUES (?, ?, ?, NOW())"
+  })
+  public String sql;
+
+  @Benchmark
+  public SQLStatement parse() {
+    return new MySqlStatementParser(sql).parseStatement();
+  }
+}
@@ -19,7 +19,11 @@
 
 package org.apache.servicecomb.saga.omega.connector.grpc;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import io.grpc.ManagedChannel;
 import org.apache.servicecomb.saga.common.TxleConstants;
 import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
@@ -33,6 +37,7 @@ import org.apache.servicecomb.saga.omega.transaction.accidentplatform.AccidentHa
 import org.apache.servicecomb.saga.pack.contract.grpc.*;
 import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEvent.Builder;
 import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc.TxEventServiceBlockingStub;
+import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc.TxEventServiceFutureStub;
 import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc.TxEventServiceStub;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,9 +46,12 @@ import java.lang.invoke.MethodHandles;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Function;
 
 public class GrpcClientMessageSender implements MessageSender {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -54,9 +62,12 @@ public class GrpcClientMessageSender implements MessageSender {
   private final MessageDeserializer deserializer;
 
   private final TxEventServiceBlockingStub blockingEventService;
+  private final TxEventServiceFutureStub futureEventService;
 
   private final GrpcCompensateStreamObserver compensateStreamObserver;
   private final GrpcServiceConfig serviceConfig;
+  // it's null if batched events are disabled
+  private final GrpcTxEventBatcher eventBatcher;
   private final ExecutorService executorService = Executors.newFixedThreadPool(2, new TxleDefaultTheadFactory("txle-client-sender-"));
   // 存储当前业务类别对应的系统级配置，如是否开启SQL监控、是否上报Kafka等配置信息
   private static final Map<String, Boolean> CATEGORY_SYSTEM_CONFIG = new ConcurrentHashMap<>(8);
@@ -73,12 +84,19 @@ public class GrpcClientMessageSender implements MessageSender {
     this.asyncEventService = TxEventServiceGrpc.newStub(channel);
     //.withDeadlineAfter(20, TimeUnit.SECONDS);
     this.blockingEventService = TxEventServiceGrpc.newBlockingStub(channel);
+    this.futureEventService = TxEventServiceGrpc.newFutureStub(channel);
     this.serializer = serializer;
     this.deserializer = deserializer;
 
     this.compensateStreamObserver =
         new GrpcCompensateStreamObserver(handler, errorHandlerFactory.getHandler(this), deserializer);
     this.serviceConfig = serviceConfig(serviceConfig.serviceName(), serviceConfig.instanceId(), "");
+    if (TxleStaticConfig.getBooleanConfig("txle.transaction.batch-events.enabled", true)) {
+      this.eventBatcher = new GrpcTxEventBatcher(asyncEventService, TxleStaticConfig.getIntegerConfig("txle.transaction.batch-events.max-size", 128),
+          TxleStaticConfig.getIntegerConfig("txle.transaction.batch-events.linger-micros", 0));
+    } else {
+      this.eventBatcher = null;
+    }
   }
 
   @Override
@@ -93,7 +111,9 @@ public class GrpcClientMessageSender implements MessageSender {
 
   @Override
   public void close() {
-    // just do nothing here
+    if (eventBatcher != null) {
+      eventBatcher.close();
+    }
   }
 
   @Override
@@ -103,27 +123,20 @@ public class GrpcClientMessageSender implements MessageSender {
 
   @Override
   public AlphaResponse send(TxEvent event) {
-    try {
-      // To set serviceName to OmegaContextServiceConfig.
-      OmegaContextServiceConfig context = CurrentThreadOmegaContext.getContextFromCurThread();
-      if (context != null) {
-        context.setServiceName(serviceConfig.getServiceName());
-        context.setInstanceId(serviceConfig.getInstanceId());
-      }
-    } catch (Exception e) {
-    }
+    setServiceConfigToContext();
 
 //    blockingEventService.withDeadlineAfter(5, TimeUnit.SECONDS);// TODO set timeout for current communication
 //    LOG.info("\r\n---- [{}] client sends rpc request [{}]，globalTxId = [{}], localTxId = [{}].", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS").format(new Date()), event.type(), event.globalTxId(), event.localTxId());
-    GrpcAck grpcAck = blockingEventService.onTxEvent(convertEvent(event));
+    GrpcAck grpcAck = sendEvent(convertEvent(event));
 //    LOG.info("\r\n---- [{}] client received rpc return [{}]，globalTxId = [{}], localTxId = [{}].", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS").format(new Date()), event.type(), event.globalTxId(), event.localTxId());
     // It's a manual operation to pause transaction, so it can accept to pause for one minute.
+    // The alpha server parks the request of paused transaction and replies after resuming, so this loop is only for the server which still replies 'paused'.
     while (grpcAck.getPaused()) {
       try {
         Thread.sleep(TxleStaticConfig.getIntegerConfig("txle.transaction.pause-check-interval", 60) * 1000);
       } catch (InterruptedException e) {
       }
-      grpcAck = blockingEventService.onTxEvent(convertEvent(event));
+      grpcAck = sendEvent(convertEvent(event));
       if (!grpcAck.getPaused()) {
         break;
       }
@@ -133,9 +146,74 @@ public class GrpcClientMessageSender implements MessageSender {
     return new AlphaResponse(grpcAck.getAborted(), grpcAck.getPaused(), grpcAck.getIsEnabledTx());
   }
 
+  @Override
+  public CompletableFuture<AlphaResponse> sendAsync(TxEvent event) {
+    setServiceConfigToContext();
+    return sendEventAsync(convertEvent(event)).thenCompose(grpcAck -> {
+      if (grpcAck.getPaused()) {
+        // only the old server replies 'paused', it's rare, so it's checked again in the synchronous way.
+        return CompletableFuture.supplyAsync(() -> send(event), executorService);
+      }
+      return CompletableFuture.completedFuture(new AlphaResponse(grpcAck.getAborted(), grpcAck.getPaused(), grpcAck.getIsEnabledTx()));
+    });
+  }
+
+  private void setServiceConfigToContext() {
+    try {
+      // To set serviceName to OmegaContextServiceConfig.
+      OmegaContextServiceConfig context = CurrentThreadOmegaContext.getContextFromCurThread();
+      if (context != null) {
+        context.setServiceName(serviceConfig.getServiceName());
+        context.setInstanceId(serviceConfig.getInstanceId());
+      }
+    } catch (Exception e) {
+    }
+  }
+
+  // the events of concurrent threads are sent together if possible, otherwise, send it alone.
+  private GrpcAck sendEvent(GrpcTxEvent grpcTxEvent) {
+    GrpcAck grpcAck = eventBatcher == null ? null : eventBatcher.send(grpcTxEvent);
+    return grpcAck != null ? grpcAck : blockingEventService.onTxEvent(grpcTxEvent);
+  }
+
+  private CompletableFuture<GrpcAck> sendEventAsync(GrpcTxEvent grpcTxEvent) {
+    CompletableFuture<GrpcAck> futureAck = eventBatcher == null ? null : eventBatcher.sendAsync(grpcTxEvent);
+    if (futureAck == null) {
+      return onTxEventAsync(grpcTxEvent);
+    }
+    return futureAck.handle((grpcAck, e) -> {
+      if (e == null) {
+        return CompletableFuture.completedFuture(grpcAck);
+      }
+      Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+      if (cause instanceof UnsupportedOperationException) {
+        return onTxEventAsync(grpcTxEvent);
+      }
+      CompletableFuture<GrpcAck> failedAck = new CompletableFuture<>();
+      failedAck.completeExceptionally(cause);
+      return failedAck;
+    }).thenCompose(Function.identity());
+  }
+
+  private CompletableFuture<GrpcAck> onTxEventAsync(GrpcTxEvent grpcTxEvent) {
+    CompletableFuture<GrpcAck> futureAck = new CompletableFuture<>();
+    Futures.addCallback(futureEventService.onTxEvent(grpcTxEvent), new FutureCallback<GrpcAck>() {
+      @Override
+      public void onSuccess(GrpcAck grpcAck) {
+        futureAck.complete(grpcAck);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        futureAck.completeExceptionally(t);
+      }
+    }, MoreExecutors.directExecutor());
+    return futureAck;
+  }
+
   @Override
   public Set<String> send(Set<String> localTxIdSet) {
-    ByteString payloads = ByteString.copyFrom(serializer.serialize(localTxIdSet.toArray()));
+    ByteString payloads = UnsafeByteOperations.unsafeWrap(serializer.serialize(localTxIdSet.toArray()));
 
     Builder builder = GrpcTxEvent.newBuilder().setCategory(TxleConstants.SPECIAL_KEY).setPayloads(payloads);
     GrpcTxEvent grpcTxEvent = builder.build();
@@ -205,7 +283,8 @@ public class GrpcClientMessageSender implements MessageSender {
   }
 
   private GrpcTxEvent convertEvent(TxEvent event) {
-    ByteString payloads = ByteString.copyFrom(serializer.serialize(event.payloads()));
+    // the serialized bytes are not changed any more, so they are wrapped rather than copied.
+    ByteString payloads = UnsafeByteOperations.unsafeWrap(serializer.serialize(event.payloads()));
 
     Builder builder = GrpcTxEvent.newBuilder()
         .setServiceName(serviceConfig.getServiceName())
@@ -0,0 +1,287 @@
+/*
+ *  Copyright (c) 2018-2019 ActionTech.
+ *  License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcAck;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcAckBatch;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcAckEntry;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEvent;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEventBatch;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEventEntry;
+import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc.TxEventServiceStub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesce the events of concurrent business threads, and send them in batches by the long-lived stream 'OnTxEvents'.
+ * A batch is sent once the previous one was sent and the stream is ready, so it contains all of events which arrived meanwhile, at most 'maxBatchSize' events.
+ * Every caller is blocked until the ack of its event is received, so the semantic is as same as the unary 'OnTxEvent'.
+ * If the alpha server does not support 'OnTxEvents', the caller gets null and should send the event by 'OnTxEvent'.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+class GrpcTxEventBatcher {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private final TxEventServiceStub asyncEventService;
+  private final int maxBatchSize;
+  private final long lingerNanos;
+  private final BlockingQueue<PendingEvent> pendingEvents = new LinkedBlockingQueue<>();
+  private final AtomicLong idGenerator = new AtomicLong();
+  private final ExecutorService sender = Executors.newSingleThreadExecutor(new TxleDefaultTheadFactory("txle-event-batcher-"));
+  // it's accessed by the sender thread, and reset by the grpc thread once the stream is broken.
+  private volatile EventStream eventStream;
+  private volatile boolean supported = true;
+  private volatile boolean running = true;
+
+  GrpcTxEventBatcher(TxEventServiceStub asyncEventService, int maxBatchSize, long lingerMicros) {
+    this.asyncEventService = asyncEventService;
+    this.maxBatchSize = maxBatchSize;
+    this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+    this.sender.execute(this::sendContinuously);
+  }
+
+  /**
+   * @return the ack of the event, or null if the server does not support batched events
+   */
+  GrpcAck send(GrpcTxEvent event) {
+    CompletableFuture<GrpcAck> futureAck = sendAsync(event);
+    if (futureAck == null) {
+      return null;
+    }
+    try {
+      return futureAck.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the ack of event, globalTxId = " + event.getGlobalTxId(), e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof UnsupportedOperationException) {
+        return null;
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Failed to send event, globalTxId = " + event.getGlobalTxId(), e.getCause());
+    }
+  }
+
+  /**
+   * @return the future of ack, or null if the server does not support batched events.
+   * The future fails with UnsupportedOperationException if the server turns out not to support batched events.
+   */
+  CompletableFuture<GrpcAck> sendAsync(GrpcTxEvent event) {
+    if (!supported || !running) {
+      return null;
+    }
+    PendingEvent pendingEvent = new PendingEvent(idGenerator.incrementAndGet(), event);
+    pendingEvents.add(pendingEvent);
+    return pendingEvent.future;
+  }
+
+  void close() {
+    running = false;
+    sender.shutdownNow();
+    EventStream stream = eventStream;
+    if (stream != null) {
+      stream.close();
+    }
+    failPendingEvents(new UnsupportedOperationException("The event batcher has been closed."));
+  }
+
+  private void sendContinuously() {
+    List<PendingEvent> batch = new ArrayList<>(maxBatchSize);
+    while (running) {
+      try {
+        PendingEvent first = pendingEvents.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < maxBatchSize) {
+          pendingEvents.drainTo(batch, maxBatchSize - batch.size());
+          long remaining = deadline - System.nanoTime();
+          if (batch.size() >= maxBatchSize || remaining <= 0) {
+            break;
+          }
+          PendingEvent next = pendingEvents.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        sendBatch(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        running = false;
+      } catch (Throwable e) {
+        LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to send [{}] events in batch.", batch.size(), e);
+        batch.forEach(pendingEvent -> pendingEvent.future.completeExceptionally(e));
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void sendBatch(List<PendingEvent> batch) throws InterruptedException {
+    if (!supported) {
+      failUnsupported(batch);
+      return;
+    }
+    EventStream currentStream = eventStream;
+    if (currentStream == null) {
+      currentStream = new EventStream();
+      currentStream.requestObserver = asyncEventService.onTxEvents(currentStream);
+      eventStream = currentStream;
+    }
+    final EventStream stream = currentStream;
+    // the events are not buffered by grpc without limit if the server is slow, they're coalesced into the next batch meanwhile.
+    stream.awaitReady();
+    if (stream.broken) {
+      if (!supported) {
+        failUnsupported(batch);
+        return;
+      }
+      throw new IllegalStateException("The stream of batched events was broken while waiting for it to be ready.");
+    }
+    GrpcTxEventBatch.Builder eventBatch = GrpcTxEventBatch.newBuilder();
+    for (PendingEvent pendingEvent : batch) {
+      stream.inflightEvents.put(pendingEvent.id, pendingEvent);
+      eventBatch.addEntries(GrpcTxEventEntry.newBuilder().setId(pendingEvent.id).setEvent(pendingEvent.event));
+    }
+    try {
+      stream.requestObserver.onNext(eventBatch.build());
+      if (stream.broken) {
+        // the stream was broken while preparing current batch, nobody would ack these events.
+        stream.reset(new IllegalStateException("The stream of batched events was broken."));
+      }
+    } catch (RuntimeException e) {
+      batch.forEach(pendingEvent -> stream.inflightEvents.remove(pendingEvent.id));
+      stream.close();
+      throw e;
+    }
+  }
+
+  // the events are sent by 'OnTxEvent' instead.
+  private void failUnsupported(List<PendingEvent> batch) {
+    batch.forEach(pendingEvent -> pendingEvent.future.completeExceptionally(new UnsupportedOperationException()));
+  }
+
+  private void failPendingEvents(Throwable cause) {
+    PendingEvent pendingEvent;
+    while ((pendingEvent = pendingEvents.poll()) != null) {
+      pendingEvent.future.completeExceptionally(cause);
+    }
+  }
+
+  private final class EventStream implements ClientResponseObserver<GrpcTxEventBatch, GrpcAckBatch> {
+    private final Map<Long, PendingEvent> inflightEvents = new ConcurrentHashMap<>();
+    private StreamObserver<GrpcTxEventBatch> requestObserver;
+    private volatile ClientCallStreamObserver<GrpcTxEventBatch> requestStream;
+    private volatile boolean broken;
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<GrpcTxEventBatch> requestStream) {
+      this.requestStream = requestStream;
+      requestStream.setOnReadyHandler(this::signalReady);
+    }
+
+    private synchronized void signalReady() {
+      notifyAll();
+    }
+
+    // it's waited for by the sender thread only, a broken stream is regarded as ready, then the batch is failed by 'sendBatch'.
+    private synchronized void awaitReady() throws InterruptedException {
+      while (!broken && running && requestStream != null && !requestStream.isReady()) {
+        wait(100);
+      }
+    }
+
+    @Override
+    public void onNext(GrpcAckBatch ackBatch) {
+      for (GrpcAckEntry entry : ackBatch.getEntriesList()) {
+        PendingEvent pendingEvent = inflightEvents.remove(entry.getId());
+        if (pendingEvent != null) {
+          pendingEvent.future.complete(entry.getAck());
+        }
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (Status.fromThrowable(t).getCode() == Status.Code.UNIMPLEMENTED) {
+        // the alpha server is older than current client, the events which were not handled are sent again by 'OnTxEvent'.
+        LOG.info("The alpha server does not support batched events, they will be sent one by one.");
+        supported = false;
+        reset(new UnsupportedOperationException(t.getMessage()));
+      } else {
+        LOG.error("The stream of batched events was broken.", t);
+        reset(t);
+      }
+    }
+
+    @Override
+    public void onCompleted() {
+      reset(new IllegalStateException("The stream of batched events was completed by server."));
+    }
+
+    private void close() {
+      try {
+        requestObserver.onCompleted();
+      } catch (Exception e) {
+        LOG.debug("Failed to complete the stream of batched events.", e);
+      }
+      reset(new IllegalStateException("The stream of batched events was closed."));
+    }
+
+    // the next batch will be sent by a new stream.
+    private void reset(Throwable cause) {
+      broken = true;
+      signalReady();
+      if (eventStream == this) {
+        eventStream = null;
+      }
+      for (Long id : new ArrayList<>(inflightEvents.keySet())) {
+        PendingEvent pendingEvent = inflightEvents.remove(id);
+        if (pendingEvent != null) {
+          pendingEvent.future.completeExceptionally(cause);
+        }
+      }
+    }
+  }
+
+  private static final class PendingEvent {
+    private final long id;
+    private final GrpcTxEvent event;
+    private final CompletableFuture<GrpcAck> future = new CompletableFuture<>();
+
+    private PendingEvent(long id, GrpcTxEvent event) {
+      this.id = id;
+      this.event = event;
+    }
+  }
+}
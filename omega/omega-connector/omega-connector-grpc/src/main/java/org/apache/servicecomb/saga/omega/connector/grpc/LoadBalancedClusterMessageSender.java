@@ -26,7 +26,9 @@ import io.grpc.netty.NettyChannelBuilder;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslProvider;
+import org.apache.servicecomb.saga.common.TxleDefaultTheadFactory;
 import org.apache.servicecomb.saga.omega.context.ServiceConfig;
+import org.apache.servicecomb.saga.omega.context.TxleStaticConfig;
 import org.apache.servicecomb.saga.omega.transaction.*;
 import org.apache.servicecomb.saga.omega.transaction.accidentplatform.AccidentHandling;
 import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfigAck;
@@ -39,6 +41,7 @@ import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Function;
 
 import static java.util.Collections.emptyList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -46,7 +49,7 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 public class LoadBalancedClusterMessageSender implements MessageSender {
 
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
-  private final Map<MessageSender, Long> senders = new ConcurrentHashMap<>(8);
+  private final Map<MessageSender, MessageSenderStats> senders = new ConcurrentHashMap<>(8);
   private final Collection<ManagedChannel> channels;
 
   private final BlockingQueue<Runnable> pendingTasks = new LinkedBlockingQueue<>();
@@ -63,6 +66,11 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
 
   private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
+  // the failed asynchronous sending is retried by other senders in the synchronous way, it's bounded, and the sending fails if it's full.
+  private final ExecutorService failoverExecutor = newFailoverExecutor();
+
+  private final MessageSenderPicker messageSenderPicker;
+
   public LoadBalancedClusterMessageSender(AlphaClusterConfig clusterConfig,
       MessageSerializer serializer,
       MessageDeserializer deserializer,
@@ -109,8 +117,9 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
               serviceConfig,
               new ErrorHandlerFactory(),
               handler),
-          0L);
+          new MessageSenderStats());
     }
+    messageSenderPicker = newMessageSenderPicker(TxleStaticConfig.getStringConfig("txle.transaction.sender-picker", "power-of-two-choices"));
 
     scheduleReconnectTask(reconnectDelay);
   }
@@ -118,9 +127,24 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
   // this is for test only
   LoadBalancedClusterMessageSender(MessageSender... messageSenders) {
     for (MessageSender sender : messageSenders) {
-      senders.put(sender, 0L);
+      senders.put(sender, new MessageSenderStats());
     }
     channels = emptyList();
+    messageSenderPicker = new PowerOfTwoChoicesSender();
+  }
+
+  private static ExecutorService newFailoverExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(8, 8, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(1000),
+        new TxleDefaultTheadFactory("txle-failover-sender-"));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static MessageSenderPicker newMessageSenderPicker(String name) {
+    if ("fastest".equalsIgnoreCase(name)) {
+      return new FastestSender();
+    }
+    return new PowerOfTwoChoicesSender();
   }
 
   @Override
@@ -148,6 +172,7 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
   @Override
   public void close() {
     scheduler.shutdown();
+    failoverExecutor.shutdown();
     for (ManagedChannel channel : channels) {
       channel.shutdownNow();
     }
@@ -163,6 +188,44 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
     return (AlphaResponse) send("sendEvent", event);
   }
 
+  @Override
+  public CompletableFuture<AlphaResponse> sendAsync(TxEvent event) {
+    MessageSender messageSender = messageSenderPicker.pick(senders, defaultMessageSender);
+    MessageSenderStats stats = senders.get(messageSender);
+    if (stats != null) {
+      stats.onStart();
+    }
+    long startTime = System.nanoTime();
+    CompletableFuture<AlphaResponse> futureResponse;
+    try {
+      futureResponse = messageSender.sendAsync(event);
+    } catch (Exception e) {
+      futureResponse = new CompletableFuture<>();
+      futureResponse.completeExceptionally(e);
+    }
+    return futureResponse.handle((response, e) -> {
+      if (e == null) {
+        if (stats != null) {
+          stats.onSuccess(System.nanoTime() - startTime);
+        }
+        return CompletableFuture.completedFuture(response);
+      }
+      if (stats != null) {
+        stats.onFailure();
+      }
+      Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+      if (cause instanceof OmegaException) {
+        LOG.error("Failed to send TxEvent" + event + ", messageSender = " + messageSender, cause);
+        CompletableFuture<AlphaResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(cause);
+        return failedResponse;
+      }
+      LOG.error("Try to send TxEvent" + event + " again due to failure", cause);
+      // the other senders are tried one by one in the synchronous way, it happens only if some alpha server is unavailable.
+      return CompletableFuture.supplyAsync(() -> send(event), failoverExecutor);
+    }).thenCompose(Function.identity());
+  }
+
   @Override
   public Set<String> send(Set<String> localTxIdSet) {
     return (Set<String>) send("sendLocalTxIdSet", localTxIdSet);
@@ -184,10 +247,13 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
   }
 
   private Object send(String method, Object... args) {
-    FastestSender messageSenderPicker = new FastestSender();
     String errMsg = "send TxEvent" + args[0];
     do {
       MessageSender messageSender = messageSenderPicker.pick(senders, defaultMessageSender);
+      MessageSenderStats stats = senders.get(messageSender);
+      if (stats != null) {
+        stats.onStart();
+      }
       Object returnObject = null;
       try {
         long startTime = System.nanoTime();
@@ -206,14 +272,21 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
           errMsg = "report accident " + args[0];
           returnObject = messageSender.reportAccidentToServer((AccidentHandling) args[0]);
         }
-        senders.put(messageSender, System.nanoTime() - startTime);
+        if (stats != null) {
+          stats.onSuccess(System.nanoTime() - startTime);
+        }
         return returnObject;
       } catch (OmegaException e) {
+        if (stats != null) {
+          stats.onFailure();
+        }
         LOG.error("Failed to " + errMsg + ", messageSender = " + messageSender, e);
         throw e;
       } catch (Exception e) {
+        if (stats != null) {
+          stats.onFailure();
+        }
         LOG.error("Try to " + errMsg + " again due to failure", e);
-        senders.put(messageSender, Long.MAX_VALUE);
       }
     } while (!Thread.currentThread().isInterrupted());
 
@@ -280,28 +353,58 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
 }
 
 /**
- * The strategy of picking the fastest {@link MessageSender}
+ * The strategy of picking the {@link MessageSender} with the lowest average latency
  */
 class FastestSender implements MessageSenderPicker {
 
   @Override
-  public MessageSender pick(Map<MessageSender, Long> messageSenders,
+  public MessageSender pick(Map<MessageSender, MessageSenderStats> messageSenders,
       Supplier<MessageSender> defaultSender) {
-    Long min = Long.MAX_VALUE;
+    double min = Double.MAX_VALUE;
     MessageSender sender = null;
-    for (Map.Entry<MessageSender, Long> entry : messageSenders.entrySet()) {
-      if (entry.getValue() != Long.MAX_VALUE) {
-        if (min > entry.getValue()) {
-          min = entry.getValue();
-          sender = entry.getKey();
-        }
+    for (Map.Entry<MessageSender, MessageSenderStats> entry : messageSenders.entrySet()) {
+      if (entry.getValue().isAvailable() && min > entry.getValue().ewmaNanos()) {
+        min = entry.getValue().ewmaNanos();
+        sender = entry.getKey();
       }
     }
     if (sender == null) {
-//      return defaultSender.get();
       return messageSenders.keySet().iterator().next();
-    } else {
-      return sender;
     }
+    return sender;
+  }
+}
+
+/**
+ * The strategy of picking the cheaper one of two random available {@link MessageSender}s, the cost is estimated by the average latency and
+ * the outstanding requests, see {@link MessageSenderStats#cost()}.
+ * It spreads requests over the cluster rather than making all clients go to the same server, and it avoids the slow server in most cases.
+ */
+class PowerOfTwoChoicesSender implements MessageSenderPicker {
+
+  @Override
+  public MessageSender pick(Map<MessageSender, MessageSenderStats> messageSenders,
+      Supplier<MessageSender> defaultSender) {
+    List<Map.Entry<MessageSender, MessageSenderStats>> availableSenders = new ArrayList<>(messageSenders.size());
+    for (Map.Entry<MessageSender, MessageSenderStats> entry : messageSenders.entrySet()) {
+      if (entry.getValue().isAvailable()) {
+        availableSenders.add(entry);
+      }
+    }
+    if (availableSenders.isEmpty()) {
+      return messageSenders.keySet().iterator().next();
+    }
+    if (availableSenders.size() == 1) {
+      return availableSenders.get(0).getKey();
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(availableSenders.size());
+    int second = random.nextInt(availableSenders.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+    Map.Entry<MessageSender, MessageSenderStats> a = availableSenders.get(first);
+    Map.Entry<MessageSender, MessageSenderStats> b = availableSenders.get(second);
+    return a.getValue().cost() <= b.getValue().cost() ? a.getKey() : b.getKey();
   }
-}
\ No newline at end of file
+}
@@ -30,10 +30,10 @@ public interface MessageSenderPicker {
    * Pick one from the Collection. Return default sender if none is picked.
    *
    * @param messageSenders Candidates map, the Key Set of which is the collection of candidate
-   * senders.
+   * senders, and the value is the statistics of sender.
    * @param defaultSender Default sender provider
    * @return The specified one.
    */
-  MessageSender pick(Map<MessageSender, Long> messageSenders,
+  MessageSender pick(Map<MessageSender, MessageSenderStats> messageSenders,
       Supplier<MessageSender> defaultSender);
 }
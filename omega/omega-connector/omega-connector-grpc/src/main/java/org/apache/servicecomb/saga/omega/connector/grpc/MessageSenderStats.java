@@ -0,0 +1,67 @@
+/*
+ *  Copyright (c) 2018-2019 ActionTech.
+ *  License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics of a {@link org.apache.servicecomb.saga.omega.transaction.MessageSender}, they're updated by the business threads without lock.
+ * The latency is an exponentially weighted moving average, so one lucky sample could not make all requests go to the same alpha server.
+ * A new instance is used after reconnecting, so the reconnected server would get requests at first.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public final class MessageSenderStats {
+  // the weight of the latest sample
+  private static final double DECAY = 0.3;
+
+  // the bits of double value
+  private final AtomicLong ewmaNanos = new AtomicLong(Double.doubleToLongBits(0));
+  private final AtomicInteger outstanding = new AtomicInteger();
+  private volatile boolean available = true;
+
+  public double ewmaNanos() {
+    return Double.longBitsToDouble(ewmaNanos.get());
+  }
+
+  public int outstanding() {
+    return outstanding.get();
+  }
+
+  public boolean isAvailable() {
+    return available;
+  }
+
+  /**
+   * The estimated cost of sending a request, the requests which are being sent are also considered.
+   */
+  public double cost() {
+    return (ewmaNanos() + 1) * (outstanding() + 1);
+  }
+
+  void onStart() {
+    outstanding.incrementAndGet();
+  }
+
+  void onSuccess(long latencyNanos) {
+    outstanding.decrementAndGet();
+    available = true;
+    long current;
+    long next;
+    do {
+      current = ewmaNanos.get();
+      double ewma = Double.longBitsToDouble(current);
+      next = Double.doubleToLongBits(ewma == 0 ? latencyNanos : ewma + DECAY * (latencyNanos - ewma));
+    } while (!ewmaNanos.compareAndSet(current, next));
+  }
+
+  void onFailure() {
+    outstanding.decrementAndGet();
+    available = false;
+  }
+}
@@ -26,14 +26,14 @@ import org.slf4j.LoggerFactory;
 class PushBackReconnectRunnable implements Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   private final MessageSender messageSender;
-  private final Map<MessageSender, Long> senders;
+  private final Map<MessageSender, MessageSenderStats> senders;
   private final BlockingQueue<Runnable> pendingTasks;
 
   private final BlockingQueue<MessageSender> connectedSenders;
 
   PushBackReconnectRunnable(
       MessageSender messageSender,
-      Map<MessageSender, Long> senders,
+      Map<MessageSender, MessageSenderStats> senders,
       BlockingQueue<Runnable> pendingTasks,
       BlockingQueue<MessageSender> connectedSenders) {
     this.messageSender = messageSender;
@@ -48,7 +48,7 @@ class PushBackReconnectRunnable implements Runnable {
       LOG.info("Retry connecting to alpha at {}", messageSender.target());
       messageSender.onDisconnected();
       messageSender.onConnected();
-      senders.put(messageSender, 0L);
+      senders.put(messageSender, new MessageSenderStats());
       connectedSenders.offer(messageSender);
       LOG.info("Retry connecting to alpha at {} is successful", messageSender.target());
     } catch (Exception e) {
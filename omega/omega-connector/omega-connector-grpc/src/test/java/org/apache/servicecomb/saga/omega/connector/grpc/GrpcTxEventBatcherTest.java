@@ -0,0 +1,169 @@
+/*
+ *  Copyright (c) 2018-2019 ActionTech.
+ *  License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcAck;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcAckBatch;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcAckEntry;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEvent;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEventBatch;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEventEntry;
+import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc;
+import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc.TxEventServiceImplBase;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class GrpcTxEventBatcherTest {
+  private final String serverName = uniquify("batcher");
+  private final ExecutorService executor = Executors.newFixedThreadPool(8);
+  private Server server;
+  private ManagedChannel channel;
+  private GrpcTxEventBatcher batcher;
+
+  @After
+  public void tearDown() {
+    batcher.close();
+    channel.shutdownNow();
+    server.shutdownNow();
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void acksEveryEventOfConcurrentThreads() throws Exception {
+    start(new TxEventServiceImplBase() {
+      @Override
+      public StreamObserver<GrpcTxEventBatch> onTxEvents(StreamObserver<GrpcAckBatch> responseObserver) {
+        return new StreamObserver<GrpcTxEventBatch>() {
+          @Override
+          public void onNext(GrpcTxEventBatch batch) {
+            GrpcAckBatch.Builder ackBatch = GrpcAckBatch.newBuilder();
+            for (GrpcTxEventEntry entry : batch.getEntriesList()) {
+              boolean aborted = "reject".equals(entry.getEvent().getCompensationMethod());
+              ackBatch.addEntries(GrpcAckEntry.newBuilder().setId(entry.getId()).setAck(GrpcAck.newBuilder().setAborted(aborted)));
+            }
+            responseObserver.onNext(ackBatch.build());
+          }
+
+          @Override
+          public void onError(Throwable t) {
+          }
+
+          @Override
+          public void onCompleted() {
+            responseObserver.onCompleted();
+          }
+        };
+      }
+    });
+
+    List<Future<GrpcAck>> acks = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      String compensationMethod = i % 2 == 0 ? "reject" : "accept";
+      acks.add(executor.submit(() -> batcher.send(GrpcTxEvent.newBuilder().setGlobalTxId(uniquify("globalTxId")).setCompensationMethod(compensationMethod).build())));
+    }
+
+    for (int i = 0; i < acks.size(); i++) {
+      assertThat(acks.get(i).get(5, TimeUnit.SECONDS).getAborted(), is(i % 2 == 0));
+    }
+  }
+
+  @Test
+  public void returnsNullIfServerDoesNotSupportBatchedEvents() {
+    start(new TxEventServiceImplBase() {
+    });
+
+    assertThat(batcher.send(GrpcTxEvent.newBuilder().setGlobalTxId(uniquify("globalTxId")).build()), is(nullValue()));
+    assertThat(batcher.send(GrpcTxEvent.newBuilder().setGlobalTxId(uniquify("globalTxId")).build()), is(nullValue()));
+  }
+
+  @Test
+  public void coalescesEventsUntilStreamIsReady() throws Exception {
+    List<GrpcTxEventBatch> receivedBatches = new CopyOnWriteArrayList<>();
+    AtomicReference<ServerCallStreamObserver<GrpcAckBatch>> serverStream = new AtomicReference<>();
+    start(new TxEventServiceImplBase() {
+      @Override
+      public StreamObserver<GrpcTxEventBatch> onTxEvents(StreamObserver<GrpcAckBatch> responseObserver) {
+        ServerCallStreamObserver<GrpcAckBatch> stream = (ServerCallStreamObserver<GrpcAckBatch>) responseObserver;
+        // the client is not ready until the server requests.
+        stream.disableAutoInboundFlowControl();
+        serverStream.set(stream);
+        return new StreamObserver<GrpcTxEventBatch>() {
+          @Override
+          public void onNext(GrpcTxEventBatch batch) {
+            receivedBatches.add(batch);
+            GrpcAckBatch.Builder ackBatch = GrpcAckBatch.newBuilder();
+            batch.getEntriesList().forEach(entry -> ackBatch.addEntries(GrpcAckEntry.newBuilder().setId(entry.getId()).setAck(GrpcAck.newBuilder())));
+            responseObserver.onNext(ackBatch.build());
+          }
+
+          @Override
+          public void onError(Throwable t) {
+          }
+
+          @Override
+          public void onCompleted() {
+            responseObserver.onCompleted();
+          }
+        };
+      }
+    });
+
+    List<CompletableFuture<GrpcAck>> acks = new ArrayList<>();
+    acks.add(batcher.sendAsync(GrpcTxEvent.newBuilder().setGlobalTxId(uniquify("globalTxId")).build()));
+    await().atMost(1, SECONDS).until(() -> serverStream.get() != null);
+    // the first batch is waiting for the stream to be ready, the subsequent events are coalesced meanwhile.
+    Thread.sleep(200);
+    for (int i = 0; i < 3; i++) {
+      acks.add(batcher.sendAsync(GrpcTxEvent.newBuilder().setGlobalTxId(uniquify("globalTxId")).build()));
+    }
+    assertThat(receivedBatches.isEmpty(), is(true));
+
+    serverStream.get().request(1);
+    acks.get(0).get(1, SECONDS);
+    assertThat(receivedBatches.size(), is(1));
+    assertThat(receivedBatches.get(0).getEntriesCount(), is(1));
+
+    serverStream.get().request(1);
+    for (CompletableFuture<GrpcAck> ack : acks) {
+      ack.get(1, SECONDS);
+    }
+    assertThat(receivedBatches.size(), is(2));
+    assertThat(receivedBatches.get(1).getEntriesCount(), is(3));
+  }
+
+  private void start(TxEventServiceImplBase service) {
+    try {
+      server = InProcessServerBuilder.forName(serverName).addService(service).directExecutor().build().start();
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+    channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    batcher = new GrpcTxEventBatcher(TxEventServiceGrpc.newStub(channel), 16, 0);
+  }
+}
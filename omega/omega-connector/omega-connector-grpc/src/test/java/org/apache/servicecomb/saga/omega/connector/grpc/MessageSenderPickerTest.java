@@ -0,0 +1,91 @@
+/*
+ *  Copyright (c) 2018-2019 ActionTech.
+ *  License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import com.google.common.base.Supplier;
+import org.apache.servicecomb.saga.omega.transaction.MessageSender;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class MessageSenderPickerTest {
+  private final MessageSender fastSender = mock(MessageSender.class);
+  private final MessageSender slowSender = mock(MessageSender.class);
+  private final MessageSender deadSender = mock(MessageSender.class);
+  private final Map<MessageSender, MessageSenderStats> senders = new LinkedHashMap<>();
+  private final Supplier<MessageSender> defaultSender = () -> deadSender;
+
+  @Test
+  public void smoothesLatencyByMovingAverage() {
+    MessageSenderStats stats = new MessageSenderStats();
+    record(stats, 100);
+    record(stats, 1000);
+
+    assertThat(stats.ewmaNanos(), is(100 + 0.3 * 900));
+    assertThat(stats.outstanding(), is(0));
+  }
+
+  @Test
+  public void picksTheCheaperOneOfTwoSenders() {
+    senders.put(fastSender, statsOf(100));
+    senders.put(slowSender, statsOf(800));
+
+    PowerOfTwoChoicesSender picker = new PowerOfTwoChoicesSender();
+    for (int i = 0; i < 10; i++) {
+      assertThat(picker.pick(senders, defaultSender), is(fastSender));
+    }
+
+    // the outstanding requests make the fast sender more expensive
+    for (int i = 0; i < 10; i++) {
+      senders.get(fastSender).onStart();
+    }
+    assertThat(picker.pick(senders, defaultSender), is(slowSender));
+  }
+
+  @Test
+  public void ignoresUnavailableSenders() {
+    MessageSenderStats deadStats = new MessageSenderStats();
+    deadStats.onStart();
+    deadStats.onFailure();
+    senders.put(deadSender, deadStats);
+    senders.put(slowSender, statsOf(800));
+
+    assertThat(new PowerOfTwoChoicesSender().pick(senders, defaultSender), is(slowSender));
+    assertThat(new FastestSender().pick(senders, defaultSender), is(slowSender));
+  }
+
+  @Test
+  public void spreadsRequestsOverSendersOfSameCost() {
+    Map<MessageSender, Integer> pickedTimes = new HashMap<>();
+    senders.put(fastSender, statsOf(100));
+    senders.put(slowSender, statsOf(100));
+    senders.put(deadSender, statsOf(100));
+
+    PowerOfTwoChoicesSender picker = new PowerOfTwoChoicesSender();
+    for (int i = 0; i < 300; i++) {
+      pickedTimes.merge(picker.pick(senders, defaultSender), 1, Integer::sum);
+    }
+
+    assertThat(pickedTimes.size(), is(3));
+  }
+
+  private MessageSenderStats statsOf(long latencyNanos) {
+    MessageSenderStats stats = new MessageSenderStats();
+    record(stats, latencyNanos);
+    return stats;
+  }
+
+  private void record(MessageSenderStats stats, long latencyNanos) {
+    stats.onStart();
+    stats.onSuccess(latencyNanos);
+  }
+}
@@ -44,14 +44,17 @@ public class PushBackReconnectRunnableTest {
   private final MessageSender sender = mock(MessageSender.class);
   private final BlockingQueue<Runnable> runnables = new LinkedBlockingQueue<>();
   private final BlockingQueue<MessageSender> connectedSenders = new LinkedBlockingQueue<>();
-  private final Map<MessageSender, Long> senders = new HashMap<>();
+  private final Map<MessageSender, MessageSenderStats> senders = new HashMap<>();
 
   private final PushBackReconnectRunnable pushBack = new PushBackReconnectRunnable(sender, senders, runnables, connectedSenders);
 
   @Before
   public void setUp() throws Exception {
     runnables.offer(NO_OP_RUNNABLE);
-    senders.put(sender, Long.MAX_VALUE);
+    MessageSenderStats unavailableStats = new MessageSenderStats();
+    unavailableStats.onStart();
+    unavailableStats.onFailure();
+    senders.put(sender, unavailableStats);
   }
 
   @Test
@@ -72,7 +75,8 @@ public class PushBackReconnectRunnableTest {
     runnables.poll().run();
 
     assertThat(runnables.isEmpty(), is(true));
-    assertThat(senders.get(sender), is(0L));
+    assertThat(senders.get(sender).isAvailable(), is(true));
+    assertThat(senders.get(sender).ewmaNanos(), is(0.0));
     assertThat(connectedSenders, contains(sender));
 
     verify(sender, times(3)).onDisconnected();
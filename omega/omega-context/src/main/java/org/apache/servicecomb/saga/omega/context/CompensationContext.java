@@ -23,6 +23,7 @@ import java.lang.invoke.MethodHandles;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class CompensationContext {
@@ -36,11 +37,20 @@ public class CompensationContext {
   }
 
   public void addCompensationContext(Method compensationMethod, Object target) {
-    compensationMethod.setAccessible(true);
-    contexts.put(compensationMethod.toString(), new CompensationContextInternal(target, compensationMethod));
+    addCompensationContext(compensationMethod.toString(), compensationMethod, target);
   }
 
-  public void apply(String globalTxId, String localTxId, String compensationMethod, Object... payloads) {
+  // To execute the compensation commands of the 'compensationMethod' by another method, e.g. the asynchronous one of auto-compensation.
+  public void addCompensationContext(String compensationMethod, Method method, Object target) {
+    method.setAccessible(true);
+    contexts.put(compensationMethod, new CompensationContextInternal(target, method));
+  }
+
+  /**
+   * The returned future is completed after the compensation is finished, the auto-compensation is finished asynchronously.
+   */
+  @SuppressWarnings("unchecked")
+  public CompletableFuture<Object> apply(String globalTxId, String localTxId, String compensationMethod, Object... payloads) {
     CompensationContextInternal contextInternal = contexts.get(compensationMethod);
 
     String oldGlobalTxId = omegaContext.globalTxId();
@@ -48,19 +58,23 @@ public class CompensationContext {
     try {
     	// for auto-compensation By Gannalyo
     	if (TxleConstants.AUTO_COMPENSABLE_METHOD.equals(compensationMethod)) {
-    		contextInternal.compensationMethod.invoke(contextInternal.target, globalTxId, localTxId);
-    		return;
+    		Object result = contextInternal.compensationMethod.invoke(contextInternal.target, globalTxId, localTxId);
+    		return result instanceof CompletableFuture ? (CompletableFuture<Object>) result : CompletableFuture.completedFuture(result);
     	}
       omegaContext.setGlobalTxId(globalTxId);
       omegaContext.setLocalTxId(localTxId);
-      contextInternal.compensationMethod.invoke(contextInternal.target, payloads);
+      Object result = contextInternal.compensationMethod.invoke(contextInternal.target, payloads);
       LOG.info("Compensated transaction with global tx id [{}], local tx id [{}]", globalTxId, localTxId);
+      return CompletableFuture.completedFuture(result);
     } catch (IllegalAccessException | InvocationTargetException e) {
       LOG.error(
           "Pre-checking for compensation method " + contextInternal.compensationMethod.toString()
               + " was somehow skipped, did you forget to configure compensable method checking on service startup?",
           e);
       // Do not report exception here, because it's not convenient for collection business information.
+      CompletableFuture<Object> failure = new CompletableFuture<>();
+      failure.completeExceptionally(e);
+      return failure;
     } finally {
       omegaContext.setGlobalTxId(oldGlobalTxId);
       omegaContext.setLocalTxId(oldLocalTxId);
@@ -15,7 +15,18 @@
 
 package org.apache.servicecomb.saga.omega.format;
 
-import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.apache.servicecomb.saga.omega.transaction.OmegaException;
 
@@ -30,33 +41,59 @@ public class KryoMessageFormat implements MessageFormat {
 
   private static final int DEFAULT_BUFFER_SIZE = 4096;
 
-  private static final KryoFactory FACTORY = () -> new Kryo();
+  // the buffer which grows larger than it is dropped after serializing, so a large payload does not hold memory of every thread.
+  private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+  // The ids of common payload types, they're written as ids rather than class names.
+  // Do not change the existing ids, the payloads persisted by alpha are deserialized with them while compensating.
+  // The payloads whose types were written as class names are still deserialized as before.
+  private static final Class<?>[] REGISTERED_TYPES = {
+      Object[].class, String[].class, byte[].class, int[].class, long[].class,
+      ArrayList.class, LinkedList.class, HashMap.class, LinkedHashMap.class, TreeMap.class,
+      HashSet.class, LinkedHashSet.class, TreeSet.class,
+      Date.class, Timestamp.class, BigDecimal.class, BigInteger.class
+  };
+
+  private static final int FIRST_REGISTERED_ID = 20;
+
+  private static final KryoFactory FACTORY = () -> {
+    Kryo kryo = new Kryo();
+    for (int i = 0; i < REGISTERED_TYPES.length; i++) {
+      kryo.register(REGISTERED_TYPES[i], FIRST_REGISTERED_ID + i);
+    }
+    return kryo;
+  };
 
   private static final KryoPool POOL = new KryoPool.Builder(FACTORY).softReferences().build();
 
+  private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(() -> new Output(DEFAULT_BUFFER_SIZE, -1));
+
   @Override
   public byte[] serialize(Object[] objects) {
-    Output output = new Output(DEFAULT_BUFFER_SIZE, -1);
+    Output output = OUTPUT.get();
+    output.clear();
 
     Kryo kryo = POOL.borrow();
-    kryo.writeObjectOrNull(output, objects, Object[].class);
-    POOL.release(kryo);
-
-    return output.toBytes();
+    try {
+      kryo.writeObjectOrNull(output, objects, Object[].class);
+      return output.toBytes();
+    } finally {
+      POOL.release(kryo);
+      if (output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+        output.setBuffer(new byte[DEFAULT_BUFFER_SIZE], -1);
+      }
+    }
   }
 
   @Override
   public Object[] deserialize(byte[] message) {
+    Kryo kryo = POOL.borrow();
     try {
-      Input input = new Input(new ByteArrayInputStream(message));
-
-      Kryo kryo = POOL.borrow();
-      Object[] objects = kryo.readObjectOrNull(input, Object[].class);
-      POOL.release(kryo);
-
-      return objects;
+      return kryo.readObjectOrNull(new Input(message), Object[].class);
     } catch (KryoException e) {
       throw new OmegaException("Unable to deserialize message", e);
+    } finally {
+      POOL.release(kryo);
     }
   }
 }
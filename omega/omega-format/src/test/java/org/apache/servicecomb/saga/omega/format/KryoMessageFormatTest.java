@@ -16,11 +16,22 @@
 package org.apache.servicecomb.saga.omega.format;
 
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+
 public class KryoMessageFormatTest extends MessageFormatTestBase {
 
   @BeforeClass
@@ -36,4 +47,41 @@ public class KryoMessageFormatTest extends MessageFormatTestBase {
 
     assertThat(message[0], instanceOf(EmptyClass.class));
   }
+
+  @Test
+  public void serializeLargePayloadsWithReusedBuffer() {
+    byte[] large = new byte[1024 * 1024];
+    Arrays.fill(large, (byte) 1);
+
+    Object[] message = format.deserialize(format.serialize(new Object[]{large}));
+    assertThat(Arrays.equals((byte[]) message[0], large), is(true));
+
+    message = format.deserialize(format.serialize(new Object[]{"small"}));
+    assertThat(message[0], is("small"));
+  }
+
+  @Test
+  public void serializeCommonTypesIntoBytes() {
+    List<String> list = new ArrayList<>(Arrays.asList("a", "b"));
+    Map<String, Object> map = new HashMap<>();
+    map.put("amount", new BigDecimal("10.25"));
+
+    Object[] message = format.deserialize(format.serialize(new Object[]{list, map, new String[]{"c"}}));
+
+    assertThat(message[0], is(list));
+    assertThat(message[1], is(map));
+    assertThat(Arrays.equals((String[]) message[2], new String[]{"c"}), is(true));
+  }
+
+  @Test
+  public void deserializeBytesWithoutRegisteredTypes() {
+    Map<String, Object> map = new HashMap<>();
+    map.put("amount", new BigDecimal("10.25"));
+    Output output = new Output(4096, -1);
+    new Kryo().writeObjectOrNull(output, new Object[]{map}, Object[].class);
+
+    Object[] message = format.deserialize(output.toBytes());
+
+    assertThat(message[0], is(map));
+  }
 }
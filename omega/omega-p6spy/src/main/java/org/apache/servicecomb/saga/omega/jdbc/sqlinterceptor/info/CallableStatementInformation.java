@@ -38,15 +38,13 @@ public class CallableStatementInformation extends PreparedStatementInformation {
         StringBuilder parameters = new StringBuilder();
 
         // add parameters set with ordinal positions
-        for (Integer position : getParameterValues().keySet()) {
-            appendParameter(parameters, position.toString(), getParameterValues().get(position));
-        }
+        forEachParameterValue((position, value) -> appendParameter(parameters, position.toString(), value));
 
         // add named parameters
         Iterator<Map.Entry<String, Value>> iterator = namedParameterValues.entrySet().iterator();
         while (iterator.hasNext()) {
             Map.Entry<String, Value> entry = iterator.next();
-            appendParameter(parameters, entry.getKey(), entry.getValue());
+            appendParameter(parameters, entry.getKey(), entry.getValue().toString());
         }
 
         result.append(parameters);
@@ -54,14 +52,14 @@ public class CallableStatementInformation extends PreparedStatementInformation {
         return result.toString();
     }
 
-    private void appendParameter(StringBuilder parameters, String name, Value value) {
+    private void appendParameter(StringBuilder parameters, String name, String value) {
         if (parameters.length() > 0) {
             parameters.append(", ");
         }
 
         parameters.append(name);
         parameters.append(":");
-        parameters.append(value != null ? value.toString() : new Value().toString());
+        parameters.append(value);
     }
 
     public void setParameterValue(final String name, final Object value) {
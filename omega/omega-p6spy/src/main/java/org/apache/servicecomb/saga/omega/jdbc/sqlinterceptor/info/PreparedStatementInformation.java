@@ -5,8 +5,8 @@
 
 package org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
 
 /**
  * An information bean for the PreparedStatement.
@@ -15,11 +15,33 @@ import java.util.Map;
  * @since 20190129
  */
 public class PreparedStatementInformation {
+    private static final Object UNSET = new Object();
+
     private final String sql;
-    private final Map<Integer, Value> parameterValues = new HashMap<>();
+    // the number of placeholders, the array of values is sized by it.
+    private final int parameterCount;
+    // it's allocated after setting the first parameter, so the statements without parameters do not allocate it.
+    private Object[] parameterValues;
+    // it's rendered while being used for the first time after setting parameters.
+    private String sqlWithValues;
+    // the parameters of listeners for the current execution, indexed by the slot of listener, it's allocated while being used for the first time.
+    private Object[] listenerParams;
 
     public PreparedStatementInformation(String sql) {
         this.sql = sql;
+        this.parameterCount = countPlaceholders(sql);
+    }
+
+    private static int countPlaceholders(String sql) {
+        int count = 0;
+        if (sql != null) {
+            for (int pos = 0; pos < sql.length(); pos++) {
+                if (sql.charAt(pos) == '?') {
+                    count++;
+                }
+            }
+        }
+        return count;
     }
 
     public String getSql() {
@@ -27,31 +49,92 @@ public class PreparedStatementInformation {
     }
 
     public String getSqlWithValues() {
-        final StringBuilder sb = new StringBuilder();
-        final String statementQuery = sql;
+        if (sqlWithValues == null) {
+            sqlWithValues = parameterValues == null ? sql : renderParameterValues(sql, null);
+        }
+        return sqlWithValues;
+    }
+
+    /**
+     * To replace the placeholders of a fragment of current sql with parameter values, e.g. the where-condition.
+     *
+     * @param sqlFragment      the fragment whose placeholders are in the same order as the given indexes
+     * @param parameterIndexes the indexes of parameters in current sql, the first one is 0
+     * @return the fragment with values
+     */
+    public String bindParameterValues(String sqlFragment, int[] parameterIndexes) {
+        return renderParameterValues(sqlFragment, parameterIndexes);
+    }
 
+    // The placeholders are replaced by the parameters in order if the indexes are null.
+    private String renderParameterValues(String sqlFragment, int[] parameterIndexes) {
+        int placeholderCount = parameterIndexes == null ? parameterCount : parameterIndexes.length;
+        final StringBuilder sb = new StringBuilder(sqlFragment.length() + 16 * placeholderCount);
         int currentParameter = 0;
-        for (int pos = 0; pos < statementQuery.length(); pos++) {
-            char character = statementQuery.charAt(pos);
-            if (statementQuery.charAt(pos) == '?' && currentParameter <= parameterValues.size()) {
+        for (int pos = 0; pos < sqlFragment.length(); pos++) {
+            char character = sqlFragment.charAt(pos);
+            if (character == '?' && currentParameter < placeholderCount) {
                 // replace with parameter value
-                Value value = parameterValues.get(currentParameter);
-                sb.append(value != null ? value.toString() : new Value().toString());
+                sb.append(getParameterValue(parameterIndexes == null ? currentParameter : parameterIndexes[currentParameter]));
                 currentParameter++;
             } else {
                 sb.append(character);
             }
         }
-
         return sb.toString();
     }
 
+    private String getParameterValue(int index) {
+        Object value = parameterValues != null && index < parameterValues.length ? parameterValues[index] : UNSET;
+        return value == UNSET ? Value.NULL : Value.toSqlString(value);
+    }
+
     public void setParameterValue(final int position, final Object value) {
-        parameterValues.put(position - 1, new Value(value));
+        int index = position - 1;
+        if (parameterValues == null) {
+            parameterValues = new Object[Math.max(parameterCount, position)];
+            Arrays.fill(parameterValues, UNSET);
+        } else if (index >= parameterValues.length) {
+            int length = parameterValues.length;
+            parameterValues = Arrays.copyOf(parameterValues, position);
+            Arrays.fill(parameterValues, length, position, UNSET);
+        }
+        parameterValues[index] = value;
+        sqlWithValues = null;
+    }
+
+    public void setListenerParam(int slot, Object param) {
+        if (listenerParams == null) {
+            if (param == null) {
+                return;
+            }
+            listenerParams = new Object[slot + 1];
+        } else if (slot >= listenerParams.length) {
+            listenerParams = Arrays.copyOf(listenerParams, slot + 1);
+        }
+        listenerParams[slot] = param;
     }
 
-    protected Map<Integer, Value> getParameterValues() {
-        return parameterValues;
+    public Object takeListenerParam(int slot) {
+        if (listenerParams == null || slot >= listenerParams.length) {
+            return null;
+        }
+        Object param = listenerParams[slot];
+        listenerParams[slot] = null;
+        return param;
+    }
+
+    /**
+     * @param consumer it accepts the position which starts from 1 and the value of every parameter which has been set.
+     */
+    protected void forEachParameterValue(BiConsumer<Integer, String> consumer) {
+        if (parameterValues != null) {
+            for (int i = 0; i < parameterValues.length; i++) {
+                if (parameterValues[i] != UNSET) {
+                    consumer.accept(i + 1, Value.toSqlString(parameterValues[i]));
+                }
+            }
+        }
     }
 
 }
@@ -15,6 +15,8 @@ import java.text.SimpleDateFormat;
  */
 public class Value {
 
+    public static final String NULL = "NULL";
+
     private static final char[] HEX_CHARS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
 
     private Object value;
@@ -41,6 +43,16 @@ public class Value {
     }
 
     public String convertToString(Object value) {
+        return toSqlString(value);
+    }
+
+    /**
+     * @return the literal of value in SQL, e.g. the string value is quoted.
+     */
+    public static String toSqlString(Object value) {
+        if (value == null) {
+            return NULL;
+        }
         String result;
         if (value instanceof java.util.Date) {
             try {
@@ -70,7 +82,7 @@ public class Value {
      * @return the hexadecimal {@link String} representation of the given
      * {@code bytes}.
      */
-    private String toHexString(byte[] bytes) {
+    private static String toHexString(byte[] bytes) {
         StringBuilder sb = new StringBuilder();
         for (byte b : bytes) {
             int temp = (int) b & 0xFF;
@@ -80,7 +92,7 @@ public class Value {
         return sb.toString();
     }
 
-    private String quoteIfNeeded(String stringValue, Object obj) {
+    private static String quoteIfNeeded(String stringValue, Object obj) {
         if (stringValue == null) {
             return null;
         }
@@ -92,7 +104,7 @@ public class Value {
         }
     }
 
-    private String escape(String stringValue) {
+    private static String escape(String stringValue) {
         return stringValue.replaceAll("'", "''");
     }
 
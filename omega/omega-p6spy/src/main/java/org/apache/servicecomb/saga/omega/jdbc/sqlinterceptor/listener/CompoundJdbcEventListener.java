@@ -8,46 +8,84 @@ package org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.listener;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.CallableStatementInformation;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.PreparedStatementInformation;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.ResultSetInformation;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * To define compound event listener for storing and invoking different event listeners only.
+ * The listeners are grouped by the kinds of events while registering, so an event is dispatched to the interested listeners only,
+ * and it's a no-op if there is no interested listener.
  *
  * @author Gannalyo
  * @since 20190129
  */
 public class CompoundJdbcEventListener extends JdbcEventListener {
-    private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final JdbcEventListener[] NO_LISTENERS = new JdbcEventListener[0];
 
     private final List<JdbcEventListener> eventListeners;
+    // the interested listeners of every kind, indexed by the ordinal of kind, they're rebuilt while registering rather than dispatching.
+    private final JdbcEventListener[][] listenersByKind;
+    private boolean resultSetEventListened;
 
     public CompoundJdbcEventListener() {
         eventListeners = new ArrayList<>();
+        listenersByKind = new JdbcEventListener[JdbcEventKind.values().length][];
+        Arrays.fill(listenersByKind, NO_LISTENERS);
     }
 
     public void addListender(JdbcEventListener listener) {
+        listener.setSlot(eventListeners.size());
         eventListeners.add(listener);
+        for (JdbcEventKind kind : listener.eventKinds()) {
+            JdbcEventListener[] listeners = listenersByKind[kind.ordinal()];
+            listeners = Arrays.copyOf(listeners, listeners.length + 1);
+            listeners[listeners.length - 1] = listener;
+            listenersByKind[kind.ordinal()] = listeners;
+        }
+        resultSetEventListened |= listener.isResultSetEventListened() && listener.eventKinds().contains(JdbcEventKind.RESULT_SET);
+    }
+
+    // it's the only place to check 'isEnabled', the events of statements are not dispatched at all while no listener is enabled, e.g. outside txle transactions,
+    // but the events of connections and transactions are always dispatched, e.g. the hooks of commit and rollback.
+    private JdbcEventListener[] listeners(JdbcEventKind kind) {
+        if (kind != JdbcEventKind.CONNECTION && kind != JdbcEventKind.TRANSACTION && !isEnabled()) {
+            return NO_LISTENERS;
+        }
+        return listenersByKind[kind.ordinal()];
     }
 
     @Override
-    public void onBeforeGetConnection() {
+    public boolean isEnabled() {
         for (JdbcEventListener eventListener : eventListeners) {
+            if (eventListener.isEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isResultSetEventListened() {
+        return resultSetEventListened;
+    }
+
+    @Override
+    public void onBeforeGetConnection() {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.CONNECTION)) {
             eventListener.onBeforeGetConnection();
         }
     }
 
     @Override
     public void onAfterGetConnection(SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.CONNECTION)) {
             eventListener.onAfterGetConnection(e);
         }
     }
@@ -55,100 +93,100 @@ public class CompoundJdbcEventListener extends JdbcEventListener {
     @Override
     @Deprecated
     public void onConnectionWrapped() {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.CONNECTION)) {
             eventListener.onConnectionWrapped();
         }
     }
 
     @Override
     public void onBeforeAddBatch(PreparedStatementInformation statementInformation) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.BATCH)) {
             eventListener.onBeforeAddBatch(statementInformation);
         }
     }
 
     @Override
     public void onAfterAddBatch(PreparedStatementInformation preparedStatementInformation, long timeElapsedNanos, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.BATCH)) {
             eventListener.onAfterAddBatch(preparedStatementInformation, timeElapsedNanos, e);
         }
     }
 
     @Override
     public void onBeforeAddBatch(String sql) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.BATCH)) {
             eventListener.onBeforeAddBatch(sql);
         }
     }
 
     @Override
     public void onAfterAddBatch(long timeElapsedNanos, String sql, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.BATCH)) {
             eventListener.onAfterAddBatch(timeElapsedNanos, sql, e);
         }
     }
 
     @Override
     public void onBeforeExecute(PreparedStatementInformation statementInformation) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE)) {
             eventListener.onBeforeExecute(statementInformation);
         }
     }
 
     @Override
     public void onBeforeExecuteUpdate(PreparedStatement preparedStatement, PreparedStatementInformation statementInformation) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE_UPDATE)) {
             eventListener.onBeforeExecuteUpdate(preparedStatement, statementInformation);
         }
     }
 
     @Override
     public void onAfterExecuteUpdate(PreparedStatement preparedStatement, PreparedStatementInformation statementInformation) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE_UPDATE)) {
             eventListener.onAfterExecuteUpdate(preparedStatement, statementInformation);
         }
     }
 
     @Override
     public Object onBeforeExecuteUpdateWithReturnValue(PreparedStatement preparedStatement, PreparedStatementInformation statementInformation) throws SQLException {
-        Map<JdbcEventListener, Object> listenerParams = new ConcurrentHashMap<>(8);
-        for (JdbcEventListener eventListener : eventListeners) {
-            listenerParams.put(eventListener, eventListener.onBeforeExecuteUpdateWithReturnValue(preparedStatement, statementInformation));
+        // the value of every listener is kept in its slot of the statement rather than a new map, and the listener takes it after executing.
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE_UPDATE)) {
+            eventListener.setListenerParam(statementInformation, eventListener.onBeforeExecuteUpdateWithReturnValue(preparedStatement, statementInformation));
         }
-        return listenerParams;
+        return null;
     }
 
     @Override
     public void onAfterExecute(PreparedStatementInformation preparedStatementInformation, long timeElapsedNanos, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE)) {
             eventListener.onAfterExecute(preparedStatementInformation, timeElapsedNanos, e);
         }
     }
 
     @Override
     public void onBeforeExecute(String sql) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE)) {
             eventListener.onBeforeExecute(sql);
         }
     }
 
     @Override
     public void onAfterExecute(long timeElapsedNanos, String sql, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE)) {
             eventListener.onAfterExecute(timeElapsedNanos, sql, e);
         }
     }
 
     @Override
     public void onBeforeExecuteBatch() {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.BATCH)) {
             eventListener.onBeforeExecuteBatch();
         }
     }
 
     @Override
     public void onAfterExecuteBatch(long timeElapsedNanos, int[] updateCounts, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.BATCH)) {
             eventListener.onAfterExecuteBatch(timeElapsedNanos, updateCounts, e);
         }
     }
@@ -156,7 +194,7 @@ public class CompoundJdbcEventListener extends JdbcEventListener {
     // The Aspect annotation works for Spring Bean only By Gannalyo
     @Override
     public void onBeforeExecuteUpdate(PreparedStatementInformation statementInformation) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE_UPDATE)) {
             eventListener.onBeforeExecuteUpdate(statementInformation);
         }
     }
@@ -164,7 +202,7 @@ public class CompoundJdbcEventListener extends JdbcEventListener {
     @Override
     public void onAfterExecuteUpdate(PreparedStatementInformation preparedStatementInformation, long timeElapsedNanos,
                                      int rowCount, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE_UPDATE)) {
             eventListener.onAfterExecuteUpdate(preparedStatementInformation, timeElapsedNanos, rowCount, e);
         }
     }
@@ -172,51 +210,49 @@ public class CompoundJdbcEventListener extends JdbcEventListener {
     @Override
     public void onAfterExecuteUpdateWithParams(PreparedStatement preparedStatement, PreparedStatementInformation preparedStatementInformation, long timeElapsedNanos,
                                                int rowCount, SQLException e, Map<JdbcEventListener, Object> listenerParams) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE_UPDATE)) {
             eventListener.onAfterExecuteUpdateWithParams(preparedStatement, preparedStatementInformation, timeElapsedNanos, rowCount, e, listenerParams);
         }
     }
 
     @Override
     public void onBeforeExecuteUpdate(String sql) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE_UPDATE)) {
             eventListener.onBeforeExecuteUpdate(sql);
         }
     }
 
     @Override
     public void onAfterExecuteUpdate(long timeElapsedNanos, String sql, int rowCount, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE_UPDATE)) {
             eventListener.onAfterExecuteUpdate(timeElapsedNanos, sql, rowCount, e);
         }
     }
 
     @Override
     public void onBeforeExecuteQuery(PreparedStatementInformation statementInformation) {
-        log.info("Executing method 'onBeforeExecuteQuery' ....");
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE_QUERY)) {
             eventListener.onBeforeExecuteQuery(statementInformation);
         }
-        log.info("Executed method 'onBeforeExecuteQuery' ....");
     }
 
     @Override
     public void onAfterExecuteQuery(PreparedStatementInformation preparedStatementInformation, long timeElapsedNanos, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE_QUERY)) {
             eventListener.onAfterExecuteQuery(preparedStatementInformation, timeElapsedNanos, e);
         }
     }
 
     @Override
     public void onBeforeExecuteQuery(String sql) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE_QUERY)) {
             eventListener.onBeforeExecuteQuery(sql);
         }
     }
 
     @Override
     public void onAfterExecuteQuery(long timeElapsedNanos, String sql, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.EXECUTE_QUERY)) {
             eventListener.onAfterExecuteQuery(timeElapsedNanos, sql, e);
         }
     }
@@ -233,84 +269,126 @@ public class CompoundJdbcEventListener extends JdbcEventListener {
 
     @Override
     public void onAfterGetResultSet(long timeElapsedNanos, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.RESULT_SET)) {
             eventListener.onAfterGetResultSet(timeElapsedNanos, e);
         }
     }
 
     @Override
     public void onBeforeResultSetNext(ResultSetInformation resultSetInformation) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.RESULT_SET)) {
             eventListener.onBeforeResultSetNext(resultSetInformation);
         }
     }
 
     @Override
     public void onAfterResultSetNext(ResultSetInformation resultSetInformation, long timeElapsedNanos, boolean hasNext, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.RESULT_SET)) {
             eventListener.onAfterResultSetNext(resultSetInformation, timeElapsedNanos, hasNext, e);
         }
     }
 
     @Override
     public void onAfterResultSetClose(ResultSetInformation resultSetInformation, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.RESULT_SET)) {
             eventListener.onAfterResultSetClose(resultSetInformation, e);
         }
     }
 
     @Override
     public void onAfterResultSetGet(ResultSetInformation resultSetInformation, String columnLabel, Object value, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.RESULT_SET)) {
             eventListener.onAfterResultSetGet(resultSetInformation, columnLabel, value, e);
         }
     }
 
     @Override
     public void onAfterResultSetGet(ResultSetInformation resultSetInformation, int columnIndex, Object value, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.RESULT_SET)) {
             eventListener.onAfterResultSetGet(resultSetInformation, columnIndex, value, e);
         }
     }
 
     @Override
     public void onBeforeCommit() {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.TRANSACTION)) {
             eventListener.onBeforeCommit();
         }
     }
 
     @Override
     public void onAfterCommit(long timeElapsedNanos, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.TRANSACTION)) {
             eventListener.onAfterCommit(timeElapsedNanos, e);
         }
     }
 
+    @Override
+    public void onBeforeCommit(Connection connection) throws SQLException {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.TRANSACTION)) {
+            eventListener.onBeforeCommit(connection);
+        }
+    }
+
+    @Override
+    public void onAfterRollback(Connection connection) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.TRANSACTION)) {
+            eventListener.onAfterRollback(connection);
+        }
+    }
+
+    @Override
+    public void onAfterSetSavepoint(Connection connection, Savepoint savepoint) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.TRANSACTION)) {
+            eventListener.onAfterSetSavepoint(connection, savepoint);
+        }
+    }
+
+    @Override
+    public void onAfterRollback(Connection connection, Savepoint savepoint) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.TRANSACTION)) {
+            eventListener.onAfterRollback(connection, savepoint);
+        }
+    }
+
+    @Override
+    public void onAfterReleaseSavepoint(Connection connection, Savepoint savepoint) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.TRANSACTION)) {
+            eventListener.onAfterReleaseSavepoint(connection, savepoint);
+        }
+    }
+
+    @Override
+    public void onAfterConnectionClose(Connection connection) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.CONNECTION)) {
+            eventListener.onAfterConnectionClose(connection);
+        }
+    }
+
     @Override
     public void onAfterConnectionClose(SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.CONNECTION)) {
             eventListener.onAfterConnectionClose(e);
         }
     }
 
     @Override
     public void onBeforeRollback() {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.TRANSACTION)) {
             eventListener.onBeforeRollback();
         }
     }
 
     @Override
     public void onAfterRollback(long timeElapsedNanos, SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.TRANSACTION)) {
             eventListener.onAfterRollback(timeElapsedNanos, e);
         }
     }
 
     @Override
     public void onAfterStatementClose(SQLException e) {
-        for (JdbcEventListener eventListener : eventListeners) {
+        for (JdbcEventListener eventListener : listeners(JdbcEventKind.STATEMENT_CLOSE)) {
             eventListener.onAfterStatementClose(e);
         }
     }
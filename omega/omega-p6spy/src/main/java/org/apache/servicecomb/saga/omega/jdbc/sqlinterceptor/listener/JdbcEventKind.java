@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.listener;
+
+/**
+ * The kinds of JDBC events, a listener declares the kinds it handles, then the other events are not dispatched to it.
+ *
+ * @author Gannalyo
+ * @since 2019-10-17
+ */
+public enum JdbcEventKind {
+    // getting, wrapping and closing connection
+    CONNECTION,
+    // adding and executing batch
+    BATCH,
+    // the method 'execute' of Statement
+    EXECUTE,
+    // the method 'executeUpdate' of Statement, and the method 'execute' of PreparedStatement
+    EXECUTE_UPDATE,
+    EXECUTE_QUERY,
+    // setting parameters of PreparedStatement and CallableStatement
+    PARAMETER_SET,
+    RESULT_SET,
+    // commit and rollback
+    TRANSACTION,
+    STATEMENT_CLOSE
+}
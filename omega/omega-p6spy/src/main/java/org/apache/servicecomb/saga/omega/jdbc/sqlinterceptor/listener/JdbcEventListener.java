@@ -9,9 +9,13 @@ import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.CallableStatem
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.PreparedStatementInformation;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.ResultSetInformation;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * To define event listener for executing jdbc operations.
@@ -20,6 +24,49 @@ import java.util.Map;
  * @since 20190129
  */
 public abstract class JdbcEventListener {
+    // the index of this listener in CompoundJdbcEventListener, it locates the parameter of this listener in PreparedStatementInformation.
+    private int slot;
+
+    /**
+     * @return false if the events are not needed for current thread, then the events of statements are not dispatched by CompoundJdbcEventListener.
+     */
+    public boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * The events of other kinds are not dispatched to this listener, it's invoked once while registering.
+     *
+     * @return all kinds by default
+     */
+    public Set<JdbcEventKind> eventKinds() {
+        return EnumSet.allOf(JdbcEventKind.class);
+    }
+
+    /**
+     * @return true if the events of ResultSet are needed, the ResultSet is not wrapped by default since its methods are invoked for every row and column.
+     */
+    public boolean isResultSetEventListened() {
+        return false;
+    }
+
+    final void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * To keep a parameter of this listener for the current execution of the statement, e.g. the information taken out before executing.
+     */
+    protected final void setListenerParam(PreparedStatementInformation statementInformation, Object param) {
+        statementInformation.setListenerParam(slot, param);
+    }
+
+    /**
+     * @return the parameter of this listener, it's removed from the statement, so the next execution would not get it.
+     */
+    protected final Object takeListenerParam(PreparedStatementInformation statementInformation) {
+        return statementInformation.takeListenerParam(slot);
+    }
 
     public void onBeforeGetConnection() {
     }
@@ -128,6 +175,30 @@ public abstract class JdbcEventListener {
     public void onAfterCommit(long timeElapsedNanos, SQLException e) {
     }
 
+    /**
+     * It's invoked before the connection commits, the commit is not performed if an exception is thrown.
+     */
+    public void onBeforeCommit(Connection connection) throws SQLException {
+    }
+
+    public void onAfterRollback(Connection connection) {
+    }
+
+    public void onAfterSetSavepoint(Connection connection, Savepoint savepoint) {
+    }
+
+    /**
+     * It's invoked after the connection rolls back to the savepoint, the changes after the savepoint are undone.
+     */
+    public void onAfterRollback(Connection connection, Savepoint savepoint) {
+    }
+
+    public void onAfterReleaseSavepoint(Connection connection, Savepoint savepoint) {
+    }
+
+    public void onAfterConnectionClose(Connection connection) {
+    }
+
     public void onAfterConnectionClose(SQLException e) {
     }
 
@@ -51,6 +51,10 @@ public class ConnectionWrapper implements Connection {
 
     @Override
     public void setAutoCommit(boolean autoCommit) throws SQLException {
+        // the current transaction is committed if the auto-commit mode is changed to true.
+        if (autoCommit && !connection.getAutoCommit()) {
+            jdbcEventListener.onBeforeCommit(connection);
+        }
         connection.setAutoCommit(autoCommit);
     }
 
@@ -61,17 +65,26 @@ public class ConnectionWrapper implements Connection {
 
     @Override
     public void commit() throws SQLException {
+        jdbcEventListener.onBeforeCommit(connection);
         connection.commit();
     }
 
     @Override
     public void rollback() throws SQLException {
-        connection.rollback();
+        try {
+            connection.rollback();
+        } finally {
+            jdbcEventListener.onAfterRollback(connection);
+        }
     }
 
     @Override
     public void close() throws SQLException {
-        connection.close();
+        try {
+            connection.close();
+        } finally {
+            jdbcEventListener.onAfterConnectionClose(connection);
+        }
     }
 
     @Override
@@ -161,22 +174,28 @@ public class ConnectionWrapper implements Connection {
 
     @Override
     public Savepoint setSavepoint() throws SQLException {
-        return connection.setSavepoint();
+        Savepoint savepoint = connection.setSavepoint();
+        jdbcEventListener.onAfterSetSavepoint(connection, savepoint);
+        return savepoint;
     }
 
     @Override
     public Savepoint setSavepoint(String name) throws SQLException {
-        return connection.setSavepoint(name);
+        Savepoint savepoint = connection.setSavepoint(name);
+        jdbcEventListener.onAfterSetSavepoint(connection, savepoint);
+        return savepoint;
     }
 
     @Override
     public void rollback(Savepoint savepoint) throws SQLException {
         connection.rollback(savepoint);
+        jdbcEventListener.onAfterRollback(connection, savepoint);
     }
 
     @Override
     public void releaseSavepoint(Savepoint savepoint) throws SQLException {
         connection.releaseSavepoint(savepoint);
+        jdbcEventListener.onAfterReleaseSavepoint(connection, savepoint);
     }
 
     @Override
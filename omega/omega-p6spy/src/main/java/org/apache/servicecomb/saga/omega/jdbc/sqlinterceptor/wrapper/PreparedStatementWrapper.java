@@ -6,7 +6,6 @@
 package org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.wrapper;
 
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.PreparedStatementInformation;
-import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.ResultSetInformation;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.listener.JdbcEventListener;
 
 import java.io.InputStream;
@@ -49,7 +48,7 @@ public class PreparedStatementWrapper extends StatementWrapper implements Prepar
         long start = System.nanoTime();
         try {
             eventListener.onBeforeExecuteQuery(preparedStatementInformation);
-            return ResultSetWrapper.wrap(preparedStatement.executeQuery(), new ResultSetInformation(), eventListener);
+            return wrapResultSet(preparedStatement.executeQuery());
         } catch (SQLException sqlException) {
             e = sqlException;
             throw e;
@@ -33,12 +33,20 @@ public class StatementWrapper implements Statement {
         this.eventListener = eventListener;
     }
 
+    // The ResultSet is wrapped only if its events are listened, because it's invoked for every row and column.
+    protected ResultSet wrapResultSet(ResultSet resultSet) {
+        if (!eventListener.isResultSetEventListened()) {
+            return resultSet;
+        }
+        return ResultSetWrapper.wrap(resultSet, new ResultSetInformation(), eventListener);
+    }
+
     @Override
     public ResultSet getResultSet() throws SQLException {
         SQLException e = null;
         long start = System.nanoTime();
         try {
-            return ResultSetWrapper.wrap(statement.getResultSet(), new ResultSetInformation(), eventListener);
+            return wrapResultSet(statement.getResultSet());
         } catch (SQLException sqlException) {
             e = sqlException;
             throw e;
@@ -53,7 +61,7 @@ public class StatementWrapper implements Statement {
         long start = System.nanoTime();
         try {
             eventListener.onBeforeExecuteQuery(sql);
-            return ResultSetWrapper.wrap(statement.executeQuery(sql), new ResultSetInformation(), eventListener);
+            return wrapResultSet(statement.executeQuery(sql));
         } catch (SQLException sqlException) {
             e = sqlException;
             throw e;
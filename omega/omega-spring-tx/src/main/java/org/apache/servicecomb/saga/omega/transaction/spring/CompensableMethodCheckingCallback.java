@@ -43,7 +43,13 @@ class CompensableMethodCheckingCallback implements MethodCallback {
     if (!method.isAnnotationPresent(Compensable.class)) {
     	// for auto-compensation By Gannalyo
     	if (TxleConstants.AUTO_COMPENSABLE_METHOD.equals(method.toString())) {
-    		compensationContext.addCompensationContext(method, bean);
+    		try {
+    			// the commands are executed asynchronously, so the stream of commands is not blocked by the compensation SQLs.
+    			Method asyncMethod = bean.getClass().getMethod(TxleConstants.AUTO_COMPENSABLE_ASYNC_METHOD, method.getParameterTypes());
+    			compensationContext.addCompensationContext(method.toString(), asyncMethod, bean);
+    		} catch (NoSuchMethodException e) {
+    			compensationContext.addCompensationContext(method, bean);
+    		}
     	}
     	return;
     }
@@ -18,18 +18,32 @@ package org.apache.servicecomb.saga.omega.transaction;
 import org.apache.servicecomb.saga.common.ConfigCenterType;
 import org.apache.servicecomb.saga.common.TxleConstants;
 import org.apache.servicecomb.saga.omega.context.OmegaContext;
+import org.apache.servicecomb.saga.omega.context.TxleStaticConfig;
 import org.apache.servicecomb.saga.omega.transaction.monitor.CompensableSqlMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CompletableFuture;
+
 class CompensableInterceptor implements EventAwareInterceptor {
   private static final Logger LOG = LoggerFactory.getLogger(CompensableInterceptor.class);
   private final OmegaContext context;
   private final MessageSender sender;
+  // whether the TxStartedEvent is sent while executing the business logic, see DefaultRecovery
+  private final boolean concurrentStartedEvent;
 
   CompensableInterceptor(OmegaContext context, MessageSender sender) {
+    this(context, sender, TxleStaticConfig.getBooleanConfig("txle.transaction.concurrent-started-event.enabled", false));
+  }
+
+  CompensableInterceptor(OmegaContext context, MessageSender sender, boolean concurrentStartedEvent) {
     this.sender = sender;
     this.context = context;
+    this.concurrentStartedEvent = concurrentStartedEvent;
+  }
+
+  boolean isConcurrentStartedEvent() {
+    return concurrentStartedEvent;
   }
 
   @Override
@@ -42,6 +56,14 @@ class CompensableInterceptor implements EventAwareInterceptor {
     return response;
   }
 
+  CompletableFuture<AlphaResponse> preInterceptAsync(String parentTxId, String compensationMethod, int timeout, String retriesMethod,
+      int retries, Object... message) {
+    CompletableFuture<AlphaResponse> futureResponse = sender.sendAsync(new TxStartedEvent(context.globalTxId(), context.localTxId(), parentTxId,
+        compensationMethod, timeout, retriesMethod, retries, context.category(), message));
+    readConfigFromServer();
+    return futureResponse;
+  }
+
   @Override
   public void postIntercept(String parentTxId, String compensationMethod) {
     sender.send(new TxEndedEvent(context.globalTxId(), context.localTxId(), parentTxId, compensationMethod, context.category()));
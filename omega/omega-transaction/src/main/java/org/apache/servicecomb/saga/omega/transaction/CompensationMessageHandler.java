@@ -20,6 +20,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.concurrent.CompletableFuture;
 
 public class CompensationMessageHandler implements MessageHandler {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -35,12 +36,27 @@ public class CompensationMessageHandler implements MessageHandler {
   @Override
   public void onReceive(String globalTxId, String localTxId, String parentTxId, String compensationMethod,
       Object... payloads) {
+    CompletableFuture<Object> compensation;
     try {
-      context.apply(globalTxId, localTxId, compensationMethod, payloads);
+      compensation = context.apply(globalTxId, localTxId, compensationMethod, payloads);
     } catch (Exception e) {
       LOG.error("Failed to execute 'onReceive.context.apply' localTxId {}", localTxId, e);
+      return;
     }
-    // Executing compensation at the server's side. That can save performance and be conveniently to manage.
-//    sender.send(new TxCompensatedEvent(globalTxId, localTxId, parentTxId, compensationMethod));
+    // The auto-compensation is finished asynchronously, so the stream of commands is not blocked until its SQLs are executed.
+    compensation.whenComplete((result, e) -> {
+      if (e != null) {
+        LOG.error("Failed to compensate transaction with global tx id [{}], local tx id [{}].", globalTxId, localTxId, e);
+      } else if (Boolean.FALSE.equals(result)) {
+        // the failure of auto-compensation has been reported to the accident platform.
+        LOG.error("Failed to compensate transaction with global tx id [{}], local tx id [{}], the result is false.", globalTxId, localTxId);
+      } else {
+        try {
+          sender.send(new TxCompensatedEvent(globalTxId, localTxId, parentTxId, compensationMethod));
+        } catch (Exception ex) {
+          LOG.error("Failed to send TxCompensatedEvent, global tx id [{}], local tx id [{}].", globalTxId, localTxId, ex);
+        }
+      }
+    });
   }
 }
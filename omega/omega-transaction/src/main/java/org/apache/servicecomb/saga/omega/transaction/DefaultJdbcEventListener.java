@@ -10,6 +10,7 @@ import org.apache.servicecomb.saga.omega.context.CurrentThreadOmegaContext;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.CallableStatementInformation;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.PreparedStatementInformation;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.info.ResultSetInformation;
+import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.listener.JdbcEventKind;
 import org.apache.servicecomb.saga.omega.jdbc.sqlinterceptor.listener.JdbcEventListener;
 import org.apache.servicecomb.saga.omega.transaction.monitor.CompensableSqlMetrics;
 import org.slf4j.Logger;
@@ -17,11 +18,25 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 public class DefaultJdbcEventListener extends JdbcEventListener {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultJdbcEventListener.class);
 
+    // The JDBC operations are not intercepted out of txle's transactions.
+    @Override
+    public boolean isEnabled() {
+        return CurrentThreadOmegaContext.getContextFromCurThread() != null;
+    }
+
+    // Only the duration of business SQL is marked.
+    @Override
+    public Set<JdbcEventKind> eventKinds() {
+        return EnumSet.of(JdbcEventKind.EXECUTE_UPDATE);
+    }
+
     @Override
     public void onBeforeGetConnection() {
     }
@@ -16,6 +16,7 @@
 package org.apache.servicecomb.saga.omega.transaction;
 
 import org.apache.servicecomb.saga.common.ConfigCenterType;
+import org.apache.servicecomb.saga.common.TxleConstants;
 import org.apache.servicecomb.saga.omega.context.ApplicationContextUtil;
 import org.apache.servicecomb.saga.omega.context.CurrentThreadOmegaContext;
 import org.apache.servicecomb.saga.omega.context.OmegaContext;
@@ -29,6 +30,8 @@ import org.slf4j.LoggerFactory;
 import javax.transaction.InvalidTransactionException;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * DefaultRecovery is used to execute business logic once.
@@ -56,6 +59,11 @@ public class DefaultRecovery implements RecoveryPolicy {
     boolean isProceed = false;
     boolean enabledTx = false;
 
+    // it can't send the TxStartedEvent concurrently without compensation method, because there is no way to undo the business logic.
+    if (interceptor.isConcurrentStartedEvent() && !compensationSignature.isEmpty()) {
+      return applyConcurrently(joinPoint, compensable, interceptor, context, parentTxId, retries, method, compensationSignature, retrySignature);
+    }
+
     try {
       // Recoding current thread identify, globalTxId and localTxId, the aim is to relate auto-compensation SQL by current thread identify. By Gannalyo
       CurrentThreadOmegaContext.putThreadGlobalLocalTxId(new OmegaContextServiceConfig(context, false, false));
@@ -97,6 +105,89 @@ public class DefaultRecovery implements RecoveryPolicy {
     }
   }
 
+  /**
+   * The TxStartedEvent is sent while executing the business logic, so the business logic doesn't wait for the round trip to alpha.
+   * The response is awaited before reporting the TxEndedEvent or TxAbortedEvent, so alpha still receives the events of a sub transaction in order.
+   * If the global transaction had already aborted or the TxStartedEvent failed to be sent, alpha would never compensate this sub transaction,
+   * so the business logic which has been executed is compensated locally at once.
+   */
+  private Object applyConcurrently(ProceedingJoinPoint joinPoint, Compensable compensable, CompensableInterceptor interceptor, OmegaContext context,
+      String parentTxId, int retries, Method method, String compensationSignature, String retrySignature) throws Throwable {
+    CurrentThreadOmegaContext.putThreadGlobalLocalTxId(new OmegaContextServiceConfig(context, false, false));
+
+    CompletableFuture<AlphaResponse> futureResponse = interceptor.preInterceptAsync(parentTxId, compensationSignature, compensable.timeout(), retrySignature, retries, joinPoint.getArgs());
+
+    Object result = null;
+    Throwable businessError = null;
+    try {
+      result = joinPoint.proceed();
+    } catch (Throwable throwable) {
+      businessError = throwable;
+    }
+
+    AlphaResponse response;
+    try {
+      response = futureResponse.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause() == null ? e : e.getCause();
+      // the business logic has been executed, so return its result directly if the fault-tolerant degradation is enabled.
+      if (isFaultTolerant(context)) {
+        LOG.warn("Failed to send TxStartedEvent, the result of business is returned due to the fault-tolerant degradation, globalTxId = {}, localTxId = {}.", context.globalTxId(), context.localTxId(), cause);
+        if (businessError != null) {
+          throw businessError;
+        }
+        return result;
+      }
+      // alpha has no TxStartedEvent of this sub transaction and would never compensate it, so the executed business logic is undone locally.
+      if (businessError == null) {
+        compensateLocally(joinPoint, compensable, method, context);
+      }
+      throw cause;
+    }
+
+    if (!response.enabledTx()) {
+      if (businessError != null) {
+        throw businessError;
+      }
+      return result;
+    }
+
+    if (response.aborted()) {
+      if (businessError == null) {
+        compensateLocally(joinPoint, compensable, method, context);
+      }
+      String abortedLocalTxId = context.localTxId();
+      context.setLocalTxId(parentTxId);
+      throw new InvalidTransactionException("Abort sub transaction " + abortedLocalTxId + " because global transaction " + context.globalTxId() + " has already aborted.");
+    }
+
+    if (businessError != null) {
+      if (!isFaultTolerant(context)) {
+        interceptor.onError(parentTxId, compensationSignature, businessError);
+      }
+      throw businessError;
+    }
+
+    CurrentThreadOmegaContext.clearCache();
+    interceptor.postIntercept(parentTxId, compensationSignature);
+    return result;
+  }
+
+  private void compensateLocally(ProceedingJoinPoint joinPoint, Compensable compensable, Method method, OmegaContext context) {
+    try {
+      Method compensationMethod = joinPoint.getTarget().getClass().getDeclaredMethod(compensable.compensationMethod(), method.getParameterTypes());
+      compensationMethod.setAccessible(true);
+      compensationMethod.invoke(joinPoint.getTarget(), joinPoint.getArgs());
+      LOG.info("Compensated sub transaction locally because alpha did not accept its TxStartedEvent, globalTxId = {}, localTxId = {}.", context.globalTxId(), context.localTxId());
+    } catch (Exception e) {
+      LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to compensate sub transaction locally, globalTxId = {}, localTxId = {}.", context.globalTxId(), context.localTxId(), e);
+    }
+  }
+
+  private boolean isFaultTolerant(OmegaContext context) {
+    return ApplicationContextUtil.getApplicationContext().getBean(MessageSender.class).readConfigFromServer(ConfigCenterType.CompensationFaultTolerant.toInteger(), context.category()).getStatus();
+  }
+
   String compensationMethodSignature(ProceedingJoinPoint joinPoint, Compensable compensable, Method method)
       throws NoSuchMethodException {
     return joinPoint.getTarget().getClass().getDeclaredMethod(compensable.compensationMethod(), method.getParameterTypes()).toString();
@@ -19,6 +19,7 @@ import org.apache.servicecomb.saga.omega.transaction.accidentplatform.AccidentHa
 import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfigAck;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public interface MessageSender {
   void onConnected();
@@ -31,6 +32,20 @@ public interface MessageSender {
 
   AlphaResponse send(TxEvent event);
 
+  /**
+   * Send the event without blocking current thread, the response is got from the returned future.
+   * The default implementation sends the event synchronously.
+   */
+  default CompletableFuture<AlphaResponse> sendAsync(TxEvent event) {
+    CompletableFuture<AlphaResponse> futureResponse = new CompletableFuture<>();
+    try {
+      futureResponse.complete(send(event));
+    } catch (Exception e) {
+      futureResponse.completeExceptionally(e);
+    }
+    return futureResponse;
+  }
+
   Set<String> send(Set<String> localTxIdSet);
 
   String reportMessageToServer(KafkaMessage message);
@@ -20,10 +20,12 @@ import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.servicecomb.saga.common.EventType;
 import org.apache.servicecomb.saga.omega.context.CompensationContext;
@@ -100,6 +102,8 @@ public class CompensationMessageHandlerTest {
 
   @Test
   public void sendsCompensatedEventOnCompensationCompleted() {
+    when(context.apply(globalTxId, localTxId, compensationMethod, payload)).thenReturn(CompletableFuture.completedFuture(null));
+
     handler.onReceive(globalTxId, localTxId, parentTxId, compensationMethod, payload);
 
     assertThat(events.size(), is(1));
@@ -114,4 +118,30 @@ public class CompensationMessageHandlerTest {
 
     verify(context).apply(globalTxId, localTxId, compensationMethod, payload);
   }
+
+  @Test
+  public void sendsCompensatedEventAfterAsynchronousCompensationCompleted() {
+    CompletableFuture<Object> compensation = new CompletableFuture<>();
+    when(context.apply(globalTxId, localTxId, compensationMethod, payload)).thenReturn(compensation);
+
+    handler.onReceive(globalTxId, localTxId, parentTxId, compensationMethod, payload);
+    assertThat(events.isEmpty(), is(true));
+
+    compensation.complete(true);
+    assertThat(events.size(), is(1));
+    assertThat(events.get(0).type(), is(EventType.TxCompensatedEvent));
+    assertThat(events.get(0).localTxId(), is(localTxId));
+  }
+
+  @Test
+  public void sendsNothingIfCompensationFailed() {
+    CompletableFuture<Object> failedCompensation = new CompletableFuture<>();
+    failedCompensation.completeExceptionally(new RuntimeException("oops"));
+    when(context.apply(globalTxId, localTxId, compensationMethod, payload)).thenReturn(CompletableFuture.completedFuture(false), failedCompensation);
+
+    handler.onReceive(globalTxId, localTxId, parentTxId, compensationMethod, payload);
+    handler.onReceive(globalTxId, localTxId, parentTxId, compensationMethod, payload);
+
+    assertThat(events.isEmpty(), is(true));
+  }
 }
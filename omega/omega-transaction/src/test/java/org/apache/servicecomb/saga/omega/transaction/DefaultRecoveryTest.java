@@ -21,11 +21,13 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import javax.transaction.InvalidTransactionException;
 
@@ -53,6 +55,8 @@ public class DefaultRecoveryTest {
 
   private final RuntimeException oops = new RuntimeException("oops");
 
+  private int compensatedTimes = 0;
+
   @SuppressWarnings("unchecked")
   private final IdGenerator<String> idGenerator = mock(IdGenerator.class);
 
@@ -216,7 +220,42 @@ public class DefaultRecoveryTest {
     assertThat(startedEvent.retryMethod(), is(this.getClass().getDeclaredMethod("doNothing").toString()));
   }
 
+  @Test
+  public void sendStartedEventConcurrentlyAndRecordEndedEventAfterIt() throws Throwable {
+    when(joinPoint.proceed()).thenReturn("done");
+    CompensableInterceptor interceptor = new CompensableInterceptor(omegaContext, sender, true);
+
+    Object result = recoveryPolicy.apply(joinPoint, compensable, interceptor, omegaContext, parentTxId, 0);
+
+    assertThat(result, is("done"));
+    assertThat(messages.size(), is(2));
+    assertThat(messages.get(0).type(), is(EventType.TxStartedEvent));
+    assertThat(messages.get(1).type(), is(EventType.TxEndedEvent));
+    assertThat(compensatedTimes, is(0));
+  }
+
+  @Test
+  public void compensateLocallyWhenReceivedRejectResponseAfterProceeding() throws Throwable {
+    MessageSender sender = mock(MessageSender.class);
+    when(sender.sendAsync(any(TxEvent.class))).thenReturn(CompletableFuture.completedFuture(new AlphaResponse(true)));
+    CompensableInterceptor interceptor = new CompensableInterceptor(omegaContext, sender, true);
+
+    try {
+      recoveryPolicy.apply(joinPoint, compensable, interceptor, omegaContext, parentTxId, 0);
+      expectFailing(InvalidTransactionException.class);
+    } catch (InvalidTransactionException e) {
+      assertThat(e.getMessage().contains("Abort sub transaction"), is(true));
+    }
+
+    verify(joinPoint, times(1)).proceed();
+    verify(sender, times(1)).sendAsync(any(TxEvent.class));
+    verify(sender, never()).send(any(TxEvent.class));
+    assertThat(compensatedTimes, is(1));
+    assertThat(omegaContext.localTxId(), is(parentTxId));
+  }
+
   private String doNothing() {
+    compensatedTimes++;
     return "doNothing";
   }
 }
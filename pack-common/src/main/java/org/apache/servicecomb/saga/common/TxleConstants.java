@@ -26,6 +26,8 @@ public final class TxleConstants {
     public static final int NO = 0;
 
     public static final String AUTO_COMPENSABLE_METHOD = "public boolean org.apache.servicecomb.saga.omega.transaction.AutoCompensateService.executeAutoCompensateByLocalTxId(java.lang.String,java.lang.String)";
+    // the method which executes the compensation commands of 'AUTO_COMPENSABLE_METHOD' without blocking the stream of commands.
+    public static final String AUTO_COMPENSABLE_ASYNC_METHOD = "executeAutoCompensateAsync";
 
     public static final String CONSUL_LEADER_KEY = APP_NAME + "/service/leader";
     public static final String CONSUL_LEADER_KEY_VALUE = "leader election key for " + TxleConstants.APP_NAME + " service";
@@ -69,6 +71,14 @@ public final class TxleConstants {
         return TXLE_TX_KEY + globalTxId + "/status";
     }
 
+    // return null if the key is not a status key of global transaction
+    public static String parseGlobalTxIdFromStatusCacheKey(String key) {
+        if (key != null && key.startsWith(TXLE_TX_KEY) && key.endsWith("/status")) {
+            return key.substring(TXLE_TX_KEY.length(), key.length() - "/status".length());
+        }
+        return null;
+    }
+
     public static String constructTxConfigCacheKey(String globalTxId) {
         return TXLE_TX_KEY + globalTxId + "/config";
     }